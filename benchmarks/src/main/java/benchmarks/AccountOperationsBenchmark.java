@@ -0,0 +1,117 @@
+package benchmarks;
+
+import enums.Currency;
+import enums.OperationResult;
+import exception.InsufficientFundsException;
+import metrics.AccountMetrics;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.ThrowingAccountOperations;
+import model.TransferLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of deposits, withdrawals and transfers. The number of accounts controls how often
+ * threads hit the same locks; run with -t to change the number of threads. The rejected
+ * benchmarks compare a rejection reported as a result with one reported as an exception, the
+ * metrics parameter measures the cost of counting and timing the operations, and the limits
+ * parameter measures the cost of checking and counting transfers against limits that never reject.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountOperationsBenchmark {
+
+    private final static Money AMOUNT = Money.ofMinor(1, Currency.EUR);
+    private final static Money INITIAL_BALANCE = Money.ofMinor(1L << 50, Currency.EUR);
+    private final static Money EXCESSIVE_AMOUNT = Money.ofMinor(1L << 60, Currency.EUR); // Always rejected for insufficient funds
+    private final static Money UNREACHED_LIMIT = Money.ofMinor(1L << 62, Currency.EUR);
+
+    @Param({"2", "1024"})
+    public int accounts;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"false", "true"})
+    public boolean limits;
+
+    private Account[] population;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Account.setMetrics(metrics ? new AccountMetrics() : null);
+        BusinessAccount.setDefaultTransferLimits(limits
+                ? new TransferLimits(UNREACHED_LIMIT, UNREACHED_LIMIT, UNREACHED_LIMIT, Integer.MAX_VALUE) : null);
+        population = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            // Business accounts have no transfer limits by default, so every transfer succeeds
+            population[i] = new BusinessAccount(i + 1, "Owner " + i, INITIAL_BALANCE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Account.setMetrics(null);
+        BusinessAccount.setDefaultTransferLimits(null);
+    }
+
+    private Account pick() {
+        return population[ThreadLocalRandom.current().nextInt(accounts)];
+    }
+
+    @Benchmark
+    public void deposit() {
+        pick().deposit(AMOUNT);
+    }
+
+    @Benchmark
+    public void withdraw() {
+        pick().withdraw(AMOUNT);
+    }
+
+    @Benchmark
+    public void transfer() {
+        pick().transfer(AMOUNT, pick());
+    }
+
+    @Benchmark
+    public OperationResult transferMinorUnits() {
+        return pick().transferMinorUnits(1, pick());
+    }
+
+    @Benchmark
+    public OperationResult tryWithdrawRejected() {
+        return pick().tryWithdraw(EXCESSIVE_AMOUNT);
+    }
+
+    @Benchmark
+    public Object withdrawRejectedThrowing() {
+        try {
+            new ThrowingAccountOperations(pick()).withdraw(EXCESSIVE_AMOUNT);
+            return null;
+        } catch (InsufficientFundsException e) {
+            return e;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import enums.TransactionType;
+import model.TransactionJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends to and scans of the business account transfer history
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class HistoryBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int entries;
+
+    private final static int APPENDS_PER_INVOCATION = 100_000;
+
+    private TransactionJournal filled; // Journal scanned by the read benchmarks
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filled = new TransactionJournal();
+        for (int i = 0; i < entries; i++) {
+            filled.append(i * 1_000L, i, i + 1, TransactionType.TRANSFER_OUT);
+        }
+    }
+
+    /**
+     * Appends to a fresh journal, so the cost of growing the chunks is included and memory
+     * stays bounded however long the benchmark runs
+     */
+    @Benchmark
+    @OperationsPerInvocation(APPENDS_PER_INVOCATION)
+    public TransactionJournal append() {
+        TransactionJournal journal = new TransactionJournal();
+        for (int i = 0; i < APPENDS_PER_INVOCATION; i++) {
+            journal.append(i, 100, 42, TransactionType.TRANSFER_OUT);
+        }
+        return journal;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void scan(Blackhole blackhole) {
+        filled.forEach((epochNanos, minorUnits, counterpartyId, type) -> blackhole.consume(minorUnits));
+    }
+
+    /**
+     * Scans the middle one percent of the history through a binary-searched time range
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void rangeScan(Blackhole blackhole) {
+        long from = entries / 2 * 1_000L;
+        long to = from + entries / 100 * 1_000L;
+        filled.forEachBetween(from, to, (epochNanos, minorUnits, counterpartyId, type) -> blackhole.consume(minorUnits));
+    }
+
+    /**
+     * Scans the whole history through a cursor, which reads each entry in place
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void cursorScan(Blackhole blackhole) {
+        TransactionJournal.Cursor cursor = filled.cursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.getAmount());
+        }
+    }
+
+    /**
+     * Sums the whole history through a stream, which copies each entry into an object
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long streamScan() {
+        return filled.stream(Long.MIN_VALUE, Long.MAX_VALUE).mapToLong(TransactionJournal.Entry::getMinorUnits).sum();
+    }
+
+}
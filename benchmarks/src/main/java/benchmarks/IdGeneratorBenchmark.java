@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import registry.IdGenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ID allocation from several threads at once, with the striped sequences of the generator and
+ * with a single sequence shared by every thread, as the generator had before. Run it with more
+ * threads than cores (-t) to see the contention on the shared sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class IdGeneratorBenchmark {
+
+    private final static int SEQUENCE_BITS = 12;
+    private final static int TIMESTAMP_SHIFT = IdGenerator.NODE_BITS + SEQUENCE_BITS;
+    private final static long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private final static long EPOCH_MILLIS = 1_704_067_200_000L;
+
+    private final IdGenerator generator = new IdGenerator(1, 0);
+    private final AtomicLong sharedTick = new AtomicLong(); // Timestamp and sequence of the last ID of the shared sequence
+
+    @Benchmark
+    public long stripedSequences() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public long sharedSequence() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = sharedTick.get();
+            next = Math.max(last + 1, now);
+        } while (!sharedTick.compareAndSet(last, next));
+        return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT | 1L << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+    }
+
+}
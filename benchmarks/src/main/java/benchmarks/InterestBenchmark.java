@@ -0,0 +1,104 @@
+package benchmarks;
+
+import engine.InterestAccrualJob;
+import engine.InterestAudit;
+import enums.Currency;
+import enums.OperationResult;
+import model.Money;
+import model.SavingsAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import registry.AccountRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to apply interest to every savings account of a population, one account at a time or with
+ * the bulk job. The Vector API module is added so the bulk job uses the vector kernel when the
+ * application was built with the vector profile. Every invocation applies one period of interest
+ * to the same initial balances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "--add-modules=jdk.incubator.vector"})
+public class InterestBenchmark {
+
+    private final static long INITIAL_BALANCE = 100_000; // 1000.00EUR
+    private final static long EXPECTED_BALANCE = INITIAL_BALANCE + SavingsAccount.calculateInterest(INITIAL_BALANCE, 0.02); // After one period at the default rate
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private SavingsAccount[] population;
+    private InterestAccrualJob job;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        population = new SavingsAccount[accounts];
+        for (int i = 0; i < accounts; i++) {
+            population[i] = new SavingsAccount(i + 1, "Owner " + i, Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+        }
+        AccountRegistry registry = new AccountRegistry();
+        for (SavingsAccount account : population) {
+            registry.register(account);
+        }
+        job = new InterestAccrualJob(registry);
+    }
+
+    /**
+     * Resets the balances before every invocation, outside the measured time. Reset once per
+     * iteration, the balances compounded at 2% would overflow after about 1,600 invocations, and
+     * the rejected accounts would be measured instead of the interest.
+     */
+    @Setup(Level.Invocation)
+    public void resetBalances() {
+        for (SavingsAccount account : population) {
+            account.restoreBalance(INITIAL_BALANCE);
+        }
+    }
+
+    /**
+     * Checks that the invocation applied one period of interest to every account, so no balance
+     * overflowed
+     * @throws IllegalStateException Exception thrown if an account did not receive its interest
+     */
+    @TearDown(Level.Invocation)
+    public void checkBalances() throws IllegalStateException {
+        for (SavingsAccount account : population) {
+            if (account.getBalanceMinorUnits() != EXPECTED_BALANCE) {
+                throw new IllegalStateException("Account " + account.getId() + " ends with " + account.getBalanceMinorUnits()
+                        + " instead of " + EXPECTED_BALANCE + ".");
+            }
+        }
+    }
+
+    @Benchmark
+    public void applyInterestLoop() {
+        for (SavingsAccount account : population) {
+            account.applyInterest();
+        }
+    }
+
+    @Benchmark
+    public InterestAudit bulkAccrual(Blackhole blackhole) {
+        InterestAudit audit = job.run();
+        blackhole.consume(audit.count(OperationResult.BALANCE_OVERFLOW)); // 0, or checkBalances fails
+        return audit;
+    }
+
+}
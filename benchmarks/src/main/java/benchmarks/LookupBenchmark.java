@@ -0,0 +1,64 @@
+package benchmarks;
+
+import enums.Currency;
+import model.Account;
+import model.Money;
+import model.SavingsAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import registry.AccountRegistry;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of random account IDs in registries of growing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LookupBenchmark {
+
+    private final static Money BALANCE = Money.ofMinor(0, Currency.EUR);
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int accounts;
+
+    private AccountRegistry registry;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new AccountRegistry();
+        ids = new long[accounts];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < accounts; i++) {
+            long id;
+            do {
+                id = random.nextLong(1, Long.MAX_VALUE);
+            } while (registry.contains(id));
+            ids[i] = id;
+            registry.register(new SavingsAccount(id, "Owner", BALANCE));
+        }
+    }
+
+    @Benchmark
+    public Account findById() {
+        return registry.find(ids[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+}
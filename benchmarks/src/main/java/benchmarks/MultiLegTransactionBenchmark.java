@@ -0,0 +1,79 @@
+package benchmarks;
+
+import enums.Currency;
+import enums.OperationResult;
+import model.Account;
+import model.Money;
+import model.MultiLegTransaction;
+import model.SavingsAccount;
+import model.TransferLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A payroll run debiting one account and crediting every payee, applied as one multi-leg
+ * transaction or as separate transfers. The accounts are savings accounts without limits, so the
+ * histories of business accounts do not grow without bound during the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiLegTransactionBenchmark {
+
+    @Param({"10", "300"})
+    public int payees;
+
+    private Account payer;
+    private Account[] payeeAccounts;
+    private MultiLegTransaction transaction;
+    private TransferLimits savingsLimits;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        savingsLimits = SavingsAccount.getDefaultTransferLimits();
+        SavingsAccount.setDefaultTransferLimits(TransferLimits.NONE);
+        payer = new SavingsAccount(1, "Payer", Money.ofMinor(Long.MAX_VALUE / 2, Currency.EUR));
+        payeeAccounts = new Account[payees];
+        transaction = new MultiLegTransaction(payees);
+        for (int i = 0; i < payees; i++) {
+            payeeAccounts[i] = new SavingsAccount(i + 2, "Payee " + i, Money.ofMinor(0, Currency.EUR));
+            transaction.addLeg(payer, payeeAccounts[i], 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SavingsAccount.setDefaultTransferLimits(savingsLimits);
+    }
+
+    @Benchmark
+    public OperationResult transaction() {
+        return transaction.execute();
+    }
+
+    @Benchmark
+    public OperationResult separateTransfers() {
+        OperationResult result = OperationResult.COMPLETED;
+        for (Account payee : payeeAccounts) {
+            result = payer.transferMinorUnits(1, payee);
+        }
+        return result;
+    }
+
+}
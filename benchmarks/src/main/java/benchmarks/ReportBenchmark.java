@@ -0,0 +1,86 @@
+package benchmarks;
+
+import enums.AccountType;
+import enums.Currency;
+import model.Account;
+import model.Money;
+import model.SavingsAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import registry.AccountRegistry;
+import report.BalanceReport;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the account report: its queries, which should not depend on the number of accounts,
+ * and the deposits that keep it up to date, compared with deposits without a report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ReportBenchmark {
+
+    private final static int TOP = 100;
+
+    @Param({"10000", "1000000"})
+    public int accounts;
+
+    @Param({"false", "true"})
+    public boolean report;
+
+    private Account[] population;
+    private BalanceReport balanceReport;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AccountRegistry registry = new AccountRegistry();
+        registry.ensureCapacity(accounts);
+        population = new Account[accounts];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < accounts; i++) {
+            population[i] = new SavingsAccount(i + 1, "Owner " + i, Money.ofMinor(random.nextLong(1L << 40), Currency.EUR));
+            registry.register(population[i]);
+        }
+        balanceReport = new BalanceReport();
+        balanceReport.addAll(registry);
+        Account.setBalanceObserver(report ? balanceReport : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Account.setBalanceObserver(null);
+    }
+
+    @Benchmark
+    public void deposit() {
+        population[ThreadLocalRandom.current().nextInt(accounts)].depositMinorUnits(1);
+    }
+
+    @Benchmark
+    public int top(Blackhole blackhole) {
+        return balanceReport.top(Currency.EUR, TOP, (account, minorUnits) -> blackhole.consume(minorUnits));
+    }
+
+    @Benchmark
+    public long total() {
+        return balanceReport.getTotal(AccountType.SAVINGS, Currency.EUR);
+    }
+
+}
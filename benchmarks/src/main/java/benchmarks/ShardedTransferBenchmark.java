@@ -0,0 +1,97 @@
+package benchmarks;
+
+import engine.ShardedTransferEngine;
+import engine.TransferEngine;
+import enums.Currency;
+import model.SavingsAccount;
+import model.Money;
+import model.TransferLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import registry.AccountRegistry;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of random transfers through the single-threaded transfer engine and through the
+ * sharded engine with a growing number of shards. Each invocation submits a batch and waits for
+ * all of it, so the score counts completed transfers. The operations are not logged, so the
+ * score measures the engines rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedTransferBenchmark {
+
+    private final static int ACCOUNTS = 100_000;
+    private final static int BATCH = 65_536; // Transfers submitted per invocation
+    private final static Money INITIAL_BALANCE = Money.ofMinor(1L << 50, Currency.EUR);
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private final long[] fromIds = new long[BATCH];
+    private final long[] toIds = new long[BATCH];
+    private TransferEngine engine;
+    private ShardedTransferEngine shardedEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SavingsAccount.setDefaultTransferLimits(TransferLimits.NONE); // Otherwise the velocity limit rejects most transfers
+        AccountRegistry registry = new AccountRegistry();
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            // Savings accounts keep no history, so long runs do not grow the heap
+            registry.register(new SavingsAccount(i, "Owner " + i, INITIAL_BALANCE));
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < BATCH; i++) {
+            fromIds[i] = 1 + random.nextInt(ACCOUNTS);
+            toIds[i] = 1 + random.nextInt(ACCOUNTS);
+        }
+        engine = new TransferEngine(registry, BATCH, (sequence, fromId, toId, minorUnits, result) -> { });
+        shardedEngine = new ShardedTransferEngine(registry, shards, BATCH, (ticket, fromId, toId, minorUnits, result) -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        shardedEngine.close();
+        SavingsAccount.setDefaultTransferLimits(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void singleThreaded() {
+        long last = 0;
+        for (int i = 0; i < BATCH; i++) {
+            last = engine.submit(fromIds[i], toIds[i], 1);
+        }
+        engine.awaitProcessed(last);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sharded() {
+        for (int i = 0; i < BATCH; i++) {
+            shardedEngine.submit(fromIds[i], toIds[i], 1);
+        }
+        shardedEngine.awaitCompleted();
+    }
+
+}
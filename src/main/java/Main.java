@@ -1,10 +1,42 @@
+import engine.InterestAccrualJob;
+import engine.InterestAudit;
+import engine.TransferEngine;
+import enums.AccountType;
+import enums.Currency;
+import enums.OperationResult;
+import events.AsyncBatchingEventListener;
+import events.ConsoleEventListener;
+import fx.FileFxRateProvider;
+import interfaces.AccountEventListener;
+import metrics.AccountMetrics;
+import metrics.MetricsReporter;
 import model.Account;
 import model.BusinessAccount;
+import model.Money;
 import model.SavingsAccount;
-
-import java.util.ArrayList;
+import persistence.AccountStore;
+import persistence.StatementWriter;
+import registry.AccountRegistry;
+import registry.IdGenerator;
+import registry.TransferLimitsFile;
+import report.BalanceReport;
+import server.AccountServer;
+import server.Protocol;
+import session.Session;
+import session.SessionExecutor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.InputMismatchException;
-import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 /**
@@ -14,36 +46,249 @@ public class Main {
 
     private final static Scanner sc = new Scanner(System.in);
 
+    private final static String DATA_DIRECTORY = "data"; // Directory where the accounts are persisted
+
+    private final static String FX_RATES_FILE = "fx-rates.csv"; // File of the data directory holding the exchange rates
+
+    private final static String TRANSFER_LIMITS_FILE = "transfer-limits.csv"; // File of the data directory holding the transfer limits
+
+    private final static int TRANSFER_BATCH_SIZE = 4096; // Transfers submitted to the engine at once
+
+    private final static int NODE_ID = 0; // Node ID encoded in the generated account IDs
+
+    private final static int REPORT_TOP_ACCOUNTS = 10; // Accounts with the highest balances shown per currency in the report
+
+    private final static String METRICS_PROPERTY = "bank.metrics"; // System property enabling the metrics
+    private final static long METRICS_REPORT_MILLIS = 10_000; // Time between two metrics reports in server mode
+
+    private final static String EVENTS_PROPERTY = "bank.events"; // System property printing the account events in server mode
+    private final static int EVENT_BUFFER_SIZE = 1 << 16; // Events queued for printing before new ones are dropped
+
+    private final static String MAX_SESSIONS_PROPERTY = "bank.sessions.max"; // System property limiting the sessions run at once
+    private final static int DEFAULT_MAX_SESSIONS = 1024;
+
     /**
      * The main method for starting and executing operations in the system
-     * @param args
+     * @param args Empty for the interactive menu, {@code --server [port]} for the headless server, or
+     * {@code --sessions script...} to run scripted sessions concurrently (- reads a script from the standard input)
      */
     public static void main(String[] args) {
-        // Lists for storing new accounts
-        ArrayList<SavingsAccount> savingsAccounts = new ArrayList<>();
-        ArrayList<BusinessAccount> businessAccounts = new ArrayList<>();
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : Protocol.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--sessions")) {
+            runSessions(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 
-        // Flag variable for controlling the loop iterations
-        boolean systemActive = true;
+        // Store that recovers the saved accounts and persists every change
+        try (AccountStore store = AccountStore.open(Path.of(DATA_DIRECTORY))) {
+            AccountRegistry registry = store.getRegistry();
+            IdGenerator idGenerator = new IdGenerator(NODE_ID, registry.getMaxId()); // Continues after the recovered IDs
+            Account.setEventListener(new ConsoleEventListener()); // Prints the result of every operation
+            installMetrics(); // Only exposed through JMX, so the menu output is not interrupted
+            FileFxRateProvider fxRates = installFxRates(); // Converts transfers between currencies
+            installTransferLimits(registry); // Replaces the built-in transfer limits
+            BalanceReport report = installReport(registry); // Keeps the account report up to date
+
+            // Flag variable for controlling the loop iterations
+            boolean systemActive = true;
+
+            // Menu loop
+            do {
+                printMenu(); // Prints the menu
+                int option = inputInt("Enter your option: ");
+
+                switch (option) {
+                    case 1 -> createSavingsAccount(registry, idGenerator);
+                    case 2 -> createBusinessAccount(registry, idGenerator);
+                    case 3 -> listAccounts(registry);
+                    case 4 -> makeDeposit(registry);
+                    case 5 -> makeWithdrawal(registry);
+                    case 6 -> makeTransfer(registry);
+                    case 7 -> applyInterest(registry);
+                    case 8 -> queryBusinessAccountTransferHistory(registry);
+                    case 9 -> processTransferBatch(registry);
+                    case 10 -> applyInterestToAllSavingsAccounts(registry);
+                    case 11 -> fxRates = reloadFxRates(fxRates);
+                    case 12 -> exportStatement(registry);
+                    case 13 -> printReport(report);
+                    case 14 -> listAccountsBelow(report);
+                    case 15 -> systemActive = false;
+                    default -> System.out.println("Invalid option. Please try again with a number from 1 to 15.");
+                }
+            } while (systemActive);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("The account data could not be read or saved: " + e.getMessage());
+        }
+    }
 
-        // Menu loop
-        do {
-            printMenu(); // Prints the menu
-            int option = inputInt("Enter your option: ");
-
-            switch (option) {
-                case 1 -> createSavingsAccount(savingsAccounts);
-                case 2 -> createBusinessAccount(businessAccounts);
-                case 3 -> listAccounts(savingsAccounts, businessAccounts);
-                case 4 -> makeDeposit(savingsAccounts, businessAccounts);
-                case 5 -> makeWithdrawal(savingsAccounts, businessAccounts);
-                case 6 -> makeTransfer(savingsAccounts, businessAccounts);
-                case 7 -> applyInterest(savingsAccounts);
-                case 8 -> queryBusinessAccountTransferHistory(businessAccounts);
-                case 9 -> systemActive = false;
-                default -> System.out.println("Invalid option. Please try again with a number from 1 to 9.");
+    /**
+     * Runs the headless account server until the process is stopped
+     * @param port The port to listen on
+     */
+    private static void runServer(int port) {
+        try (AccountStore store = AccountStore.open(Path.of(DATA_DIRECTORY))) {
+            AccountRegistry registry = store.getRegistry();
+            IdGenerator idGenerator = new IdGenerator(NODE_ID, registry.getMaxId());
+            installFxRates();
+            installTransferLimits(registry);
+            AccountServer server = new AccountServer(registry, idGenerator::nextId, new InetSocketAddress(port));
+            // Stopping the process stops the server, which closes its channels as run returns, and waits for the store to be closed
+            Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            System.out.println("Listening on port " + server.getPort());
+            AccountMetrics metrics = installMetrics();
+            MetricsReporter reporter = metrics == null ? null : new MetricsReporter(metrics, System.out, METRICS_REPORT_MILLIS);
+            AsyncBatchingEventListener events = installServerEvents();
+            try {
+                server.run();
+            } finally {
+                if (reporter != null) reporter.close();
+                if (events != null) closeServerEvents(events);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("The account data could not be read or saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one session per script file or pipe, each on its own thread, and waits for all of them
+     * @param scripts The paths of the scripts, or - for the standard input
+     */
+    private static void runSessions(String[] scripts) {
+        try (AccountStore store = AccountStore.open(Path.of(DATA_DIRECTORY))) {
+            AccountRegistry registry = store.getRegistry();
+            IdGenerator idGenerator = new IdGenerator(NODE_ID, registry.getMaxId());
+            installFxRates();
+            installTransferLimits(registry);
+            installMetrics();
+            try (SessionExecutor executor = new SessionExecutor(Integer.getInteger(MAX_SESSIONS_PROPERTY, DEFAULT_MAX_SESSIONS))) {
+                for (int i = 0; i < scripts.length; i++) {
+                    BufferedReader reader = scripts[i].equals("-")
+                            ? new BufferedReader(new InputStreamReader(System.in)) : Files.newBufferedReader(Path.of(scripts[i]));
+                    executor.submit(new Session(i + 1, reader, registry, idGenerator::nextId, System.out));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        } while (systemActive);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("The account data could not be read or saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the account report, installs it as the balance observer and fills it with the registered accounts
+     * @param registry The account registry
+     * @return The report
+     */
+    private static BalanceReport installReport(AccountRegistry registry) {
+        BalanceReport report = new BalanceReport();
+        Account.setBalanceObserver(report);
+        report.addAll(registry);
+        return report;
+    }
+
+    /**
+     * Installs the account metrics and registers their MBeans if the bank.metrics system property is true
+     * @return The installed metrics, or null if they are disabled
+     */
+    private static AccountMetrics installMetrics() {
+        if (!Boolean.getBoolean(METRICS_PROPERTY)) {
+            return null;
+        }
+        AccountMetrics metrics = new AccountMetrics();
+        metrics.registerMBeans();
+        Account.setMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Prints the account events on a background thread if the bank.events system property is true,
+     * so the server threads never wait for the console
+     * @return The installed listener, or null if the events are not printed
+     */
+    private static AsyncBatchingEventListener installServerEvents() {
+        if (!Boolean.getBoolean(EVENTS_PROPERTY)) {
+            return null;
+        }
+        AsyncBatchingEventListener events = new AsyncBatchingEventListener(System.out, EVENT_BUFFER_SIZE);
+        Account.setEventListener(events);
+        return events;
+    }
+
+    /**
+     * Uninstalls the server event listener, prints the events it still holds and the number it dropped
+     * @param events The listener installed by {@link #installServerEvents()}
+     */
+    private static void closeServerEvents(AsyncBatchingEventListener events) {
+        Account.setEventListener(null);
+        events.close();
+        if (events.getDroppedCount() > 0) {
+            System.out.println(events.getDroppedCount() + " account events were not printed because the output was too slow.");
+        }
+    }
+
+    /**
+     * Loads the exchange rates of the data directory, if the file exists, and uses them for transfers
+     * @return The installed rates, or null if there is no valid rates file
+     */
+    private static FileFxRateProvider installFxRates() {
+        Path file = Path.of(DATA_DIRECTORY, FX_RATES_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            FileFxRateProvider rates = new FileFxRateProvider(file);
+            Account.setFxRateProvider(rates);
+            return rates;
+        } catch (IOException e) {
+            System.out.println("The exchange rates could not be loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Applies the limits of the transfer limits file of the data directory, if there is one
+     * @param registry The registry holding the accounts
+     */
+    private static void installTransferLimits(AccountRegistry registry) {
+        Path file = Path.of(DATA_DIRECTORY, TRANSFER_LIMITS_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            TransferLimitsFile.load(file, registry);
+        } catch (IOException e) {
+            System.out.println("The transfer limits could not be loaded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the exchange rates file again, swapping every rate at once
+     * @param rates The installed rates, or null if none were loaded yet
+     * @return The installed rates, or null if there is no valid rates file
+     */
+    private static FileFxRateProvider reloadFxRates(FileFxRateProvider rates) {
+        if (rates == null) {
+            rates = installFxRates();
+        } else {
+            try {
+                rates.reload();
+            } catch (IOException e) {
+                System.out.println("The exchange rates could not be loaded: " + e.getMessage());
+            }
+        }
+        System.out.println(rates == null ? "No exchange rates are available." : "Exchange rates loaded from " + rates.getFile() + ".");
+        return rates;
     }
 
     /**
@@ -60,64 +305,88 @@ public class Main {
         System.out.println("6. Make a transfer");
         System.out.println("7. Apply interest to savings account");
         System.out.println("8. Query business account transfer history");
-        System.out.println("9. Exit");
+        System.out.println("9. Process a transfer batch file");
+        System.out.println("10. Apply interest to all savings accounts");
+        System.out.println("11. Reload exchange rates");
+        System.out.println("12. Export business account statement");
+        System.out.println("13. Display account report");
+        System.out.println("14. List accounts below a balance");
+        System.out.println("15. Exit");
     }
 
     /**
      * Creates a new savings account
-     * @param savingsAccounts The savings accounts
+     * @param registry The account registry
+     * @param idGenerator The generator of the account ID
      */
-    private static void createSavingsAccount(List<SavingsAccount> savingsAccounts) {
+    private static void createSavingsAccount(AccountRegistry registry, IdGenerator idGenerator) {
         // Asks for user input
         String name = inputString("Enter the owner name: ");
-        double balance = inputDouble("Enter the balance: ");
+        Currency currency = inputCurrency("Enter the currency " + Arrays.toString(Currency.values()) + ": ");
+        Money balance = inputMoney("Enter the balance: ", currency);
 
-        // Creates the account and saves it in the collection
-        SavingsAccount account = new SavingsAccount(generateRandomId(), name, balance);
-        savingsAccounts.add(account);
+        // Creates the account and saves it in the registry
+        SavingsAccount account = new SavingsAccount(idGenerator.nextId(), name, balance);
+        registry.register(account);
 
         account.printDetails(); // Prints the account details
     }
 
     /**
      * Creates a new business account
-     * @param businessAccounts The business account list
+     * @param registry The account registry
+     * @param idGenerator The generator of the account ID
      */
-    private static void createBusinessAccount(List<BusinessAccount> businessAccounts) {
+    private static void createBusinessAccount(AccountRegistry registry, IdGenerator idGenerator) {
         // Asks for user input
         String name = inputString("Enter the owner name: ");
-        double balance = inputDouble("Enter the balance: ");
+        Currency currency = inputCurrency("Enter the currency " + Arrays.toString(Currency.values()) + ": ");
+        Money balance = inputMoney("Enter the balance: ", currency);
 
-        // Creates the account and saves it in the collection
-        BusinessAccount account = new BusinessAccount(generateRandomId(), name, balance);
-        businessAccounts.add(account);
+        // Creates the account and saves it in the registry
+        BusinessAccount account = new BusinessAccount(idGenerator.nextId(), name, balance);
+        registry.register(account);
 
         account.printDetails(); // Prints the account details
     }
 
     /**
      * Lists all the accounts in the system
-     * @param savingsAccounts The saving accounts
-     * @param businessAccounts The business accounts
+     * @param registry The account registry
+     */
+    private static void listAccounts(AccountRegistry registry) {
+        listSavingsAccounts(registry);
+        listBusinessAccounts(registry);
+    }
+
+    /**
+     * Lists the savings accounts in the system
+     * @param registry The account registry
+     */
+    private static void listSavingsAccounts(AccountRegistry registry) {
+        for (SavingsAccount account : registry.getSavingsAccounts()) {
+            account.printDetails();
+        }
+    }
+
+    /**
+     * Lists the business accounts in the system
+     * @param registry The account registry
      */
-    private static void listAccounts(List<SavingsAccount> savingsAccounts, List<BusinessAccount> businessAccounts) {
-        for (SavingsAccount account : savingsAccounts) {
+    private static void listBusinessAccounts(AccountRegistry registry) {
+        for (BusinessAccount account : registry.getBusinessAccounts()) {
             account.printDetails();
         }
-       for (BusinessAccount account : businessAccounts) {
-           account.printDetails();
-       }
     }
 
     /**
      * Makes a deposit into a specified account
-     * @param savingsAccounts The saving accounts
-     * @param businessAccounts The business accounts
+     * @param registry The account registry
      */
-    private static void makeDeposit(List<SavingsAccount> savingsAccounts, List<BusinessAccount> businessAccounts) {
-        Account account = selectAccountForOperation(savingsAccounts, businessAccounts);
+    private static void makeDeposit(AccountRegistry registry) {
+        Account account = selectAccountForOperation(registry);
         if (account != null) {
-            double amount = inputDouble("Enter the deposit amount: ");
+            Money amount = inputMoney("Enter the deposit amount: ", account.getCurrency());
             account.deposit(amount);
         } else {
             System.out.println("No account with the specified ID exists.");
@@ -126,13 +395,12 @@ public class Main {
 
     /**
      * Performs a withdrawal from a specified account
-     * @param savingsAccounts The saving accounts
-     * @param businessAccounts The business accounts
+     * @param registry The account registry
      */
-    private static void makeWithdrawal(List<SavingsAccount> savingsAccounts, List<BusinessAccount> businessAccounts) {
-        Account account = selectAccountForOperation(savingsAccounts, businessAccounts);
+    private static void makeWithdrawal(AccountRegistry registry) {
+        Account account = selectAccountForOperation(registry);
         if (account != null) {
-            double amount = inputDouble("Enter the withdrawal amount: ");
+            Money amount = inputMoney("Enter the withdrawal amount: ", account.getCurrency());
             account.withdraw(amount);
         } else {
             System.out.println("No account with the specified ID exists.");
@@ -141,15 +409,14 @@ public class Main {
 
     /**
      * Performs a transfer from one account to another
-     * @param savingsAccounts The saving accounts
-     * @param businessAccounts The business accounts
+     * @param registry The account registry
      */
-    private static void makeTransfer(List<SavingsAccount> savingsAccounts, List<BusinessAccount> businessAccounts) {
-        Account fromAccount = selectAccountForOperation(savingsAccounts, businessAccounts);
+    private static void makeTransfer(AccountRegistry registry) {
+        Account fromAccount = selectAccountForOperation(registry);
         if (fromAccount != null) {
-            Account toAccount = selectAccountForOperation(savingsAccounts, businessAccounts);
+            Account toAccount = selectAccountForOperation(registry);
             if (toAccount != null) {
-                double amount = inputDouble("Enter the transfer amount: ");
+                Money amount = inputMoney("Enter the transfer amount: ", fromAccount.getCurrency());
                 fromAccount.transfer(amount, toAccount);
             } else {
                 System.out.println("No account with the specified ID exists.");
@@ -161,74 +428,199 @@ public class Main {
 
     /**
      * Applies interest to a specified savings account
-     * @param savingsAccounts The savings accounts
+     * @param registry The account registry
      */
-    private static void applyInterest(List<SavingsAccount> savingsAccounts) {
-        SavingsAccount account = selectSavingsAccountForOperation(savingsAccounts);
+    private static void applyInterest(AccountRegistry registry) {
+        listSavingsAccounts(registry);
+        SavingsAccount account = registry.findSavingsAccount(inputLong("Enter the account ID: "));
         if (account != null) account.applyInterest(); else System.out.println("No account with the specified ID exists.");
     }
 
+    /**
+     * Applies interest to every savings account at once and writes the audit of the run to a CSV file
+     * @param registry The account registry
+     */
+    private static void applyInterestToAllSavingsAccounts(AccountRegistry registry) {
+        Path file = Path.of(inputString("Enter the audit file path: "));
+
+        // The run prints a summary instead of a message per account
+        AccountEventListener listener = Account.getEventListener();
+        Account.setEventListener(null);
+        InterestAudit audit;
+        try {
+            audit = new InterestAccrualJob(registry).run();
+        } finally {
+            Account.setEventListener(listener);
+        }
+
+        StringBuilder totals = new StringBuilder();
+        for (Currency currency : Currency.values()) {
+            long total = audit.getTotalInterest(currency);
+            if (total != 0) {
+                totals.append(totals.length() == 0 ? "" : ", ").append(Money.format(total, currency));
+            }
+        }
+        System.out.println("Interest applied to " + audit.count(OperationResult.COMPLETED) + " savings accounts. Total interest: "
+                + (totals.length() == 0 ? "0" : totals));
+        if (audit.count(OperationResult.BALANCE_OVERFLOW) > 0) {
+            System.out.println(OperationResult.BALANCE_OVERFLOW + ": " + audit.count(OperationResult.BALANCE_OVERFLOW));
+        }
+        try {
+            audit.writeCsv(file);
+        } catch (IOException e) {
+            System.out.println("The audit file could not be written: " + e.getMessage());
+        }
+    }
+
     /**
      * Queries the transfer history of a business account
-     * @param businessAccounts The business accounts
+     * @param registry The account registry
      */
-    private static void queryBusinessAccountTransferHistory(List<BusinessAccount> businessAccounts) {
-        BusinessAccount account = selectBusinessAccountForOperation(businessAccounts);
+    private static void queryBusinessAccountTransferHistory(AccountRegistry registry) {
+        listBusinessAccounts(registry);
+        BusinessAccount account = registry.findBusinessAccount(inputLong("Enter the account ID: "));
         if (account != null) account.printTransferHistory(); else System.out.println("No account with the specified ID exists.");
     }
 
     /**
-     * Selects an account for an operation
-     * @param savingsAccounts The savings accounts
-     * @param businessAccounts The business accounts
-     * @return The selected account
+     * Exports the transfers of a business account made between two dates as a statement file,
+     * written as CSV if the file name ends with .csv and as binary otherwise
+     * @param registry The account registry
      */
-    private static Account selectAccountForOperation(List<SavingsAccount> savingsAccounts, List<BusinessAccount> businessAccounts) {
-        listAccounts(savingsAccounts, businessAccounts);
-        int accountId = inputInt("Enter the account ID: ");
-        for (SavingsAccount account : savingsAccounts) {
-            if (account.getId() == accountId) {
-                return account;
-            }
+    private static void exportStatement(AccountRegistry registry) {
+        listBusinessAccounts(registry);
+        BusinessAccount account = registry.findBusinessAccount(inputLong("Enter the account ID: "));
+        if (account == null) {
+            System.out.println("No account with the specified ID exists.");
+            return;
         }
-        for (BusinessAccount account : businessAccounts) {
-            if (account.getId() == accountId) {
-                return account;
-            }
+        LocalDate firstDay = inputDate("Enter the first day (yyyy-mm-dd, empty for the oldest transfer): ");
+        LocalDate lastDay = inputDate("Enter the last day (yyyy-mm-dd, empty for the newest transfer): ");
+        long fromEpochNanos = firstDay == null ? Long.MIN_VALUE : toEpochNanos(firstDay);
+        long toEpochNanos = lastDay == null ? Long.MAX_VALUE : toEpochNanos(lastDay.plusDays(1));
+        Path file = Path.of(inputString("Enter the statement file path: "));
+        try {
+            int count = file.toString().endsWith(".csv")
+                    ? StatementWriter.writeCsv(account, fromEpochNanos, toEpochNanos, file)
+                    : StatementWriter.writeBinary(account, fromEpochNanos, toEpochNanos, file);
+            System.out.println(count + " transfers written to " + file + ".");
+        } catch (IOException e) {
+            System.out.println("The statement could not be written: " + e.getMessage());
         }
-        return null;
     }
 
     /**
-     * Selects a savings account for an operation
-     * @param savingsAccounts The savings accounts
-     * @return The selected account
+     * Prints the number of accounts and total balance per account type and currency, and the
+     * accounts with the highest balances of each currency
+     * @param report The account report
      */
-    private static SavingsAccount selectSavingsAccountForOperation(List<SavingsAccount> savingsAccounts) {
-        listAccounts(savingsAccounts, new ArrayList<>());
-        int accountId = inputInt("Enter the account ID: ");
-        for (SavingsAccount account : savingsAccounts) {
-            if (account.getId() == accountId) {
-                return account;
+    private static void printReport(BalanceReport report) {
+        for (Currency currency : Currency.values()) {
+            boolean empty = true;
+            for (AccountType type : AccountType.values()) {
+                long count = report.getCount(type, currency);
+                if (count > 0) {
+                    System.out.println(type + " " + currency + ": " + count + " accounts, total balance "
+                            + Money.format(report.getTotal(type, currency), currency));
+                    empty = false;
+                }
+            }
+            if (!empty) {
+                System.out.println("Highest " + currency + " balances:");
+                report.top(currency, REPORT_TOP_ACCOUNTS, (account, minorUnits) ->
+                        System.out.println("  Account ID: " + account.getId() + ", Owner: " + account.getOwnerName()
+                                + ", Balance: " + Money.format(minorUnits, currency)));
             }
         }
-        return null;
     }
 
     /**
-     * Selects a business account for an operation
-     * @param businessAccounts The business accounts
-     * @return The selected account
+     * Lists the accounts of a currency whose balance is below an amount, from the highest
+     * @param report The account report
      */
-    private static BusinessAccount selectBusinessAccountForOperation(List<BusinessAccount> businessAccounts) {
-        listAccounts(new ArrayList<>(), businessAccounts);
-        int accountId = inputInt("Enter the account ID: ");
-        for (BusinessAccount account : businessAccounts) {
-            if (account.getId() == accountId) {
-                return account;
+    private static void listAccountsBelow(BalanceReport report) {
+        Currency currency = inputCurrency("Enter the currency " + Arrays.toString(Currency.values()) + ": ");
+        Money threshold = inputMoney("Enter the balance: ", currency);
+        int count = report.below(currency, threshold.getMinorUnits(), Integer.MAX_VALUE, (account, minorUnits) ->
+                System.out.println("Account ID: " + account.getId() + ", Owner: " + account.getOwnerName()
+                        + ", Balance: " + Money.format(minorUnits, currency)));
+        System.out.println(count + " accounts below " + threshold + ".");
+    }
+
+    /**
+     * Gets the start of a day in UTC in nanoseconds since the epoch
+     * @param day The day
+     * @return The start of the day
+     */
+    private static long toEpochNanos(LocalDate day) {
+        return day.toEpochDay() * 86_400L * 1_000_000_000L;
+    }
+
+    /**
+     * Processes a file of transfers through the transfer engine. Each line holds the source
+     * account ID, the destination account ID and the amount in the source account currency,
+     * separated by commas.
+     * @param registry The account registry
+     */
+    private static void processTransferBatch(AccountRegistry registry) {
+        Path file = Path.of(inputString("Enter the batch file path: "));
+        long[] results = new long[OperationResult.values().length];
+        long[] fromIds = new long[TRANSFER_BATCH_SIZE];
+        long[] toIds = new long[TRANSFER_BATCH_SIZE];
+        long[] amounts = new long[TRANSFER_BATCH_SIZE];
+        long invalidLines = 0;
+
+        // The batch prints a summary instead of a message per transfer
+        AccountEventListener listener = Account.getEventListener();
+        Account.setEventListener(null);
+        try (TransferEngine engine = new TransferEngine(registry, TRANSFER_BATCH_SIZE * 4, (sequence, fromId, toId, minorUnits, result) -> results[result.ordinal()]++);
+             BufferedReader reader = Files.newBufferedReader(file)) {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] fields = line.split(",");
+                try {
+                    fromIds[count] = Long.parseLong(fields[0].trim());
+                    toIds[count] = Long.parseLong(fields[1].trim());
+                    Account from = registry.find(fromIds[count]);
+                    amounts[count] = Money.parse(fields[2], from == null ? Currency.EUR : from.getCurrency()).getMinorUnits();
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException | ArithmeticException e) {
+                    invalidLines++;
+                    continue;
+                }
+                if (++count == TRANSFER_BATCH_SIZE) {
+                    engine.submitBatch(fromIds, toIds, amounts, 0, count);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                engine.submitBatch(fromIds, toIds, amounts, 0, count);
+            }
+        } catch (IOException e) {
+            System.out.println("The batch file could not be read: " + e.getMessage());
+        } finally {
+            Account.setEventListener(listener);
+        }
+
+        for (OperationResult result : OperationResult.values()) {
+            if (results[result.ordinal()] > 0) {
+                System.out.println(result + ": " + results[result.ordinal()]);
             }
         }
-        return null;
+        if (invalidLines > 0) {
+            System.out.println("Invalid lines skipped: " + invalidLines);
+        }
+    }
+
+    /**
+     * Selects an account for an operation
+     * @param registry The account registry
+     * @return The selected account
+     */
+    private static Account selectAccountForOperation(AccountRegistry registry) {
+        listAccounts(registry);
+        return registry.find(inputLong("Enter the account ID: "));
     }
 
     /**
@@ -256,18 +648,18 @@ public class Main {
     }
 
     /**
-     * Asks the user for a double value
+     * Asks the user for a long value
      * @param message The message to be displayed to the user
      * @return The input value
      */
-    private static double inputDouble(String message) {
-        double input = 0;
+    private static long inputLong(String message) {
+        long input = 0;
 
         boolean correctInput = false;
         do {
             System.out.print(message);
             try {
-                input = sc.nextDouble();
+                input = sc.nextLong();
                 sc.nextLine();
                 correctInput = true;
             } catch (InputMismatchException e) {
@@ -279,6 +671,79 @@ public class Main {
         return input;
     }
 
+    /**
+     * Asks the user for a currency code
+     * @param message The message to be displayed to the user
+     * @return The input value
+     */
+    private static Currency inputCurrency(String message) {
+        Currency input = null;
+
+        boolean correctInput = false;
+        do {
+            System.out.print(message);
+            try {
+                input = Currency.valueOf(sc.nextLine().trim().toUpperCase(Locale.ROOT));
+                correctInput = true;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Currency is invalid. Please try again.");
+            }
+        } while (!correctInput);
+
+        return input;
+    }
+
+    /**
+     * Asks the user for a date
+     * @param message The message to be displayed to the user
+     * @return The input value, or null if the input is empty
+     */
+    private static LocalDate inputDate(String message) {
+        LocalDate input = null;
+
+        boolean correctInput = false;
+        do {
+            System.out.print(message);
+            String line = sc.nextLine().trim();
+            try {
+                input = line.isEmpty() ? null : LocalDate.parse(line);
+                correctInput = true;
+            } catch (DateTimeParseException e) {
+                System.out.println("Date is invalid. Please try again.");
+            }
+        } while (!correctInput);
+
+        return input;
+    }
+
+    /**
+     * Asks the user for an amount of money
+     * @param message The message to be displayed to the user
+     * @param currency The currency of the amount
+     * @return The input value
+     */
+    private static Money inputMoney(String message, Currency currency) {
+        Money input = null;
+
+        boolean correctInput = false;
+        do {
+            System.out.print(message);
+            try {
+                input = Money.of(sc.nextBigDecimal(), currency);
+                sc.nextLine();
+                correctInput = true;
+            } catch (InputMismatchException e) {
+                System.out.println("Option is invalid. Please try again.");
+                sc.next(); // Clear the invalid input
+            } catch (ArithmeticException e) {
+                System.out.println("Amounts in " + currency + " can have at most " + currency.getMinorDigits() + " decimals. Please try again.");
+                sc.nextLine(); // Clear the rest of the line
+            }
+        } while (!correctInput);
+
+        return input;
+    }
+
     /**
      * Asks the user for a string value
      * @param message The message to be displayed to the user
@@ -302,12 +767,4 @@ public class Main {
         return input;
     }
 
-    /**
-     * Generates a random number between 1 and 10.000
-     * @return The generated number
-     */
-    private static long generateRandomId() {
-        return (long) (Math.random() * 10000) + 1;
-    }
-
 }
@@ -0,0 +1,214 @@
+package engine;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountEventListener;
+import interfaces.BalanceObserver;
+import interfaces.InterestKernel;
+import interfaces.OperationLog;
+import interfaces.OperationMetrics;
+import model.Account;
+import model.SavingsAccount;
+import model.TransactionJournal;
+import registry.AccountRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies interest to every savings account in one pass. Parallel tasks copy the balances and
+ * rates of ranges of accounts into primitive arrays and compute their interest without locking.
+ * The interest is then logged and applied one lock stripe at a time: under the lock of the stripe,
+ * an account whose balance or rate changed since it was copied has its interest computed again,
+ * so the result matches calling {@link SavingsAccount#applyInterest()} on each account. Other
+ * operations only wait for the stripe being applied, and the job waits only once for the log to
+ * be durable.
+ */
+public class InterestAccrualJob {
+
+    private final static int SPLIT_THRESHOLD = 1 << 14; // Accounts computed by one task without splitting
+
+    private final AccountRegistry registry; // Accounts receiving the interest
+    private final ForkJoinPool pool; // Pool running the computation
+    private final InterestKernel kernel; // Computes the interest of a range of accounts
+
+    /**
+     * Creates a job running on the common pool with the fastest available kernel
+     * @param registry The accounts receiving the interest
+     */
+    public InterestAccrualJob(AccountRegistry registry) {
+        this(registry, ForkJoinPool.commonPool(), defaultKernel());
+    }
+
+    public InterestAccrualJob(AccountRegistry registry, ForkJoinPool pool, InterestKernel kernel) {
+        this.registry = registry;
+        this.pool = pool;
+        this.kernel = kernel;
+    }
+
+    public InterestKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Gets the vector kernel if it was compiled and the JVM can load the Vector API, or the
+     * scalar kernel otherwise
+     * @return The kernel
+     */
+    public static InterestKernel defaultKernel() {
+        try {
+            return (InterestKernel) Class.forName("engine.VectorInterestKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarInterestKernel();
+        }
+    }
+
+    /**
+     * Applies interest to every savings account. Accounts whose balance would overflow are left
+     * unchanged and reported as rejected.
+     * @return The audit of the run, with one entry per savings account
+     */
+    public InterestAudit run() {
+        SavingsAccount[] accounts = registry.getSavingsAccounts().toArray(new SavingsAccount[0]);
+        InterestAudit audit = new InterestAudit(TransactionJournal.currentEpochNanos(), accounts.length);
+        pool.invoke(new AccrualTask(kernel, accounts, audit, 0, accounts.length));
+
+        // Sorts the accounts by lock stripe, keeping the registry order within a stripe
+        int[] stripeStarts = new int[Account.getLockStripes() + 1];
+        for (SavingsAccount account : accounts) {
+            stripeStarts[Account.getLockStripe(account.getId()) + 1]++;
+        }
+        for (int stripe = 0; stripe < Account.getLockStripes(); stripe++) {
+            stripeStarts[stripe + 1] += stripeStarts[stripe];
+        }
+        int[] order = new int[accounts.length];
+        int[] next = Arrays.copyOf(stripeStarts, stripeStarts.length - 1);
+        for (int i = 0; i < accounts.length; i++) {
+            order[next[Account.getLockStripe(accounts[i].getId())]++] = i;
+        }
+
+        OperationLog log = Account.getOperationLog();
+        long sequence = 0;
+        for (int stripe = 0; stripe < Account.getLockStripes(); stripe++) {
+            if (stripeStarts[stripe] == stripeStarts[stripe + 1]) {
+                continue;
+            }
+            ReentrantLock lock = accounts[order[stripeStarts[stripe]]].getLock();
+            lock.lock();
+            try {
+                log = Account.getOperationLog();
+                for (int k = stripeStarts[stripe]; k < stripeStarts[stripe + 1]; k++) {
+                    int i = order[k];
+                    SavingsAccount account = accounts[i];
+                    long balance = account.getBalanceMinorUnitsUnlocked();
+                    double rate = account.getInterestRate();
+                    if (balance != audit.balancesBefore[i] || Double.doubleToRawLongBits(rate) != Double.doubleToRawLongBits(audit.rates[i])) {
+                        audit.balancesBefore[i] = balance;
+                        audit.rates[i] = rate;
+                        audit.interest[i] = SavingsAccount.calculateInterest(balance, rate);
+                        settle(audit, i);
+                    }
+                    // The record is logged before the balance changes, as in the single account operations
+                    if (audit.results[i] == OperationResult.COMPLETED.ordinal()) {
+                        sequence = log.logInterest(audit.accountIds[i], audit.interest[i], audit.balancesAfter[i]);
+                        account.restoreBalance(audit.balancesAfter[i]);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.awaitDurable(sequence);
+
+        OperationMetrics metrics = Account.getMetrics();
+        if (metrics != OperationMetrics.NONE) {
+            for (int i = 0; i < accounts.length; i++) {
+                metrics.record(TransactionType.INTEREST, OperationResult.fromOrdinal(audit.results[i]), 0);
+            }
+        }
+
+        BalanceObserver observer = Account.getBalanceObserver();
+        if (observer != BalanceObserver.NONE) {
+            for (int i = 0; i < accounts.length; i++) {
+                if (audit.results[i] == OperationResult.COMPLETED.ordinal()) {
+                    observer.onBalanceChanged(accounts[i]);
+                }
+            }
+        }
+
+        AccountEventListener listener = Account.getEventListener();
+        if (listener != AccountEventListener.NONE) {
+            for (int i = 0; i < accounts.length; i++) {
+                if (audit.results[i] == OperationResult.COMPLETED.ordinal()) {
+                    listener.onInterest(accounts[i], audit.interest[i], audit.balancesAfter[i]);
+                } else {
+                    listener.onRejected(accounts[i], TransactionType.INTEREST, OperationResult.BALANCE_OVERFLOW, audit.interest[i]);
+                }
+            }
+        }
+        return audit;
+    }
+
+    /**
+     * Computes the new balance of an account from its balance before and its interest, leaving
+     * the balance unchanged if it would overflow
+     */
+    private static void settle(InterestAudit audit, int i) {
+        long newBalance = audit.balancesBefore[i] + audit.interest[i];
+        boolean overflow = newBalance < 0;
+        audit.balancesAfter[i] = overflow ? audit.balancesBefore[i] : newBalance;
+        audit.results[i] = (byte) (overflow ? OperationResult.BALANCE_OVERFLOW : OperationResult.COMPLETED).ordinal();
+    }
+
+    /**
+     * Splits a range of accounts in halves until it is small enough to be processed directly, then
+     * copies the balances and rates of the range without locking and computes the new balances
+     */
+    private static final class AccrualTask extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final InterestKernel kernel;
+        private final SavingsAccount[] accounts;
+        private final InterestAudit audit;
+        private final int from;
+        private final int to;
+
+        private AccrualTask(InterestKernel kernel, SavingsAccount[] accounts, InterestAudit audit, int from, int to) {
+            this.kernel = kernel;
+            this.accounts = accounts;
+            this.audit = audit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AccrualTask(kernel, accounts, audit, from, middle),
+                        new AccrualTask(kernel, accounts, audit, middle, to));
+            } else {
+                accrue();
+            }
+        }
+
+        private void accrue() {
+            // The balances may change meanwhile: they are checked again under the lock before being applied
+            for (int i = from; i < to; i++) {
+                audit.accountIds[i] = accounts[i].getId();
+                audit.currencies[i] = (byte) accounts[i].getCurrency().ordinal();
+                audit.balancesBefore[i] = accounts[i].getBalanceMinorUnitsUnlocked();
+                audit.rates[i] = accounts[i].getInterestRate();
+            }
+            kernel.accrue(audit.balancesBefore, audit.rates, audit.interest, from, to);
+            for (int i = from; i < to; i++) {
+                settle(audit, i);
+            }
+        }
+
+    }
+
+}
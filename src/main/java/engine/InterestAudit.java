@@ -0,0 +1,146 @@
+package engine;
+
+import enums.Currency;
+import enums.OperationResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Per-account record of an interest accrual run, stored as parallel primitive arrays. Entry i
+ * describes the i-th savings account of the registry at the time of the run.
+ */
+public class InterestAudit {
+
+    private final long epochNanos; // Time of the run in nanoseconds since the epoch
+    final long[] accountIds;
+    final byte[] currencies;
+    final long[] balancesBefore;
+    final double[] rates;
+    final long[] interest;
+    final long[] balancesAfter;
+    final byte[] results;
+
+    InterestAudit(long epochNanos, int size) {
+        this.epochNanos = epochNanos;
+        this.accountIds = new long[size];
+        this.currencies = new byte[size];
+        this.balancesBefore = new long[size];
+        this.rates = new double[size];
+        this.interest = new long[size];
+        this.balancesAfter = new long[size];
+        this.results = new byte[size];
+    }
+
+    /**
+     * Receives the entries of an audit without creating an object per entry
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long accountId, Currency currency, long balanceBefore, double rate, long interest, long balanceAfter, OperationResult result);
+    }
+
+    public long getEpochNanos() {
+        return epochNanos;
+    }
+
+    public int size() {
+        return accountIds.length;
+    }
+
+    public long getAccountId(int index) {
+        return accountIds[index];
+    }
+
+    public Currency getCurrency(int index) {
+        return Currency.fromOrdinal(currencies[index]);
+    }
+
+    public long getBalanceBefore(int index) {
+        return balancesBefore[index];
+    }
+
+    public double getRate(int index) {
+        return rates[index];
+    }
+
+    public long getInterest(int index) {
+        return interest[index];
+    }
+
+    public long getBalanceAfter(int index) {
+        return balancesAfter[index];
+    }
+
+    public OperationResult getResult(int index) {
+        return OperationResult.fromOrdinal(results[index]);
+    }
+
+    /**
+     * Sums the interest applied to the accounts of a currency
+     * @param currency The currency of the accounts
+     * @return The total interest in minor units of the currency
+     */
+    public long getTotalInterest(Currency currency) {
+        long total = 0;
+        for (int i = 0; i < accountIds.length; i++) {
+            if (results[i] == OperationResult.COMPLETED.ordinal() && currencies[i] == currency.ordinal()) {
+                total += interest[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Counts the entries with a result
+     * @param result The result to be counted
+     * @return The number of entries
+     */
+    public int count(OperationResult result) {
+        int count = 0;
+        for (byte entry : results) {
+            if (entry == result.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calls a visitor for every entry, in registry order
+     * @param visitor The visitor receiving the entries
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < accountIds.length; i++) {
+            visitor.visit(accountIds[i], Currency.fromOrdinal(currencies[i]), balancesBefore[i], rates[i], interest[i], balancesAfter[i], OperationResult.fromOrdinal(results[i]));
+        }
+    }
+
+    /**
+     * Writes the audit as a CSV file with a header line. Amounts are written in major units.
+     * @param file The file to be written
+     * @throws IOException Exception thrown if the file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException {
+        String time = Instant.ofEpochSecond(0, epochNanos).toString();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("time,accountId,currency,balanceBefore,rate,interest,balanceAfter,result");
+            out.newLine();
+            for (int i = 0; i < accountIds.length; i++) {
+                Currency currency = Currency.fromOrdinal(currencies[i]);
+                out.write(time + ',' + accountIds[i] + ',' + currency + ',' + toMajorUnits(balancesBefore[i], currency) + ',' + rates[i] + ','
+                        + toMajorUnits(interest[i], currency) + ',' + toMajorUnits(balancesAfter[i], currency) + ',' + OperationResult.fromOrdinal(results[i]));
+                out.newLine();
+            }
+        }
+    }
+
+    private static String toMajorUnits(long minorUnits, Currency currency) {
+        return BigDecimal.valueOf(minorUnits, currency.getMinorDigits()).toPlainString();
+    }
+
+}
@@ -0,0 +1,18 @@
+package engine;
+
+import interfaces.InterestKernel;
+import model.SavingsAccount;
+
+/**
+ * Computes the interest one account at a time, with the same formula as {@link SavingsAccount#applyInterest()}
+ */
+public class ScalarInterestKernel implements InterestKernel {
+
+    @Override
+    public void accrue(long[] balances, double[] rates, long[] interest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            interest[i] = SavingsAccount.calculateInterest(balances[i], rates[i]);
+        }
+    }
+
+}
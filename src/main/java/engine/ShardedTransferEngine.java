@@ -0,0 +1,470 @@
+package engine;
+
+import enums.OperationResult;
+import interfaces.OperationLog;
+import model.Account;
+import model.TransactionJournal;
+import registry.AccountRegistry;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes transfer commands on several threads, each one owning a partition of the accounts.
+ * Accounts are assigned to shards by their lock stripe, so a shard thread only ever takes its own
+ * locks. A transfer is submitted to the shard of its source account: if the destination belongs
+ * to the same shard it is applied in place, otherwise the source shard debits the money and sends
+ * a credit message to the destination shard, which sends it back as a refund if the credit fails.
+ * Money in flight is recorded in the operation log, so totals stay consistent across a crash.
+ * <p>
+ * Every shard has a ring buffer of primitive arrays for submitted commands, like
+ * {@link TransferEngine}, and a single-producer mailbox per other shard for messages, so shards
+ * never contend on a shared queue. A shard never blocks on a full mailbox: the message waits in a
+ * local backlog instead, which avoids deadlocks between shards sending to each other. Results are
+ * reported once the changes of a batch are durable, on the thread of the shard completing the
+ * transfer, so the completion handler must be thread-safe. If a shard thread fails, every waiting
+ * or later call fails with its exception instead of waiting for transfers it will never complete.
+ */
+public class ShardedTransferEngine implements AutoCloseable {
+
+    private final static int SPINS_BEFORE_PARK = 100;
+    private final static long PARK_NANOS = 50_000;
+    private final static System.Logger LOGGER = System.getLogger(ShardedTransferEngine.class.getName());
+    private final static int MAILBOX_CAPACITY = 1 << 12; // Slots of each mailbox between two shards
+    private final static int BATCH_SIZE = 256; // Maximum number of commands or messages handled per source before a durability wait
+
+    // Kinds of the messages sent between shards
+    private final static byte CREDIT = 0;
+    private final static byte REFUND = 1;
+
+    private final AccountRegistry registry; // Accounts referenced by the commands
+    private final TransferEngine.CompletionHandler handler; // Receives the result of each transfer
+    private final Shard[] shards;
+    private final int shardMask;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts an engine
+     * @param registry The accounts referenced by the commands
+     * @param shards The minimum number of shards, rounded up to a power of two and at most the number of account lock stripes
+     * @param capacity The minimum number of slots in the ring buffer of each shard, rounded up to a power of two
+     * @param handler The handler receiving the result of each transfer, called from the shard threads
+     */
+    public ShardedTransferEngine(AccountRegistry registry, int shards, int capacity, TransferEngine.CompletionHandler handler) {
+        int count = Integer.highestOneBit(Math.max(shards, 1) * 2 - 1);
+        if (count > Account.getLockStripes()) {
+            throw new IllegalArgumentException("At most " + Account.getLockStripes() + " shards are supported.");
+        }
+        this.registry = registry;
+        this.handler = handler;
+        this.shardMask = count - 1;
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard(i, capacity);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the shard owning an account
+     * @param accountId The account ID
+     * @return The index of the shard
+     */
+    public int shardFor(long accountId) {
+        return Account.getLockStripe(accountId) & shardMask;
+    }
+
+    /**
+     * Submits a transfer to the shard of its source account, waiting for a free slot if its ring buffer is full
+     * @param fromId The ID of the account to be debited
+     * @param toId The ID of the account to be credited
+     * @param minorUnits The amount in minor units of the source account currency
+     * @return The ticket of the transfer, passed to the completion handler as its sequence number
+     */
+    public long submit(long fromId, long toId, long minorUnits) {
+        return shards[shardFor(fromId)].submit(fromId, toId, minorUnits);
+    }
+
+    /**
+     * Blocks until every transfer submitted before the call has been completed, including its credit
+     * @throws IllegalStateException Exception thrown if a shard thread failed or the engine is stopped
+     */
+    public void awaitCompleted() throws IllegalStateException {
+        long submitted = 0;
+        for (Shard shard : shards) {
+            submitted += shard.claimed.get() + 1;
+        }
+        int spins = 0;
+        while (true) {
+            long completed = 0;
+            for (Shard shard : shards) {
+                completed += shard.completed.get();
+            }
+            if (completed >= submitted) {
+                return;
+            }
+            if (!running) {
+                throw new IllegalStateException("The transfer engine is stopped.");
+            }
+            for (Shard shard : shards) {
+                shard.check();
+            }
+            spins = idle(spins);
+        }
+    }
+
+    /**
+     * Completes every submitted transfer and stops the shard threads
+     * @throws IllegalStateException Exception thrown if a shard thread failed
+     */
+    @Override
+    public void close() throws IllegalStateException {
+        try {
+            awaitCompleted();
+        } finally {
+            running = false;
+            for (Shard shard : shards) {
+                LockSupport.unpark(shard.thread);
+            }
+            for (Shard shard : shards) {
+                try {
+                    shard.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a shard thread stopped because of an exception
+     */
+    private boolean anyShardFailed() {
+        for (Shard shard : shards) {
+            if (shard.failure != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Single-producer ring buffer of messages from one shard to another
+     */
+    private static final class Mailbox {
+        private final byte[] kinds = new byte[MAILBOX_CAPACITY];
+        private final long[] tickets = new long[MAILBOX_CAPACITY];
+        private final long[] fromIds = new long[MAILBOX_CAPACITY];
+        private final long[] toIds = new long[MAILBOX_CAPACITY];
+        private final long[] amounts = new long[MAILBOX_CAPACITY];
+        private final long[] convertedAmounts = new long[MAILBOX_CAPACITY];
+        private final long[] fromBalances = new long[MAILBOX_CAPACITY];
+        private final long[] times = new long[MAILBOX_CAPACITY];
+        private final AtomicLong written = new AtomicLong(); // Messages written by the sending shard
+        private final AtomicLong read = new AtomicLong(); // Messages consumed by the receiving shard
+
+        /**
+         * Writes a message if there is a free slot
+         * @return Whether the message was written
+         */
+        private boolean offer(byte kind, long ticket, long fromId, long toId, long minorUnits, long convertedUnits,
+                              long fromBalanceAfter, long epochNanos) {
+            long position = written.get();
+            if (position - read.get() >= MAILBOX_CAPACITY) {
+                return false;
+            }
+            int index = (int) position & (MAILBOX_CAPACITY - 1);
+            kinds[index] = kind;
+            tickets[index] = ticket;
+            fromIds[index] = fromId;
+            toIds[index] = toId;
+            amounts[index] = minorUnits;
+            convertedAmounts[index] = convertedUnits;
+            fromBalances[index] = fromBalanceAfter;
+            times[index] = epochNanos;
+            written.lazySet(position + 1); // Releases the fields written above to the receiver
+            return true;
+        }
+    }
+
+    /**
+     * A partition of the accounts and the thread applying every change to them
+     */
+    private final class Shard {
+
+        private final int index;
+        private final Thread thread;
+
+        // Ring buffer of submitted commands, indexed by sequence & mask
+        private final int capacity;
+        private final int mask;
+        private final long[] fromIds;
+        private final long[] toIds;
+        private final long[] amounts;
+        private final AtomicLongArray published; // Sequence stored in each slot once its command is written
+        private final AtomicLong claimed = new AtomicLong(-1); // Last sequence claimed by a producer
+        private final AtomicLong processed = new AtomicLong(-1); // Last sequence whose slot is free again
+
+        private final Mailbox[] inbox; // Mailboxes written by the other shards, indexed by sender
+        private final ArrayDeque<long[]> backlog = new ArrayDeque<>(); // Messages waiting for room in a full mailbox
+
+        // Results waiting for the log to be durable before they are reported
+        private final long[] resultTickets;
+        private final long[] resultFromIds;
+        private final long[] resultToIds;
+        private final long[] resultAmounts;
+        private final byte[] results;
+        private int resultCount;
+
+        private final AtomicLong completed = new AtomicLong(); // Transfers reported by this shard
+        private volatile Throwable failure; // Exception that stopped the shard thread, if any
+        private long lastEpochNanos; // Time given to the last cross-shard debit of this shard
+
+        private Shard(int index, int capacity) {
+            this.index = index;
+            this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            this.mask = this.capacity - 1;
+            this.fromIds = new long[this.capacity];
+            this.toIds = new long[this.capacity];
+            this.amounts = new long[this.capacity];
+            this.published = new AtomicLongArray(this.capacity);
+            for (int i = 0; i < this.capacity; i++) {
+                published.set(i, -1);
+            }
+            this.inbox = new Mailbox[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                this.inbox[i] = i == index ? null : new Mailbox();
+            }
+            int maxResults = BATCH_SIZE * shards.length;
+            this.resultTickets = new long[maxResults];
+            this.resultFromIds = new long[maxResults];
+            this.resultToIds = new long[maxResults];
+            this.resultAmounts = new long[maxResults];
+            this.results = new byte[maxResults];
+            this.thread = new Thread(this::run, "transfer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private long submit(long fromId, long toId, long minorUnits) {
+            if (!running) {
+                throw new IllegalStateException("The transfer engine is stopped.");
+            }
+            check();
+            long sequence = claimed.incrementAndGet();
+            int spins = 0;
+            while (sequence - capacity > processed.get()) {
+                check();
+                spins = idle(spins);
+            }
+            int slot = (int) (sequence & mask);
+            fromIds[slot] = fromId;
+            toIds[slot] = toId;
+            amounts[slot] = minorUnits;
+            published.lazySet(slot, sequence); // Releases the fields written above to the shard
+            return sequence * shards.length + index;
+        }
+
+        /**
+         * Fails if the shard thread is no longer running, with the exception that stopped it if any
+         * @throws IllegalStateException Exception thrown if the shard thread is not running
+         */
+        private void check() throws IllegalStateException {
+            if (thread.isAlive() && failure == null) {
+                return;
+            }
+            // The failure is recorded before the thread ends, so it is visible once the thread is seen dead
+            Throwable failure = this.failure;
+            throw failure != null ? new IllegalStateException("The transfer shard " + index + " failed.", failure)
+                    : new IllegalStateException("The transfer engine is stopped.");
+        }
+
+        /**
+         * Runs the shard loop, recording the exception that stops it so callers fail instead of waiting
+         */
+        private void run() {
+            try {
+                process();
+            } catch (Throwable e) {
+                failure = e;
+                LOGGER.log(System.Logger.Level.ERROR, "The transfer shard " + index + " failed.", e);
+            }
+        }
+
+        /**
+         * Shard loop: sends the backlog, applies the messages of the other shards and a batch of
+         * commands, then waits once for the log before reporting the results of the batch. Once the
+         * engine is stopped, messages that cannot reach a failed shard are dropped.
+         */
+        private void process() {
+            long next = 0;
+            int spins = 0;
+            while (true) {
+                int work = sendBacklog();
+                for (Mailbox mailbox : inbox) {
+                    if (mailbox != null) {
+                        work += receive(mailbox);
+                    }
+                }
+                long last = next - 1;
+                while (last - next + 1 < BATCH_SIZE && published.get((int) ((last + 1) & mask)) == last + 1) {
+                    int slot = (int) (++last & mask);
+                    apply(last * shards.length + index, fromIds[slot], toIds[slot], amounts[slot]);
+                }
+                work += (int) (last - next + 1);
+                if (work == 0) {
+                    if (!running && (backlog.isEmpty() || anyShardFailed())) {
+                        return;
+                    }
+                    spins = idle(spins);
+                    continue;
+                }
+                spins = 0;
+                if (resultCount > 0 || last >= next) {
+                    OperationLog log = Account.getOperationLog();
+                    log.awaitDurable(log.getLastSequence());
+                }
+                processed.lazySet(last);
+                next = last + 1;
+                report();
+            }
+        }
+
+        /**
+         * Applies a submitted transfer in place, or debits it and sends the credit to the shard of the destination
+         */
+        private void apply(long ticket, long fromId, long toId, long minorUnits) {
+            Account from = registry.find(fromId);
+            Account to = registry.find(toId);
+            if (from == null || to == null) {
+                complete(ticket, fromId, toId, minorUnits, OperationResult.ACCOUNT_NOT_FOUND);
+                return;
+            }
+            int destination = shardFor(toId);
+            if (destination == index) {
+                complete(ticket, fromId, toId, minorUnits, from.transferMinorUnits(minorUnits, to));
+                return;
+            }
+            long convertedUnits = from.getCurrency() == to.getCurrency() ? minorUnits
+                    : Account.getFxRateProvider().convert(minorUnits, from.getCurrency(), to.getCurrency());
+            long epochNanos = nextEpochNanos();
+            long debited = from.debitTransfer(minorUnits, convertedUnits, to, epochNanos);
+            if (debited < 0) {
+                complete(ticket, fromId, toId, minorUnits, OperationResult.fromOrdinal((int) (-1 - debited)));
+                return;
+            }
+            send(destination, CREDIT, ticket, fromId, toId, minorUnits, convertedUnits, debited, epochNanos);
+        }
+
+        /**
+         * Applies the messages waiting in a mailbox
+         * @return The number of messages applied
+         */
+        private int receive(Mailbox mailbox) {
+            long position = mailbox.read.get();
+            int count = (int) Math.min(mailbox.written.get() - position, BATCH_SIZE);
+            for (int i = 0; i < count; i++) {
+                int slot = (int) (position + i) & (MAILBOX_CAPACITY - 1);
+                long ticket = mailbox.tickets[slot];
+                long fromId = mailbox.fromIds[slot];
+                long toId = mailbox.toIds[slot];
+                long minorUnits = mailbox.amounts[slot];
+                long epochNanos = mailbox.times[slot];
+                if (mailbox.kinds[slot] == CREDIT) {
+                    Account from = registry.find(fromId);
+                    Account to = registry.find(toId);
+                    OperationResult result = to.creditTransfer(from, minorUnits, mailbox.convertedAmounts[slot], mailbox.fromBalances[slot], epochNanos);
+                    if (result == OperationResult.COMPLETED) {
+                        complete(ticket, fromId, toId, minorUnits, result);
+                    } else {
+                        send(shardFor(fromId), REFUND, ticket, fromId, toId, minorUnits, 0, 0, epochNanos);
+                    }
+                } else {
+                    OperationResult result = registry.find(fromId).refundTransfer(minorUnits, toId, OperationResult.BALANCE_OVERFLOW, epochNanos);
+                    complete(ticket, fromId, toId, minorUnits, result);
+                }
+            }
+            mailbox.read.lazySet(position + count);
+            return count;
+        }
+
+        private void send(int destination, byte kind, long ticket, long fromId, long toId, long minorUnits, long convertedUnits,
+                          long fromBalanceAfter, long epochNanos) {
+            if (!backlog.isEmpty() || !shards[destination].inbox[index].offer(kind, ticket, fromId, toId, minorUnits,
+                    convertedUnits, fromBalanceAfter, epochNanos)) {
+                backlog.add(new long[]{destination, kind, ticket, fromId, toId, minorUnits, convertedUnits, fromBalanceAfter, epochNanos});
+            }
+        }
+
+        /**
+         * Moves the messages of the backlog to their mailboxes while they have room
+         * @return The number of messages sent
+         */
+        private int sendBacklog() {
+            int sent = 0;
+            long[] message;
+            while ((message = backlog.peek()) != null && shards[(int) message[0]].inbox[index].offer((byte) message[1],
+                    message[2], message[3], message[4], message[5], message[6], message[7], message[8])) {
+                backlog.poll();
+                sent++;
+            }
+            return sent;
+        }
+
+        /**
+         * Gives a time to a cross-shard debit. Times increase on each shard and are congruent to
+         * the shard index modulo the number of shards, so no two transfers in flight share one.
+         */
+        private long nextEpochNanos() {
+            long now = TransactionJournal.currentEpochNanos();
+            long epochNanos = now - Math.floorMod(now, shards.length) + index;
+            if (epochNanos <= lastEpochNanos) {
+                epochNanos = lastEpochNanos + shards.length;
+            }
+            lastEpochNanos = epochNanos;
+            return epochNanos;
+        }
+
+        private void complete(long ticket, long fromId, long toId, long minorUnits, OperationResult result) {
+            if (resultCount == resultTickets.length) {
+                OperationLog log = Account.getOperationLog();
+                log.awaitDurable(log.getLastSequence());
+                report();
+            }
+            resultTickets[resultCount] = ticket;
+            resultFromIds[resultCount] = fromId;
+            resultToIds[resultCount] = toId;
+            resultAmounts[resultCount] = minorUnits;
+            results[resultCount] = (byte) result.ordinal();
+            resultCount++;
+        }
+
+        /**
+         * Reports the buffered results, which must be durable
+         */
+        private void report() {
+            for (int i = 0; i < resultCount; i++) {
+                handler.onComplete(resultTickets[i], resultFromIds[i], resultToIds[i], resultAmounts[i], OperationResult.fromOrdinal(results[i]));
+            }
+            completed.lazySet(completed.get() + resultCount);
+            resultCount = 0;
+        }
+    }
+
+    private static int idle(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+
+}
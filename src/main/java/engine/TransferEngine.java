@@ -0,0 +1,251 @@
+package engine;
+
+import enums.OperationResult;
+import interfaces.OperationLog;
+import model.Account;
+import registry.AccountRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes transfer commands in bulk. Producers copy commands into a pre-allocated ring buffer of
+ * primitive arrays, and a single consumer thread applies them in order, so no object is created per
+ * command. After each batch the consumer waits once for the operation log to be durable and then
+ * reports every result through the completion handler. If the consumer thread fails, for example
+ * because the log cannot be written or the handler throws, every waiting or later call fails with
+ * that cause instead of waiting for it.
+ */
+public class TransferEngine implements AutoCloseable {
+
+    private final static int SPINS_BEFORE_PARK = 100;
+    private final static long PARK_NANOS = 50_000;
+    private final static System.Logger LOGGER = System.getLogger(TransferEngine.class.getName());
+
+    private final AccountRegistry registry; // Accounts referenced by the commands
+    private final CompletionHandler handler; // Receives the result of each command
+    private final int capacity; // Number of slots in the ring buffer
+    private final int mask;
+
+    // Ring buffer slots, indexed by sequence & mask
+    private final long[] fromIds;
+    private final long[] toIds;
+    private final long[] amounts;
+    private final byte[] results;
+    private final AtomicLongArray published; // Sequence stored in each slot once its command is written
+
+    private final AtomicLong claimed = new AtomicLong(-1); // Last sequence claimed by a producer
+    private final AtomicLong processed = new AtomicLong(-1); // Last sequence completed by the consumer
+    private final Thread consumer;
+    private volatile boolean running = true;
+    private volatile Throwable failure; // Exception that stopped the consumer thread, if any
+
+    /**
+     * Receives the result of each transfer on the engine thread
+     */
+    @FunctionalInterface
+    public interface CompletionHandler {
+        void onComplete(long sequence, long fromId, long toId, long minorUnits, OperationResult result);
+    }
+
+    /**
+     * Creates and starts an engine
+     * @param registry The accounts referenced by the commands
+     * @param capacity The minimum number of slots in the ring buffer, rounded up to a power of two
+     * @param handler The handler receiving the result of each command
+     */
+    public TransferEngine(AccountRegistry registry, int capacity, CompletionHandler handler) {
+        this.registry = registry;
+        this.handler = handler;
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.fromIds = new long[this.capacity];
+        this.toIds = new long[this.capacity];
+        this.amounts = new long[this.capacity];
+        this.results = new byte[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+        this.consumer = new Thread(this::run, "transfer-engine");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Submits a transfer, waiting for a free slot if the ring buffer is full
+     * @param fromId The ID of the account to be debited
+     * @param toId The ID of the account to be credited
+     * @param minorUnits The amount in minor units
+     * @return The sequence number of the command
+     */
+    public long submit(long fromId, long toId, long minorUnits) {
+        long sequence = claim(1);
+        write(sequence, fromId, toId, minorUnits);
+        return sequence;
+    }
+
+    /**
+     * Submits a batch of transfers, claiming all their slots at once
+     * @param fromIds The IDs of the accounts to be debited
+     * @param toIds The IDs of the accounts to be credited
+     * @param amounts The amounts in minor units
+     * @param offset The index of the first command in the arrays
+     * @param length The number of commands, at most the capacity of the engine
+     * @return The sequence number of the last command
+     */
+    public long submitBatch(long[] fromIds, long[] toIds, long[] amounts, int offset, int length) {
+        if (length <= 0 || length > capacity) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + capacity + ".");
+        }
+        long last = claim(length);
+        long first = last - length + 1;
+        for (int i = 0; i < length; i++) {
+            write(first + i, fromIds[offset + i], toIds[offset + i], amounts[offset + i]);
+        }
+        return last;
+    }
+
+    /**
+     * Blocks until a command and every command before it have been completed
+     * @param sequence The sequence number of the command
+     * @throws IllegalStateException Exception thrown if the engine thread failed or stopped before the command was completed
+     */
+    public void awaitProcessed(long sequence) throws IllegalStateException {
+        int spins = 0;
+        while (processed.get() < sequence) {
+            checkConsumer();
+            spins = idle(spins);
+        }
+    }
+
+    /**
+     * Completes every submitted command and stops the engine thread
+     * @throws IllegalStateException Exception thrown if the engine thread failed
+     */
+    @Override
+    public void close() throws IllegalStateException {
+        try {
+            awaitProcessed(claimed.get());
+        } finally {
+            running = false;
+            LockSupport.unpark(consumer);
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Claims slots for a number of commands, waiting while the consumer has not released them
+     * @return The last claimed sequence
+     */
+    private long claim(int count) {
+        if (!running) {
+            throw new IllegalStateException("The transfer engine is stopped.");
+        }
+        checkConsumer();
+        long last = claimed.addAndGet(count);
+        int spins = 0;
+        while (last - capacity > processed.get()) {
+            checkConsumer();
+            spins = idle(spins);
+        }
+        return last;
+    }
+
+    /**
+     * Fails if the consumer thread is no longer running, with the exception that stopped it if any
+     * @throws IllegalStateException Exception thrown if the consumer thread is not running
+     */
+    private void checkConsumer() throws IllegalStateException {
+        if (consumer.isAlive() && failure == null) {
+            return;
+        }
+        // The failure is recorded before the thread ends, so it is visible once the thread is seen dead
+        Throwable failure = this.failure;
+        throw failure != null ? new IllegalStateException("The transfer engine thread failed.", failure)
+                : new IllegalStateException("The transfer engine is stopped.");
+    }
+
+    private void write(long sequence, long fromId, long toId, long minorUnits) {
+        int index = (int) (sequence & mask);
+        fromIds[index] = fromId;
+        toIds[index] = toId;
+        amounts[index] = minorUnits;
+        published.lazySet(index, sequence); // Releases the fields written above to the consumer
+    }
+
+    /**
+     * Runs the consumer loop, recording the exception that stops it so callers fail instead of waiting
+     */
+    private void run() {
+        try {
+            consume();
+        } catch (Throwable e) {
+            failure = e;
+            LOGGER.log(System.Logger.Level.ERROR, "The transfer engine thread failed.", e);
+        }
+    }
+
+    /**
+     * Consumer loop: applies every published command, waits for the log once per batch and
+     * reports the results before releasing the slots
+     */
+    private void consume() {
+        long next = 0;
+        int spins = 0;
+        while (true) {
+            long last = next - 1;
+            while (last - next + 1 < capacity && published.get((int) ((last + 1) & mask)) == last + 1) {
+                int index = (int) (++last & mask);
+                results[index] = (byte) apply(fromIds[index], toIds[index], amounts[index]).ordinal();
+            }
+            if (last < next) {
+                if (!running) {
+                    return;
+                }
+                spins = idle(spins);
+                continue;
+            }
+            spins = 0;
+            OperationLog log = Account.getOperationLog();
+            log.awaitDurable(log.getLastSequence());
+            for (long sequence = next; sequence <= last; sequence++) {
+                int index = (int) (sequence & mask);
+                handler.onComplete(sequence, fromIds[index], toIds[index], amounts[index], OperationResult.fromOrdinal(results[index]));
+            }
+            processed.set(last);
+            next = last + 1;
+        }
+    }
+
+    /**
+     * Applies one transfer with the same rules as {@link Account#transfer}
+     */
+    private OperationResult apply(long fromId, long toId, long minorUnits) {
+        Account from = registry.find(fromId);
+        Account to = registry.find(toId);
+        if (from == null || to == null) {
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        }
+        return from.transferMinorUnits(minorUnits, to);
+    }
+
+    private static int idle(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+
+}
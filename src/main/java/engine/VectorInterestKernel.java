@@ -0,0 +1,55 @@
+package engine;
+
+import interfaces.InterestKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import model.SavingsAccount;
+
+/**
+ * Computes the interest of several accounts per instruction with the incubating Vector API. Only
+ * compiled with the vector profile, and only used when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * Lanes multiply in double, which matches the exact product rounded half up as long as the
+ * balance converts exactly and the product is further from a half unit than its rounding error.
+ * The other lanes, with large balances, negative or huge products, or products close to a half
+ * unit, are computed by {@link SavingsAccount#calculateInterest} one at a time.
+ */
+public class VectorInterestKernel implements InterestKernel {
+
+    private final static VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private final static VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED; // Same number of lanes, both are 64 bits wide
+    private final static long MAX_EXACT_BALANCE = 1L << 53; // Highest balance converted to double without rounding
+    private final static double MAX_PRODUCT = 0x1p52; // Below it the fraction of a product is exact
+    private final static double ERROR_MARGIN = 0x1p-52; // Twice the relative rounding error of a product
+
+    @Override
+    public void accrue(long[] balances, double[] rates, long[] interest, int from, int to) {
+        int i = from;
+        int upperBound = from + DOUBLES.loopBound(to - from);
+        for (; i < upperBound; i += DOUBLES.length()) {
+            LongVector balance = LongVector.fromArray(LONGS, balances, i);
+            DoubleVector product = ((DoubleVector) balance.convert(VectorOperators.L2D, 0)).mul(DoubleVector.fromArray(DOUBLES, rates, i));
+            LongVector truncated = (LongVector) product.convert(VectorOperators.D2L, 0);
+            DoubleVector halfDistance = product.sub((DoubleVector) truncated.convert(VectorOperators.L2D, 0)).sub(0.5);
+            VectorMask<Long> exact = balance.compare(VectorOperators.GE, 0)
+                    .and(balance.compare(VectorOperators.LE, MAX_EXACT_BALANCE))
+                    .and(product.compare(VectorOperators.GE, 0.0)
+                            .and(product.compare(VectorOperators.LT, MAX_PRODUCT))
+                            .and(halfDistance.abs().compare(VectorOperators.GT, product.mul(ERROR_MARGIN)))
+                            .cast(LONGS));
+            truncated.add(1, halfDistance.compare(VectorOperators.GT, 0.0).cast(LONGS)).intoArray(interest, i);
+            for (long inexact = exact.not().toLong(); inexact != 0; inexact &= inexact - 1) {
+                int lane = i + Long.numberOfTrailingZeros(inexact);
+                interest[lane] = SavingsAccount.calculateInterest(balances[lane], rates[lane]);
+            }
+        }
+        for (; i < to; i++) {
+            interest[i] = SavingsAccount.calculateInterest(balances[i], rates[i]);
+        }
+    }
+
+}
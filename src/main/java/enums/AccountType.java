@@ -0,0 +1,20 @@
+package enums;
+
+/**
+ * The kinds of accounts
+ */
+public enum AccountType {
+    SAVINGS,
+    BUSINESS;
+
+    private final static AccountType[] VALUES = values();
+
+    /**
+     * Gets the type for an ordinal without copying the values array
+     * @param ordinal The ordinal of the type
+     * @return The account type
+     */
+    public static AccountType fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
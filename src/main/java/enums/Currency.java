@@ -4,9 +4,30 @@ package enums;
  * The five most used currencies in the world
  */
 public enum Currency {
-    EUR,
-    USD,
-    JPY,
-    GBP,
-    CNY
+    EUR(2),
+    USD(2),
+    JPY(0),
+    GBP(2),
+    CNY(2);
+
+    private final static Currency[] VALUES = values();
+
+    private final int minorDigits; // Number of decimal digits of the minor unit (cents for EUR)
+
+    Currency(int minorDigits) {
+        this.minorDigits = minorDigits;
+    }
+
+    public int getMinorDigits() {
+        return minorDigits;
+    }
+
+    /**
+     * Gets the currency for an ordinal without copying the values array
+     * @param ordinal The ordinal of the currency
+     * @return The currency, or null if the ordinal is unknown
+     */
+    public static Currency fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
 }
@@ -0,0 +1,30 @@
+package enums;
+
+/**
+ * The kinds of records stored in the write-ahead log
+ */
+public enum LogRecordType {
+    CREATE_SAVINGS,
+    CREATE_BUSINESS,
+    DEPOSIT,
+    WITHDRAWAL,
+    TRANSFER,
+    INTEREST,
+    BALANCE,
+    OWNER_NAME,
+    INTEREST_RATE,
+    TRANSFER_DEBIT,
+    TRANSFER_CREDIT,
+    TRANSACTION;
+
+    private final static LogRecordType[] VALUES = values();
+
+    /**
+     * Gets the type for an ordinal without copying the values array
+     * @param ordinal The ordinal of the type
+     * @return The record type, or null if the ordinal is unknown
+     */
+    public static LogRecordType fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
@@ -0,0 +1,30 @@
+package enums;
+
+/**
+ * The outcome of an account operation
+ */
+public enum OperationResult {
+    COMPLETED,
+    INVALID_AMOUNT,
+    CURRENCY_MISMATCH,
+    INSUFFICIENT_FUNDS,
+    TRANSFER_LIMIT_EXCEEDED,
+    ACCOUNT_NOT_FOUND,
+    BALANCE_OVERFLOW,
+    RATE_UNAVAILABLE,
+    HOURLY_LIMIT_EXCEEDED,
+    DAILY_LIMIT_EXCEEDED,
+    VELOCITY_LIMIT_EXCEEDED,
+    RETRY_LATER;
+
+    private final static OperationResult[] VALUES = values();
+
+    /**
+     * Gets the result for an ordinal without copying the values array
+     * @param ordinal The ordinal of the result
+     * @return The operation result
+     */
+    public static OperationResult fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,26 @@
+package enums;
+
+/**
+ * The kinds of requests accepted by the account server
+ */
+public enum RequestType {
+    CREATE_SAVINGS,
+    CREATE_BUSINESS,
+    DEPOSIT,
+    WITHDRAW,
+    TRANSFER,
+    BALANCE,
+    HISTORY,
+    IDEMPOTENT_TRANSFER;
+
+    private final static RequestType[] VALUES = values();
+
+    /**
+     * Gets the type for an ordinal without copying the values array
+     * @param ordinal The ordinal of the type
+     * @return The request type, or null if the ordinal is unknown
+     */
+    public static RequestType fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
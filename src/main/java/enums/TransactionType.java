@@ -0,0 +1,23 @@
+package enums;
+
+/**
+ * The kinds of operations that can be recorded in an account history
+ */
+public enum TransactionType {
+    DEPOSIT,
+    WITHDRAWAL,
+    TRANSFER_OUT,
+    TRANSFER_IN,
+    INTEREST;
+
+    private final static TransactionType[] VALUES = values();
+
+    /**
+     * Gets the type for an ordinal without copying the values array
+     * @param ordinal The ordinal of the type
+     * @return The transaction type
+     */
+    public static TransactionType fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,24 @@
+package enums;
+
+/**
+ * The kinds of records stored in a simulation workload file
+ */
+public enum WorkloadOperation {
+    CREATE_SAVINGS,
+    CREATE_BUSINESS,
+    DEPOSIT,
+    WITHDRAWAL,
+    TRANSFER,
+    INTEREST;
+
+    private final static WorkloadOperation[] VALUES = values();
+
+    /**
+     * Gets the operation for an ordinal without copying the values array
+     * @param ordinal The ordinal of the operation
+     * @return The operation, or null if the ordinal is unknown
+     */
+    public static WorkloadOperation fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
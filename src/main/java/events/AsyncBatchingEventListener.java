@@ -0,0 +1,168 @@
+package events;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountEventListener;
+import model.Account;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records account events in a pre-allocated ring buffer of primitive arrays and formats them on a
+ * background thread, which writes each batch of messages at once. Operations never wait for the
+ * output: when the buffer is full the event is dropped and counted instead.
+ */
+public class AsyncBatchingEventListener implements AccountEventListener, AutoCloseable {
+
+    private final static long PARK_NANOS = 1_000_000;
+    private final static TransactionType[] TYPES = TransactionType.values();
+
+    private final PrintStream out; // Stream receiving the messages
+    private final int capacity; // Number of slots in the ring buffer
+    private final int mask;
+
+    // Ring buffer slots, indexed by sequence & mask
+    private final long[] accountIds;
+    private final long[] counterpartyIds;
+    private final long[] amounts;
+    private final long[] balances;
+    private final byte[] types;
+    private final byte[] results;
+    private final byte[] currencies;
+    private final AtomicLongArray published; // Sequence stored in each slot once its event is written
+
+    private final AtomicLong claimed = new AtomicLong(-1); // Last sequence claimed by a producer
+    private final AtomicLong processed = new AtomicLong(-1); // Last sequence written by the consumer
+    private final LongAdder dropped = new LongAdder(); // Events lost because the buffer was full
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a listener
+     * @param out The stream receiving the messages
+     * @param capacity The minimum number of slots in the ring buffer, rounded up to a power of two
+     */
+    public AsyncBatchingEventListener(PrintStream out, int capacity) {
+        this.out = out;
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.accountIds = new long[this.capacity];
+        this.counterpartyIds = new long[this.capacity];
+        this.amounts = new long[this.capacity];
+        this.balances = new long[this.capacity];
+        this.types = new byte[this.capacity];
+        this.results = new byte[this.capacity];
+        this.currencies = new byte[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+        this.consumer = new Thread(this::run, "account-events");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Gets the number of events dropped because the ring buffer was full
+     * @return The number of dropped events
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void onDeposit(Account account, long minorUnits, long balanceAfter) {
+        publish(account, TransactionType.DEPOSIT, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onWithdrawal(Account account, long minorUnits, long balanceAfter) {
+        publish(account, TransactionType.WITHDRAWAL, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onTransfer(Account from, Account to, long minorUnits, long fromBalanceAfter, long toBalanceAfter) {
+        publish(from, TransactionType.TRANSFER_OUT, OperationResult.COMPLETED, to.getId(), minorUnits, fromBalanceAfter);
+    }
+
+    @Override
+    public void onInterest(Account account, long minorUnits, long balanceAfter) {
+        publish(account, TransactionType.INTEREST, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onRejected(Account account, TransactionType type, OperationResult reason, long minorUnits) {
+        publish(account, type, reason, 0, minorUnits, account.getTransferLimit(reason));
+    }
+
+    /**
+     * Writes every recorded event and stops the background thread
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Claims a slot and copies an event into it, or drops the event if no slot is free
+     */
+    private void publish(Account account, TransactionType type, OperationResult result, long counterpartyId, long minorUnits, long balanceAfter) {
+        long sequence;
+        do {
+            sequence = claimed.get() + 1;
+            if (!running || sequence - capacity > processed.get()) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence - 1, sequence));
+        int index = (int) (sequence & mask);
+        accountIds[index] = account.getId();
+        counterpartyIds[index] = counterpartyId;
+        amounts[index] = minorUnits;
+        balances[index] = balanceAfter;
+        types[index] = (byte) type.ordinal();
+        results[index] = (byte) result.ordinal();
+        currencies[index] = (byte) account.getCurrency().ordinal();
+        published.lazySet(index, sequence); // Releases the fields written above to the consumer
+    }
+
+    /**
+     * Consumer loop: formats every published event into one buffer and writes it at once
+     */
+    private void run() {
+        StringBuilder batch = new StringBuilder(1 << 16);
+        long next = 0;
+        while (true) {
+            long last = next - 1;
+            while (last - next + 1 < capacity && published.get((int) ((last + 1) & mask)) == last + 1) {
+                int index = (int) (++last & mask);
+                EventFormatter.append(batch, TYPES[types[index]], OperationResult.fromOrdinal(results[index]), accountIds[index],
+                        counterpartyIds[index], amounts[index], balances[index], Currency.fromOrdinal(currencies[index])).append(System.lineSeparator());
+                processed.lazySet(last); // The slot can be reused once its fields are formatted
+            }
+            if (last < next) {
+                if (!running && claimed.get() < next) {
+                    return;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+                continue;
+            }
+            out.print(batch);
+            out.flush();
+            batch.setLength(0);
+            next = last + 1;
+        }
+    }
+
+}
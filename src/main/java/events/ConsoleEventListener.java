@@ -0,0 +1,54 @@
+package events;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountEventListener;
+import model.Account;
+
+import java.io.PrintStream;
+
+/**
+ * Prints a message for every account event, synchronously, on the calling thread
+ */
+public class ConsoleEventListener implements AccountEventListener {
+
+    private final PrintStream out;
+
+    public ConsoleEventListener() {
+        this(System.out);
+    }
+
+    public ConsoleEventListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onDeposit(Account account, long minorUnits, long balanceAfter) {
+        print(account, TransactionType.DEPOSIT, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onWithdrawal(Account account, long minorUnits, long balanceAfter) {
+        print(account, TransactionType.WITHDRAWAL, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onTransfer(Account from, Account to, long minorUnits, long fromBalanceAfter, long toBalanceAfter) {
+        print(from, TransactionType.TRANSFER_OUT, OperationResult.COMPLETED, to.getId(), minorUnits, fromBalanceAfter);
+    }
+
+    @Override
+    public void onInterest(Account account, long minorUnits, long balanceAfter) {
+        print(account, TransactionType.INTEREST, OperationResult.COMPLETED, 0, minorUnits, balanceAfter);
+    }
+
+    @Override
+    public void onRejected(Account account, TransactionType type, OperationResult reason, long minorUnits) {
+        print(account, type, reason, 0, minorUnits, account.getTransferLimit(reason));
+    }
+
+    private void print(Account account, TransactionType type, OperationResult result, long counterpartyId, long minorUnits, long balanceAfter) {
+        out.println(EventFormatter.format(type, result, account.getId(), counterpartyId, minorUnits, balanceAfter, account.getCurrency()));
+    }
+
+}
@@ -0,0 +1,84 @@
+package events;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import model.Money;
+
+/**
+ * Builds the console messages describing account events
+ */
+public final class EventFormatter {
+
+    private EventFormatter() {
+    }
+
+    /**
+     * Appends the message describing an event
+     * @param builder The builder receiving the message
+     * @param type The type of the operation
+     * @param result The result of the operation
+     * @param accountId The ID of the account the operation was requested on
+     * @param counterpartyId The ID of the account credited by a transfer, or 0
+     * @param minorUnits The amount of the operation in minor units
+     * @param balanceAfter The balance after the operation in minor units, or the exceeded limit for a
+     * rejection by a transfer limit (the number of transfers for a velocity limit, -1 if unknown)
+     * @param currency The currency of the amounts
+     * @return The builder
+     */
+    public static StringBuilder append(StringBuilder builder, TransactionType type, OperationResult result, long accountId,
+                                       long counterpartyId, long minorUnits, long balanceAfter, Currency currency) {
+        switch (result) {
+            case COMPLETED -> {
+                switch (type) {
+                    case DEPOSIT -> builder.append("Successful deposit of ").append(Money.format(minorUnits, currency));
+                    case WITHDRAWAL -> builder.append("Successful withdrawal of ").append(Money.format(minorUnits, currency));
+                    case TRANSFER_OUT, TRANSFER_IN -> builder.append("Successful transfer of ").append(Money.format(minorUnits, currency))
+                            .append(" to account ").append(counterpartyId);
+                    case INTEREST -> builder.append("Interest of ").append(Money.format(minorUnits, currency))
+                            .append(" applied. New balance: ").append(Money.format(balanceAfter, currency));
+                }
+            }
+            case INVALID_AMOUNT -> builder.append("Amount must be greater than 0.");
+            case CURRENCY_MISMATCH -> builder.append("Amount must be expressed in ").append(currency).append('.');
+            case INSUFFICIENT_FUNDS -> builder.append("The operation cannot be completed because of insufficient funds.");
+            case TRANSFER_LIMIT_EXCEEDED -> {
+                builder.append("Transfer limit exceeded");
+                if (balanceAfter >= 0) {
+                    builder.append(" by ").append(Money.format(minorUnits - balanceAfter, currency))
+                            .append(". Limit is ").append(Money.format(balanceAfter, currency));
+                }
+            }
+            case HOURLY_LIMIT_EXCEEDED -> appendLimit(builder.append("Hourly transfer limit exceeded."), balanceAfter, currency);
+            case DAILY_LIMIT_EXCEEDED -> appendLimit(builder.append("Daily transfer limit exceeded."), balanceAfter, currency);
+            case VELOCITY_LIMIT_EXCEEDED -> {
+                builder.append("Too many transfers in the last minute.");
+                if (balanceAfter >= 0) {
+                    builder.append(" Limit is ").append(balanceAfter).append(" per minute");
+                }
+            }
+            case ACCOUNT_NOT_FOUND -> builder.append("No account with the specified ID exists.");
+            case BALANCE_OVERFLOW -> builder.append("The operation would overflow the balance of account ").append(accountId).append('.');
+            case RATE_UNAVAILABLE -> builder.append("No exchange rate is available to convert from ").append(currency).append('.');
+            case RETRY_LATER -> builder.append("Too many recent requests to guarantee this one runs once. Retry it later.");
+        }
+        return builder;
+    }
+
+    private static void appendLimit(StringBuilder builder, long limit, Currency currency) {
+        if (limit >= 0) {
+            builder.append(" Limit is ").append(Money.format(limit, currency));
+        }
+    }
+
+    /**
+     * Builds the message describing an event
+     * @return The message
+     * @see #append(StringBuilder, TransactionType, OperationResult, long, long, long, long, Currency)
+     */
+    public static String format(TransactionType type, OperationResult result, long accountId, long counterpartyId,
+                                long minorUnits, long balanceAfter, Currency currency) {
+        return append(new StringBuilder(64), type, result, accountId, counterpartyId, minorUnits, balanceAfter, currency).toString();
+    }
+
+}
@@ -0,0 +1,74 @@
+package fx;
+
+import enums.Currency;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Exchange rates read from a local CSV file with one rate per line: {@code FROM,TO,RATE}, such as
+ * {@code EUR,USD,1.0850}. Lines starting with # are ignored. When only one direction of a pair is
+ * given, the other one is its inverse. Reloading the file swaps every rate at once.
+ */
+public class FileFxRateProvider extends FxRateTable {
+
+    private final Path file; // The file holding the rates
+
+    /**
+     * Creates a provider and loads the rates of a file
+     * @param file The file holding the rates
+     * @throws IOException Exception thrown if the file cannot be read or is not valid
+     */
+    public FileFxRateProvider(Path file) throws IOException {
+        this.file = file;
+        reload();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the file again and replaces the rates. The previous rates are kept if the file is not valid.
+     * @throws IOException Exception thrown if the file cannot be read or is not valid
+     */
+    public void reload() throws IOException {
+        int currencies = Currency.values().length;
+        double[][] rates = new double[currencies][currencies];
+        for (double[] row : rates) {
+            Arrays.fill(row, Double.NaN);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] fields = line.split(",");
+                try {
+                    Currency from = Currency.valueOf(fields[0].trim());
+                    Currency to = Currency.valueOf(fields[1].trim());
+                    double rate = Double.parseDouble(fields[2].trim());
+                    if (!(rate > 0) || Double.isInfinite(rate)) {
+                        throw new NumberFormatException();
+                    }
+                    rates[from.ordinal()][to.ordinal()] = rate;
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    throw new IOException("Invalid exchange rate at line " + lineNumber + " of " + file + ".");
+                }
+            }
+        }
+        for (int from = 0; from < currencies; from++) {
+            for (int to = 0; to < currencies; to++) {
+                if (Double.isNaN(rates[from][to]) && !Double.isNaN(rates[to][from])) {
+                    rates[from][to] = 1 / rates[to][from];
+                }
+            }
+        }
+        setRates(rates);
+    }
+
+}
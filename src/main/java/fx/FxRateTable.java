@@ -0,0 +1,100 @@
+package fx;
+
+import enums.Currency;
+import interfaces.FxRateProvider;
+
+import java.util.Arrays;
+
+/**
+ * Exchange rates stored in a dense matrix indexed by currency ordinals. Each cell holds the factor
+ * converting minor units of one currency into minor units of another, so a conversion is a single
+ * multiplication. Updates copy the matrix and publish the copy with one volatile write, so readers
+ * never lock and always see a consistent set of rates.
+ */
+public class FxRateTable implements FxRateProvider {
+
+    private final static int CURRENCIES = Currency.values().length;
+
+    private volatile double[] factors; // Minor unit factors indexed by from.ordinal() * CURRENCIES + to.ordinal(), NaN if unknown
+
+    /**
+     * Creates a table where every currency is only convertible to itself
+     */
+    public FxRateTable() {
+        this.factors = identity();
+    }
+
+    @Override
+    public double getRate(Currency from, Currency to) {
+        return factors[index(from, to)] * Math.pow(10, from.getMinorDigits() - to.getMinorDigits());
+    }
+
+    @Override
+    public long convert(long minorUnits, Currency from, Currency to) {
+        if (from == to) {
+            return minorUnits;
+        }
+        double converted = minorUnits * factors[index(from, to)];
+        return converted >= 0 && converted < 0x1p63 ? Math.round(converted) : -1;
+    }
+
+    /**
+     * Sets the exchange rate in one direction
+     * @param from The currency of the converted amounts
+     * @param to The currency of the results
+     * @param rate The number of major units of the target currency per major unit of the source currency
+     * @throws IllegalArgumentException Exception thrown if the rate is not positive and finite
+     */
+    public synchronized void setRate(Currency from, Currency to, double rate) throws IllegalArgumentException {
+        double[] copy = factors.clone();
+        copy[index(from, to)] = toFactor(from, to, rate);
+        factors = copy;
+    }
+
+    /**
+     * Replaces every rate at once. Currencies without a rate can no longer be converted.
+     * @param rates The rates indexed by source and target currency ordinals, with NaN for unknown rates
+     * @throws IllegalArgumentException Exception thrown if the matrix is not square with a row per currency,
+     * or a known rate is not positive and finite
+     */
+    public synchronized void setRates(double[][] rates) throws IllegalArgumentException {
+        if (rates.length != CURRENCIES) {
+            throw new IllegalArgumentException("The rates must have a row per currency.");
+        }
+        double[] copy = identity();
+        for (Currency from : Currency.values()) {
+            double[] row = rates[from.ordinal()];
+            if (row.length != CURRENCIES) {
+                throw new IllegalArgumentException("The rates must have a column per currency.");
+            }
+            for (Currency to : Currency.values()) {
+                double rate = row[to.ordinal()];
+                if (from != to && !Double.isNaN(rate)) {
+                    copy[index(from, to)] = toFactor(from, to, rate);
+                }
+            }
+        }
+        factors = copy;
+    }
+
+    private static double toFactor(Currency from, Currency to, double rate) throws IllegalArgumentException {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid rate " + rate + " from " + from + " to " + to + ".");
+        }
+        return rate * Math.pow(10, to.getMinorDigits() - from.getMinorDigits());
+    }
+
+    private static double[] identity() {
+        double[] identity = new double[CURRENCIES * CURRENCIES];
+        Arrays.fill(identity, Double.NaN);
+        for (int i = 0; i < CURRENCIES; i++) {
+            identity[i * CURRENCIES + i] = 1;
+        }
+        return identity;
+    }
+
+    private static int index(Currency from, Currency to) {
+        return from.ordinal() * CURRENCIES + to.ordinal();
+    }
+
+}
@@ -0,0 +1,38 @@
+package interfaces;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import model.Account;
+
+/**
+ * Receives the outcome of every account operation. Events are delivered after the accounts are
+ * unlocked, with plain values instead of event objects, so listeners decide what to allocate.
+ * The default implementation ignores everything.
+ */
+public interface AccountEventListener {
+
+    public static final AccountEventListener NONE = new AccountEventListener() {};
+
+    public default void onDeposit(Account account, long minorUnits, long balanceAfter) {
+    }
+
+    public default void onWithdrawal(Account account, long minorUnits, long balanceAfter) {
+    }
+
+    public default void onTransfer(Account from, Account to, long minorUnits, long fromBalanceAfter, long toBalanceAfter) {
+    }
+
+    public default void onInterest(Account account, long minorUnits, long balanceAfter) {
+    }
+
+    /**
+     * Called when an operation is rejected
+     * @param account The account the operation was requested on
+     * @param type The type of the operation
+     * @param reason The reason of the rejection
+     * @param minorUnits The requested amount in minor units
+     */
+    public default void onRejected(Account account, TransactionType type, OperationResult reason, long minorUnits) {
+    }
+
+}
@@ -1,15 +1,21 @@
 package interfaces;
 
-import enums.Currency;
+import enums.OperationResult;
 import model.Account;
+import model.Money;
 
 /**
- * Methods necessary for any bank account class (deposit, withdraw, and transfer)
+ * Methods necessary for any bank account class (deposit, withdraw, and transfer).
+ * The try methods report a rejected operation through their result instead of an exception.
  */
 public interface AccountOperations {
 
-    public void deposit(double amount);
-    public void withdraw(double amount);
-    public void transfer(double amount, Account account);
+    public void deposit(Money amount);
+    public void withdraw(Money amount);
+    public void transfer(Money amount, Account account);
+
+    public OperationResult tryDeposit(Money amount);
+    public OperationResult tryWithdraw(Money amount);
+    public OperationResult tryTransfer(Money amount, Account account);
 
 }
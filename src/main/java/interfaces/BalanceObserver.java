@@ -0,0 +1,22 @@
+package interfaces;
+
+import model.Account;
+
+/**
+ * Is told about every change of an account balance, including bulk jobs that send no events, so
+ * it can keep derived data such as reports up to date. It is called after the account is unlocked
+ * and receives no amounts: it reads the current balance, so changes reported out of order still
+ * leave it with the latest one. The default implementation ignores everything.
+ */
+public interface BalanceObserver {
+
+    public static final BalanceObserver NONE = new BalanceObserver() {};
+
+    /**
+     * Called after the balance of an account changed, or after an account is registered
+     * @param account The account
+     */
+    public default void onBalanceChanged(Account account) {
+    }
+
+}
@@ -0,0 +1,39 @@
+package interfaces;
+
+import enums.Currency;
+
+/**
+ * Provides the exchange rates used to convert transfers between accounts of different currencies.
+ * Conversions are called on the transfer path, so implementations must not block. The default
+ * implementation only knows that a currency is worth itself.
+ */
+public interface FxRateProvider {
+
+    public static final FxRateProvider NONE = new FxRateProvider() {};
+
+    /**
+     * Gets the exchange rate between two currencies
+     * @param from The currency of the converted amount
+     * @param to The currency of the result
+     * @return The number of major units of the target currency per major unit of the source currency, or NaN if unknown
+     */
+    public default double getRate(Currency from, Currency to) {
+        return from == to ? 1 : Double.NaN;
+    }
+
+    /**
+     * Converts an amount of minor units, rounded half up to the nearest minor unit of the target currency
+     * @param minorUnits The amount in minor units of the source currency, not negative
+     * @param from The currency of the amount
+     * @param to The currency of the result
+     * @return The amount in minor units of the target currency, or -1 if there is no rate or the result does not fit in a long
+     */
+    public default long convert(long minorUnits, Currency from, Currency to) {
+        if (from == to) {
+            return minorUnits;
+        }
+        double converted = minorUnits * getRate(from, to) * Math.pow(10, to.getMinorDigits() - from.getMinorDigits());
+        return converted >= 0 && converted < 0x1p63 ? Math.round(converted) : -1;
+    }
+
+}
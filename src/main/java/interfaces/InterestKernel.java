@@ -0,0 +1,20 @@
+package interfaces;
+
+/**
+ * Computes the interest of a range of accounts stored as parallel primitive arrays
+ */
+public interface InterestKernel {
+
+    /**
+     * Computes the interest of every account in a range, exactly like
+     * {@link model.SavingsAccount#calculateInterest(long, double)}: the exact product of the
+     * balance and the rate, rounded half up to the nearest minor unit
+     * @param balances The balances in minor units
+     * @param rates The interest rates in decimal form
+     * @param interest The array receiving the interest in minor units
+     * @param from The index of the first account, inclusive
+     * @param to The index of the last account, exclusive
+     */
+    public void accrue(long[] balances, double[] rates, long[] interest, int from, int to);
+
+}
@@ -0,0 +1,90 @@
+package interfaces;
+
+import model.Account;
+
+/**
+ * Receives every change applied to the accounts so it can be persisted. The methods are called
+ * while the affected accounts are locked, and each one returns the sequence number given to the
+ * change. The default implementation discards everything.
+ */
+public interface OperationLog {
+
+    public static final OperationLog NONE = new OperationLog() {};
+
+    public default long logCreation(Account account) {
+        return 0;
+    }
+
+    public default long logDeposit(long accountId, long minorUnits, long balanceAfter) {
+        return 0;
+    }
+
+    public default long logWithdrawal(long accountId, long minorUnits, long balanceAfter) {
+        return 0;
+    }
+
+    public default long logTransfer(long fromId, long toId, long minorUnits, long fromBalanceAfter, long toBalanceAfter, long epochNanos) {
+        return 0;
+    }
+
+    public default long logTransferDebit(long fromId, long toId, long minorUnits, long convertedUnits, long fromBalanceAfter, long epochNanos) {
+        return 0;
+    }
+
+    public default long logTransferCredit(long accountId, long fromId, long minorUnits, long balanceAfter, long epochNanos) {
+        return 0;
+    }
+
+    /**
+     * Logs the legs of a transaction, which recovery must apply all or none of. The default
+     * implementation logs each leg as a transfer.
+     * @param legs The number of legs
+     * @param fromIds The IDs of the debited accounts, indexed by leg
+     * @param toIds The IDs of the credited accounts, indexed by leg
+     * @param minorUnits The debited amounts, indexed by leg
+     * @param fromBalancesAfter The balances of the debited accounts after each leg
+     * @param toBalancesAfter The balances of the credited accounts after each leg
+     * @param epochNanos The time of the transaction
+     * @return The sequence number of the last leg
+     */
+    public default long logTransaction(int legs, long[] fromIds, long[] toIds, long[] minorUnits, long[] fromBalancesAfter,
+                                       long[] toBalancesAfter, long epochNanos) {
+        long sequence = 0;
+        for (int i = 0; i < legs; i++) {
+            sequence = logTransfer(fromIds[i], toIds[i], minorUnits[i], fromBalancesAfter[i], toBalancesAfter[i], epochNanos);
+        }
+        return sequence;
+    }
+
+    public default long logInterest(long accountId, long minorUnits, long balanceAfter) {
+        return 0;
+    }
+
+    public default long logBalance(long accountId, long balance) {
+        return 0;
+    }
+
+    public default long logOwnerName(long accountId, String ownerName) {
+        return 0;
+    }
+
+    public default long logInterestRate(long accountId, double interestRate) {
+        return 0;
+    }
+
+    /**
+     * Gets the sequence number of the last change logged
+     * @return The sequence number
+     */
+    public default long getLastSequence() {
+        return 0;
+    }
+
+    /**
+     * Blocks until the change with a sequence number is safely stored
+     * @param sequence The sequence number returned when the change was logged
+     */
+    public default void awaitDurable(long sequence) {
+    }
+
+}
@@ -0,0 +1,33 @@
+package interfaces;
+
+import enums.OperationResult;
+import enums.TransactionType;
+
+/**
+ * Records the outcome and the duration of account operations. Operations call
+ * {@link #startTime()} before running and {@link #record} once they finish, so an implementation
+ * can decide which operations are timed. The default implementation records nothing and never
+ * reads the clock.
+ */
+public interface OperationMetrics {
+
+    public static final OperationMetrics NONE = new OperationMetrics() {};
+
+    /**
+     * Gets the start time of an operation
+     * @return The current value of {@link System#nanoTime()}, or 0 if the operation is not timed
+     */
+    public default long startTime() {
+        return 0;
+    }
+
+    /**
+     * Records a finished operation
+     * @param type The type of the operation
+     * @param result The result of the operation
+     * @param startTime The value returned by {@link #startTime()}, or 0 if the operation is not timed
+     */
+    public default void record(TransactionType type, OperationResult result, long startTime) {
+    }
+
+}
@@ -0,0 +1,28 @@
+package interfaces;
+
+/**
+ * Management interface exposing the counters and the latency of one type of account operation
+ */
+public interface OperationStatsMXBean {
+
+    public long getCompleted();
+    public long getRejected();
+    public long getInvalidAmount();
+    public long getCurrencyMismatch();
+    public long getInsufficientFunds();
+    public long getTransferLimitExceeded();
+    public long getHourlyLimitExceeded();
+    public long getDailyLimitExceeded();
+    public long getVelocityLimitExceeded();
+    public long getBalanceOverflow();
+    public long getRateUnavailable();
+
+    public long getTimedCount();
+    public double getLatencyP50Micros();
+    public double getLatencyP99Micros();
+    public double getLatencyP999Micros();
+    public double getLatencyMaxMicros();
+
+    public void reset();
+
+}
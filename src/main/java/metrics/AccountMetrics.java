@@ -0,0 +1,138 @@
+package metrics;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.OperationMetrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Counts every account operation by type and result, and times a sample of them. Timing only one
+ * operation in {@code 2^n} keeps the cost of the clock reads off most operations while the
+ * histograms still converge to the real distribution.
+ */
+public class AccountMetrics implements OperationMetrics {
+
+    public final static String DOMAIN = "bank";
+
+    private final static TransactionType[] OPERATIONS = {
+            TransactionType.DEPOSIT, TransactionType.WITHDRAWAL, TransactionType.TRANSFER_OUT, TransactionType.INTEREST
+    };
+
+    private final OperationStats[] stats; // Statistics indexed by transaction type ordinal
+    private final int sampleMask; // An operation is timed when a random int has these bits clear
+
+    /**
+     * Creates metrics timing one operation in 16
+     */
+    public AccountMetrics() {
+        this(4);
+    }
+
+    /**
+     * Creates metrics
+     * @param sampleBits The base 2 logarithm of the number of operations per timed operation, 0 to time them all
+     */
+    public AccountMetrics(int sampleBits) {
+        this.sampleMask = (1 << sampleBits) - 1;
+        this.stats = new OperationStats[TransactionType.values().length];
+        for (TransactionType type : OPERATIONS) {
+            stats[type.ordinal()] = new OperationStats();
+        }
+    }
+
+    @Override
+    public long startTime() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0 ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void record(TransactionType type, OperationResult result, long startTime) {
+        OperationStats operation = stats[type.ordinal()];
+        if (operation != null) {
+            operation.record(result, startTime == 0 ? -1 : System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Gets the statistics of a type of operation
+     * @param type The type of operation
+     * @return The statistics, or null if the type is not an operation
+     */
+    public OperationStats getStats(TransactionType type) {
+        return stats[type.ordinal()];
+    }
+
+    /**
+     * Registers an MBean per operation type in the platform MBean server, named
+     * {@code bank:type=Operations,name=<TYPE>}
+     * @throws IllegalStateException Exception thrown if the MBeans are already registered
+     */
+    public void registerMBeans() throws IllegalStateException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (TransactionType type : OPERATIONS) {
+                server.registerMBean(stats[type.ordinal()], objectNameFor(type));
+            }
+        } catch (InstanceAlreadyExistsException | MBeanRegistrationException | NotCompliantMBeanException e) {
+            throw new IllegalStateException("The metrics MBeans could not be registered.", e);
+        }
+    }
+
+    /**
+     * Removes the MBeans registered by {@link #registerMBeans()}
+     */
+    public void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (TransactionType type : OPERATIONS) {
+            try {
+                server.unregisterMBean(objectNameFor(type));
+            } catch (InstanceNotFoundException | MBeanRegistrationException e) {
+                // Nothing left to remove
+            }
+        }
+    }
+
+    /**
+     * Appends a line per operation type with its counters and latency percentiles
+     * @param builder The builder receiving the text
+     * @return The builder
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        for (TransactionType type : OPERATIONS) {
+            OperationStats operation = stats[type.ordinal()];
+            builder.append(String.format(Locale.ROOT, "%-12s completed=%d", type, operation.getCompleted()));
+            for (OperationResult result : OperationResult.values()) {
+                long count = operation.getCount(result);
+                if (result != OperationResult.COMPLETED && count > 0) {
+                    builder.append(' ').append(result.name().toLowerCase(Locale.ROOT)).append('=').append(count);
+                }
+            }
+            if (operation.getTimedCount() > 0) {
+                builder.append(String.format(Locale.ROOT, " p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                        operation.getLatencyP50Micros(), operation.getLatencyP99Micros(),
+                        operation.getLatencyP999Micros(), operation.getLatencyMaxMicros()));
+            }
+            builder.append(System.lineSeparator());
+        }
+        return builder;
+    }
+
+    private static ObjectName objectNameFor(TransactionType type) {
+        try {
+            return new ObjectName(DOMAIN + ":type=Operations,name=" + type);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
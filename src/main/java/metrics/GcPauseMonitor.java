@@ -0,0 +1,81 @@
+package metrics;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the garbage collections that end while it is open, from the notifications of the
+ * collectors: their number, their total duration and the longest one. With the collectors that do
+ * most of their work concurrently, the duration of a collection can be longer than the pause it
+ * caused.
+ */
+public class GcPauseMonitor implements NotificationListener, AutoCloseable {
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>(); // Collectors this monitor listens to
+    private long collections; // Number of collections, guarded by this
+    private long totalMillis; // Total duration of the collections, guarded by this
+    private long maxMillis; // Longest collection, guarded by this
+
+    /**
+     * Creates a monitor and starts listening to every collector of the JVM
+     */
+    public GcPauseMonitor() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        long millis = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+        synchronized (this) {
+            collections++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+    }
+
+    public synchronized long getCollections() {
+        return collections;
+    }
+
+    public synchronized long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Stops listening. Notifications are delivered on another thread, so a collection that ended
+     * just before may still be recorded after this returns.
+     */
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignored) {
+                // Already removed
+            }
+        }
+        emitters.clear();
+    }
+
+}
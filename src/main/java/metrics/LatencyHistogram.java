@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of durations in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram: values below 128 have their own bucket, and every larger power of two is split in
+ * 64 buckets, so any recorded value is reported within 1.6% of its real value. Recording only
+ * increments an array element and never allocates.
+ */
+public class LatencyHistogram {
+
+    private final static int SUB_BUCKET_BITS = 7;
+    private final static int HALF_SUB_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+    private final static int MAX_VALUE_BITS = 40; // Values are capped to about 18 minutes
+    private final static long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+    /**
+     * Records a duration
+     * @param nanos The duration in nanoseconds, clamped between 0 and about 18 minutes
+     */
+    public void record(long nanos) {
+        counts.getAndIncrement(indexOf(Math.min(Math.max(nanos, 0), MAX_VALUE)));
+    }
+
+    /**
+     * Counts the recorded durations
+     * @return The number of recorded durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the duration below which a fraction of the recorded durations fall
+     * @param quantile The fraction, between 0 and 1
+     * @return The duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(snapshot.length - 1);
+    }
+
+    /**
+     * Gets the largest recorded duration, to the precision of its bucket
+     * @return The duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Clears every bucket. Durations recorded meanwhile may be kept or lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Gets the bucket of a value: the value itself below 128, otherwise its top 7 bits offset by
+     * 64 buckets for each bit dropped
+     */
+    private static int indexOf(long value) {
+        int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the largest value stored in a bucket
+     */
+    private static long highestValueOf(int index) {
+        if (index < 2 * HALF_SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
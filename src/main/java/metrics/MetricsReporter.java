@@ -0,0 +1,49 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the account metrics as text at a fixed interval on a background thread
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private final AccountMetrics metrics; // Metrics to be printed
+    private final PrintStream out; // Stream receiving the reports
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates and starts a reporter
+     * @param metrics The metrics to be printed
+     * @param out The stream receiving the reports
+     * @param intervalMillis The time between two reports
+     */
+    public MetricsReporter(AccountMetrics metrics, PrintStream out, long intervalMillis) {
+        this.metrics = metrics;
+        this.out = out;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prints a report immediately
+     */
+    public void report() {
+        StringBuilder builder = new StringBuilder(512).append("Metrics at ").append(Instant.now()).append(System.lineSeparator());
+        out.print(metrics.appendTo(builder));
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+}
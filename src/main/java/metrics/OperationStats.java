@@ -0,0 +1,138 @@
+package metrics;
+
+import enums.OperationResult;
+import interfaces.OperationStatsMXBean;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters per result and latency histogram of one type of account operation. Counters are
+ * striped {@link LongAdder}s, so concurrent operations rarely write the same memory.
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+    private final LongAdder[] counters; // Operations per result, indexed by result ordinal
+    private final LatencyHistogram latency = new LatencyHistogram(); // Durations of the timed operations
+
+    public OperationStats() {
+        this.counters = new LongAdder[OperationResult.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an operation
+     * @param result The result of the operation
+     * @param nanos The duration of the operation, or a negative value if it was not timed
+     */
+    void record(OperationResult result, long nanos) {
+        counters[result.ordinal()].increment();
+        if (nanos >= 0) {
+            latency.record(nanos);
+        }
+    }
+
+    public long getCount(OperationResult result) {
+        return counters[result.ordinal()].sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCompleted() {
+        return getCount(OperationResult.COMPLETED);
+    }
+
+    @Override
+    public long getRejected() {
+        long rejected = 0;
+        for (OperationResult result : OperationResult.values()) {
+            if (result != OperationResult.COMPLETED) {
+                rejected += getCount(result);
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public long getInvalidAmount() {
+        return getCount(OperationResult.INVALID_AMOUNT);
+    }
+
+    @Override
+    public long getCurrencyMismatch() {
+        return getCount(OperationResult.CURRENCY_MISMATCH);
+    }
+
+    @Override
+    public long getInsufficientFunds() {
+        return getCount(OperationResult.INSUFFICIENT_FUNDS);
+    }
+
+    @Override
+    public long getTransferLimitExceeded() {
+        return getCount(OperationResult.TRANSFER_LIMIT_EXCEEDED);
+    }
+
+    @Override
+    public long getHourlyLimitExceeded() {
+        return getCount(OperationResult.HOURLY_LIMIT_EXCEEDED);
+    }
+
+    @Override
+    public long getDailyLimitExceeded() {
+        return getCount(OperationResult.DAILY_LIMIT_EXCEEDED);
+    }
+
+    @Override
+    public long getVelocityLimitExceeded() {
+        return getCount(OperationResult.VELOCITY_LIMIT_EXCEEDED);
+    }
+
+    @Override
+    public long getBalanceOverflow() {
+        return getCount(OperationResult.BALANCE_OVERFLOW);
+    }
+
+    @Override
+    public long getRateUnavailable() {
+        return getCount(OperationResult.RATE_UNAVAILABLE);
+    }
+
+    @Override
+    public long getTimedCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latency.getValueAtQuantile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latency.getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP999Micros() {
+        return latency.getValueAtQuantile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getLatencyMaxMicros() {
+        return latency.getMax() / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        latency.reset();
+    }
+
+}
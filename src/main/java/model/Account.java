@@ -1,24 +1,55 @@
 package model;
 
 import enums.Currency;
-import exception.InsufficientFundsException;
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountEventListener;
 import interfaces.AccountOperations;
+import interfaces.BalanceObserver;
+import interfaces.FxRateProvider;
+import interfaces.OperationLog;
+import interfaces.OperationMetrics;
+import util.DedupCache;
+import util.StripedLocks;
+
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Represents a bank account with deposit, withdrawal, and transferring functionality
+ * Represents a bank account with deposit, withdrawal, and transferring functionality.
+ * Balance changes are guarded by striped locks, so accounts can be operated from several threads.
  */
 public abstract class Account implements AccountOperations {
 
-    private final static Currency PREFERRED_CURRENCY = Currency.EUR;
+    private final static int LOCK_STRIPES = 1024;
+    private final static StripedLocks LOCKS = new StripedLocks(LOCK_STRIPES); // Locks shared by all the accounts
+
+    private static volatile OperationLog operationLog = OperationLog.NONE; // Receives every change for persistence
+
+    private static volatile AccountEventListener eventListener = AccountEventListener.NONE; // Receives the outcome of every operation
+
+    private static volatile OperationMetrics metrics = OperationMetrics.NONE; // Counts and times every operation
+
+    private static volatile FxRateProvider fxRateProvider = FxRateProvider.NONE; // Converts transfers between currencies
+
+    private static volatile BalanceObserver balanceObserver = BalanceObserver.NONE; // Told about every balance change
+
+    private final static int TRANSFER_REQUESTS = 1 << 16; // Default number of transfer request IDs remembered
+    private final static long TRANSFER_REQUEST_TTL_MILLIS = 10 * 60 * 1000; // Default time a transfer request ID is remembered
+
+    private static volatile DedupCache transferRequests = new DedupCache(TRANSFER_REQUESTS, TRANSFER_REQUEST_TTL_MILLIS); // Results of recent transfers by request ID
 
     protected final long id; // Unique bank account identifier
+    protected final Currency currency; // Currency of the balance, taken from the initial balance
     protected String ownerName; // Name of the owner
-    protected double balance; // Balance of the accounts
+    protected long balance; // Balance of the account in minor units of the currency (cents for EUR)
+    private volatile TransferLimits transferLimits; // Limits of this account, or null to use the limits of its type
+    private TransferWindow transferWindow; // Recent outgoing transfers, created on the first one counted against a limit; guarded by the lock
 
-    public Account(long id, String ownerName, double balance) {
+    public Account(long id, String ownerName, Money balance) {
         this.id = id;
+        this.currency = balance.getCurrency();
         this.ownerName = ownerName;
-        this.balance = balance;
+        this.balance = balance.getMinorUnits();
     }
 
     public long getId() {
@@ -30,44 +61,362 @@ public abstract class Account implements AccountOperations {
     }
 
     public void setOwnerName(String ownerName) {
-        this.ownerName = ownerName;
+        OperationLog log;
+        long sequence;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            log = operationLog;
+            sequence = log.logOwnerName(id, ownerName);
+            this.ownerName = ownerName;
+        } finally {
+            lock.unlock();
+        }
+        log.awaitDurable(sequence);
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Gets the limits applied to the outgoing transfers of the account
+     * @return The limits of this account, or the limits of its type if none are set
+     */
+    public TransferLimits getTransferLimits() {
+        TransferLimits limits = transferLimits;
+        return limits != null ? limits : getTypeTransferLimits();
+    }
+
+    /**
+     * Sets the limits applied to the outgoing transfers of this account only
+     * @param transferLimits The limits, or null to use the limits of the account type
+     */
+    public void setTransferLimits(TransferLimits transferLimits) {
+        this.transferLimits = transferLimits;
+    }
+
+    /**
+     * Gets the limits applied to the accounts of this type that have no limits of their own
+     * @return The limits of the account type
+     */
+    protected TransferLimits getTypeTransferLimits() {
+        return TransferLimits.NONE;
+    }
+
+    /**
+     * Gets the limit a transfer was rejected for, to describe the rejection
+     * @param reason The reason of the rejection
+     * @return The limit in minor units of the account currency, the number of transfers per minute
+     * for a velocity limit, or -1 if the reason is not a limit or the limit cannot be converted
+     */
+    public long getTransferLimit(OperationResult reason) {
+        TransferLimits limits = getTransferLimits();
+        long limit = switch (reason) {
+            case TRANSFER_LIMIT_EXCEEDED -> limits.getPerTransfer(currency);
+            case HOURLY_LIMIT_EXCEEDED -> limits.getHourly(currency);
+            case DAILY_LIMIT_EXCEEDED -> limits.getDaily(currency);
+            case VELOCITY_LIMIT_EXCEEDED -> limits.getPerMinute();
+            default -> -1;
+        };
+        return limit == Long.MAX_VALUE ? -1 : limit;
     }
 
-    public double getBalance() {
+    public Money getBalance() {
+        return Money.ofMinor(getBalanceMinorUnits(), currency);
+    }
+
+    /**
+     * Gets the balance as a plain number of minor units, without creating a Money instance
+     * @return The balance in minor units
+     */
+    public long getBalanceMinorUnits() {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return balance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the balance without taking the account lock. Only meant for bulk jobs that already
+     * hold it, for example through {@link #lockAll()}, or that read it again under the lock before
+     * relying on it.
+     * @return The balance in minor units
+     */
+    public long getBalanceMinorUnitsUnlocked() {
         return balance;
     }
 
-    public void setBalance(double balance) {
-        this.balance = balance;
+    public void setBalance(Money balance) {
+        checkCurrency(balance);
+        OperationLog log;
+        long sequence;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            log = operationLog;
+            sequence = log.logBalance(id, balance.getMinorUnits());
+            this.balance = balance.getMinorUnits();
+        } finally {
+            lock.unlock();
+        }
+        balanceObserver.onBalanceChanged(this);
+        log.awaitDurable(sequence);
+    }
+
+    /**
+     * Sets the balance without validating or logging it. Only meant for rebuilding the
+     * accounts from persisted state before they are shared with other threads.
+     * @param minorUnits The balance in minor units
+     */
+    public void restoreBalance(long minorUnits) {
+        this.balance = minorUnits;
+    }
+
+    /**
+     * Gets the lock that guards the balance of this account
+     * @return The lock of the account
+     */
+    public ReentrantLock getLock() {
+        return LOCKS.lockFor(id);
+    }
+
+    /**
+     * Gets the index of the lock stripe guarding an account. Accounts of the same stripe share a
+     * lock, so a thread that owns whole stripes never contends with other owners.
+     * @param id The account ID
+     * @return The stripe index, from 0 to {@link #getLockStripes()} - 1
+     */
+    public static int getLockStripe(long id) {
+        return LOCKS.stripeFor(id);
+    }
+
+    public static int getLockStripes() {
+        return LOCK_STRIPES;
+    }
+
+    /**
+     * Locks every account in the system, stopping all balance changes until {@link #unlockAll()}
+     * is called. Used to take consistent snapshots.
+     */
+    public static void lockAll() {
+        LOCKS.lockAll();
+    }
+
+    /**
+     * Releases the locks acquired by {@link #lockAll()}
+     */
+    public static void unlockAll() {
+        LOCKS.unlockAll();
+    }
+
+    /**
+     * Locks several stripes in ascending order, which is compatible with the other account locks
+     * @param stripes The stripe indexes, sorted in ascending order without duplicates
+     * @param count The number of stripes to be locked
+     */
+    static void lockStripes(int[] stripes, int count) {
+        LOCKS.lockStripes(stripes, count);
+    }
+
+    /**
+     * Releases the stripes acquired by {@link #lockStripes(int[], int)}
+     * @param stripes The stripe indexes that were locked
+     * @param count The number of stripes that were locked
+     */
+    static void unlockStripes(int[] stripes, int count) {
+        LOCKS.unlockStripes(stripes, count);
+    }
+
+    public static OperationLog getOperationLog() {
+        return operationLog;
+    }
+
+    public static void setOperationLog(OperationLog operationLog) {
+        Account.operationLog = operationLog == null ? OperationLog.NONE : operationLog;
+    }
+
+    public static AccountEventListener getEventListener() {
+        return eventListener;
+    }
+
+    public static void setEventListener(AccountEventListener eventListener) {
+        Account.eventListener = eventListener == null ? AccountEventListener.NONE : eventListener;
+    }
+
+    public static OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public static void setMetrics(OperationMetrics metrics) {
+        Account.metrics = metrics == null ? OperationMetrics.NONE : metrics;
+    }
+
+    public static FxRateProvider getFxRateProvider() {
+        return fxRateProvider;
+    }
+
+    public static void setFxRateProvider(FxRateProvider fxRateProvider) {
+        Account.fxRateProvider = fxRateProvider == null ? FxRateProvider.NONE : fxRateProvider;
+    }
+
+    public static DedupCache getTransferRequests() {
+        return transferRequests;
+    }
+
+    /**
+     * Sets the cache remembering the results of the transfers made with a request ID
+     * @param transferRequests The cache, or null for a new cache of the default size
+     */
+    public static void setTransferRequests(DedupCache transferRequests) {
+        Account.transferRequests = transferRequests == null ? new DedupCache(TRANSFER_REQUESTS, TRANSFER_REQUEST_TTL_MILLIS) : transferRequests;
+    }
+
+    public static BalanceObserver getBalanceObserver() {
+        return balanceObserver;
+    }
+
+    public static void setBalanceObserver(BalanceObserver balanceObserver) {
+        Account.balanceObserver = balanceObserver == null ? BalanceObserver.NONE : balanceObserver;
     }
 
     /**
      * Deposits an amount of money into the bank account
      * @param amount The amount of money to be deposited into the account
      */
-    public void deposit(double amount) {
+    public void deposit(Money amount) {
+        tryDeposit(amount);
+    }
+
+    /**
+     * Deposits an amount of money into the bank account, returning the result instead of throwing
+     * @param amount The amount of money to be deposited into the account
+     * @return The result of the deposit
+     */
+    public OperationResult tryDeposit(Money amount) {
+        if (amount.getCurrency() != currency) {
+            metrics.record(TransactionType.DEPOSIT, OperationResult.CURRENCY_MISMATCH, 0);
+            return reject(TransactionType.DEPOSIT, OperationResult.CURRENCY_MISMATCH, amount.getMinorUnits());
+        }
+        OperationResult result = depositMinorUnits(amount.getMinorUnits());
+        if (result == OperationResult.COMPLETED) {
+            awaitDurable();
+        }
+        return result;
+    }
+
+    /**
+     * Deposits an amount of minor units without throwing or allocating. The change is logged but
+     * this method does not wait for it to be durable.
+     * @param minorUnits The amount to be deposited, in minor units of the account currency
+     * @return The result of the deposit
+     */
+    public OperationResult depositMinorUnits(long minorUnits) {
+        OperationMetrics metrics = Account.metrics;
+        long startTime = metrics.startTime();
+        OperationResult result = executeDeposit(minorUnits);
+        metrics.record(TransactionType.DEPOSIT, result, startTime);
+        return result;
+    }
+
+    /**
+     * Applies a deposit and notifies the event listener, without recording metrics
+     * @param minorUnits The amount to be deposited, in minor units of the account currency
+     * @return The result of the deposit
+     */
+    protected OperationResult executeDeposit(long minorUnits) {
+        if (minorUnits <= 0) {
+            return reject(TransactionType.DEPOSIT, OperationResult.INVALID_AMOUNT, minorUnits);
+        }
+        long newBalance;
+        ReentrantLock lock = getLock();
+        lock.lock();
         try {
-            checkAmountIsPositive(amount); // Checks if the amount is positive
-            this.balance += amount;
-            System.out.println("Successful deposit of " + amount + PREFERRED_CURRENCY.toString());
-        } catch (IllegalArgumentException e) {
-            System.out.println(e.getMessage());
+            newBalance = this.balance + minorUnits;
+            if (newBalance >= 0) {
+                operationLog.logDeposit(id, minorUnits, newBalance);
+                this.balance = newBalance;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (newBalance < 0) {
+            return reject(TransactionType.DEPOSIT, OperationResult.BALANCE_OVERFLOW, minorUnits);
         }
+        balanceObserver.onBalanceChanged(this);
+        eventListener.onDeposit(this, minorUnits, newBalance);
+        return OperationResult.COMPLETED;
     }
 
     /**
      * Withdraws an amount of money from the bank account
      * @param amount The amount of money to be withdrawn
      */
-    public void withdraw(double amount) {
+    public void withdraw(Money amount) {
+        tryWithdraw(amount);
+    }
+
+    /**
+     * Withdraws an amount of money from the bank account, returning the result instead of throwing
+     * @param amount The amount of money to be withdrawn
+     * @return The result of the withdrawal
+     */
+    public OperationResult tryWithdraw(Money amount) {
+        if (amount.getCurrency() != currency) {
+            metrics.record(TransactionType.WITHDRAWAL, OperationResult.CURRENCY_MISMATCH, 0);
+            return reject(TransactionType.WITHDRAWAL, OperationResult.CURRENCY_MISMATCH, amount.getMinorUnits());
+        }
+        OperationResult result = withdrawMinorUnits(amount.getMinorUnits());
+        if (result == OperationResult.COMPLETED) {
+            awaitDurable();
+        }
+        return result;
+    }
+
+    /**
+     * Withdraws an amount of minor units without throwing or allocating. The change is logged but
+     * this method does not wait for it to be durable.
+     * @param minorUnits The amount to be withdrawn, in minor units of the account currency
+     * @return The result of the withdrawal
+     */
+    public OperationResult withdrawMinorUnits(long minorUnits) {
+        OperationMetrics metrics = Account.metrics;
+        long startTime = metrics.startTime();
+        OperationResult result = executeWithdrawal(minorUnits);
+        metrics.record(TransactionType.WITHDRAWAL, result, startTime);
+        return result;
+    }
+
+    /**
+     * Applies a withdrawal and notifies the event listener, without recording metrics
+     * @param minorUnits The amount to be withdrawn, in minor units of the account currency
+     * @return The result of the withdrawal
+     */
+    protected OperationResult executeWithdrawal(long minorUnits) {
+        if (minorUnits <= 0) {
+            return reject(TransactionType.WITHDRAWAL, OperationResult.INVALID_AMOUNT, minorUnits);
+        }
+        long newBalance;
+        ReentrantLock lock = getLock();
+        lock.lock();
         try {
-            checkAmountIsPositive(amount); // Check if the amount is positive
-            checkSufficientFunds(amount); // Check if the account has sufficient funds to operate
-            this.balance -= amount;
-            System.out.println("Successful withdrawal of " + amount + PREFERRED_CURRENCY.toString());
-        } catch (IllegalArgumentException | InsufficientFundsException e) {
-            System.out.println(e.getMessage());
+            newBalance = this.balance - minorUnits;
+            if (newBalance >= 0) {
+                operationLog.logWithdrawal(id, minorUnits, newBalance);
+                this.balance = newBalance;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (newBalance < 0) {
+            return reject(TransactionType.WITHDRAWAL, OperationResult.INSUFFICIENT_FUNDS, minorUnits);
         }
+        balanceObserver.onBalanceChanged(this);
+        eventListener.onWithdrawal(this, minorUnits, newBalance);
+        return OperationResult.COMPLETED;
     }
 
     /**
@@ -75,36 +424,380 @@ public abstract class Account implements AccountOperations {
      * @param amount The amount to be transferred
      * @param account The account to be deposited to
      */
-    public void transfer(double amount, Account account) {
+    public void transfer(Money amount, Account account) {
+        tryTransfer(amount, account);
+    }
+
+    /**
+     * Transfers an amount of money to another account, returning the result instead of throwing
+     * @param amount The amount to be transferred
+     * @param account The account to be deposited to
+     * @return The result of the transfer
+     */
+    public OperationResult tryTransfer(Money amount, Account account) {
+        if (amount.getCurrency() != currency) {
+            metrics.record(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, 0);
+            return reject(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, amount.getMinorUnits());
+        }
+        OperationResult result = transferMinorUnits(amount.getMinorUnits(), account);
+        if (result == OperationResult.COMPLETED) {
+            awaitDurable();
+        }
+        return result;
+    }
+
+    /**
+     * Transfers an amount of money to another account at most once per request ID. A retry with
+     * the same ID, while the ID is remembered, returns the result of the first attempt without
+     * running the transfer again, even if the amount or the accounts differ.
+     * @param amount The amount to be transferred
+     * @param account The account to be deposited to
+     * @param requestId The ID chosen by the client for this transfer, reused for its retries
+     * @return The result of the transfer, or of its first attempt
+     */
+    public OperationResult tryTransfer(Money amount, Account account, long requestId) {
+        if (amount.getCurrency() != currency) {
+            metrics.record(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, 0);
+            return reject(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, amount.getMinorUnits());
+        }
+        OperationResult result = transferMinorUnits(amount.getMinorUnits(), account, requestId);
+        if (result == OperationResult.COMPLETED) {
+            awaitDurable(); // A retry may return before the first attempt waited for the log
+        }
+        return result;
+    }
+
+    /**
+     * Transfers an amount of minor units to another account at most once per request ID, without
+     * throwing or allocating. The change is logged but this method does not wait for it to be durable.
+     * @param minorUnits The amount to be transferred, in minor units of the account currency
+     * @param account The account to be deposited to
+     * @param requestId The ID chosen by the client for this transfer, reused for its retries
+     * @return The result of the transfer, or of its first attempt, or {@link OperationResult#RETRY_LATER}
+     * if too many recent requests are remembered to guarantee this one runs once
+     * @see #tryTransfer(Money, Account, long)
+     */
+    public OperationResult transferMinorUnits(long minorUnits, Account account, long requestId) {
+        DedupCache requests = transferRequests;
+        int previous = requests.begin(requestId);
+        if (previous == DedupCache.BUSY) {
+            // Running the transfer now could not be remembered, so a retry might apply it twice
+            metrics.record(TransactionType.TRANSFER_OUT, OperationResult.RETRY_LATER, 0);
+            return reject(TransactionType.TRANSFER_OUT, OperationResult.RETRY_LATER, minorUnits);
+        }
+        if (previous != DedupCache.CLAIMED) {
+            return OperationResult.fromOrdinal(previous);
+        }
+        OperationResult result;
         try {
-            checkAmountIsPositive(amount); // Check if the amount is positive
-            checkSufficientFunds(amount); // Check if the account has sufficient funds to operate
-            this.balance -= amount;
-            account.deposit(amount);
-        } catch (IllegalArgumentException | InsufficientFundsException e) {
-            System.out.println(e.getMessage());
+            result = transferMinorUnits(minorUnits, account);
+        } catch (RuntimeException | Error e) {
+            requests.abandon(requestId);
+            throw e;
         }
+        requests.complete(requestId, result.ordinal());
+        return result;
     }
 
     /**
-     * Checks if the amount is positive and different from 0
-     * @param amount The amount to be validated
-     * @throws IllegalArgumentException Exception thrown if the amount is negative or 0
+     * Transfers an amount of minor units to another account without throwing or allocating.
+     * Both accounts are locked in a fixed order, so the funds check and the balance updates
+     * happen atomically. If the other account has a different currency, the amount it receives
+     * is converted with the current exchange rate. The change is logged but this method does
+     * not wait for it to be durable, so batch callers can wait once for many transfers.
+     * @param minorUnits The amount to be transferred, in minor units of the account currency
+     * @param account The account to be deposited to
+     * @return The result of the transfer
+     */
+    public OperationResult transferMinorUnits(long minorUnits, Account account) {
+        OperationMetrics metrics = Account.metrics;
+        long startTime = metrics.startTime();
+        OperationResult result = executeTransfer(minorUnits, account);
+        metrics.record(TransactionType.TRANSFER_OUT, result, startTime);
+        return result;
+    }
+
+    /**
+     * Applies a transfer and notifies the event listener, without recording metrics
+     * @param minorUnits The amount to be transferred, in minor units of the account currency
+     * @param account The account to be deposited to
+     * @return The result of the transfer
+     */
+    protected OperationResult executeTransfer(long minorUnits, Account account) {
+        long convertedUnits = account.currency == currency ? minorUnits : fxRateProvider.convert(minorUnits, currency, account.currency);
+        OperationResult allowed = checkTransfer(minorUnits, convertedUnits);
+        if (allowed != OperationResult.COMPLETED) {
+            return reject(TransactionType.TRANSFER_OUT, allowed, minorUnits);
+        }
+        OperationResult result = OperationResult.COMPLETED;
+        long debited;
+        long credited = 0;
+        LOCKS.lockBoth(this.id, account.id);
+        try {
+            debited = this.balance - minorUnits;
+            if (debited < 0) {
+                result = OperationResult.INSUFFICIENT_FUNDS;
+            } else {
+                credited = (account == this ? debited : account.balance) + convertedUnits;
+                long epochNanos = TransactionJournal.currentEpochNanos();
+                if (credited < 0) {
+                    result = OperationResult.BALANCE_OVERFLOW;
+                } else if ((result = countTransfer(minorUnits, epochNanos)) == OperationResult.COMPLETED) {
+                    operationLog.logTransfer(this.id, account.id, minorUnits, debited, credited, epochNanos);
+                    this.balance = debited;
+                    account.balance = credited;
+                    recordTransfer(minorUnits, account, epochNanos);
+                }
+            }
+        } finally {
+            LOCKS.unlockBoth(this.id, account.id);
+        }
+        if (result != OperationResult.COMPLETED) {
+            return reject(TransactionType.TRANSFER_OUT, result, minorUnits);
+        }
+        BalanceObserver observer = balanceObserver;
+        observer.onBalanceChanged(this);
+        observer.onBalanceChanged(account);
+        eventListener.onTransfer(this, account, minorUnits, debited, credited);
+        return result;
+    }
+
+    /**
+     * Applies the first phase of a transfer to an account owned by another thread: checks the
+     * transfer and debits this account, locking only this one. The money is then in flight until
+     * the owner of the other account calls {@link #creditTransfer}, or {@link #refundTransfer} is
+     * called here if the credit fails. Both phases are logged, so recovery completes a transfer
+     * interrupted in between. The change is logged but this method does not wait for it to be durable.
+     * @param minorUnits The amount to be debited, in minor units of the account currency
+     * @param convertedUnits The amount to be credited, as converted by the caller to the other account currency
+     * @param account The account to be credited
+     * @param epochNanos The time of the transfer, which must be unique among the transfers in flight
+     * @return The balance of this account after the debit, or -1 minus the ordinal of the result if
+     * the debit is rejected, so the balance the transfer left is known without allocating
+     */
+    public long debitTransfer(long minorUnits, long convertedUnits, Account account, long epochNanos) {
+        OperationMetrics metrics = Account.metrics;
+        long startTime = metrics.startTime();
+        long debited = executeDebit(minorUnits, convertedUnits, account, epochNanos);
+        metrics.record(TransactionType.TRANSFER_OUT, debited < 0 ? OperationResult.fromOrdinal((int) (-1 - debited)) : OperationResult.COMPLETED, startTime);
+        return debited;
+    }
+
+    private long executeDebit(long minorUnits, long convertedUnits, Account account, long epochNanos) {
+        OperationResult result = checkTransfer(minorUnits, convertedUnits);
+        if (result != OperationResult.COMPLETED) {
+            return -1 - reject(TransactionType.TRANSFER_OUT, result, minorUnits).ordinal();
+        }
+        long debited;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            debited = this.balance - minorUnits;
+            if (debited < 0) {
+                result = OperationResult.INSUFFICIENT_FUNDS;
+            } else if ((result = countTransfer(minorUnits, epochNanos)) == OperationResult.COMPLETED) {
+                operationLog.logTransferDebit(id, account.id, minorUnits, convertedUnits, debited, epochNanos);
+                this.balance = debited;
+                recordTransfer(minorUnits, account, epochNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (result != OperationResult.COMPLETED) {
+            return -1 - reject(TransactionType.TRANSFER_OUT, result, minorUnits).ordinal();
+        }
+        balanceObserver.onBalanceChanged(this);
+        return debited;
+    }
+
+    /**
+     * Applies the second phase of a transfer started by {@link #debitTransfer}, crediting this
+     * account and notifying the event listener of the whole transfer. Nothing is changed if the
+     * credit would overflow the balance, and the caller must then refund the source account.
+     * @param from The debited account
+     * @param minorUnits The debited amount, in minor units of the source account currency
+     * @param convertedUnits The amount to be credited, in minor units of this account currency
+     * @param fromBalanceAfter The balance of the source account after the debit
+     * @param epochNanos The time given to the debit
+     * @return The result of the credit, either completed or a balance overflow
+     */
+    public OperationResult creditTransfer(Account from, long minorUnits, long convertedUnits, long fromBalanceAfter, long epochNanos) {
+        long credited;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            credited = this.balance + convertedUnits;
+            if (credited >= 0) {
+                operationLog.logTransferCredit(id, from.id, convertedUnits, credited, epochNanos);
+                this.balance = credited;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (credited < 0) {
+            return OperationResult.BALANCE_OVERFLOW;
+        }
+        balanceObserver.onBalanceChanged(this);
+        eventListener.onTransfer(from, this, minorUnits, fromBalanceAfter, credited);
+        return OperationResult.COMPLETED;
+    }
+
+    /**
+     * Returns the money of a transfer whose credit failed to this account, which was debited by
+     * {@link #debitTransfer}, and notifies the event listener of the rejection. The transfer is also
+     * taken out of the limit windows and the history it was recorded in at the debit.
+     * @param minorUnits The debited amount, in minor units of the account currency
+     * @param toId The ID of the account the credit failed to
+     * @param reason The reason the credit failed
+     * @param epochNanos The time given to the debit
+     * @return The reason, so callers can return it directly
      */
-    private void checkAmountIsPositive(double amount) throws IllegalArgumentException {
-        if (amount <= 0) {
-            throw new IllegalArgumentException("Amount must be greater than 0.");
+    public OperationResult refundTransfer(long minorUnits, long toId, OperationResult reason, long epochNanos) {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            if (transferWindow != null) {
+                transferWindow.uncount(minorUnits, epochNanos);
+            }
+            cancelTransfer(minorUnits, toId, epochNanos);
+            // The amount was debited moments before, so only deposits near the maximum balance can make it overflow
+            long refunded = this.balance + minorUnits;
+            if (refunded < 0) {
+                refunded = Long.MAX_VALUE;
+            }
+            operationLog.logTransferCredit(id, id, minorUnits, refunded, epochNanos);
+            this.balance = refunded;
+        } finally {
+            lock.unlock();
+        }
+        balanceObserver.onBalanceChanged(this);
+        return reject(TransactionType.TRANSFER_OUT, reason, minorUnits);
+    }
+
+    /**
+     * Checks a transfer before any account is locked. Subclasses add the rules of their type of account.
+     * @param minorUnits The amount to be debited, in minor units of the account currency
+     * @param convertedUnits The amount to be credited, in minor units of the other account currency,
+     * or -1 if there is no exchange rate
+     * @return Completed if the transfer can be applied, otherwise the reason it is rejected
+     */
+    protected OperationResult checkTransfer(long minorUnits, long convertedUnits) {
+        if (minorUnits <= 0 || convertedUnits == 0) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        long limit = getTransferLimits().getPerTransfer(currency);
+        if (convertedUnits < 0 || limit < 0) {
+            return OperationResult.RATE_UNAVAILABLE;
+        }
+        return minorUnits > limit ? OperationResult.TRANSFER_LIMIT_EXCEEDED : OperationResult.COMPLETED;
+    }
+
+    /**
+     * Checks a transfer against the hourly, daily and per-minute limits of the account and counts
+     * it if none is exceeded. Must be called while holding the account lock, once every other check
+     * of the transfer has passed, so only applied transfers are counted.
+     * @param minorUnits The amount to be debited, in minor units of the account currency
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     * @return Completed if the transfer was counted, otherwise the reason it is rejected
+     */
+    private OperationResult countTransfer(long minorUnits, long epochNanos) {
+        TransferLimits limits = getTransferLimits();
+        if (!limits.hasWindows()) {
+            return OperationResult.COMPLETED;
+        }
+        long hourlyLimit = limits.getHourly(currency);
+        long dailyLimit = limits.getDaily(currency);
+        if (hourlyLimit < 0 || dailyLimit < 0) {
+            return OperationResult.RATE_UNAVAILABLE;
+        }
+        if (transferWindow == null) {
+            transferWindow = new TransferWindow();
         }
+        return transferWindow.admit(minorUnits, epochNanos, hourlyLimit, dailyLimit, limits.getPerMinute());
+    }
+
+    /**
+     * Checks transfers made at once against the hourly, daily and per-minute limits of the account
+     * without counting them. Must be called while holding the account lock.
+     * @param minorUnits The total amount to be debited, in minor units of the account currency
+     * @param transfers The number of transfers
+     * @param epochNanos The time of the transfers in nanoseconds since the epoch
+     * @return Completed if the transfers can be counted, otherwise the reason they are rejected
+     */
+    OperationResult checkTransferWindows(long minorUnits, int transfers, long epochNanos) {
+        TransferLimits limits = getTransferLimits();
+        if (!limits.hasWindows()) {
+            return OperationResult.COMPLETED;
+        }
+        long hourlyLimit = limits.getHourly(currency);
+        long dailyLimit = limits.getDaily(currency);
+        if (hourlyLimit < 0 || dailyLimit < 0) {
+            return OperationResult.RATE_UNAVAILABLE;
+        }
+        if (transferWindow == null) {
+            transferWindow = new TransferWindow();
+        }
+        return transferWindow.check(minorUnits, transfers, epochNanos, hourlyLimit, dailyLimit, limits.getPerMinute());
+    }
+
+    /**
+     * Counts transfers that passed {@link #checkTransferWindows} while the lock was held
+     * @param minorUnits The total amount debited, in minor units of the account currency
+     * @param transfers The number of transfers
+     * @param epochNanos The time of the transfers in nanoseconds since the epoch
+     */
+    void countTransferWindows(long minorUnits, int transfers, long epochNanos) {
+        if (transferWindow != null) {
+            transferWindow.count(minorUnits, transfers, epochNanos);
+        }
+    }
+
+    /**
+     * Hook called after a successful transfer while both accounts are still locked
+     * @param minorUnits The transferred amount in minor units
+     * @param account The account the money was deposited to
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     */
+    protected void recordTransfer(long minorUnits, Account account, long epochNanos) {
+    }
+
+    /**
+     * Hook called when a transfer saved by {@link #recordTransfer} is refunded, while the account is locked
+     * @param minorUnits The transferred amount in minor units
+     * @param toId The ID of the account the credit failed to
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     */
+    protected void cancelTransfer(long minorUnits, long toId, long epochNanos) {
+    }
+
+    /**
+     * Notifies the event listener of a rejected operation. Must be called once the locks are released.
+     * @param type The type of the operation
+     * @param reason The reason of the rejection
+     * @param minorUnits The requested amount in minor units
+     * @return The reason, so callers can return it directly
+     */
+    protected OperationResult reject(TransactionType type, OperationResult reason, long minorUnits) {
+        eventListener.onRejected(this, type, reason, minorUnits);
+        return reason;
+    }
+
+    /**
+     * Waits until the last logged change is durable
+     */
+    protected static void awaitDurable() {
+        OperationLog log = operationLog;
+        log.awaitDurable(log.getLastSequence());
     }
 
     /**
-     * Checks if th account has sufficient funds to perform an operation
+     * Checks if an amount is expressed in the currency of the account
      * @param amount The amount to be validated
-     * @throws InsufficientFundsException Exception thrown if the amount is greater than the account balance
+     * @throws IllegalArgumentException Exception thrown if the currency is different
      */
-    private void checkSufficientFunds(double amount) throws InsufficientFundsException {
-        if (amount > balance) {
-            throw new InsufficientFundsException("The operation cannot be completed because of insufficient funds.");
+    private void checkCurrency(Money amount) throws IllegalArgumentException {
+        if (amount.getCurrency() != currency) {
+            throw new IllegalArgumentException("Amount must be expressed in " + currency + ".");
         }
     }
 
@@ -112,14 +805,14 @@ public abstract class Account implements AccountOperations {
      * Prints a simple message displaying the balance for the account in the console
      */
     public void printBalance() {
-        System.out.println("The balance for this account is: " + this.balance + PREFERRED_CURRENCY.toString());
+        System.out.println("The balance for this account is: " + getBalance());
     }
 
     /**
      * Prints the bank account details in the console
      */
     public void printDetails() {
-        System.out.println("Account ID: " + this.id + ", Owner: " + this.ownerName + ", Balance: " + balance + PREFERRED_CURRENCY.toString());
+        System.out.println("Account ID: " + this.id + ", Owner: " + this.ownerName + ", Balance: " + getBalance());
     }
 
 }
@@ -1,51 +1,131 @@
 package model;
 
-import enums.Currency;
+import enums.TransactionType;
 
 import java.time.Instant;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a business account. It stores every transaction detail after the operation
  */
 public class BusinessAccount extends Account {
 
-    private final static Currency PREFERRED_CURRENCY = Currency.EUR;
+    private static volatile TransferLimits defaultTransferLimits = TransferLimits.NONE; // Limits of the business accounts without their own
 
-    private HashMap<Date, Double> transactionHistory;
+    private final TransactionJournal transactionHistory; // Append-only history of the transfers
 
-    public BusinessAccount(long id, String ownerName, double balance) {
+    public BusinessAccount(long id, String ownerName, Money balance) {
         super(id, ownerName, balance);
-        this.transactionHistory = new HashMap<>();
+        this.transactionHistory = new TransactionJournal();
     }
 
-    public HashMap<Date, Double> getTransactionHistory() {
+    /**
+     * Gets the transfer history. The journal is guarded by the account lock, so it must only be
+     * read while holding {@link #getLock()} if other threads may be transferring from the account.
+     * Readers should prefer {@link #historyCursor}, which only holds the lock to open the cursor.
+     * @return The transfer history
+     */
+    public TransactionJournal getTransactionHistory() {
         return transactionHistory;
     }
 
-    public void setTransactionHistory(HashMap<Date, Double> transactionHistory) {
-        this.transactionHistory = transactionHistory;
+    /**
+     * Gets the limits applied to the business accounts that have no limits of their own
+     * @return The default limits of business accounts
+     */
+    public static TransferLimits getDefaultTransferLimits() {
+        return defaultTransferLimits;
+    }
+
+    /**
+     * Sets the limits applied to the business accounts that have no limits of their own
+     * @param transferLimits The limits, or null to remove every limit
+     */
+    public static void setDefaultTransferLimits(TransferLimits transferLimits) {
+        defaultTransferLimits = transferLimits == null ? TransferLimits.NONE : transferLimits;
+    }
+
+    @Override
+    protected TransferLimits getTypeTransferLimits() {
+        return defaultTransferLimits;
+    }
+
+    /**
+     * Saves a successful transfer in the transfer history
+     * @param minorUnits The transferred amount in minor units
+     * @param account The account the money was deposited to
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     */
+    @Override
+    protected void recordTransfer(long minorUnits, Account account, long epochNanos) {
+        transactionHistory.append(epochNanos, minorUnits, account.getId(), TransactionType.TRANSFER_OUT);
     }
 
     /**
-     * Transfers a certain amount of money from the account to another one and
-     * saves it in the transfer history
-     * @param amount The amount to be transferred
-     * @param account The account to be deposited to
+     * Removes a refunded transfer from the transfer history
+     * @param minorUnits The transferred amount in minor units
+     * @param toId The ID of the account the credit failed to
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
      */
     @Override
-    public void transfer(double amount, Account account) {
-        super.transfer(amount, account);
-        transactionHistory.put(Date.from(Instant.now()), amount);
+    protected void cancelTransfer(long minorUnits, long toId, long epochNanos) {
+        transactionHistory.remove(epochNanos, minorUnits, toId, TransactionType.TRANSFER_OUT);
+    }
+
+    /**
+     * Opens a cursor over a page of the transfers made in a time range. The lock is only held while
+     * opening it, so reading a long history does not block transfers from the account.
+     * @param fromEpochNanos The start of the range in nanoseconds since the epoch, inclusive
+     * @param toEpochNanos The end of the range in nanoseconds since the epoch, exclusive
+     * @param first The history index to start from, 0 for the first page
+     * @param pageSize The maximum number of transfers of the page
+     * @return The cursor
+     */
+    public TransactionJournal.Cursor historyCursor(long fromEpochNanos, long toEpochNanos, int first, int pageSize) {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return transactionHistory.cursor(fromEpochNanos, toEpochNanos, first, pageSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a cursor over every transfer made in a time range
+     * @param fromEpochNanos The start of the range in nanoseconds since the epoch, inclusive
+     * @param toEpochNanos The end of the range in nanoseconds since the epoch, exclusive
+     * @return The cursor
+     */
+    public TransactionJournal.Cursor historyCursor(long fromEpochNanos, long toEpochNanos) {
+        return historyCursor(fromEpochNanos, toEpochNanos, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a spliterator over the transfers made in a time range, opened under the account lock
+     * @param fromEpochNanos The start of the range in nanoseconds since the epoch, inclusive
+     * @param toEpochNanos The end of the range in nanoseconds since the epoch, exclusive
+     * @return The spliterator
+     */
+    public Spliterator<TransactionJournal.Entry> historySpliterator(long fromEpochNanos, long toEpochNanos) {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return transactionHistory.spliterator(fromEpochNanos, toEpochNanos);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Prints the transfer history of the account
+     * Prints the transfer history of the account, from the oldest to the newest transfer
      */
     public void printTransferHistory() {
-        for (Date date : transactionHistory.keySet()) {
-            System.out.println(date + " - Transfer of: " + transactionHistory.get(date) + PREFERRED_CURRENCY.toString());
+        TransactionJournal.Cursor cursor = historyCursor(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (cursor.next()) {
+            System.out.println(Instant.ofEpochSecond(0, cursor.getTimestamp()) + " - Transfer of: "
+                    + Money.format(cursor.getAmount(), currency) + " to account " + cursor.getCounterpartyId());
         }
     }
 
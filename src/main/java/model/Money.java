@@ -0,0 +1,168 @@
+package model;
+
+import enums.Currency;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * An immutable amount of money in a given currency. The amount is stored as a whole number of
+ * minor units (cents for EUR), so every operation is exact.
+ */
+public final class Money implements Comparable<Money> {
+
+    private final long minorUnits; // The amount expressed in minor units of the currency
+    private final Currency currency; // The currency of the amount
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = Objects.requireNonNull(currency, "Currency must not be null.");
+    }
+
+    /**
+     * Creates an amount from a number of minor units
+     * @param minorUnits The amount in minor units (1050 would be 10.50 EUR)
+     * @param currency The currency of the amount
+     * @return The amount of money
+     */
+    public static Money ofMinor(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * Creates an amount from a whole number of major units
+     * @param majorUnits The amount in major units (10 would be 10.00 EUR)
+     * @param currency The currency of the amount
+     * @return The amount of money
+     * @throws ArithmeticException Exception thrown if the amount does not fit in a long of minor units
+     */
+    public static Money ofMajor(long majorUnits, Currency currency) throws ArithmeticException {
+        return new Money(Math.multiplyExact(majorUnits, pow10(currency.getMinorDigits())), currency);
+    }
+
+    /**
+     * Creates an amount from a decimal number of major units
+     * @param amount The amount in major units (10.5 would be 10.50 EUR)
+     * @param currency The currency of the amount
+     * @return The amount of money
+     * @throws ArithmeticException Exception thrown if the amount has more decimals than the currency allows
+     * or does not fit in a long of minor units
+     */
+    public static Money of(BigDecimal amount, Currency currency) throws ArithmeticException {
+        return new Money(amount.setScale(currency.getMinorDigits(), RoundingMode.UNNECESSARY).unscaledValue().longValueExact(), currency);
+    }
+
+    /**
+     * Parses an amount written in major units
+     * @param amount The text to be parsed, such as "10.50"
+     * @param currency The currency of the amount
+     * @return The amount of money
+     * @throws NumberFormatException Exception thrown if the text is not a number
+     * @throws ArithmeticException Exception thrown if the amount has more decimals than the currency allows
+     */
+    public static Money parse(String amount, Currency currency) throws NumberFormatException, ArithmeticException {
+        return of(new BigDecimal(amount.trim()), currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    /**
+     * Adds another amount of the same currency
+     * @param other The amount to be added
+     * @return The sum
+     * @throws IllegalArgumentException Exception thrown if the currencies are different
+     * @throws ArithmeticException Exception thrown if the sum overflows
+     */
+    public Money plus(Money other) throws IllegalArgumentException, ArithmeticException {
+        checkSameCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * Subtracts another amount of the same currency
+     * @param other The amount to be subtracted
+     * @return The difference
+     * @throws IllegalArgumentException Exception thrown if the currencies are different
+     * @throws ArithmeticException Exception thrown if the difference overflows
+     */
+    public Money minus(Money other) throws IllegalArgumentException, ArithmeticException {
+        checkSameCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * Gets the amount as a decimal number of major units
+     * @return The amount in major units
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getMinorDigits());
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money money)) return false;
+        return minorUnits == money.minorUnits && currency == money.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency.hashCode();
+    }
+
+    /**
+     * Formats the amount in major units followed by the currency, such as "10.50EUR"
+     * @return The formatted amount
+     */
+    @Override
+    public String toString() {
+        return format(minorUnits, currency);
+    }
+
+    /**
+     * Formats an amount of minor units without creating a Money instance
+     * @param minorUnits The amount in minor units
+     * @param currency The currency of the amount
+     * @return The formatted amount
+     */
+    public static String format(long minorUnits, Currency currency) {
+        return BigDecimal.valueOf(minorUnits, currency.getMinorDigits()).toPlainString() + currency.toString();
+    }
+
+    /**
+     * Checks if another amount has the same currency as this one
+     * @param other The amount to be validated
+     * @throws IllegalArgumentException Exception thrown if the currencies are different
+     */
+    private void checkSameCurrency(Money other) throws IllegalArgumentException {
+        if (currency != other.currency) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency + ".");
+        }
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,350 @@
+package model;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountEventListener;
+import interfaces.BalanceObserver;
+import interfaces.FxRateProvider;
+import interfaces.OperationMetrics;
+
+import java.util.Arrays;
+
+/**
+ * A set of transfers applied all or none, such as a payroll run debiting one account and
+ * crediting hundreds. Every leg is checked before anything changes: its amount and per-transfer
+ * limit first, then, with every participant locked, the funds of each leg in order (a leg can
+ * spend money credited by an earlier one) and the hourly, daily and per-minute limits of each
+ * debited account against the total of its legs. If any check fails, no balance changes.
+ * <p>
+ * The lock stripes of the participants are taken once, in ascending order like every other
+ * account lock, so a transaction never deadlocks with transfers or other transactions, and its
+ * legs are logged as one group that recovery applies all or none of. Each leg is recorded in the
+ * history of its debited business account and reported to the event listener as a transfer.
+ * <p>
+ * A transaction is not thread-safe. It keeps its arrays between runs, so a caller can
+ * {@link #clear()} it and reuse it without allocating.
+ */
+public class MultiLegTransaction {
+
+    private final static int INITIAL_LEGS = 16;
+
+    private Account[] froms; // Debited account of each leg
+    private Account[] tos; // Credited account of each leg
+    private long[] amounts; // Debited amount of each leg, in minor units of the debited account
+    private long[] convertedAmounts; // Credited amount of each leg, in minor units of the credited account
+    private long[] fromBalancesAfter; // Balance of the debited account after each leg
+    private long[] toBalancesAfter; // Balance of the credited account after each leg
+    private long[] fromIds; // ID of the debited account of each leg, for the log
+    private long[] toIds; // ID of the credited account of each leg, for the log
+    private int[] fromIndexes; // Index of the debited account of each leg among the participants
+    private int[] toIndexes; // Index of the credited account of each leg among the participants
+    private int legs; // Number of legs
+    private int failedLeg = -1; // Index of the leg that made the last run fail, or -1
+
+    private long[] participantIds; // IDs of the accounts taking part, without duplicates
+    private Account[] participants; // Account of each participant ID
+    private int[] slots; // Open addressing table of participant indexes by ID, -1 where empty
+    private long[] balances; // Balance of each participant while the legs are applied
+    private long[] debits; // Total debited from each participant
+    private int[] debitCounts; // Number of legs debiting each participant
+    private int[] stripes; // Lock stripes of the participants, sorted without duplicates
+    private final long[] stripeBits = new long[(Account.getLockStripes() + 63) / 64]; // Lock stripes of the participants as a bit set
+
+    public MultiLegTransaction() {
+        this(INITIAL_LEGS);
+    }
+
+    /**
+     * Creates a transaction sized for a number of legs, so adding them does not grow its arrays
+     * @param expectedLegs The expected number of legs
+     */
+    public MultiLegTransaction(int expectedLegs) {
+        int capacity = Math.max(expectedLegs, 1);
+        this.froms = new Account[capacity];
+        this.tos = new Account[capacity];
+        this.amounts = new long[capacity];
+        this.convertedAmounts = new long[capacity];
+        this.fromBalancesAfter = new long[capacity];
+        this.toBalancesAfter = new long[capacity];
+        this.fromIds = new long[capacity];
+        this.toIds = new long[capacity];
+        this.fromIndexes = new int[capacity];
+        this.toIndexes = new int[capacity];
+        this.participantIds = new long[capacity * 2];
+        this.participants = new Account[capacity * 2];
+        this.balances = new long[capacity * 2];
+        this.debits = new long[capacity * 2];
+        this.debitCounts = new int[capacity * 2];
+        this.stripes = new int[capacity * 2];
+        this.slots = new int[Integer.highestOneBit(capacity * 4 - 1) << 1];
+    }
+
+    /**
+     * Adds a leg to the transaction
+     * @param from The account to be debited
+     * @param to The account to be credited
+     * @param amount The amount to be transferred, in the currency of the debited account
+     * @return This transaction
+     * @throws IllegalArgumentException Exception thrown if the amount is not in the currency of the debited account
+     */
+    public MultiLegTransaction addLeg(Account from, Account to, Money amount) throws IllegalArgumentException {
+        if (amount.getCurrency() != from.getCurrency()) {
+            throw new IllegalArgumentException("Amount must be expressed in " + from.getCurrency() + ".");
+        }
+        return addLeg(from, to, amount.getMinorUnits());
+    }
+
+    /**
+     * Adds a leg to the transaction
+     * @param from The account to be debited
+     * @param to The account to be credited
+     * @param minorUnits The amount to be transferred, in minor units of the debited account currency
+     * @return This transaction
+     * @throws NullPointerException Exception thrown if an account is null
+     */
+    public MultiLegTransaction addLeg(Account from, Account to, long minorUnits) throws NullPointerException {
+        if (from == null || to == null) {
+            throw new NullPointerException("Both accounts of a leg are required.");
+        }
+        if (legs == froms.length) {
+            grow();
+        }
+        froms[legs] = from;
+        tos[legs] = to;
+        amounts[legs] = minorUnits;
+        legs++;
+        return this;
+    }
+
+    private void grow() {
+        int capacity = froms.length * 2;
+        froms = Arrays.copyOf(froms, capacity);
+        tos = Arrays.copyOf(tos, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        convertedAmounts = new long[capacity];
+        fromBalancesAfter = new long[capacity];
+        toBalancesAfter = new long[capacity];
+        fromIds = new long[capacity];
+        toIds = new long[capacity];
+        fromIndexes = new int[capacity];
+        toIndexes = new int[capacity];
+        participantIds = new long[capacity * 2];
+        participants = new Account[capacity * 2];
+        balances = new long[capacity * 2];
+        debits = new long[capacity * 2];
+        debitCounts = new int[capacity * 2];
+        stripes = new int[capacity * 2];
+        slots = new int[Integer.highestOneBit(capacity * 4 - 1) << 1];
+    }
+
+    public int getLegs() {
+        return legs;
+    }
+
+    /**
+     * Gets the leg that made the last run fail
+     * @return The index of the leg in the order they were added, or -1 if the last run completed
+     */
+    public int getFailedLeg() {
+        return failedLeg;
+    }
+
+    /**
+     * Removes every leg, keeping the arrays for the next legs
+     */
+    public void clear() {
+        Arrays.fill(froms, 0, legs, null);
+        Arrays.fill(tos, 0, legs, null);
+        Arrays.fill(participants, 0, Math.min(2 * legs, participants.length), null);
+        legs = 0;
+        failedLeg = -1;
+    }
+
+    /**
+     * Applies every leg or none, and waits until the change is durable
+     * @return Completed if every leg was applied, otherwise the reason the failed leg was rejected
+     */
+    public OperationResult tryExecute() {
+        OperationResult result = execute();
+        if (result == OperationResult.COMPLETED) {
+            Account.awaitDurable();
+        }
+        return result;
+    }
+
+    /**
+     * Applies every leg or none, without throwing. The change is logged but this method does not
+     * wait for it to be durable, so batch callers can wait once for many transactions. A
+     * transaction without legs completes without changing anything.
+     * @return Completed if every leg was applied, otherwise the reason the failed leg was rejected
+     */
+    public OperationResult execute() {
+        OperationMetrics metrics = Account.getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = apply();
+        if (result != OperationResult.COMPLETED) {
+            metrics.record(TransactionType.TRANSFER_OUT, result, startTime);
+        } else if (legs > 0) {
+            // Only the first leg is timed, since the others ran in the same time
+            metrics.record(TransactionType.TRANSFER_OUT, result, startTime);
+            for (int i = 1; i < legs; i++) {
+                metrics.record(TransactionType.TRANSFER_OUT, result, 0);
+            }
+        }
+        return result;
+    }
+
+    private OperationResult apply() {
+        failedLeg = -1;
+        if (legs == 0) {
+            return OperationResult.COMPLETED;
+        }
+        FxRateProvider fxRates = Account.getFxRateProvider();
+        for (int i = 0; i < legs; i++) {
+            Account from = froms[i];
+            long converted = tos[i].currency == from.currency ? amounts[i] : fxRates.convert(amounts[i], from.currency, tos[i].currency);
+            OperationResult allowed = from.checkTransfer(amounts[i], converted);
+            if (allowed != OperationResult.COMPLETED) {
+                failedLeg = i;
+                return from.reject(TransactionType.TRANSFER_OUT, allowed, amounts[i]);
+            }
+            convertedAmounts[i] = converted;
+        }
+        int participantCount = indexParticipants();
+        int stripeCount = indexStripes(participantCount);
+
+        OperationResult result = OperationResult.COMPLETED;
+        long epochNanos;
+        Account.lockStripes(stripes, stripeCount);
+        try {
+            epochNanos = TransactionJournal.currentEpochNanos();
+            for (int p = 0; p < participantCount; p++) {
+                balances[p] = participants[p].balance;
+                debits[p] = 0;
+                debitCounts[p] = 0;
+            }
+            for (int i = 0; i < legs && result == OperationResult.COMPLETED; i++) {
+                int from = fromIndexes[i];
+                int to = toIndexes[i];
+                long debited = balances[from] - amounts[i];
+                long credited = (from == to ? debited : balances[to]) + convertedAmounts[i];
+                if (debited < 0) {
+                    result = OperationResult.INSUFFICIENT_FUNDS;
+                } else if (credited < 0) {
+                    result = OperationResult.BALANCE_OVERFLOW;
+                } else {
+                    balances[from] = debited;
+                    balances[to] = credited;
+                    fromBalancesAfter[i] = debited;
+                    toBalancesAfter[i] = credited;
+                    debits[from] += amounts[i];
+                    debitCounts[from]++;
+                    continue;
+                }
+                failedLeg = i;
+            }
+            for (int p = 0; p < participantCount && result == OperationResult.COMPLETED; p++) {
+                if (debitCounts[p] > 0) {
+                    result = participants[p].checkTransferWindows(debits[p], debitCounts[p], epochNanos);
+                    if (result != OperationResult.COMPLETED) {
+                        failedLeg = firstLegFrom(p);
+                    }
+                }
+            }
+            if (result == OperationResult.COMPLETED) {
+                for (int i = 0; i < legs; i++) {
+                    fromIds[i] = froms[i].id;
+                    toIds[i] = tos[i].id;
+                }
+                Account.getOperationLog().logTransaction(legs, fromIds, toIds, amounts, fromBalancesAfter, toBalancesAfter, epochNanos);
+                for (int p = 0; p < participantCount; p++) {
+                    participants[p].balance = balances[p];
+                    if (debitCounts[p] > 0) {
+                        participants[p].countTransferWindows(debits[p], debitCounts[p], epochNanos);
+                    }
+                }
+                for (int i = 0; i < legs; i++) {
+                    froms[i].recordTransfer(amounts[i], tos[i], epochNanos);
+                }
+            }
+        } finally {
+            Account.unlockStripes(stripes, stripeCount);
+        }
+        if (result != OperationResult.COMPLETED) {
+            return froms[failedLeg].reject(TransactionType.TRANSFER_OUT, result, amounts[failedLeg]);
+        }
+
+        BalanceObserver observer = Account.getBalanceObserver();
+        for (int p = 0; p < participantCount; p++) {
+            observer.onBalanceChanged(participants[p]);
+        }
+        AccountEventListener listener = Account.getEventListener();
+        for (int i = 0; i < legs; i++) {
+            listener.onTransfer(froms[i], tos[i], amounts[i], fromBalancesAfter[i], toBalancesAfter[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Lists the accounts taking part without duplicates, and finds the index of the accounts of
+     * each leg in the list with a hash table, so the cost grows linearly with the number of legs
+     * @return The number of participants
+     */
+    private int indexParticipants() {
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        int count = 0;
+        for (int i = 0; i < 2 * legs; i++) {
+            Account account = (i & 1) == 0 ? froms[i >>> 1] : tos[i >>> 1];
+            long h = account.id * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            int index;
+            while ((index = slots[slot]) >= 0 && participantIds[index] != account.id) {
+                slot = (slot + 1) & mask;
+            }
+            if (index < 0) {
+                index = count++;
+                slots[slot] = index;
+                participantIds[index] = account.id;
+                participants[index] = account;
+            }
+            if ((i & 1) == 0) {
+                fromIndexes[i >>> 1] = index;
+            } else {
+                toIndexes[i >>> 1] = index;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lists the lock stripes of the participants in ascending order without duplicates, by
+     * marking them in a bit set and reading its bits in order
+     * @param participantCount The number of participants
+     * @return The number of stripes
+     */
+    private int indexStripes(int participantCount) {
+        Arrays.fill(stripeBits, 0);
+        for (int p = 0; p < participantCount; p++) {
+            int stripe = Account.getLockStripe(participantIds[p]);
+            stripeBits[stripe >>> 6] |= 1L << stripe;
+        }
+        int count = 0;
+        for (int word = 0; word < stripeBits.length; word++) {
+            for (long bits = stripeBits[word]; bits != 0; bits &= bits - 1) {
+                stripes[count++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return count;
+    }
+
+    private int firstLegFrom(int participant) {
+        for (int i = 0; i < legs; i++) {
+            if (fromIndexes[i] == participant) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -1,26 +1,33 @@
 package model;
 
 import enums.Currency;
-import exception.TransferLimitExceededException;
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.OperationLog;
+import interfaces.OperationMetrics;
+
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a savings account. Inherits the Account abstract class, and has a different field:
- * interestRate. A transfer limit is set.
+ * interestRate. Transfers are limited by default to 500 EUR each. Hourly, daily and per-minute
+ * limits are opt-in, per account type or account, for example with a {@link registry.TransferLimitsFile}.
  */
 public class SavingsAccount extends Account {
 
-    private static final Currency PREFERRED_CURRENCY = Currency.EUR;
+    private static final TransferLimits DEFAULT_TRANSFER_LIMITS = new TransferLimits(Money.ofMajor(500, Currency.EUR),
+            null, null, 0); // Built-in limits of personal saving accounts, without rolling windows
 
-    private static final double TRANSFER_LIMIT = 500; // Transfer limit set to personal saving accounts
+    private static volatile TransferLimits defaultTransferLimits = DEFAULT_TRANSFER_LIMITS; // Limits of the savings accounts without their own
 
     private double interestRate; // The interest rate expressed in decimal form (2% would be 0.02)
 
-    public SavingsAccount(long id, String ownerName, double balance, double interestRate) {
+    public SavingsAccount(long id, String ownerName, Money balance, double interestRate) {
         super(id, ownerName, balance);
         this.interestRate = interestRate;
     }
 
-    public SavingsAccount(long id, String ownerName, double balance) {
+    public SavingsAccount(long id, String ownerName, Money balance) {
         super(id, ownerName, balance);
         this.interestRate = 0.02;
     }
@@ -30,44 +37,137 @@ public class SavingsAccount extends Account {
     }
 
     public void setInterestRate(double interestRate) {
-        this.interestRate = interestRate;
+        OperationLog log;
+        long sequence;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            log = getOperationLog();
+            sequence = log.logInterestRate(id, interestRate);
+            this.interestRate = interestRate;
+        } finally {
+            lock.unlock();
+        }
+        log.awaitDurable(sequence);
+    }
+
+    /**
+     * Gets the limits applied to the savings accounts that have no limits of their own
+     * @return The default limits of savings accounts
+     */
+    public static TransferLimits getDefaultTransferLimits() {
+        return defaultTransferLimits;
     }
 
     /**
-     * Transfers a certain amount of money from the account to another one if it does not exceed
-     * the transfer limit
-     * @param amount The amount to be transferred
-     * @param account The account to be deposited to
+     * Sets the limits applied to the savings accounts that have no limits of their own
+     * @param transferLimits The limits, or null to restore the built-in limits
      */
+    public static void setDefaultTransferLimits(TransferLimits transferLimits) {
+        defaultTransferLimits = transferLimits == null ? DEFAULT_TRANSFER_LIMITS : transferLimits;
+    }
+
     @Override
-    public void transfer(double amount, Account account) {
-        try {
-            checkTransferLimit(amount);
-            super.transfer(amount, account);
-        } catch (TransferLimitExceededException e) {
-            System.out.println(e.getMessage());
-        }
+    protected TransferLimits getTypeTransferLimits() {
+        return defaultTransferLimits;
     }
 
     /**
-     * Applies interest to the account balance based on the current interest rate
+     * Applies interest to the account balance based on the current interest rate. The interest is
+     * rounded half up to the nearest minor unit.
      */
     public void applyInterest() {
-        double interest = this.balance * this.interestRate;
-        this.balance += interest;
-        System.out.println("Interest of " + interest + PREFERRED_CURRENCY.toString() + " applied. New balance: " + this.balance + PREFERRED_CURRENCY.toString());
+        OperationMetrics metrics = getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = executeInterest();
+        metrics.record(TransactionType.INTEREST, result, startTime);
+    }
+
+    private OperationResult executeInterest() {
+        long interest;
+        long newBalance;
+        OperationLog log;
+        long sequence = 0;
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            interest = calculateInterest(this.balance, this.interestRate);
+            newBalance = this.balance + interest;
+            log = getOperationLog();
+            if (newBalance >= 0) {
+                sequence = log.logInterest(id, interest, newBalance);
+                this.balance = newBalance;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (newBalance < 0) {
+            return reject(TransactionType.INTEREST, OperationResult.BALANCE_OVERFLOW, interest);
+        }
+        log.awaitDurable(sequence);
+        getBalanceObserver().onBalanceChanged(this);
+        getEventListener().onInterest(this, interest, newBalance);
+        return OperationResult.COMPLETED;
     }
 
     /**
-     * Checks if an amount surpasses the transfer limit
-     * @param amount The amount to be validated
-     * @throws TransferLimitExceededException Exception thrown if the amount exceeds the transfer limit
+     * Calculates the interest for a balance from the exact product of the balance and the rate,
+     * rounded half up (away from zero) to the nearest minor unit. Multiplying in double would round
+     * the product first, which is wrong above 2^53 and for products close to half a unit. The rate
+     * is split into its 53-bit significand and binary exponent, multiplied with the balance into a
+     * 128-bit integer, then shifted with rounding, so nothing is allocated.
+     * @param balance The balance in minor units
+     * @param interestRate The interest rate in decimal form
+     * @return The interest in minor units, saturated at the bounds of a long like {@link Math#round(double)}
      */
-    private void checkTransferLimit(double amount) throws TransferLimitExceededException {
-        if (amount > TRANSFER_LIMIT) {
-            double excess = amount - TRANSFER_LIMIT;
-            throw new TransferLimitExceededException("Transfer limit exceeded by " + excess + PREFERRED_CURRENCY.toString() + ". Limit is " + TRANSFER_LIMIT + PREFERRED_CURRENCY.toString());
+    public static long calculateInterest(long balance, double interestRate) {
+        if (!Double.isFinite(interestRate)) {
+            return Math.round(balance * interestRate);
+        }
+        long bits = Double.doubleToRawLongBits(interestRate);
+        int rawExponent = (int) (bits >>> 52) & 0x7FF;
+        long significand = bits & 0xFFFFFFFFFFFFFL;
+        if (rawExponent != 0) {
+            significand |= 1L << 52;
+        }
+        if (balance == 0 || significand == 0) {
+            return 0;
+        }
+        boolean negative = (balance < 0) != (bits < 0);
+        int exponent = Math.max(rawExponent, 1) - 1075; // The rate is significand * 2^exponent
+
+        // Unsigned 128-bit product of the balance magnitude and the significand, below 2^116
+        long magnitude = Math.abs(balance); // Long.MIN_VALUE stays 2^63 when read as unsigned
+        long low = magnitude * significand;
+        long high = Math.multiplyHigh(magnitude, significand) + ((magnitude >> 63) & significand);
+
+        long rounded;
+        if (exponent >= 0) {
+            rounded = high != 0 || exponent >= 63 || low >>> (63 - exponent) != 0 ? -1 : low << exponent;
+        } else {
+            int shift = -exponent;
+            if (shift >= 128) {
+                return 0;
+            }
+            // Adds half of the last unit kept, then drops the bits below it
+            if (shift <= 64) {
+                long half = 1L << (shift - 1);
+                long sum = low + half;
+                high += Long.compareUnsigned(sum, low) < 0 ? 1 : 0;
+                low = sum;
+            } else {
+                high += 1L << (shift - 65);
+            }
+            if (shift < 64) {
+                rounded = high >>> shift != 0 ? -1 : (low >>> shift) | (high << (64 - shift));
+            } else {
+                rounded = high >>> (shift - 64);
+            }
+        }
+        if (rounded < 0) {
+            return negative ? Long.MIN_VALUE : Long.MAX_VALUE;
         }
+        return negative ? -rounded : rounded;
     }
 
 }
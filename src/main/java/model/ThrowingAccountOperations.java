@@ -0,0 +1,96 @@
+package model;
+
+import enums.OperationResult;
+import enums.TransactionType;
+import events.EventFormatter;
+import exception.InsufficientFundsException;
+import exception.TransferLimitExceededException;
+import interfaces.AccountOperations;
+
+/**
+ * Compatibility wrapper for callers that expect rejected operations to throw. The operations are
+ * delegated to the non-throwing methods of the account, and only a rejected result is converted
+ * into an exception, so accounts used directly never pay for building one.
+ */
+public class ThrowingAccountOperations implements AccountOperations {
+
+    private final Account account; // The wrapped account
+
+    public ThrowingAccountOperations(Account account) {
+        this.account = account;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Deposits an amount of money into the wrapped account
+     * @param amount The amount of money to be deposited into the account
+     * @throws IllegalArgumentException Exception thrown if the amount is not positive or not in the account currency
+     */
+    @Override
+    public void deposit(Money amount) {
+        throwIfRejected(account.tryDeposit(amount), TransactionType.DEPOSIT, amount);
+    }
+
+    /**
+     * Withdraws an amount of money from the wrapped account
+     * @param amount The amount of money to be withdrawn
+     * @throws IllegalArgumentException Exception thrown if the amount is not positive or not in the account currency
+     * @throws InsufficientFundsException Exception thrown if the balance is lower than the amount
+     */
+    @Override
+    public void withdraw(Money amount) {
+        throwIfRejected(account.tryWithdraw(amount), TransactionType.WITHDRAWAL, amount);
+    }
+
+    /**
+     * Transfers an amount of money from the wrapped account to another one
+     * @param amount The amount to be transferred
+     * @param account The account to be deposited to
+     * @throws IllegalArgumentException Exception thrown if the amount is not positive or not in the account currency
+     * @throws InsufficientFundsException Exception thrown if the balance is lower than the amount
+     * @throws TransferLimitExceededException Exception thrown if the transfer exceeds a transfer limit of the account
+     */
+    @Override
+    public void transfer(Money amount, Account account) {
+        throwIfRejected(this.account.tryTransfer(amount, account), TransactionType.TRANSFER_OUT, amount);
+    }
+
+    @Override
+    public OperationResult tryDeposit(Money amount) {
+        return account.tryDeposit(amount);
+    }
+
+    @Override
+    public OperationResult tryWithdraw(Money amount) {
+        return account.tryWithdraw(amount);
+    }
+
+    @Override
+    public OperationResult tryTransfer(Money amount, Account account) {
+        return this.account.tryTransfer(amount, account);
+    }
+
+    /**
+     * Throws the exception matching a rejected result, with the message printed for the event
+     * @param result The result of the operation
+     * @param type The type of the operation
+     * @param amount The requested amount
+     */
+    private void throwIfRejected(OperationResult result, TransactionType type, Money amount) {
+        if (result == OperationResult.COMPLETED) {
+            return;
+        }
+        String message = EventFormatter.format(type, result, account.getId(), 0, amount.getMinorUnits(),
+                account.getTransferLimit(result), account.getCurrency());
+        switch (result) {
+            case INSUFFICIENT_FUNDS -> throw new InsufficientFundsException(message);
+            case TRANSFER_LIMIT_EXCEEDED, HOURLY_LIMIT_EXCEEDED, DAILY_LIMIT_EXCEEDED, VELOCITY_LIMIT_EXCEEDED -> throw new TransferLimitExceededException(message);
+            case BALANCE_OVERFLOW -> throw new ArithmeticException(message);
+            default -> throw new IllegalArgumentException(message);
+        }
+    }
+
+}
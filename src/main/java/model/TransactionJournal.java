@@ -0,0 +1,485 @@
+package model;
+
+import enums.TransactionType;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Journal of transactions, appended in time order. Entries are stored column by column in chunks
+ * of primitive arrays (timestamp, amount, counterparty and type), so each entry costs 25 bytes and
+ * no objects. Timestamps never go backwards, which keeps the entries ordered by time for binary
+ * searches. The first chunk starts with {@value #INITIAL_CHUNK_SIZE} entries and doubles until it
+ * holds a full chunk, so the many accounts with a short history stay small. The journal is not
+ * thread-safe; the owning account guards it with its lock.
+ * <p>
+ * The journal is not append-only: a refunded transfer is removed from it. Entries are still never
+ * modified in place, since a removal or the growth of the first chunk first replaces the chunks it
+ * changes by copies. A
+ * {@link Cursor} or a {@link #spliterator spliterator} opened under the lock can therefore be read
+ * after releasing it, while entries are appended or removed, and always returns the entries
+ * present when it was opened. Readers that need a consistent view later, such as snapshots, must
+ * open their cursor under the lock rather than remember a size.
+ */
+public class TransactionJournal {
+
+    private final static int CHUNK_SHIFT = 12;
+    private final static int CHUNK_SIZE = 1 << CHUNK_SHIFT; // Entries per chunk
+    private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+    private final static int INITIAL_CHUNK_SIZE = 16; // Entries of the first chunk when it is created
+
+    private long[][] timestamps; // Epoch nanoseconds of each entry
+    private long[][] amounts; // Amount of each entry in minor units
+    private long[][] counterparties; // ID of the other account, or 0 if there is none
+    private byte[][] types; // Ordinal of the TransactionType of each entry
+    private int size; // Number of entries
+    private long lastTimestamp; // Timestamp of the last entry
+
+    /**
+     * Receives the fields of a journal entry without creating an object per entry
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long epochNanos, long minorUnits, long counterpartyId, TransactionType type);
+    }
+
+    /**
+     * Immutable copy of a journal entry, used by the spliterator and streams of the journal
+     */
+    public static final class Entry {
+        private final long epochNanos;
+        private final long minorUnits;
+        private final long counterpartyId;
+        private final TransactionType type;
+
+        public Entry(long epochNanos, long minorUnits, long counterpartyId, TransactionType type) {
+            this.epochNanos = epochNanos;
+            this.minorUnits = minorUnits;
+            this.counterpartyId = counterpartyId;
+            this.type = type;
+        }
+
+        public long getEpochNanos() {
+            return epochNanos;
+        }
+
+        public long getMinorUnits() {
+            return minorUnits;
+        }
+
+        public long getCounterpartyId() {
+            return counterpartyId;
+        }
+
+        public TransactionType getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Forward cursor over a range of entries. It reads the fields of the current entry in place,
+     * so walking any number of entries creates no objects.
+     */
+    public static final class Cursor {
+        private final long[][] timestamps;
+        private final long[][] amounts;
+        private final long[][] counterparties;
+        private final byte[][] types;
+        private final int rangeEnd; // End of the time range at the time the cursor was opened, exclusive
+        private final int end; // End of the entries returned by this cursor, exclusive
+        private int index; // Index of the current entry
+
+        private Cursor(TransactionJournal journal, int first, int end, int rangeEnd) {
+            this.timestamps = journal.timestamps;
+            this.amounts = journal.amounts;
+            this.counterparties = journal.counterparties;
+            this.types = journal.types;
+            this.index = first - 1;
+            this.end = end;
+            this.rangeEnd = rangeEnd;
+        }
+
+        private Cursor(Cursor source, int first, int end) {
+            this.timestamps = source.timestamps;
+            this.amounts = source.amounts;
+            this.counterparties = source.counterparties;
+            this.types = source.types;
+            this.index = first - 1;
+            this.end = end;
+            this.rangeEnd = end;
+        }
+
+        /**
+         * Moves to the next entry
+         * @return True if there is a current entry, false if the cursor is exhausted
+         */
+        public boolean next() {
+            if (index + 1 < end) {
+                index++;
+                return true;
+            }
+            index = end;
+            return false;
+        }
+
+        /**
+         * Gets the number of entries the cursor has not returned yet
+         * @return The number of remaining entries
+         */
+        public int remaining() {
+            return Math.max(end - index - 1, 0);
+        }
+
+        /**
+         * Gets the index of the entry after the current one, which is the first index of the next page
+         * @return The index to resume from
+         */
+        public int getNextIndex() {
+            return Math.min(index + 1, end);
+        }
+
+        /**
+         * Checks if the time range has entries after the ones of this page
+         * @return True if another page can be read from {@link #getNextIndex()}
+         */
+        public boolean hasNextPage() {
+            return end < rangeEnd;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getTimestamp() {
+            return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public long getAmount() {
+            return amounts[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public long getCounterpartyId() {
+            return counterparties[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public TransactionType getType() {
+            return TransactionType.fromOrdinal(types[index >>> CHUNK_SHIFT][index & CHUNK_MASK]);
+        }
+    }
+
+    /**
+     * Spliterator over a range of entries, split by halving the range
+     */
+    private static final class EntrySpliterator implements Spliterator<Entry> {
+        private final Cursor cursor;
+
+        private EntrySpliterator(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            if (!cursor.next()) {
+                return false;
+            }
+            action.accept(new Entry(cursor.getTimestamp(), cursor.getAmount(), cursor.getCounterpartyId(), cursor.getType()));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Entry> trySplit() {
+            int first = cursor.index + 1;
+            int middle = (first + cursor.end) >>> 1;
+            if (middle <= first) {
+                return null;
+            }
+            Cursor prefix = new Cursor(cursor, first, middle);
+            cursor.index = middle - 1;
+            return new EntrySpliterator(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return cursor.remaining();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+
+    public TransactionJournal() {
+        this.timestamps = new long[1][];
+        this.amounts = new long[1][];
+        this.counterparties = new long[1][];
+        this.types = new byte[1][];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends an entry stamped with the current time
+     * @param minorUnits The amount in minor units
+     * @param counterpartyId The ID of the other account, or 0 if there is none
+     * @param type The type of the transaction
+     */
+    public void append(long minorUnits, long counterpartyId, TransactionType type) {
+        append(currentEpochNanos(), minorUnits, counterpartyId, type);
+    }
+
+    /**
+     * Appends an entry. A timestamp older than the last entry is moved up to it, so the journal
+     * stays ordered by time.
+     * @param epochNanos The time of the transaction in nanoseconds since the epoch
+     * @param minorUnits The amount in minor units
+     * @param counterpartyId The ID of the other account, or 0 if there is none
+     * @param type The type of the transaction
+     */
+    public void append(long epochNanos, long minorUnits, long counterpartyId, TransactionType type) {
+        int chunk = size >>> CHUNK_SHIFT;
+        int offset = size & CHUNK_MASK;
+        if (offset == 0) {
+            addChunk(chunk);
+        } else if (offset == timestamps[chunk].length) {
+            growFirstChunk();
+        }
+        long timestamp = Math.max(epochNanos, lastTimestamp);
+        timestamps[chunk][offset] = timestamp;
+        amounts[chunk][offset] = minorUnits;
+        counterparties[chunk][offset] = counterpartyId;
+        types[chunk][offset] = (byte) type.ordinal();
+        lastTimestamp = timestamp;
+        size++;
+    }
+
+    /**
+     * Removes the first entry recorded at or after a point in time that has the given fields. The
+     * chunks from the entry onwards are replaced by copies before the later entries are moved back,
+     * so cursors opened before keep reading the entries they saw.
+     * @param epochNanos The time the entry was appended with, in nanoseconds since the epoch
+     * @param minorUnits The amount in minor units
+     * @param counterpartyId The ID of the other account, or 0 if there is none
+     * @param type The type of the transaction
+     * @return True if an entry was removed, false if there is no such entry
+     */
+    public boolean remove(long epochNanos, long minorUnits, long counterpartyId, TransactionType type) {
+        int removed = firstIndexAtOrAfter(epochNanos);
+        while (removed < size && (getAmount(removed) != minorUnits || getCounterpartyId(removed) != counterpartyId
+                || getType(removed) != type)) {
+            removed++;
+        }
+        if (removed == size) {
+            return false;
+        }
+        timestamps = timestamps.clone();
+        amounts = amounts.clone();
+        counterparties = counterparties.clone();
+        types = types.clone();
+        for (int chunk = removed >>> CHUNK_SHIFT; chunk <= (size - 1) >>> CHUNK_SHIFT; chunk++) {
+            timestamps[chunk] = timestamps[chunk].clone();
+            amounts[chunk] = amounts[chunk].clone();
+            counterparties[chunk] = counterparties[chunk].clone();
+            types[chunk] = types[chunk].clone();
+        }
+        for (int i = removed; i < size - 1; i++) {
+            int chunk = i >>> CHUNK_SHIFT;
+            int offset = i & CHUNK_MASK;
+            int nextChunk = (i + 1) >>> CHUNK_SHIFT;
+            int nextOffset = (i + 1) & CHUNK_MASK;
+            timestamps[chunk][offset] = timestamps[nextChunk][nextOffset];
+            amounts[chunk][offset] = amounts[nextChunk][nextOffset];
+            counterparties[chunk][offset] = counterparties[nextChunk][nextOffset];
+            types[chunk][offset] = types[nextChunk][nextOffset];
+        }
+        size--;
+        return true;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public long getAmount(int index) {
+        checkIndex(index);
+        return amounts[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public long getCounterpartyId(int index) {
+        checkIndex(index);
+        return counterparties[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    public TransactionType getType(int index) {
+        checkIndex(index);
+        return TransactionType.fromOrdinal(types[index >>> CHUNK_SHIFT][index & CHUNK_MASK]);
+    }
+
+    /**
+     * Finds the first entry recorded at or after a point in time using a binary search
+     * @param epochNanos The point in time in nanoseconds since the epoch
+     * @return The index of the entry, or the size of the journal if every entry is older
+     */
+    public int firstIndexAtOrAfter(long epochNanos) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[middle >>> CHUNK_SHIFT][middle & CHUNK_MASK] < epochNanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Visits every entry from the oldest to the newest
+     * @param visitor The visitor receiving the entries
+     */
+    public void forEach(EntryVisitor visitor) {
+        visitRange(0, size, visitor);
+    }
+
+    /**
+     * Visits the entries recorded in a time range, from the oldest to the newest
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @param visitor The visitor receiving the entries
+     */
+    public void forEachBetween(long fromEpochNanos, long toEpochNanos, EntryVisitor visitor) {
+        if (fromEpochNanos >= toEpochNanos) {
+            return;
+        }
+        visitRange(firstIndexAtOrAfter(fromEpochNanos), firstIndexAtOrAfter(toEpochNanos), visitor);
+    }
+
+    /**
+     * Opens a cursor over every entry present now, from the oldest to the newest
+     * @return The cursor
+     */
+    public Cursor cursor() {
+        return new Cursor(this, 0, size, size);
+    }
+
+    /**
+     * Opens a cursor over a page of the entries recorded in a time range. Pages are read by
+     * passing the {@link Cursor#getNextIndex()} of a page as the first index of the next one.
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @param first The index to start from, 0 for the first page
+     * @param pageSize The maximum number of entries of the page
+     * @return The cursor
+     */
+    public Cursor cursor(long fromEpochNanos, long toEpochNanos, int first, int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("The page size must not be negative.");
+        }
+        if (fromEpochNanos >= toEpochNanos) {
+            return new Cursor(this, 0, 0, 0);
+        }
+        int rangeEnd = firstIndexAtOrAfter(toEpochNanos);
+        int start = Math.min(Math.max(first, firstIndexAtOrAfter(fromEpochNanos)), rangeEnd);
+        int end = (int) Math.min((long) start + pageSize, rangeEnd);
+        return new Cursor(this, start, end, rangeEnd);
+    }
+
+    /**
+     * Creates a spliterator over the entries recorded in a time range, from the oldest to the newest
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @return The spliterator
+     */
+    public Spliterator<Entry> spliterator(long fromEpochNanos, long toEpochNanos) {
+        return new EntrySpliterator(cursor(fromEpochNanos, toEpochNanos, 0, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Creates a sequential stream over the entries recorded in a time range
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @return The stream
+     */
+    public Stream<Entry> stream(long fromEpochNanos, long toEpochNanos) {
+        return StreamSupport.stream(spliterator(fromEpochNanos, toEpochNanos), false);
+    }
+
+    /**
+     * Visits the entries between two indexes
+     * @param from The first index, inclusive
+     * @param to The last index, exclusive
+     * @param visitor The visitor receiving the entries
+     */
+    private void visitRange(int from, int to, EntryVisitor visitor) {
+        for (int i = from; i < to; i++) {
+            int chunk = i >>> CHUNK_SHIFT;
+            int offset = i & CHUNK_MASK;
+            visitor.visit(timestamps[chunk][offset], amounts[chunk][offset], counterparties[chunk][offset],
+                    TransactionType.fromOrdinal(types[chunk][offset]));
+        }
+    }
+
+    /**
+     * Allocates the arrays of a new chunk, growing the chunk tables if they are full. The first
+     * chunk starts small and is grown by {@link #growFirstChunk()}.
+     * @param chunk The index of the new chunk
+     */
+    private void addChunk(int chunk) {
+        if (chunk == timestamps.length) {
+            int length = chunk << 1;
+            timestamps = Arrays.copyOf(timestamps, length);
+            amounts = Arrays.copyOf(amounts, length);
+            counterparties = Arrays.copyOf(counterparties, length);
+            types = Arrays.copyOf(types, length);
+        }
+        int length = chunk == 0 ? INITIAL_CHUNK_SIZE : CHUNK_SIZE;
+        timestamps[chunk] = new long[length];
+        amounts[chunk] = new long[length];
+        counterparties[chunk] = new long[length];
+        types[chunk] = new byte[length];
+    }
+
+    /**
+     * Doubles the arrays of the first chunk once they are full. They are replaced by larger copies
+     * in copies of the chunk tables, so cursors opened before keep the arrays they read.
+     */
+    private void growFirstChunk() {
+        int length = Math.min(timestamps[0].length << 1, CHUNK_SIZE);
+        timestamps = timestamps.clone();
+        amounts = amounts.clone();
+        counterparties = counterparties.clone();
+        types = types.clone();
+        timestamps[0] = Arrays.copyOf(timestamps[0], length);
+        amounts[0] = Arrays.copyOf(amounts[0], length);
+        counterparties[0] = Arrays.copyOf(counterparties[0], length);
+        types[0] = Arrays.copyOf(types[0], length);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for journal of size " + size);
+        }
+    }
+
+    /**
+     * Gets the current time in nanoseconds since the epoch
+     * @return The current time
+     */
+    public static long currentEpochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+}
@@ -0,0 +1,100 @@
+package model;
+
+import enums.Currency;
+
+/**
+ * Limits on the outgoing transfers of an account: the amount of a single transfer, the total
+ * transferred in the last hour and in the last day, and the number of transfers in the last
+ * minute. Each amount is converted to the currency of the account with the current exchange rate.
+ * A null amount or a count of 0 means there is no such limit.
+ */
+public final class TransferLimits {
+
+    public static final TransferLimits NONE = new TransferLimits(null, null, null, 0);
+
+    private final Money perTransfer; // Maximum amount of a single transfer, or null
+    private final Money hourly; // Maximum total of the transfers of the last hour, or null
+    private final Money daily; // Maximum total of the transfers of the last day, or null
+    private final int perMinute; // Maximum number of transfers in the last minute, or 0
+
+    /**
+     * Creates a set of limits
+     * @param perTransfer The maximum amount of a single transfer, or null
+     * @param hourly The maximum total of the transfers of the last hour, or null
+     * @param daily The maximum total of the transfers of the last day, or null
+     * @param perMinute The maximum number of transfers in the last minute, or 0
+     * @throws IllegalArgumentException Exception thrown if a limit is negative
+     */
+    public TransferLimits(Money perTransfer, Money hourly, Money daily, int perMinute) throws IllegalArgumentException {
+        if (isNegative(perTransfer) || isNegative(hourly) || isNegative(daily) || perMinute < 0) {
+            throw new IllegalArgumentException("Transfer limits must not be negative.");
+        }
+        this.perTransfer = perTransfer;
+        this.hourly = hourly;
+        this.daily = daily;
+        this.perMinute = perMinute;
+    }
+
+    public Money getPerTransfer() {
+        return perTransfer;
+    }
+
+    public Money getHourly() {
+        return hourly;
+    }
+
+    public Money getDaily() {
+        return daily;
+    }
+
+    public int getPerMinute() {
+        return perMinute;
+    }
+
+    /**
+     * Checks if any limit depends on the previous transfers, so they must be counted
+     * @return True if there is an hourly, daily or per-minute limit
+     */
+    public boolean hasWindows() {
+        return hourly != null || daily != null || perMinute > 0;
+    }
+
+    /**
+     * Gets the maximum amount of a single transfer in a currency
+     * @param currency The currency of the account
+     * @return The limit in minor units, Long.MAX_VALUE if there is none, or -1 if there is no exchange rate
+     */
+    public long getPerTransfer(Currency currency) {
+        return convert(perTransfer, currency);
+    }
+
+    /**
+     * Gets the maximum total of the transfers of the last hour in a currency
+     * @param currency The currency of the account
+     * @return The limit in minor units, Long.MAX_VALUE if there is none, or -1 if there is no exchange rate
+     */
+    public long getHourly(Currency currency) {
+        return convert(hourly, currency);
+    }
+
+    /**
+     * Gets the maximum total of the transfers of the last day in a currency
+     * @param currency The currency of the account
+     * @return The limit in minor units, Long.MAX_VALUE if there is none, or -1 if there is no exchange rate
+     */
+    public long getDaily(Currency currency) {
+        return convert(daily, currency);
+    }
+
+    private static long convert(Money limit, Currency currency) {
+        if (limit == null) {
+            return Long.MAX_VALUE;
+        }
+        return Account.getFxRateProvider().convert(limit.getMinorUnits(), limit.getCurrency(), currency);
+    }
+
+    private static boolean isNegative(Money amount) {
+        return amount != null && amount.getMinorUnits() < 0;
+    }
+
+}
@@ -0,0 +1,162 @@
+package model;
+
+import enums.OperationResult;
+
+import java.util.Arrays;
+
+/**
+ * Recent outgoing transfers of an account, counted in three rings of time buckets: the number of
+ * transfers in buckets of 10 seconds, and the amounts in buckets of 5 minutes and of 1 hour. Each
+ * ring keeps its running total, so checking a transfer and counting it take constant time: moving
+ * a ring forward clears at most every bucket once. A ring has one bucket more than its window
+ * holds, so a transfer is counted for at least the whole window and at most one bucket longer.
+ * <p>
+ * The rings share one array laid out as: current bucket number, running total, then the buckets.
+ * The window is guarded by the lock of its account.
+ */
+final class TransferWindow {
+
+    private final static long SECOND = 1_000_000_000L;
+    private final static int MINUTE = 0; // Offset of the ring counting the transfers of the last minute
+    private final static int MINUTE_BUCKETS = 7;
+    private final static long MINUTE_WIDTH = 10 * SECOND;
+    private final static int HOUR = MINUTE + 2 + MINUTE_BUCKETS; // Offset of the ring adding the amounts of the last hour
+    private final static int HOUR_BUCKETS = 13;
+    private final static long HOUR_WIDTH = 300 * SECOND;
+    private final static int DAY = HOUR + 2 + HOUR_BUCKETS; // Offset of the ring adding the amounts of the last day
+    private final static int DAY_BUCKETS = 25;
+    private final static long DAY_WIDTH = 3_600 * SECOND;
+    private final static int SIZE = DAY + 2 + DAY_BUCKETS;
+
+    private final long[] rings = new long[SIZE];
+
+    /**
+     * Checks a transfer against the limits and counts it if none is exceeded
+     * @param minorUnits The amount of the transfer in minor units
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     * @param hourlyLimit The maximum total of the last hour in minor units
+     * @param dailyLimit The maximum total of the last day in minor units
+     * @param perMinute The maximum number of transfers in the last minute, or 0 if there is no limit
+     * @return Completed if the transfer was counted, otherwise the exceeded limit
+     */
+    OperationResult admit(long minorUnits, long epochNanos, long hourlyLimit, long dailyLimit, int perMinute) {
+        int minuteBucket = advance(MINUTE, MINUTE_BUCKETS, MINUTE_WIDTH, epochNanos);
+        int hourBucket = advance(HOUR, HOUR_BUCKETS, HOUR_WIDTH, epochNanos);
+        int dayBucket = advance(DAY, DAY_BUCKETS, DAY_WIDTH, epochNanos);
+        if (perMinute > 0 && rings[MINUTE + 1] >= perMinute) {
+            return OperationResult.VELOCITY_LIMIT_EXCEEDED;
+        }
+        // The totals can be above a limit that was lowered, so the remaining room may be negative
+        if (minorUnits > hourlyLimit - rings[HOUR + 1]) {
+            return OperationResult.HOURLY_LIMIT_EXCEEDED;
+        }
+        if (minorUnits > dailyLimit - rings[DAY + 1]) {
+            return OperationResult.DAILY_LIMIT_EXCEEDED;
+        }
+        rings[minuteBucket]++;
+        rings[MINUTE + 1]++;
+        rings[hourBucket] += minorUnits;
+        rings[HOUR + 1] += minorUnits;
+        rings[dayBucket] += minorUnits;
+        rings[DAY + 1] += minorUnits;
+        return OperationResult.COMPLETED;
+    }
+
+    /**
+     * Checks several transfers made at once against the limits, without counting them
+     * @param minorUnits The total amount of the transfers in minor units
+     * @param transfers The number of transfers
+     * @param epochNanos The time of the transfers in nanoseconds since the epoch
+     * @param hourlyLimit The maximum total of the last hour in minor units
+     * @param dailyLimit The maximum total of the last day in minor units
+     * @param perMinute The maximum number of transfers in the last minute, or 0 if there is no limit
+     * @return Completed if the transfers can be counted, otherwise the exceeded limit
+     */
+    OperationResult check(long minorUnits, int transfers, long epochNanos, long hourlyLimit, long dailyLimit, int perMinute) {
+        advance(MINUTE, MINUTE_BUCKETS, MINUTE_WIDTH, epochNanos);
+        advance(HOUR, HOUR_BUCKETS, HOUR_WIDTH, epochNanos);
+        advance(DAY, DAY_BUCKETS, DAY_WIDTH, epochNanos);
+        if (perMinute > 0 && rings[MINUTE + 1] + transfers > perMinute) {
+            return OperationResult.VELOCITY_LIMIT_EXCEEDED;
+        }
+        // The totals can be above a limit that was lowered, so the remaining room may be negative
+        if (minorUnits > hourlyLimit - rings[HOUR + 1]) {
+            return OperationResult.HOURLY_LIMIT_EXCEEDED;
+        }
+        if (minorUnits > dailyLimit - rings[DAY + 1]) {
+            return OperationResult.DAILY_LIMIT_EXCEEDED;
+        }
+        return OperationResult.COMPLETED;
+    }
+
+    /**
+     * Counts transfers that passed {@link #check}
+     * @param minorUnits The total amount of the transfers in minor units
+     * @param transfers The number of transfers
+     * @param epochNanos The time of the transfers in nanoseconds since the epoch
+     */
+    void count(long minorUnits, int transfers, long epochNanos) {
+        int minuteBucket = advance(MINUTE, MINUTE_BUCKETS, MINUTE_WIDTH, epochNanos);
+        int hourBucket = advance(HOUR, HOUR_BUCKETS, HOUR_WIDTH, epochNanos);
+        int dayBucket = advance(DAY, DAY_BUCKETS, DAY_WIDTH, epochNanos);
+        rings[minuteBucket] += transfers;
+        rings[MINUTE + 1] += transfers;
+        rings[hourBucket] += minorUnits;
+        rings[HOUR + 1] += minorUnits;
+        rings[dayBucket] += minorUnits;
+        rings[DAY + 1] += minorUnits;
+    }
+
+    /**
+     * Removes a transfer counted by {@link #admit} whose money was refunded. Its amount is taken
+     * from the buckets between its time and the current one, as it was counted in one of them,
+     * and nothing is removed once they left the window.
+     * @param minorUnits The amount of the transfer in minor units
+     * @param epochNanos The time of the transfer in nanoseconds since the epoch
+     */
+    void uncount(long minorUnits, long epochNanos) {
+        uncount(MINUTE, MINUTE_BUCKETS, MINUTE_WIDTH, 1, epochNanos);
+        uncount(HOUR, HOUR_BUCKETS, HOUR_WIDTH, minorUnits, epochNanos);
+        uncount(DAY, DAY_BUCKETS, DAY_WIDTH, minorUnits, epochNanos);
+    }
+
+    private void uncount(int ring, int buckets, long width, long value, long epochNanos) {
+        long current = rings[ring];
+        for (long bucket = Math.max(epochNanos / width, current - buckets + 1); bucket <= current && value > 0; bucket++) {
+            int index = ring + 2 + (int) (bucket % buckets);
+            long removed = Math.min(value, rings[index]);
+            rings[index] -= removed;
+            rings[ring + 1] -= removed;
+            value -= removed;
+        }
+    }
+
+    /**
+     * Moves a ring forward to the bucket of a point in time, clearing the buckets that left the
+     * window. A time before the current bucket is counted in the current bucket.
+     * @param ring The offset of the ring
+     * @param buckets The number of buckets of the ring
+     * @param width The time covered by a bucket in nanoseconds
+     * @param epochNanos The point in time
+     * @return The index in the array of the current bucket
+     */
+    private int advance(int ring, int buckets, long width, long epochNanos) {
+        long bucket = epochNanos / width;
+        long current = rings[ring];
+        if (bucket > current) {
+            if (bucket - current >= buckets) {
+                Arrays.fill(rings, ring + 1, ring + 2 + buckets, 0);
+            } else {
+                for (long expired = current + 1; expired <= bucket; expired++) {
+                    int index = ring + 2 + (int) (expired % buckets);
+                    rings[ring + 1] -= rings[index];
+                    rings[index] = 0;
+                }
+            }
+            rings[ring] = bucket;
+            current = bucket;
+        }
+        return ring + 2 + (int) (current % buckets);
+    }
+
+}
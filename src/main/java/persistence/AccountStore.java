@@ -0,0 +1,304 @@
+package persistence;
+
+import enums.Currency;
+import enums.LogRecordType;
+import enums.OperationResult;
+import enums.TransactionType;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import registry.AccountRegistry;
+import util.LongHashMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable account storage. Opening a store rebuilds the registry from the last snapshot and the
+ * write-ahead log records written after it, then logs every new change. Periodic checkpoints write
+ * a new snapshot and drop the log files it covers, which keeps recovery time bounded.
+ */
+public class AccountStore implements AutoCloseable {
+
+    private final static System.Logger LOGGER = System.getLogger(AccountStore.class.getName());
+
+    private final Path directory; // Directory holding the snapshot and the log files
+    private final AccountRegistry registry; // The recovered accounts
+    private final WriteAheadLog log; // Log receiving every change
+    private final ScheduledExecutorService checkpointScheduler; // Runs periodic checkpoints, or null
+    private volatile IOException checkpointFailure; // Failure of the last scheduled checkpoint, reported by close
+
+    private AccountStore(Path directory, AccountRegistry registry, WriteAheadLog log, long checkpointIntervalMillis) {
+        this.directory = directory;
+        this.registry = registry;
+        this.log = log;
+        if (checkpointIntervalMillis > 0) {
+            this.checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.checkpointScheduler.scheduleWithFixedDelay(this::runScheduledCheckpoint,
+                    checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.checkpointScheduler = null;
+        }
+    }
+
+    /**
+     * Opens a store with synchronous commits and a checkpoint every minute
+     * @param directory The directory holding the account data, created if it does not exist
+     * @return The opened store
+     * @throws IOException Exception thrown if the data cannot be read
+     */
+    public static AccountStore open(Path directory) throws IOException {
+        return open(directory, true, 5, 60_000);
+    }
+
+    /**
+     * Opens a store, recovering the accounts saved in a directory. The store installs its log as
+     * the account operation log, so only one store can be open at a time.
+     * @param directory The directory holding the account data, created if it does not exist
+     * @param syncOnCommit Whether operations wait until their log record is forced to disk
+     * @param flushIntervalMillis The maximum time between two forces of the log
+     * @param checkpointIntervalMillis The time between two checkpoints, or 0 to disable them
+     * @return The opened store
+     * @throws IOException Exception thrown if the data cannot be read
+     */
+    public static AccountStore open(Path directory, boolean syncOnCommit, long flushIntervalMillis, long checkpointIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        Account.setOperationLog(null); // Nothing is logged while the accounts are rebuilt
+
+        AccountRegistry registry = new AccountRegistry();
+        LongHashMap<PendingTransfer> pendingTransfers = new LongHashMap<>();
+        long lastSequence = SnapshotFile.load(directory, registry, pendingTransfers);
+        lastSequence = replayLogs(directory, registry, lastSequence, pendingTransfers);
+
+        // A file with the next name can only hold records that could not be replayed
+        Files.deleteIfExists(WriteAheadLog.fileFor(directory, lastSequence + 1));
+        WriteAheadLog log = new WriteAheadLog(directory, lastSequence + 1, syncOnCommit, flushIntervalMillis);
+        Account.setOperationLog(log);
+        completePendingTransfers(registry, pendingTransfers);
+        return new AccountStore(directory, registry, log, checkpointIntervalMillis);
+    }
+
+    public AccountRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Writes a snapshot of every account and deletes the log files it makes redundant. Account
+     * changes are only paused while the balances are copied, not while the snapshot is written.
+     * @throws IOException Exception thrown if the snapshot cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        SnapshotFile snapshot;
+        long firstSequence;
+        synchronized (registry) {
+            Account.lockAll();
+            try {
+                firstSequence = log.rotate();
+                snapshot = SnapshotFile.capture(registry, firstSequence - 1, log.getPendingTransfers());
+            } finally {
+                Account.unlockAll();
+            }
+        }
+        snapshot.writeTo(directory);
+        for (Path file : listLogFiles(directory)) {
+            if (file.getFileName().toString().compareTo(WriteAheadLog.fileFor(directory, firstSequence).getFileName().toString()) < 0) {
+                Files.deleteIfExists(file);
+            }
+        }
+        checkpointFailure = null;
+    }
+
+    /**
+     * Stops the checkpoints and closes the log
+     * @throws IOException Exception thrown if the log cannot be closed, or if the last scheduled checkpoint failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        if (Account.getOperationLog() == log) {
+            Account.setOperationLog(null);
+        }
+        log.close();
+        IOException failure = checkpointFailure;
+        if (failure != null) {
+            throw new IOException("The last scheduled checkpoint failed.", failure);
+        }
+    }
+
+    /**
+     * Runs a checkpoint on the scheduler thread, keeping its failure for close since no caller is
+     * waiting for it
+     */
+    private void runScheduledCheckpoint() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            fail(e);
+        } catch (UncheckedIOException e) {
+            fail(e.getCause());
+        }
+    }
+
+    private void fail(IOException e) {
+        checkpointFailure = e;
+        LOGGER.log(System.Logger.Level.WARNING, "A scheduled checkpoint failed.", e);
+    }
+
+    /**
+     * Replays the log files in order, applying the records written after the snapshot. Replay
+     * stops at the first gap in the sequence numbers, and the files after it are deleted. The legs
+     * of a transaction are held until the last one is read, so a transaction cut by a crash is
+     * dropped as a whole, and the next log file starts again at its header sequence number.
+     * @return The sequence number of the last applied record
+     */
+    private static long replayLogs(Path directory, AccountRegistry registry, long lastSequence,
+                                   LongHashMap<PendingTransfer> pendingTransfers) throws IOException {
+        long[] applied = {lastSequence};
+        long[] transaction = {0, 0}; // Sequence number of the header of the transaction being read, or 0, and its number of legs
+        List<long[]> legs = new ArrayList<>(); // Legs of the transaction being read: IDs, amount, balances after and time
+        boolean stopped = false;
+        for (Path file : listLogFiles(directory)) {
+            long firstSequence = stopped ? 0 : LogReader.firstSequence(file);
+            if (firstSequence == 0 || firstSequence > applied[0] + 1) {
+                stopped |= firstSequence != 0;
+                Files.delete(file);
+                continue;
+            }
+            LogReader.read(file, (sequence, type, currency, accountId, counterpartyId, minorUnits, balanceAfter,
+                                  counterpartyBalanceAfter, extra, name) -> {
+                if (sequence != (transaction[0] == 0 ? applied[0] + 1 : transaction[0] + legs.size() + 1)) {
+                    return;
+                }
+                if (type == LogRecordType.TRANSACTION) {
+                    transaction[0] = sequence;
+                    transaction[1] = minorUnits;
+                    legs.clear();
+                } else if (transaction[0] != 0) {
+                    legs.add(new long[]{accountId, counterpartyId, minorUnits, balanceAfter, counterpartyBalanceAfter, extra});
+                } else {
+                    apply(registry, pendingTransfers, type, currency, accountId, counterpartyId, minorUnits, balanceAfter, counterpartyBalanceAfter, extra, name);
+                    applied[0] = sequence;
+                    return;
+                }
+                if (legs.size() == transaction[1]) {
+                    for (long[] leg : legs) {
+                        apply(registry, pendingTransfers, LogRecordType.TRANSFER, null, leg[0], leg[1], leg[2], leg[3], leg[4], leg[5], null);
+                    }
+                    applied[0] = sequence;
+                    transaction[0] = 0;
+                    legs.clear();
+                }
+            });
+            // The legs of a transaction are written together, so a transaction never spans two files
+            transaction[0] = 0;
+            legs.clear();
+        }
+        return applied[0];
+    }
+
+    /**
+     * Applies a log record to the registry. Records carry absolute balances, so they are simply copied.
+     */
+    private static void apply(AccountRegistry registry, LongHashMap<PendingTransfer> pendingTransfers, LogRecordType type, Currency currency,
+                              long accountId, long counterpartyId, long minorUnits, long balanceAfter, long counterpartyBalanceAfter,
+                              long extra, String name) {
+        switch (type) {
+            case CREATE_SAVINGS -> {
+                if (!registry.contains(accountId)) {
+                    registry.register(new SavingsAccount(accountId, name, Money.ofMinor(balanceAfter, currency), Double.longBitsToDouble(extra)));
+                }
+            }
+            case CREATE_BUSINESS -> {
+                if (!registry.contains(accountId)) {
+                    registry.register(new BusinessAccount(accountId, name, Money.ofMinor(balanceAfter, currency)));
+                }
+            }
+            case DEPOSIT, WITHDRAWAL, INTEREST, BALANCE -> {
+                Account account = registry.find(accountId);
+                if (account != null) account.restoreBalance(balanceAfter);
+            }
+            case TRANSFER -> {
+                Account from = registry.find(accountId);
+                Account to = registry.find(counterpartyId);
+                if (from != null) from.restoreBalance(balanceAfter);
+                if (to != null) to.restoreBalance(counterpartyBalanceAfter);
+                if (from instanceof BusinessAccount business) {
+                    business.getTransactionHistory().append(extra, minorUnits, counterpartyId, TransactionType.TRANSFER_OUT);
+                }
+            }
+            case TRANSFER_DEBIT -> {
+                Account from = registry.find(accountId);
+                if (from != null) from.restoreBalance(balanceAfter);
+                if (from instanceof BusinessAccount business) {
+                    business.getTransactionHistory().append(extra, minorUnits, counterpartyId, TransactionType.TRANSFER_OUT);
+                }
+                pendingTransfers.put(extra, new PendingTransfer(accountId, counterpartyId, minorUnits, counterpartyBalanceAfter, extra));
+            }
+            case TRANSFER_CREDIT -> {
+                Account account = registry.find(accountId);
+                if (account != null) account.restoreBalance(balanceAfter);
+                PendingTransfer transfer = pendingTransfers.remove(extra);
+                // A refund is logged as a credit of the debited account, which also drops the transfer from its history
+                if (transfer != null && counterpartyId == accountId && account instanceof BusinessAccount business) {
+                    business.getTransactionHistory().remove(extra, transfer.minorUnits, transfer.toId, TransactionType.TRANSFER_OUT);
+                }
+            }
+            case OWNER_NAME -> {
+                Account account = registry.find(accountId);
+                if (account != null) account.setOwnerName(name);
+            }
+            case INTEREST_RATE -> {
+                SavingsAccount account = registry.findSavingsAccount(accountId);
+                if (account != null) account.setInterestRate(Double.longBitsToDouble(extra));
+            }
+        }
+    }
+
+    /**
+     * Credits the transfers that were in flight between two threads when the system stopped, or
+     * refunds them if the credit is not possible, and waits for the new records to be durable
+     */
+    private static void completePendingTransfers(AccountRegistry registry, LongHashMap<PendingTransfer> pendingTransfers) {
+        for (PendingTransfer transfer : pendingTransfers.values()) {
+            Account from = registry.find(transfer.fromId);
+            Account to = registry.find(transfer.toId);
+            if (from == null) {
+                continue;
+            }
+            OperationResult result = to == null ? OperationResult.ACCOUNT_NOT_FOUND
+                    : to.creditTransfer(from, transfer.minorUnits, transfer.convertedUnits, from.getBalanceMinorUnits(), transfer.epochNanos);
+            if (result != OperationResult.COMPLETED) {
+                from.refundTransfer(transfer.minorUnits, transfer.toId, result, transfer.epochNanos);
+            }
+        }
+        Account.getOperationLog().awaitDurable(Account.getOperationLog().getLastSequence());
+    }
+
+    /**
+     * Lists the log files of a directory, ordered by their first sequence number
+     */
+    private static List<Path> listLogFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> WriteAheadLog.isLogFile(file.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+}
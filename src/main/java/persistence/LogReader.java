@@ -0,0 +1,128 @@
+package persistence;
+
+import enums.Currency;
+import enums.LogRecordType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the records of a write-ahead log file through a read-only memory map. Reading stops at the
+ * first slot that is empty, out of sequence or fails its checksum, which is where a crash cut the log.
+ */
+public class LogReader {
+
+    private final static int RECORD_SIZE = WriteAheadLog.RECORD_SIZE;
+
+    /**
+     * Receives the fields of each record read from the log
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long sequence, LogRecordType type, Currency currency, long accountId, long counterpartyId, long minorUnits,
+                   long balanceAfter, long counterpartyBalanceAfter, long extra, String name);
+    }
+
+    private LogReader() {
+    }
+
+    /**
+     * Reads the first sequence number stored in a log file
+     * @param file The log file
+     * @return The sequence number, or 0 if the file holds no record
+     * @throws IOException Exception thrown if the file cannot be read
+     */
+    public static long firstSequence(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < RECORD_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer.getLong(0);
+        }
+    }
+
+    /**
+     * Reads the records of a log file in order
+     * @param file The log file
+     * @param visitor The visitor receiving the valid records
+     * @return The sequence number of the last valid record, or 0 if there is none
+     * @throws IOException Exception thrown if the file cannot be read
+     */
+    public static long read(Path file, RecordVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32C crc = new CRC32C();
+            byte[] header = new byte[RECORD_SIZE];
+            ByteBuffer fields = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] name = new byte[WriteAheadLog.MAX_NAME_LENGTH];
+            MappedByteBuffer segment = null;
+            long segmentStart = -1;
+            long lastSequence = 0;
+            long position = 0;
+
+            while (position + RECORD_SIZE <= size) {
+                long start = position / WriteAheadLog.SEGMENT_SIZE * WriteAheadLog.SEGMENT_SIZE;
+                if (start != segmentStart) {
+                    segment = map(channel, start, size);
+                    segmentStart = start;
+                }
+                int offset = (int) (position - segmentStart);
+                long sequence = segment.getLong(offset);
+                if (sequence == 0 || (lastSequence != 0 && sequence != lastSequence + 1)) {
+                    break;
+                }
+                segment.get(offset, header, 0, RECORD_SIZE);
+                LogRecordType type = LogRecordType.fromOrdinal(header[8]);
+                Currency currency = Currency.fromOrdinal(header[9]);
+                int nameLength = segment.getChar(offset + 10);
+                int storedCrc = segment.getInt(offset + 12);
+                long nameSlots = (nameLength + RECORD_SIZE - 1) / RECORD_SIZE;
+                if (type == null || currency == null || nameLength > WriteAheadLog.MAX_NAME_LENGTH || position + (1 + nameSlots) * RECORD_SIZE > size) {
+                    break;
+                }
+                position += RECORD_SIZE;
+
+                // Name bytes may continue into the next segment, so they are read slot by slot
+                for (int read = 0; read < nameLength; read += RECORD_SIZE) {
+                    long slotStart = position / WriteAheadLog.SEGMENT_SIZE * WriteAheadLog.SEGMENT_SIZE;
+                    if (slotStart != segmentStart) {
+                        segment = map(channel, slotStart, size);
+                        segmentStart = slotStart;
+                    }
+                    segment.get((int) (position - segmentStart), name, read, Math.min(RECORD_SIZE, nameLength - read));
+                    position += RECORD_SIZE;
+                }
+
+                fields.putInt(12, 0);
+                crc.reset();
+                crc.update(header, 0, RECORD_SIZE);
+                crc.update(name, 0, nameLength);
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+
+                visitor.visit(sequence, type, currency, fields.getLong(16), fields.getLong(24),
+                        fields.getLong(32), fields.getLong(40), fields.getLong(48), fields.getLong(56),
+                        nameLength == 0 ? null : new String(name, 0, nameLength, StandardCharsets.UTF_8));
+                lastSequence = sequence;
+            }
+            return lastSequence;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long size) throws IOException {
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WriteAheadLog.SEGMENT_SIZE, size - start));
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        return segment;
+    }
+
+}
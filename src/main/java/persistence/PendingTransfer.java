@@ -0,0 +1,23 @@
+package persistence;
+
+/**
+ * A transfer whose debit is logged but whose credit is not, because it was in flight between two
+ * threads. Recovery applies the missing credit.
+ */
+final class PendingTransfer {
+
+    final long fromId; // The debited account
+    final long toId; // The account to be credited
+    final long minorUnits; // The debited amount, in minor units of the source account currency
+    final long convertedUnits; // The amount to be credited, in minor units of the destination account currency
+    final long epochNanos; // The time of the transfer, which identifies it among the transfers in flight
+
+    PendingTransfer(long fromId, long toId, long minorUnits, long convertedUnits, long epochNanos) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.minorUnits = minorUnits;
+        this.convertedUnits = convertedUnits;
+        this.epochNanos = epochNanos;
+    }
+
+}
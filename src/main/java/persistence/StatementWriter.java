@@ -0,0 +1,127 @@
+package persistence;
+
+import enums.Currency;
+import enums.TransactionType;
+import model.BusinessAccount;
+import model.TransactionJournal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Writes the statement of a business account: its transfers in a time range, as CSV or binary.
+ * Entries are streamed from a history cursor straight to the file, so memory use does not depend
+ * on the size of the history, and the account lock is only held while opening the cursor.
+ * <p>
+ * Binary layout: int magic, int version, long account ID, byte currency, long start and end of
+ * the range (epoch nanos), int entry count, then per entry: long time (epoch nanos), long amount
+ * in minor units, long counterparty ID and byte transaction type.
+ */
+public class StatementWriter {
+
+    private final static int MAGIC = 0x4253544D; // "BSTM"
+    private final static int VERSION = 1;
+
+    private StatementWriter() {
+    }
+
+    /**
+     * Writes the statement as a CSV file with a header line. Amounts are written in major units.
+     * @param account The business account
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @param file The file to be written
+     * @return The number of transfers written
+     * @throws IOException Exception thrown if the file cannot be written
+     */
+    public static int writeCsv(BusinessAccount account, long fromEpochNanos, long toEpochNanos, Path file) throws IOException {
+        Currency currency = account.getCurrency();
+        TransactionJournal.Cursor cursor = account.historyCursor(fromEpochNanos, toEpochNanos);
+        int count = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("time,type,counterpartyId,amount,currency");
+            out.newLine();
+            while (cursor.next()) {
+                out.write(Instant.ofEpochSecond(0, cursor.getTimestamp()) + "," + cursor.getType() + ',' + cursor.getCounterpartyId() + ','
+                        + BigDecimal.valueOf(cursor.getAmount(), currency.getMinorDigits()).toPlainString() + ',' + currency);
+                out.newLine();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the statement as a binary file
+     * @param account The business account
+     * @param fromEpochNanos The start of the range, inclusive
+     * @param toEpochNanos The end of the range, exclusive
+     * @param file The file to be written
+     * @return The number of transfers written
+     * @throws IOException Exception thrown if the file cannot be written
+     */
+    public static int writeBinary(BusinessAccount account, long fromEpochNanos, long toEpochNanos, Path file) throws IOException {
+        TransactionJournal.Cursor cursor = account.historyCursor(fromEpochNanos, toEpochNanos);
+        int count = cursor.remaining(); // The cursor is fixed when opened, so the count is known up front
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(account.getId());
+            out.writeByte(account.getCurrency().ordinal());
+            out.writeLong(fromEpochNanos);
+            out.writeLong(toEpochNanos);
+            out.writeInt(count);
+            while (cursor.next()) {
+                out.writeLong(cursor.getTimestamp());
+                out.writeLong(cursor.getAmount());
+                out.writeLong(cursor.getCounterpartyId());
+                out.writeByte(cursor.getType().ordinal());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a binary statement, streaming its entries to a visitor
+     * @param file The file to be read
+     * @param visitor The visitor receiving the entries, from the oldest to the newest
+     * @return The ID of the account of the statement
+     * @throws IOException Exception thrown if the file cannot be read or is not a valid statement
+     */
+    public static long readBinary(Path file, TransactionJournal.EntryVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported statement file " + file + ".");
+            }
+            long accountId = in.readLong();
+            if (Currency.fromOrdinal(in.readByte()) == null) {
+                throw new IOException("Unknown currency in statement file " + file + ".");
+            }
+            in.readLong(); // Start of the range
+            in.readLong(); // End of the range
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long epochNanos = in.readLong();
+                long minorUnits = in.readLong();
+                long counterpartyId = in.readLong();
+                TransactionType type;
+                try {
+                    type = TransactionType.fromOrdinal(in.readByte());
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Unknown transaction type in statement file " + file + ".");
+                }
+                visitor.visit(epochNanos, minorUnits, counterpartyId, type);
+            }
+            return accountId;
+        }
+    }
+
+}
@@ -0,0 +1,450 @@
+package persistence;
+
+import enums.Currency;
+import enums.LogRecordType;
+import interfaces.OperationLog;
+import model.Account;
+import model.SavingsAccount;
+import util.LongHashMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log storing every account change as fixed-width binary records in memory-mapped
+ * files. Records carry the balances after the change, so replaying them is idempotent.
+ * Records are forced to disk in groups by a background thread: callers that need durability
+ * wait in {@link #awaitDurable(long)}, and a single force covers every record written meanwhile.
+ * <p>
+ * Record layout (64 bytes, little endian):
+ * <pre>
+ *  0 long  sequence (starts at 1, 0 marks unused space)
+ *  8 byte  record type
+ *  9 byte  currency ordinal of a created account, otherwise 0
+ * 10 short length of the owner name that follows in extra slots
+ * 12 int   CRC32C of the record and the name, computed with this field set to 0
+ * 16 long  account ID
+ * 24 long  counterparty account ID
+ * 32 long  amount in minor units
+ * 40 long  balance after the change
+ * 48 long  counterparty balance after the change
+ * 56 long  extra value (interest rate bits or transfer time)
+ * </pre>
+ * A transfer between accounts owned by different threads is logged in two records: a debit,
+ * which stores the amount to be credited in the counterparty balance field, and a credit
+ * referring to the debit by its transfer time. The log keeps the debits not credited yet, so
+ * checkpoints can save them.
+ * <p>
+ * A transaction is logged as a header record holding its number of legs in the amount field and
+ * its time in the extra field, followed by one transfer record per leg. The records of a
+ * transaction are written together, so recovery can drop a transaction whose legs were cut by a
+ * crash.
+ * <p>
+ * If the records cannot be forced, nothing written afterwards can be trusted to reach the disk:
+ * the failure is kept, every waiting caller is woken up with it, and later writes fail.
+ */
+public class WriteAheadLog implements OperationLog, AutoCloseable {
+
+    public final static int RECORD_SIZE = 64;
+    public final static int MAX_NAME_LENGTH = 4096; // Maximum length of an owner name in UTF-8 bytes
+    final static long SEGMENT_SIZE = 64L << 20; // Size of each mapped region of a log file
+
+    private final static String FILE_PREFIX = "wal-";
+    private final static String FILE_SUFFIX = ".log";
+    private final static System.Logger LOGGER = System.getLogger(WriteAheadLog.class.getName());
+
+    private final Path directory; // Directory holding the log files
+    private final boolean syncOnCommit; // Whether callers wait for their records to reach the disk
+    private final long flushIntervalMillis; // Maximum time between two forces
+    private final CRC32C crc = new CRC32C(); // Checksum used by the writer, guarded by this
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel channel; // Channel of the current log file
+    private final List<MappedByteBuffer> segments = new ArrayList<>(); // Mapped regions of the current file
+    private long position; // Write position in the current file
+    private long forcedPosition; // Position up to which the current file has been forced
+    private long nextSequence; // Sequence number of the next record
+    private volatile long writtenSequence; // Sequence number of the last record written
+    private volatile long durableSequence; // Sequence number of the last record forced to disk
+    private boolean closed;
+    private volatile UncheckedIOException failure; // First failure to force the records, after which the log is unusable
+
+    private final LongHashMap<PendingTransfer> pendingTransfers = new LongHashMap<>(); // Debits not credited yet by transfer time, guarded by this
+
+    private final Object flushMonitor = new Object(); // Used to wake up the flusher and the waiting callers
+    private final Thread flusher;
+
+    /**
+     * Creates a new log file in a directory
+     * @param directory The directory holding the log files
+     * @param firstSequence The sequence number of the first record to write
+     * @param syncOnCommit Whether callers wait for their records to be forced to disk
+     * @param flushIntervalMillis The maximum time between two forces
+     * @throws IOException Exception thrown if the file cannot be created
+     */
+    public WriteAheadLog(Path directory, long firstSequence, boolean syncOnCommit, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.syncOnCommit = syncOnCommit;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.nextSequence = firstSequence;
+        this.writtenSequence = firstSequence - 1;
+        this.durableSequence = firstSequence - 1;
+        openFile(firstSequence);
+        this.flusher = new Thread(this::runFlusher, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Gets the path of the log file whose first record has a sequence number
+     * @param directory The directory holding the log files
+     * @param firstSequence The sequence number of the first record
+     * @return The path of the log file
+     */
+    public static Path fileFor(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", FILE_PREFIX, firstSequence, FILE_SUFFIX));
+    }
+
+    /**
+     * Checks if a file name belongs to a log file
+     * @param fileName The file name
+     * @return True if the name follows the log file pattern
+     */
+    public static boolean isLogFile(String fileName) {
+        return fileName.startsWith(FILE_PREFIX) && fileName.endsWith(FILE_SUFFIX);
+    }
+
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public long getLastSequence() {
+        return writtenSequence;
+    }
+
+    @Override
+    public long logCreation(Account account) {
+        boolean savings = account instanceof SavingsAccount;
+        double interestRate = savings ? ((SavingsAccount) account).getInterestRate() : 0;
+        return append(savings ? LogRecordType.CREATE_SAVINGS : LogRecordType.CREATE_BUSINESS, account.getCurrency(), account.getId(), 0, 0,
+                account.getBalanceMinorUnits(), 0, Double.doubleToRawLongBits(interestRate), account.getOwnerName());
+    }
+
+    @Override
+    public long logDeposit(long accountId, long minorUnits, long balanceAfter) {
+        return append(LogRecordType.DEPOSIT, null, accountId, 0, minorUnits, balanceAfter, 0, 0, null);
+    }
+
+    @Override
+    public long logWithdrawal(long accountId, long minorUnits, long balanceAfter) {
+        return append(LogRecordType.WITHDRAWAL, null, accountId, 0, minorUnits, balanceAfter, 0, 0, null);
+    }
+
+    @Override
+    public long logTransfer(long fromId, long toId, long minorUnits, long fromBalanceAfter, long toBalanceAfter, long epochNanos) {
+        return append(LogRecordType.TRANSFER, null, fromId, toId, minorUnits, fromBalanceAfter, toBalanceAfter, epochNanos, null);
+    }
+
+    @Override
+    public synchronized long logTransaction(int legs, long[] fromIds, long[] toIds, long[] minorUnits, long[] fromBalancesAfter,
+                                            long[] toBalancesAfter, long epochNanos) {
+        long sequence = append(LogRecordType.TRANSACTION, null, 0, 0, legs, 0, 0, epochNanos, null);
+        for (int i = 0; i < legs; i++) {
+            sequence = append(LogRecordType.TRANSFER, null, fromIds[i], toIds[i], minorUnits[i], fromBalancesAfter[i], toBalancesAfter[i], epochNanos, null);
+        }
+        return sequence;
+    }
+
+    @Override
+    public synchronized long logTransferDebit(long fromId, long toId, long minorUnits, long convertedUnits, long fromBalanceAfter, long epochNanos) {
+        long sequence = append(LogRecordType.TRANSFER_DEBIT, null, fromId, toId, minorUnits, fromBalanceAfter, convertedUnits, epochNanos, null);
+        pendingTransfers.put(epochNanos, new PendingTransfer(fromId, toId, minorUnits, convertedUnits, epochNanos));
+        return sequence;
+    }
+
+    @Override
+    public synchronized long logTransferCredit(long accountId, long fromId, long minorUnits, long balanceAfter, long epochNanos) {
+        long sequence = append(LogRecordType.TRANSFER_CREDIT, null, accountId, fromId, minorUnits, balanceAfter, 0, epochNanos, null);
+        pendingTransfers.remove(epochNanos);
+        return sequence;
+    }
+
+    /**
+     * Copies the transfers whose debit is logged but whose credit is not
+     * @return The pending transfers
+     */
+    synchronized List<PendingTransfer> getPendingTransfers() {
+        return pendingTransfers.values();
+    }
+
+    @Override
+    public long logInterest(long accountId, long minorUnits, long balanceAfter) {
+        return append(LogRecordType.INTEREST, null, accountId, 0, minorUnits, balanceAfter, 0, 0, null);
+    }
+
+    @Override
+    public long logBalance(long accountId, long balance) {
+        return append(LogRecordType.BALANCE, null, accountId, 0, 0, balance, 0, 0, null);
+    }
+
+    @Override
+    public long logOwnerName(long accountId, String ownerName) {
+        return append(LogRecordType.OWNER_NAME, null, accountId, 0, 0, 0, 0, 0, ownerName);
+    }
+
+    @Override
+    public long logInterestRate(long accountId, double interestRate) {
+        return append(LogRecordType.INTEREST_RATE, null, accountId, 0, 0, 0, 0, Double.doubleToRawLongBits(interestRate), null);
+    }
+
+    /**
+     * Writes a record, followed by the owner name if there is one, into the mapped file
+     * @return The sequence number of the record
+     * @throws UncheckedIOException Exception thrown if the file cannot be extended
+     */
+    private synchronized long append(LogRecordType type, Currency currency, long accountId, long counterpartyId, long minorUnits,
+                                     long balanceAfter, long counterpartyBalanceAfter, long extra, String name) {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log is closed.");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("The write-ahead log could not force its records.", failure.getCause());
+        }
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        int nameLength = nameBytes == null ? 0 : nameBytes.length;
+        if (nameLength > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Owner names are limited to " + MAX_NAME_LENGTH + " bytes.");
+        }
+        long sequence = nextSequence;
+        scratch.clear();
+        scratch.putLong(0, sequence);
+        scratch.put(8, (byte) type.ordinal());
+        scratch.put(9, currency == null ? 0 : (byte) currency.ordinal());
+        scratch.putShort(10, (short) nameLength);
+        scratch.putInt(12, 0);
+        scratch.putLong(16, accountId);
+        scratch.putLong(24, counterpartyId);
+        scratch.putLong(32, minorUnits);
+        scratch.putLong(40, balanceAfter);
+        scratch.putLong(48, counterpartyBalanceAfter);
+        scratch.putLong(56, extra);
+        crc.reset();
+        crc.update(scratch.array(), 0, RECORD_SIZE);
+        if (nameLength > 0) {
+            crc.update(nameBytes, 0, nameLength);
+        }
+        scratch.putInt(12, (int) crc.getValue());
+
+        try {
+            writeSlot(scratch.array(), 0, RECORD_SIZE);
+            for (int offset = 0; offset < nameLength; offset += RECORD_SIZE) {
+                writeSlot(nameBytes, offset, Math.min(RECORD_SIZE, nameLength - offset));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to the write-ahead log.", e);
+        }
+        nextSequence = sequence + 1;
+        writtenSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Copies bytes into the next 64-byte slot, mapping a new segment when the current one is full
+     * @throws IOException Exception thrown if the file cannot be extended
+     */
+    private void writeSlot(byte[] source, int offset, int length) throws IOException {
+        int segmentIndex = (int) (position / SEGMENT_SIZE);
+        if (segmentIndex == segments.size()) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segmentIndex * SEGMENT_SIZE, SEGMENT_SIZE));
+        }
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        int slot = (int) (position % SEGMENT_SIZE);
+        segment.put(slot, source, offset, length);
+        if (length < RECORD_SIZE) {
+            for (int i = slot + length; i < slot + RECORD_SIZE; i++) {
+                segment.put(i, (byte) 0);
+            }
+        }
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * Blocks until a record is forced to disk. Returns immediately if the log was opened without
+     * synchronous commits.
+     * @param sequence The sequence number of the record
+     * @throws UncheckedIOException Exception thrown if the log failed to force its records before this one was forced
+     */
+    @Override
+    public void awaitDurable(long sequence) {
+        if (!syncOnCommit || durableSequence >= sequence) {
+            return;
+        }
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll(); // Wakes up the flusher instead of waiting for the next interval
+            while (durableSequence < sequence && !closed && failure == null) {
+                try {
+                    flushMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (durableSequence < sequence && failure != null) {
+            throw new UncheckedIOException("The write-ahead log could not force its records.", failure.getCause());
+        }
+    }
+
+    /**
+     * Forces every written record to disk
+     * @throws UncheckedIOException Exception thrown if the records cannot be forced
+     */
+    public void flush() {
+        List<MappedByteBuffer> dirty;
+        long from;
+        long to;
+        long sequence;
+        synchronized (this) {
+            if (position == forcedPosition) {
+                publishDurable(writtenSequence);
+                return;
+            }
+            dirty = new ArrayList<>(segments);
+            from = forcedPosition;
+            to = position;
+            sequence = writtenSequence;
+        }
+        try {
+            force(dirty, from, to);
+        } catch (UncheckedIOException e) {
+            fail(e);
+            throw e;
+        }
+        synchronized (this) {
+            // A rotation may have happened meanwhile, in which case it already forced everything
+            if (forcedPosition == from && segments.size() >= dirty.size() && segments.get(0) == dirty.get(0)) {
+                forcedPosition = to;
+            }
+        }
+        publishDurable(sequence);
+    }
+
+    /**
+     * Closes the current log file and continues in a new one starting at the next sequence
+     * number. The caller must make sure no other thread is logging.
+     * @return The sequence number of the first record of the new file
+     * @throws IOException Exception thrown if the new file cannot be created
+     */
+    public synchronized long rotate() throws IOException {
+        if (position == 0) {
+            return nextSequence; // The current file has no records, so it already starts at the next sequence number
+        }
+        force(segments, forcedPosition, position);
+        closeFile();
+        publishDurable(writtenSequence);
+        openFile(nextSequence);
+        return nextSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            force(segments, forcedPosition, position);
+            closeFile();
+            closed = true;
+        }
+        publishDurable(writtenSequence);
+        flusher.interrupt();
+    }
+
+    private void openFile(long firstSequence) throws IOException {
+        channel = FileChannel.open(fileFor(directory, firstSequence),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        position = 0;
+        forcedPosition = 0;
+    }
+
+    private void closeFile() throws IOException {
+        segments.clear();
+        channel.force(true);
+        channel.close();
+    }
+
+    /**
+     * Forces a byte range of the mapped segments to disk
+     */
+    private static void force(List<MappedByteBuffer> segments, long from, long to) {
+        while (from < to) {
+            int segmentIndex = (int) (from / SEGMENT_SIZE);
+            int start = (int) (from % SEGMENT_SIZE);
+            int end = (int) Math.min(SEGMENT_SIZE, to - segmentIndex * SEGMENT_SIZE);
+            segments.get(segmentIndex).force(start, end - start);
+            from = segmentIndex * SEGMENT_SIZE + end;
+        }
+    }
+
+    private void publishDurable(long sequence) {
+        synchronized (flushMonitor) {
+            if (sequence > durableSequence) {
+                durableSequence = sequence;
+            }
+            flushMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Keeps the first failure to force the records and wakes up every waiting caller, which then
+     * throws it
+     */
+    private void fail(UncheckedIOException e) {
+        synchronized (flushMonitor) {
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+            flushMonitor.notifyAll();
+        }
+        LOGGER.log(System.Logger.Level.ERROR, "The write-ahead log could not force its records to disk.", e);
+    }
+
+    /**
+     * Forces the written records periodically, or as soon as a caller is waiting for them. Stops
+     * after the first failure, which flush has recorded.
+     */
+    private void runFlusher() {
+        while (true) {
+            synchronized (flushMonitor) {
+                try {
+                    flushMonitor.wait(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                flush();
+            } catch (UncheckedIOException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package registry;
+
+import interfaces.BalanceObserver;
+import interfaces.OperationLog;
+import model.Account;
+import model.BusinessAccount;
+import model.SavingsAccount;
+import util.LongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns every account in the system and indexes them by ID for constant-time lookups.
+ * Registrations synchronize on the registry and are logged to the account operation log.
+ * Lookups take no lock: the ID index only grows, and publishes its entries safely to readers
+ * running concurrently with a registration.
+ */
+public class AccountRegistry {
+
+    private final LongHashMap<Account> accountsById; // Every account indexed by its ID
+    private final List<SavingsAccount> savingsAccounts; // Savings accounts in creation order
+    private final List<BusinessAccount> businessAccounts; // Business accounts in creation order
+    private long maxId; // Highest registered ID, used to seed the ID generator after a restart
+
+    public AccountRegistry() {
+        this.accountsById = new LongHashMap<>();
+        this.savingsAccounts = new ArrayList<>();
+        this.businessAccounts = new ArrayList<>();
+    }
+
+    /**
+     * Registers a new account
+     * @param account The account to be registered
+     * @throws IllegalArgumentException Exception thrown if an account with the same ID already exists
+     */
+    public void register(Account account) throws IllegalArgumentException {
+        OperationLog log;
+        long sequence;
+        synchronized (this) {
+            if (accountsById.containsKey(account.getId())) {
+                throw new IllegalArgumentException("An account with ID " + account.getId() + " already exists.");
+            }
+            log = Account.getOperationLog();
+            sequence = log.logCreation(account);
+            accountsById.put(account.getId(), account);
+            maxId = Math.max(maxId, account.getId());
+            if (account instanceof SavingsAccount savingsAccount) {
+                savingsAccounts.add(savingsAccount);
+            } else if (account instanceof BusinessAccount businessAccount) {
+                businessAccounts.add(businessAccount);
+            }
+        }
+        Account.getBalanceObserver().onBalanceChanged(account);
+        log.awaitDurable(sequence);
+    }
+
+    /**
+     * Sizes the ID index for a number of accounts, so registering them does not resize it
+     * @param expectedAccounts The number of accounts the registry is expected to hold
+     */
+    public synchronized void ensureCapacity(int expectedAccounts) {
+        accountsById.ensureCapacity(expectedAccounts);
+    }
+
+    /**
+     * Registers many accounts at once, sizing the index for all of them first and waiting only
+     * once for their creation to be durable
+     * @param accounts The accounts to be registered
+     * @throws IllegalArgumentException Exception thrown if an account with the same ID already exists.
+     *                                  The accounts before it stay registered.
+     */
+    public void registerAll(List<? extends Account> accounts) throws IllegalArgumentException {
+        OperationLog log;
+        long sequence = 0;
+        synchronized (this) {
+            accountsById.ensureCapacity(accountsById.size() + accounts.size());
+            log = Account.getOperationLog();
+            for (Account account : accounts) {
+                if (accountsById.containsKey(account.getId())) {
+                    throw new IllegalArgumentException("An account with ID " + account.getId() + " already exists.");
+                }
+                sequence = log.logCreation(account);
+                accountsById.put(account.getId(), account);
+                maxId = Math.max(maxId, account.getId());
+                if (account instanceof SavingsAccount savingsAccount) {
+                    savingsAccounts.add(savingsAccount);
+                } else if (account instanceof BusinessAccount businessAccount) {
+                    businessAccounts.add(businessAccount);
+                }
+            }
+        }
+        BalanceObserver observer = Account.getBalanceObserver();
+        if (observer != BalanceObserver.NONE) {
+            for (Account account : accounts) {
+                observer.onBalanceChanged(account);
+            }
+        }
+        log.awaitDurable(sequence);
+    }
+
+    /**
+     * Gets the highest ID of the registered accounts
+     * @return The highest ID, or 0 if there are no accounts
+     */
+    public synchronized long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Finds an account by its ID
+     * @param id The account ID
+     * @return The account, or null if no account has the ID
+     */
+    public Account find(long id) {
+        return accountsById.get(id);
+    }
+
+    /**
+     * Finds a savings account by its ID
+     * @param id The account ID
+     * @return The savings account, or null if no savings account has the ID
+     */
+    public SavingsAccount findSavingsAccount(long id) {
+        return accountsById.get(id) instanceof SavingsAccount account ? account : null;
+    }
+
+    /**
+     * Finds a business account by its ID
+     * @param id The account ID
+     * @return The business account, or null if no business account has the ID
+     */
+    public BusinessAccount findBusinessAccount(long id) {
+        return accountsById.get(id) instanceof BusinessAccount account ? account : null;
+    }
+
+    public boolean contains(long id) {
+        return accountsById.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return accountsById.size();
+    }
+
+    /**
+     * Gets a snapshot of the savings accounts, which later registrations do not change
+     * @return The savings accounts in creation order
+     */
+    public synchronized List<SavingsAccount> getSavingsAccounts() {
+        return List.copyOf(savingsAccounts);
+    }
+
+    /**
+     * Gets a snapshot of the business accounts, which later registrations do not change
+     * @return The business accounts in creation order
+     */
+    public synchronized List<BusinessAccount> getBusinessAccounts() {
+        return List.copyOf(businessAccounts);
+    }
+
+}
@@ -0,0 +1,101 @@
+package registry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Allocates unique 64-bit account IDs without locks, Snowflake style:
+ * <pre>
+ * bit 63      always 0, so IDs are positive
+ * bits 22-62  milliseconds since 2024-01-01T00:00:00Z
+ * bits 12-21  node ID
+ * bits 8-11   stripe of the allocating thread
+ * bits 0-7    sequence of the stripe within the millisecond
+ * </pre>
+ * Threads are spread over 16 stripes by their thread ID, and each stripe counts its own sequence
+ * in a separate cache line, so threads on different stripes never contend. The IDs allocated by
+ * one thread increase; IDs of different stripes within a millisecond are ordered by stripe, not by
+ * time. When more than 256 IDs of a stripe are requested in a millisecond, or the clock goes
+ * backwards, the stripe keeps counting from its last ID instead of waiting, so IDs never repeat.
+ * Seeding the generator with the highest ID already in use keeps them unique across restarts.
+ */
+public class IdGenerator {
+
+    public final static int NODE_BITS = 10;
+    public final static int SEQUENCE_BITS = 12;
+    public final static int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final static long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    private final static int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private final static int STRIPE_BITS = 4;
+    private final static int STRIPE_MASK = (1 << STRIPE_BITS) - 1;
+    private final static int STRIPE_SEQUENCE_BITS = SEQUENCE_BITS - STRIPE_BITS; // Bits of the sequence counted by each stripe
+    private final static long STRIPE_SEQUENCE_MASK = (1L << STRIPE_SEQUENCE_BITS) - 1;
+    private final static int STRIDE = 16; // Elements between the ticks of two stripes, so each has its own cache lines
+    private final static long MAX_TIMESTAMP = (1L << (Long.SIZE - 1 - TIMESTAMP_SHIFT)) - 1;
+
+    private final long nodeBits; // Node ID shifted into place
+    private final AtomicLongArray lastTicks; // Timestamp and sequence of the last ID of each stripe, as timestamp << STRIPE_SEQUENCE_BITS | sequence
+
+    /**
+     * Creates a generator
+     * @param nodeId The ID of this node, between 0 and {@link #MAX_NODE_ID}
+     * @param highWaterMark The highest ID already in use, or 0
+     * @throws IllegalArgumentException Exception thrown if the node ID is out of range
+     */
+    public IdGenerator(int nodeId, long highWaterMark) throws IllegalArgumentException {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("The node ID must be between 0 and " + MAX_NODE_ID + ".");
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        // The first ID uses at least the millisecond after the high-water mark, so it is greater
+        // whatever node allocated the high-water mark
+        long firstTick = ((highWaterMark >>> TIMESTAMP_SHIFT) + 1 << STRIPE_SEQUENCE_BITS) - 1;
+        this.lastTicks = new AtomicLongArray((STRIPE_MASK + 1) * STRIDE);
+        for (int stripe = 0; stripe <= STRIPE_MASK; stripe++) {
+            lastTicks.set(stripe * STRIDE, firstTick);
+        }
+    }
+
+    /**
+     * Allocates a new ID, greater than the high-water mark and than every ID allocated before by
+     * the threads of the same stripe
+     * @return The ID
+     * @throws IllegalStateException Exception thrown if the timestamp no longer fits in an ID
+     */
+    public long nextId() throws IllegalStateException {
+        int stripe = (int) Thread.currentThread().getId() & STRIPE_MASK;
+        int slot = stripe * STRIDE;
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << STRIPE_SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = lastTicks.get(slot);
+            next = Math.max(last + 1, now);
+        } while (!lastTicks.compareAndSet(slot, last, next));
+
+        long timestamp = next >>> STRIPE_SEQUENCE_BITS;
+        if (timestamp > MAX_TIMESTAMP) {
+            throw new IllegalStateException("No more IDs can be allocated.");
+        }
+        return timestamp << TIMESTAMP_SHIFT | nodeBits | (long) stripe << STRIPE_SEQUENCE_BITS | (next & STRIPE_SEQUENCE_MASK);
+    }
+
+    /**
+     * Gets the time encoded in an ID
+     * @param id The ID
+     * @return The time in milliseconds since the epoch
+     */
+    public static long getTimestampMillis(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH_MILLIS;
+    }
+
+    /**
+     * Gets the node encoded in an ID
+     * @param id The ID
+     * @return The node ID
+     */
+    public static int getNodeId(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+
+}
@@ -0,0 +1,89 @@
+package registry;
+
+import enums.Currency;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import model.TransferLimits;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transfer limits read from a local CSV file with one line per account type or account:
+ * {@code TARGET,CURRENCY,PER_TRANSFER,HOURLY,DAILY,PER_MINUTE}, such as
+ * {@code SAVINGS,EUR,500,2000,5000,10}. The target is SAVINGS, BUSINESS or the ID of an account,
+ * whose line then overrides the limits of its type. An empty field means there is no such limit.
+ * Lines starting with # are ignored. The whole file is checked before any limit is applied.
+ */
+public class TransferLimitsFile {
+
+    private TransferLimitsFile() {
+    }
+
+    /**
+     * Reads a file and applies its limits
+     * @param file The file holding the limits
+     * @param registry The registry holding the accounts named in the file
+     * @return The number of limits applied
+     * @throws IOException Exception thrown if the file cannot be read, is not valid or names an unknown account
+     */
+    public static int load(Path file, AccountRegistry registry) throws IOException {
+        List<Object> targets = new ArrayList<>(); // SavingsAccount.class, BusinessAccount.class or an account
+        List<TransferLimits> limits = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) continue;
+                String[] fields = line.split(",", -1);
+                try {
+                    if (fields.length != 6) {
+                        throw new IllegalArgumentException();
+                    }
+                    String target = fields[0].trim();
+                    Currency currency = Currency.valueOf(fields[1].trim());
+                    String perMinute = fields[5].trim();
+                    limits.add(new TransferLimits(parse(fields[2], currency), parse(fields[3], currency), parse(fields[4], currency),
+                            perMinute.isEmpty() ? 0 : Integer.parseInt(perMinute)));
+                    if (target.equals("SAVINGS")) {
+                        targets.add(SavingsAccount.class);
+                    } else if (target.equals("BUSINESS")) {
+                        targets.add(BusinessAccount.class);
+                    } else {
+                        Account account = registry.find(Long.parseLong(target));
+                        if (account == null) {
+                            throw new IOException("Unknown account " + target + " at line " + lineNumber + " of " + file + ".");
+                        }
+                        targets.add(account);
+                    }
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    throw new IOException("Invalid transfer limits at line " + lineNumber + " of " + file + ".");
+                }
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            Object target = targets.get(i);
+            if (target == SavingsAccount.class) {
+                SavingsAccount.setDefaultTransferLimits(limits.get(i));
+            } else if (target == BusinessAccount.class) {
+                BusinessAccount.setDefaultTransferLimits(limits.get(i));
+            } else {
+                ((Account) target).setTransferLimits(limits.get(i));
+            }
+        }
+        return targets.size();
+    }
+
+    private static Money parse(String field, Currency currency) {
+        String amount = field.trim();
+        return amount.isEmpty() ? null : Money.parse(amount, currency);
+    }
+
+}
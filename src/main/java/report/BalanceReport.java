@@ -0,0 +1,225 @@
+package report;
+
+import enums.AccountType;
+import enums.Currency;
+import interfaces.BalanceObserver;
+import model.Account;
+import model.BusinessAccount;
+import registry.AccountRegistry;
+import util.LongHashMap;
+import util.StripedLocks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aggregates over the accounts kept up to date as balances change, so reports never scan every
+ * account: the number of accounts and the total balance per account type and currency, and an
+ * index of the accounts of each currency ordered by balance for top-N and range queries. Totals
+ * are read in constant time; an index query costs the logarithm of the number of accounts plus
+ * the number of accounts it visits. The price is paid on updates: moving an account in the index
+ * costs a skip list removal and insertion, much more than the balance change itself.
+ * <p>
+ * The report is installed as the {@link BalanceObserver} of the accounts. On each change it
+ * reads the current balance of the account under a lock of its own, so the last change reported
+ * for an account always leaves its latest balance in the report. Queries do not lock: a total
+ * read while a balance changes may not include that change yet, and an index query may miss an
+ * account that is being moved.
+ */
+public class BalanceReport implements BalanceObserver {
+
+    private final static int STRIPES = 64;
+    private final static int TYPES = AccountType.values().length;
+    private final static int CURRENCIES = Currency.values().length;
+    // Highest balance first: a skip list only walks forward cheaply, and top-N is the most frequent query
+    private final static Comparator<Position> BY_BALANCE = (first, second) -> first.balance != second.balance
+            ? Long.compare(second.balance, first.balance) : Long.compare(first.id, second.id);
+
+    /**
+     * The balance an account holds in the index. Positions are immutable, so a change replaces
+     * the position of the account instead of reordering it in place.
+     */
+    private static final class Position {
+        private final long balance;
+        private final long id;
+        private final Account account;
+
+        private Position(long balance, long id, Account account) {
+            this.balance = balance;
+            this.id = id;
+            this.account = account;
+        }
+    }
+
+    /**
+     * Receives the accounts found by a query
+     */
+    @FunctionalInterface
+    public interface BalanceVisitor {
+        /**
+         * Called once per account found
+         * @param account The account
+         * @param minorUnits The balance of the account in the report, in minor units of its currency
+         */
+        void visit(Account account, long minorUnits);
+    }
+
+    private final StripedLocks locks = new StripedLocks(STRIPES); // Serialize the updates of each account
+    private final List<LongHashMap<Position>> positions; // Position of each account by ID, one map per stripe, guarded by its lock
+    private final List<NavigableSet<Position>> indexes; // Accounts from the highest balance to the lowest, one index per currency
+    private final LongAdder[] totals; // Total balance indexed by account type and currency
+    private final LongAdder[] counts; // Number of accounts indexed by account type and currency
+
+    public BalanceReport() {
+        List<LongHashMap<Position>> positions = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            positions.add(new LongHashMap<>());
+        }
+        this.positions = List.copyOf(positions);
+        List<NavigableSet<Position>> indexes = new ArrayList<>(CURRENCIES);
+        for (int i = 0; i < CURRENCIES; i++) {
+            indexes.add(new ConcurrentSkipListSet<>(BY_BALANCE));
+        }
+        this.indexes = List.copyOf(indexes);
+        this.totals = new LongAdder[TYPES * CURRENCIES];
+        this.counts = new LongAdder[TYPES * CURRENCIES];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds every account of a registry. Once the report is installed as the balance observer,
+     * this can run while the accounts are being used.
+     * @param registry The registry holding the accounts
+     */
+    public void addAll(AccountRegistry registry) {
+        for (Account account : registry.getSavingsAccounts()) {
+            onBalanceChanged(account);
+        }
+        for (Account account : registry.getBusinessAccounts()) {
+            onBalanceChanged(account);
+        }
+    }
+
+    /**
+     * Moves an account to its current balance in the totals and the index
+     * @param account The account
+     */
+    @Override
+    public void onBalanceChanged(Account account) {
+        long id = account.getId();
+        int stripe = locks.stripeFor(id);
+        ReentrantLock lock = locks.lockFor(id);
+        lock.lock();
+        try {
+            // Every change of the balance is followed by a call, made after the change is published
+            // by the account lock and serialized by this lock, so the last call reads the last change
+            long balance = account.getBalanceMinorUnitsUnlocked();
+            LongHashMap<Position> stripePositions = positions.get(stripe);
+            Position old = stripePositions.get(id);
+            if (old != null && old.balance == balance) {
+                return;
+            }
+            int currency = account.getCurrency().ordinal();
+            int slot = typeOf(account).ordinal() * CURRENCIES + currency;
+            NavigableSet<Position> index = indexes.get(currency);
+            Position position = new Position(balance, id, account);
+            if (old == null) {
+                counts[slot].increment();
+                totals[slot].add(balance);
+            } else {
+                index.remove(old);
+                totals[slot].add(balance - old.balance);
+            }
+            index.add(position);
+            stripePositions.put(id, position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static AccountType typeOf(Account account) {
+        return account instanceof BusinessAccount ? AccountType.BUSINESS : AccountType.SAVINGS;
+    }
+
+    /**
+     * Gets the total balance of the accounts of a type in a currency
+     * @param type The type of the accounts
+     * @param currency The currency of the accounts
+     * @return The total in minor units of the currency
+     */
+    public long getTotal(AccountType type, Currency currency) {
+        return totals[type.ordinal() * CURRENCIES + currency.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of accounts of a type in a currency
+     * @param type The type of the accounts
+     * @param currency The currency of the accounts
+     * @return The number of accounts
+     */
+    public long getCount(AccountType type, Currency currency) {
+        return counts[type.ordinal() * CURRENCIES + currency.ordinal()].sum();
+    }
+
+    /**
+     * Visits the accounts of a currency with the highest balances, from the highest
+     * @param currency The currency of the accounts
+     * @param limit The maximum number of accounts to visit
+     * @param visitor The visitor receiving the accounts
+     * @return The number of accounts visited
+     */
+    public int top(Currency currency, int limit, BalanceVisitor visitor) {
+        return visit(indexes.get(currency.ordinal()).iterator(), limit, visitor);
+    }
+
+    /**
+     * Visits the accounts of a currency with a balance below a threshold, from the highest
+     * @param currency The currency of the accounts
+     * @param minorUnits The threshold in minor units of the currency, exclusive
+     * @param limit The maximum number of accounts to visit
+     * @param visitor The visitor receiving the accounts
+     * @return The number of accounts visited
+     */
+    public int below(Currency currency, long minorUnits, int limit, BalanceVisitor visitor) {
+        Position threshold = new Position(minorUnits, Long.MAX_VALUE, null); // After every account with that balance
+        return visit(indexes.get(currency.ordinal()).tailSet(threshold, false).iterator(), limit, visitor);
+    }
+
+    /**
+     * Visits the accounts of a currency with a balance in a range, from the highest
+     * @param currency The currency of the accounts
+     * @param fromMinorUnits The start of the range in minor units of the currency, inclusive
+     * @param toMinorUnits The end of the range in minor units of the currency, exclusive
+     * @param limit The maximum number of accounts to visit
+     * @param visitor The visitor receiving the accounts
+     * @return The number of accounts visited
+     */
+    public int range(Currency currency, long fromMinorUnits, long toMinorUnits, int limit, BalanceVisitor visitor) {
+        if (fromMinorUnits >= toMinorUnits) {
+            return 0;
+        }
+        Position highest = new Position(toMinorUnits, Long.MAX_VALUE, null); // After every account with the end balance
+        Position lowest = new Position(fromMinorUnits, Long.MAX_VALUE, null); // After every account with the start balance
+        return visit(indexes.get(currency.ordinal()).subSet(highest, false, lowest, false).iterator(), limit, visitor);
+    }
+
+    private static int visit(Iterator<Position> positions, int limit, BalanceVisitor visitor) {
+        int visited = 0;
+        while (visited < limit && positions.hasNext()) {
+            Position position = positions.next();
+            visitor.visit(position.account, position.balance);
+            visited++;
+        }
+        return visited;
+    }
+
+}
@@ -0,0 +1,396 @@
+package server;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.RequestType;
+import interfaces.OperationLog;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import model.TransactionJournal;
+import registry.AccountRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Headless server exposing the account operations over the binary {@link Protocol}. A single
+ * thread runs a non-blocking selector loop: it reads every available request, applies it, and
+ * queues its response. Once per loop it waits for the operation log to be durable, so one force
+ * covers every request read in the loop, and only then sends the queued responses.
+ */
+public class AccountServer implements Runnable, AutoCloseable {
+
+    private final static int READ_BUFFER_SIZE = 2 * (Protocol.MAX_FRAME_LENGTH + Integer.BYTES);
+    private final static int WRITE_BUFFER_SIZE = 1 << 16;
+    private final static int MAX_QUEUED_OUTPUT = 1 << 20; // Output queued for a connection before its requests stop being read
+    private final static int MAX_RESPONSE_SIZE = Integer.BYTES + Protocol.RESPONSE_HEADER_SIZE + Integer.BYTES
+            + Protocol.MAX_HISTORY_ENTRIES * Protocol.HISTORY_ENTRY_SIZE;
+
+    private final AccountRegistry registry; // Accounts operated by the requests
+    private final LongSupplier idGenerator; // Supplies the IDs of the created accounts
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<Connection> uncommitted = new ArrayList<>(); // Connections with responses waiting for the log
+    private volatile boolean running = true;
+
+    /**
+     * State of a client connection. The output buffer holds committed responses, which can be
+     * sent, followed by responses whose changes may not be durable yet.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private int committed; // Number of bytes at the start of the output buffer that can be sent
+        private boolean queued; // Whether the connection is in the uncommitted list
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Makes room in the output buffer for a response
+         */
+        private ByteBuffer reserve(int size) {
+            if (out.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + size));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Creates a server listening on an address. Requests are only served once {@link #run()} is called.
+     * @param registry The accounts operated by the requests
+     * @param idGenerator The supplier of the IDs of the created accounts
+     * @param address The address to listen on
+     * @throws IOException Exception thrown if the address cannot be bound
+     */
+    public AccountServer(AccountRegistry registry, LongSupplier idGenerator, InetSocketAddress address) throws IOException {
+        this.registry = registry;
+        this.idGenerator = idGenerator;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Serves requests on the calling thread until {@link #close()} is called
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) read(connection);
+                            if (key.isValid() && key.isWritable()) write(connection);
+                        } catch (IOException | RuntimeException e) {
+                            disconnect(connection);
+                        }
+                    }
+                }
+                commit();
+            }
+        } catch (IOException e) {
+            System.out.println("The server stopped: " + e.getMessage());
+        } finally {
+            closeChannels();
+        }
+    }
+
+    /**
+     * Stops the selector loop. The connections are closed by the thread running the server.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * Reads the available bytes of a connection and executes every complete request
+     */
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            disconnect(connection);
+            return;
+        }
+        in.flip();
+        boolean executed = false;
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < Protocol.REQUEST_HEADER_SIZE || length > Protocol.MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame length " + length + ".");
+            }
+            if (in.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            int end = in.position() + Integer.BYTES + length;
+            int limit = in.limit();
+            in.position(in.position() + Integer.BYTES).limit(end);
+            // The whole frame is checked before it is executed, so a malformed request changes nothing
+            if (Protocol.requestLength(in) != length) {
+                throw new IOException("The frame length " + length + " does not match its request.");
+            }
+            try {
+                execute(connection, in);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated request.");
+            }
+            in.limit(limit);
+            executed = true;
+        }
+        in.compact();
+
+        if (executed && !connection.queued) {
+            connection.queued = true;
+            uncommitted.add(connection);
+        }
+        if (connection.out.position() > MAX_QUEUED_OUTPUT) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Executes a request and queues its response
+     * @throws IOException Exception thrown if the request is not valid
+     */
+    private void execute(Connection connection, ByteBuffer in) throws IOException {
+        RequestType type = RequestType.fromOrdinal(in.get());
+        if (type == null) {
+            throw new IOException("Unknown request type.");
+        }
+        int requestId = in.getInt();
+        ByteBuffer out = connection.reserve(MAX_RESPONSE_SIZE);
+        int start = out.position();
+        out.putInt(0);
+        out.put((byte) type.ordinal());
+        out.putInt(requestId);
+        int resultPosition = out.position();
+        out.put((byte) 0);
+
+        OperationResult result = switch (type) {
+            case CREATE_SAVINGS -> createSavingsAccount(in, out);
+            case CREATE_BUSINESS -> createBusinessAccount(in, out);
+            case DEPOSIT -> {
+                Account account = registry.find(in.getLong());
+                long minorUnits = in.getLong();
+                yield account == null ? OperationResult.ACCOUNT_NOT_FOUND : account.depositMinorUnits(minorUnits);
+            }
+            case WITHDRAW -> {
+                Account account = registry.find(in.getLong());
+                long minorUnits = in.getLong();
+                yield account == null ? OperationResult.ACCOUNT_NOT_FOUND : account.withdrawMinorUnits(minorUnits);
+            }
+            case TRANSFER -> {
+                Account from = registry.find(in.getLong());
+                Account to = registry.find(in.getLong());
+                long minorUnits = in.getLong();
+                yield from == null || to == null ? OperationResult.ACCOUNT_NOT_FOUND : from.transferMinorUnits(minorUnits, to);
+            }
+            case BALANCE -> {
+                Account account = registry.find(in.getLong());
+                if (account == null) {
+                    yield OperationResult.ACCOUNT_NOT_FOUND;
+                }
+                out.putLong(account.getBalanceMinorUnits());
+                yield OperationResult.COMPLETED;
+            }
+            case HISTORY -> writeHistory(in, out);
+            case IDEMPOTENT_TRANSFER -> {
+                long transferId = in.getLong();
+                Account from = registry.find(in.getLong());
+                Account to = registry.find(in.getLong());
+                long minorUnits = in.getLong();
+                yield from == null || to == null ? OperationResult.ACCOUNT_NOT_FOUND : from.transferMinorUnits(minorUnits, to, transferId);
+            }
+        };
+        out.put(resultPosition, (byte) result.ordinal());
+        Protocol.endFrame(out, start);
+    }
+
+    private OperationResult createSavingsAccount(ByteBuffer in, ByteBuffer out) throws IOException {
+        long balance = in.getLong();
+        Currency currency = readCurrency(in);
+        double interestRate = in.getDouble();
+        String ownerName = readName(in);
+        if (balance < 0) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        SavingsAccount account = new SavingsAccount(idGenerator.getAsLong(), ownerName, Money.ofMinor(balance, currency), interestRate);
+        registry.register(account);
+        out.putLong(account.getId());
+        return OperationResult.COMPLETED;
+    }
+
+    private OperationResult createBusinessAccount(ByteBuffer in, ByteBuffer out) throws IOException {
+        long balance = in.getLong();
+        Currency currency = readCurrency(in);
+        String ownerName = readName(in);
+        if (balance < 0) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        BusinessAccount account = new BusinessAccount(idGenerator.getAsLong(), ownerName, Money.ofMinor(balance, currency));
+        registry.register(account);
+        out.putLong(account.getId());
+        return OperationResult.COMPLETED;
+    }
+
+    private static Currency readCurrency(ByteBuffer in) throws IOException {
+        Currency currency = Currency.fromOrdinal(in.get());
+        if (currency == null) {
+            throw new IOException("Unknown currency.");
+        }
+        return currency;
+    }
+
+    private static String readName(ByteBuffer in) throws IOException {
+        String name = Protocol.getName(in);
+        if (name == null) {
+            throw new IOException("Invalid owner name length.");
+        }
+        return name;
+    }
+
+    /**
+     * Writes a page of the transfer history of a business account from a cursor opened under the account lock
+     */
+    private OperationResult writeHistory(ByteBuffer in, ByteBuffer out) {
+        BusinessAccount account = registry.findBusinessAccount(in.getLong());
+        int first = in.getInt();
+        int limit = in.getInt();
+        if (account == null) {
+            return OperationResult.ACCOUNT_NOT_FOUND;
+        }
+        if (first < 0 || limit < 0) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        TransactionJournal.Cursor cursor = account.historyCursor(Long.MIN_VALUE, Long.MAX_VALUE, first, Math.min(limit, Protocol.MAX_HISTORY_ENTRIES));
+        out.putInt(cursor.remaining());
+        while (cursor.next()) {
+            out.putLong(cursor.getTimestamp());
+            out.putLong(cursor.getAmount());
+            out.putLong(cursor.getCounterpartyId());
+            out.put((byte) cursor.getType().ordinal());
+        }
+        return OperationResult.COMPLETED;
+    }
+
+    /**
+     * Waits once for every change made by the requests read in this loop to be durable, then
+     * sends their responses
+     */
+    private void commit() {
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        OperationLog log = Account.getOperationLog();
+        log.awaitDurable(log.getLastSequence());
+        for (Connection connection : uncommitted) {
+            connection.queued = false;
+            connection.committed = connection.out.position();
+            try {
+                write(connection);
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+        uncommitted.clear();
+    }
+
+    /**
+     * Sends the committed responses of a connection, waiting for the channel to be writable if
+     * they do not fit in the socket buffer
+     */
+    private void write(Connection connection) throws IOException {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        ByteBuffer out = connection.out;
+        out.flip();
+        int end = out.limit();
+        out.limit(connection.committed);
+        connection.channel.write(out);
+        int written = out.position();
+        out.limit(end);
+        out.compact();
+        connection.committed -= written;
+
+        int interestOps = connection.key.interestOps();
+        interestOps = connection.committed > 0 ? interestOps | SelectionKey.OP_WRITE : interestOps & ~SelectionKey.OP_WRITE;
+        if (out.position() <= MAX_QUEUED_OUTPUT) {
+            interestOps |= SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(interestOps);
+    }
+
+    private void disconnect(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // The connection is discarded anyway
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // The server is stopping anyway
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // The server is stopping anyway
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package server;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.RequestType;
+import enums.TransactionType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of the account server. Requests are queued in a buffer and sent by
+ * {@link #flush()}, so many of them can be pipelined; responses are then read in request order.
+ */
+public class BankClient implements AutoCloseable {
+
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocate(2 * (Protocol.MAX_FRAME_LENGTH + Integer.BYTES));
+    private int nextRequestId = 1;
+
+    /**
+     * Receives a response without creating an object for it
+     */
+    public interface ResponseVisitor {
+
+        /**
+         * Called for every response
+         * @param type The type of the request
+         * @param requestId The ID of the request
+         * @param result The result of the request
+         * @param value The created account ID, the balance or the number of history entries, or 0
+         */
+        void onResponse(RequestType type, int requestId, OperationResult result, long value);
+
+        /**
+         * Called for every entry of a history response, before {@link #onResponse}
+         */
+        default void onHistoryEntry(long epochNanos, long minorUnits, long counterpartyId, TransactionType type) {
+        }
+    }
+
+    /**
+     * Connects to a server
+     * @param host The host of the server
+     * @param port The port of the server
+     * @throws IOException Exception thrown if the connection fails
+     */
+    public BankClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.in.flip();
+    }
+
+    public int createSavingsAccount(String ownerName, long balance, Currency currency, double interestRate) throws IOException {
+        int start = begin(RequestType.CREATE_SAVINGS, 23 + Protocol.MAX_NAME_LENGTH);
+        out.putLong(balance);
+        out.put((byte) currency.ordinal());
+        out.putDouble(interestRate);
+        Protocol.putName(out, ownerName);
+        return end(start);
+    }
+
+    public int createBusinessAccount(String ownerName, long balance, Currency currency) throws IOException {
+        int start = begin(RequestType.CREATE_BUSINESS, 15 + Protocol.MAX_NAME_LENGTH);
+        out.putLong(balance);
+        out.put((byte) currency.ordinal());
+        Protocol.putName(out, ownerName);
+        return end(start);
+    }
+
+    public int deposit(long accountId, long minorUnits) throws IOException {
+        int start = begin(RequestType.DEPOSIT, 16);
+        out.putLong(accountId);
+        out.putLong(minorUnits);
+        return end(start);
+    }
+
+    public int withdraw(long accountId, long minorUnits) throws IOException {
+        int start = begin(RequestType.WITHDRAW, 16);
+        out.putLong(accountId);
+        out.putLong(minorUnits);
+        return end(start);
+    }
+
+    public int transfer(long fromId, long toId, long minorUnits) throws IOException {
+        int start = begin(RequestType.TRANSFER, 24);
+        out.putLong(fromId);
+        out.putLong(toId);
+        out.putLong(minorUnits);
+        return end(start);
+    }
+
+    /**
+     * Queues a transfer that the server applies at most once per transfer ID, so it can be sent
+     * again with the same ID if its response is lost
+     * @param transferId The ID chosen by the client for this transfer
+     * @param fromId The ID of the source account
+     * @param toId The ID of the destination account
+     * @param minorUnits The amount in minor units of the source account currency
+     * @return The request ID of the queued request
+     * @throws IOException Exception thrown if the request cannot be sent
+     */
+    public int transfer(long transferId, long fromId, long toId, long minorUnits) throws IOException {
+        int start = begin(RequestType.IDEMPOTENT_TRANSFER, 32);
+        out.putLong(transferId);
+        out.putLong(fromId);
+        out.putLong(toId);
+        out.putLong(minorUnits);
+        return end(start);
+    }
+
+    public int balance(long accountId) throws IOException {
+        int start = begin(RequestType.BALANCE, 8);
+        out.putLong(accountId);
+        return end(start);
+    }
+
+    public int history(long accountId, int first, int limit) throws IOException {
+        int start = begin(RequestType.HISTORY, 16);
+        out.putLong(accountId);
+        out.putInt(first);
+        out.putInt(limit);
+        return end(start);
+    }
+
+    /**
+     * Sends every queued request
+     * @throws IOException Exception thrown if the requests cannot be sent
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Blocks until the next response is received and passes it to a visitor
+     * @param visitor The visitor receiving the response
+     * @throws IOException Exception thrown if the response cannot be read
+     */
+    public void readResponse(ResponseVisitor visitor) throws IOException {
+        fill(Integer.BYTES);
+        int length = in.getInt();
+        if (length < Protocol.RESPONSE_HEADER_SIZE || length > Protocol.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length + ".");
+        }
+        fill(length);
+        int end = in.position() + length;
+        RequestType type = RequestType.fromOrdinal(in.get());
+        int requestId = in.getInt();
+        OperationResult result = OperationResult.fromOrdinal(in.get());
+        long value = 0;
+        if (result == OperationResult.COMPLETED) {
+            switch (type) {
+                case CREATE_SAVINGS, CREATE_BUSINESS, BALANCE -> value = in.getLong();
+                case HISTORY -> {
+                    value = in.getInt();
+                    for (int i = 0; i < value; i++) {
+                        visitor.onHistoryEntry(in.getLong(), in.getLong(), in.getLong(), TransactionType.fromOrdinal(in.get()));
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        in.position(end);
+        visitor.onResponse(type, requestId, result, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int begin(RequestType type, int bodySize) throws IOException {
+        if (out.remaining() < Integer.BYTES + Protocol.REQUEST_HEADER_SIZE + bodySize) {
+            flush();
+        }
+        return Protocol.beginRequest(out, type, nextRequestId);
+    }
+
+    private int end(int start) {
+        Protocol.endFrame(out, start);
+        return nextRequestId++;
+    }
+
+    /**
+     * Reads from the channel until at least a number of bytes are buffered
+     */
+    private void fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes) {
+            return;
+        }
+        in.compact();
+        while (in.position() < bytes) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("The server closed the connection.");
+            }
+        }
+        in.flip();
+    }
+
+}
@@ -0,0 +1,192 @@
+package server;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.RequestType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Load generator for the account server. It creates a set of business accounts, then several
+ * connections send a mix of transfers, deposits, withdrawals and balance queries in pipelined
+ * batches, and it reports the throughput and the latency percentiles of the requests.
+ * <p>
+ * Usage: {@code LoadGenerator [host] [port] [connections] [requests per connection] [pipeline depth] [accounts]}
+ */
+public class LoadGenerator {
+
+    private final static long INITIAL_BALANCE = 100_000_000; // 1,000,000.00EUR per account
+    private final static long SEED = 42;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int requestsPerConnection;
+    private final int pipelineDepth;
+    private final int accountCount;
+
+    private long[] accountIds; // IDs of the accounts created for the run
+
+    public LoadGenerator(String host, int port, int connections, int requestsPerConnection, int pipelineDepth, int accountCount) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.requestsPerConnection = requestsPerConnection;
+        this.pipelineDepth = pipelineDepth;
+        this.accountCount = accountCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(
+                args.length > 0 ? args[0] : "localhost",
+                args.length > 1 ? Integer.parseInt(args[1]) : Protocol.DEFAULT_PORT,
+                args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                args.length > 3 ? Integer.parseInt(args[3]) : 100_000,
+                args.length > 4 ? Integer.parseInt(args[4]) : 64,
+                args.length > 5 ? Integer.parseInt(args[5]) : 1000);
+        generator.run();
+    }
+
+    /**
+     * Creates the accounts, runs the load and prints the report
+     * @throws Exception Exception thrown if a connection fails
+     */
+    public void run() throws Exception {
+        createAccounts();
+
+        Worker[] workers = new Worker[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            workers[i] = new Worker(new SplittableRandom(SEED + i));
+            threads[i] = new Thread(workers[i], "load-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[connections * requestsPerConnection];
+        long[] results = new long[OperationResult.values().length];
+        for (int i = 0; i < connections; i++) {
+            if (workers[i].failure != null) {
+                throw workers[i].failure;
+            }
+            System.arraycopy(workers[i].latencies, 0, latencies, i * requestsPerConnection, requestsPerConnection);
+            for (int j = 0; j < results.length; j++) {
+                results[j] += workers[i].results[j];
+            }
+        }
+        Arrays.sort(latencies);
+
+        System.out.println("Requests: " + latencies.length + " over " + connections + " connections, pipeline depth " + pipelineDepth);
+        System.out.printf("Throughput: %.0f requests/s%n", latencies.length * 1e9 / elapsed);
+        System.out.printf("Latency (us): p50 %.1f, p99 %.1f, p999 %.1f, max %.1f%n",
+                percentile(latencies, 0.5) / 1e3, percentile(latencies, 0.99) / 1e3,
+                percentile(latencies, 0.999) / 1e3, latencies[latencies.length - 1] / 1e3);
+        for (OperationResult result : OperationResult.values()) {
+            if (results[result.ordinal()] > 0) {
+                System.out.println(result + ": " + results[result.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Creates the business accounts used by the run, pipelining the requests
+     */
+    private void createAccounts() throws IOException {
+        accountIds = new long[accountCount];
+        try (BankClient client = new BankClient(host, port)) {
+            for (int created = 0; created < accountCount; ) {
+                int batch = Math.min(pipelineDepth, accountCount - created);
+                for (int i = 0; i < batch; i++) {
+                    client.createBusinessAccount("Load " + (created + i), INITIAL_BALANCE, Currency.EUR);
+                }
+                client.flush();
+                int first = created;
+                for (int i = 0; i < batch; i++) {
+                    int index = first + i;
+                    client.readResponse((type, requestId, result, value) -> {
+                        if (result != OperationResult.COMPLETED) {
+                            throw new IllegalStateException("Account creation failed: " + result);
+                        }
+                        accountIds[index] = value;
+                    });
+                }
+                created += batch;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    /**
+     * Sends the requests of one connection in batches of the pipeline depth and records the
+     * latency of each one, from the time its batch is sent to the time its response is read
+     */
+    private class Worker implements Runnable, BankClient.ResponseVisitor {
+
+        private final SplittableRandom random;
+        private final long[] latencies = new long[requestsPerConnection];
+        private final long[] results = new long[OperationResult.values().length];
+        private long sentAt; // Time the current batch was sent
+        private int completed; // Number of responses received
+        private Exception failure;
+
+        private Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            try (BankClient client = new BankClient(host, port)) {
+                while (completed < requestsPerConnection) {
+                    int batch = Math.min(pipelineDepth, requestsPerConnection - completed);
+                    for (int i = 0; i < batch; i++) {
+                        sendRandomRequest(client);
+                    }
+                    sentAt = System.nanoTime();
+                    client.flush();
+                    for (int i = 0; i < batch; i++) {
+                        client.readResponse(this);
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void onResponse(RequestType type, int requestId, OperationResult result, long value) {
+            latencies[completed++] = System.nanoTime() - sentAt;
+            results[result.ordinal()]++;
+        }
+
+        /**
+         * Queues a request: 70% transfers, 15% deposits, 10% withdrawals and 5% balance queries
+         */
+        private void sendRandomRequest(BankClient client) throws IOException {
+            long accountId = accountIds[random.nextInt(accountIds.length)];
+            long minorUnits = 1 + random.nextInt(10_000);
+            int kind = random.nextInt(100);
+            if (kind < 70) {
+                client.transfer(accountId, accountIds[random.nextInt(accountIds.length)], minorUnits);
+            } else if (kind < 85) {
+                client.deposit(accountId, minorUnits);
+            } else if (kind < 95) {
+                client.withdraw(accountId, minorUnits);
+            } else {
+                client.balance(accountId);
+            }
+        }
+
+    }
+
+}
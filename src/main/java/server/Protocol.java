@@ -0,0 +1,138 @@
+package server;
+
+import enums.RequestType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary protocol of the account server. Every message is a frame made of its length and its
+ * body, in network byte order. Requests can be pipelined: responses are sent in request order.
+ * <p>
+ * Request body:
+ * <pre>
+ * byte request type, int request ID, then
+ *   CREATE_SAVINGS   long balance, byte currency, double interest rate, short name length, name (UTF-8)
+ *   CREATE_BUSINESS  long balance, byte currency, short name length, name (UTF-8)
+ *   DEPOSIT          long account ID, long amount
+ *   WITHDRAW         long account ID, long amount
+ *   TRANSFER         long source account ID, long destination account ID, long amount
+ *   BALANCE          long account ID
+ *   HISTORY          long account ID, int first entry, int maximum number of entries
+ *   IDEMPOTENT_TRANSFER  long transfer ID, long source account ID, long destination account ID, long amount
+ * </pre>
+ * Response body:
+ * <pre>
+ * byte request type, int request ID, byte result (OperationResult ordinal), then if completed
+ *   CREATE_SAVINGS, CREATE_BUSINESS  long account ID
+ *   BALANCE                          long balance
+ *   HISTORY                          int count, then per entry: long time (epoch nanos),
+ *                                    long amount, long counterparty ID, byte transaction type
+ * </pre>
+ * Amounts and balances are minor units of the account currency (Currency ordinal). Transfers
+ * between accounts of different currencies are converted with the server exchange rates.
+ * An idempotent transfer is applied at most once per transfer ID, chosen by the client: a retry
+ * gets the result of the first attempt while the server remembers the ID.
+ */
+public final class Protocol {
+
+    public final static int DEFAULT_PORT = 7070;
+    public final static int MAX_FRAME_LENGTH = 1 << 16; // Maximum length of a frame body
+    public final static int MAX_NAME_LENGTH = 1024; // Maximum length of an owner name in UTF-8 bytes
+    public final static int MAX_HISTORY_ENTRIES = 1024; // Maximum number of entries in a history response
+    public final static int HISTORY_ENTRY_SIZE = 25;
+
+    final static int REQUEST_HEADER_SIZE = 5;
+    final static int RESPONSE_HEADER_SIZE = 6;
+
+    private Protocol() {
+    }
+
+    /**
+     * Computes the length a request body must have, from its type and, for the account creations,
+     * the length of the owner name
+     * @param in The buffer holding the body from its position
+     * @return The expected length of the body, or -1 if the type is unknown or the body is too short to tell
+     */
+    static int requestLength(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < REQUEST_HEADER_SIZE) {
+            return -1;
+        }
+        RequestType type = RequestType.fromOrdinal(in.get(start));
+        if (type == null) {
+            return -1;
+        }
+        int length = REQUEST_HEADER_SIZE + switch (type) {
+            case CREATE_SAVINGS -> Long.BYTES + 1 + Double.BYTES;
+            case CREATE_BUSINESS -> Long.BYTES + 1;
+            case DEPOSIT, WITHDRAW -> 2 * Long.BYTES;
+            case TRANSFER -> 3 * Long.BYTES;
+            case BALANCE -> Long.BYTES;
+            case HISTORY -> Long.BYTES + 2 * Integer.BYTES;
+            case IDEMPOTENT_TRANSFER -> 4 * Long.BYTES;
+        };
+        if (type == RequestType.CREATE_SAVINGS || type == RequestType.CREATE_BUSINESS) {
+            if (in.remaining() < length + Short.BYTES) {
+                return -1;
+            }
+            length += Short.BYTES + Short.toUnsignedInt(in.getShort(start + length));
+        }
+        return length;
+    }
+
+    /**
+     * Starts a request frame, reserving its length field
+     * @param out The buffer receiving the frame
+     * @param type The type of the request
+     * @param requestId The ID echoed in the response
+     * @return The position of the frame, to be passed to {@link #endFrame(ByteBuffer, int)}
+     */
+    public static int beginRequest(ByteBuffer out, RequestType type, int requestId) {
+        int start = out.position();
+        out.putInt(0);
+        out.put((byte) type.ordinal());
+        out.putInt(requestId);
+        return start;
+    }
+
+    /**
+     * Writes the length of a frame once its body is complete
+     * @param out The buffer holding the frame
+     * @param start The position of the frame
+     */
+    public static void endFrame(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start - Integer.BYTES);
+    }
+
+    /**
+     * Writes an owner name as its UTF-8 length and bytes
+     * @param out The buffer receiving the name
+     * @param name The name
+     * @throws IllegalArgumentException Exception thrown if the name is longer than {@link #MAX_NAME_LENGTH} bytes
+     */
+    public static void putName(ByteBuffer out, String name) throws IllegalArgumentException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Owner names can have at most " + MAX_NAME_LENGTH + " bytes.");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    /**
+     * Reads an owner name written by {@link #putName(ByteBuffer, String)}
+     * @param in The buffer holding the name
+     * @return The name, or null if its length is not valid
+     */
+    public static String getName(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        if (length > MAX_NAME_LENGTH || length > in.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
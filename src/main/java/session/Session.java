@@ -0,0 +1,218 @@
+package session;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import events.EventFormatter;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import registry.AccountRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+
+/**
+ * A client session reading commands from a script, one per line, and applying them to the shared
+ * accounts. The script is either a list of lines, which many sessions can share, or a reader over
+ * a file or pipe, which the session closes when it ends. Each response line is prefixed with the
+ * session ID. Lines starting with # are ignored. The commands are:
+ * <ul>
+ *     <li>{@code OPEN SAVINGS|BUSINESS OWNER BALANCE CURRENCY}: creates an account, which the
+ *     following commands can name as {@code SELF}</li>
+ *     <li>{@code DEPOSIT ACCOUNT AMOUNT}, {@code WITHDRAW ACCOUNT AMOUNT} and
+ *     {@code TRANSFER FROM TO AMOUNT [TRANSFER_ID]}, with the amounts in the currency of the debited
+ *     account. A transfer with an ID is applied once, even if the script repeats it</li>
+ *     <li>{@code BALANCE ACCOUNT}</li>
+ *     <li>{@code SLEEP MILLIS}: waits, as a user thinking between two operations</li>
+ * </ul>
+ * A session runs on a single thread, which blocks while it reads a pipe or sleeps.
+ */
+public class Session implements Runnable {
+
+    private final static String SELF = "SELF"; // Name of the account opened by the session
+
+    private final long id; // ID of the session, printed before each response
+    private final List<String> script; // Shared lines of the script, or null if it is read from the reader
+    private final BufferedReader reader; // Reader of the script, or null if it is a list of lines
+    private final AccountRegistry registry; // Accounts the commands are applied to
+    private final LongSupplier idGenerator; // Supplies the IDs of the opened accounts
+    private final PrintStream out; // Stream receiving the responses
+    private Account self; // Account opened by the session, or null
+    private int lineNumber; // Number of lines read so far
+    private int commands; // Number of commands applied
+    private int rejected; // Number of commands that were rejected or not valid
+
+    /**
+     * Creates a session running a script held in memory
+     * @param id The ID of the session
+     * @param script The lines of the script, which are not copied
+     * @param registry The accounts the commands are applied to
+     * @param idGenerator The supplier of the IDs of the opened accounts
+     * @param out The stream receiving the responses
+     */
+    public Session(long id, List<String> script, AccountRegistry registry, LongSupplier idGenerator, PrintStream out) {
+        this.id = id;
+        this.script = script;
+        this.reader = null;
+        this.registry = registry;
+        this.idGenerator = idGenerator;
+        this.out = out;
+    }
+
+    /**
+     * Creates a session reading its script from a file or pipe
+     * @param id The ID of the session
+     * @param reader The reader of the script, closed when the session ends
+     * @param registry The accounts the commands are applied to
+     * @param idGenerator The supplier of the IDs of the opened accounts
+     * @param out The stream receiving the responses
+     */
+    public Session(long id, BufferedReader reader, AccountRegistry registry, LongSupplier idGenerator, PrintStream out) {
+        this.id = id;
+        this.script = null;
+        this.reader = reader;
+        this.registry = registry;
+        this.idGenerator = idGenerator;
+        this.out = out;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getCommands() {
+        return commands;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Applies every command of the script, then closes the reader
+     * @throws UncheckedIOException Exception thrown if the script cannot be read
+     */
+    @Override
+    public void run() {
+        try {
+            String line;
+            while ((line = nextLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                commands++;
+                String response;
+                try {
+                    response = apply(line.trim().split("\\s+"));
+                } catch (NoSuchElementException e) {
+                    response = EventFormatter.format(TransactionType.DEPOSIT, OperationResult.ACCOUNT_NOT_FOUND, 0, 0, 0, 0, Currency.EUR);
+                    rejected++;
+                } catch (IllegalArgumentException | ArithmeticException | IndexOutOfBoundsException e) {
+                    response = "Invalid command at line " + lineNumber + ".";
+                    rejected++;
+                }
+                out.println("[" + id + "] " + response);
+            }
+        } catch (InterruptedException e) {
+            out.println("[" + id + "] Session interrupted.");
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // The whole script was read or could not be, so nothing is lost
+                }
+            }
+        }
+    }
+
+    private String nextLine() throws IOException {
+        if (script == null) {
+            lineNumber++;
+            return reader.readLine();
+        }
+        return lineNumber < script.size() ? script.get(lineNumber++) : null;
+    }
+
+    /**
+     * Applies a command
+     * @param fields The fields of the command line
+     * @return The response to the command
+     * @throws InterruptedException Exception thrown if the session is interrupted while sleeping
+     */
+    private String apply(String[] fields) throws InterruptedException {
+        switch (fields[0].toUpperCase()) {
+            case "OPEN" -> {
+                Currency currency = Currency.valueOf(fields[4]);
+                Money balance = Money.parse(fields[3], currency);
+                Account account = switch (fields[1].toUpperCase()) {
+                    case "SAVINGS" -> new SavingsAccount(idGenerator.getAsLong(), fields[2], balance);
+                    case "BUSINESS" -> new BusinessAccount(idGenerator.getAsLong(), fields[2], balance);
+                    default -> throw new IllegalArgumentException();
+                };
+                registry.register(account);
+                self = account;
+                return "Account " + account.getId() + " opened.";
+            }
+            case "DEPOSIT" -> {
+                Account account = find(fields[1]);
+                Money amount = Money.parse(fields[2], account.getCurrency());
+                return describe(account, TransactionType.DEPOSIT, account.tryDeposit(amount), 0, amount);
+            }
+            case "WITHDRAW" -> {
+                Account account = find(fields[1]);
+                Money amount = Money.parse(fields[2], account.getCurrency());
+                return describe(account, TransactionType.WITHDRAWAL, account.tryWithdraw(amount), 0, amount);
+            }
+            case "TRANSFER" -> {
+                Account account = find(fields[1]);
+                Account to = find(fields[2]);
+                Money amount = Money.parse(fields[3], account.getCurrency());
+                OperationResult result = fields.length > 4
+                        ? account.tryTransfer(amount, to, Long.parseLong(fields[4])) : account.tryTransfer(amount, to);
+                return describe(account, TransactionType.TRANSFER_OUT, result, to.getId(), amount);
+            }
+            case "BALANCE" -> {
+                Account account = find(fields[1]);
+                return "Account " + account.getId() + " balance: " + account.getBalance();
+            }
+            case "SLEEP" -> {
+                Thread.sleep(Long.parseLong(fields[1]));
+                return "Slept " + fields[1] + " ms.";
+            }
+            default -> throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Finds the account named by a command
+     * @param name The ID of the account, or SELF for the account opened by the session
+     * @return The account
+     * @throws NumberFormatException Exception thrown if the name is not an ID
+     * @throws NoSuchElementException Exception thrown if there is no such account
+     */
+    private Account find(String name) throws NumberFormatException, NoSuchElementException {
+        Account account = name.equalsIgnoreCase(SELF) ? self : registry.find(Long.parseLong(name));
+        if (account == null) {
+            throw new NoSuchElementException("No account " + name + ".");
+        }
+        return account;
+    }
+
+    private String describe(Account account, TransactionType type, OperationResult result, long counterpartyId, Money amount) {
+        if (result != OperationResult.COMPLETED) {
+            rejected++;
+        }
+        return EventFormatter.format(type, result, account.getId(), counterpartyId, amount.getMinorUnits(),
+                account.getTransferLimit(result), account.getCurrency());
+    }
+
+}
@@ -0,0 +1,174 @@
+package session;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs each session on its own thread, with at most a fixed number of sessions at once. A
+ * session that is submitted while the limit is reached waits for another one to end, so a
+ * burst of sessions slows its producer down instead of exhausting memory or threads.
+ * <p>
+ * The threads are virtual when the runtime provides them (Java 21 and later), so blocking reads
+ * and sleeps cost no OS thread and the limit can be in the hundreds of thousands. Otherwise they
+ * are platform threads with a small stack, and the limit should stay in the low thousands.
+ */
+public class SessionExecutor implements AutoCloseable {
+
+    private final static long PLATFORM_STACK_SIZE = 256 * 1024; // Stack of a session thread when virtual threads are not available
+
+    private final int maxSessions; // Maximum number of sessions running at once
+    private final Semaphore permits; // One permit per session that can still be started
+    private final ThreadFactory threadFactory;
+    private final boolean virtual; // Whether the sessions run on virtual threads
+    private final AtomicLong completed = new AtomicLong(); // Number of sessions that ended
+    private final AtomicLong failed = new AtomicLong(); // Number of sessions that ended with an exception
+    private volatile boolean closed;
+
+    /**
+     * Creates an executor
+     * @param maxSessions The maximum number of sessions running at once
+     * @throws IllegalArgumentException Exception thrown if the maximum is not positive
+     */
+    public SessionExecutor(int maxSessions) throws IllegalArgumentException {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("The maximum number of sessions must be positive.");
+        }
+        this.maxSessions = maxSessions;
+        this.permits = new Semaphore(maxSessions);
+        ThreadFactory factory = virtualThreadFactory();
+        this.virtual = factory != null;
+        this.threadFactory = virtual ? factory : runnable -> {
+            Thread thread = new Thread(null, runnable, "session", PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Gets a factory of virtual threads through reflection, so the code still compiles for Java 17
+     * @return The factory, or null if the runtime has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "session-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null; // No virtual threads, or only as a preview feature that is not enabled
+        }
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Gets the number of sessions running
+     * @return The number of started sessions that have not ended
+     */
+    public int getActiveSessions() {
+        return maxSessions - permits.availablePermits();
+    }
+
+    public long getCompletedSessions() {
+        return completed.get();
+    }
+
+    public long getFailedSessions() {
+        return failed.get();
+    }
+
+    /**
+     * Starts a session, waiting while the maximum number of sessions is running
+     * @param session The session to be run
+     * @throws InterruptedException Exception thrown if the thread is interrupted while waiting
+     * @throws IllegalStateException Exception thrown if the executor is closed
+     */
+    public void submit(Runnable session) throws InterruptedException, IllegalStateException {
+        checkOpen();
+        permits.acquire();
+        start(session);
+    }
+
+    /**
+     * Starts a session if the maximum number of sessions is not reached within a timeout
+     * @param session The session to be run
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return True if the session was started, false if too many sessions were still running
+     * @throws InterruptedException Exception thrown if the thread is interrupted while waiting
+     * @throws IllegalStateException Exception thrown if the executor is closed
+     */
+    public boolean trySubmit(Runnable session, long timeout, TimeUnit unit) throws InterruptedException, IllegalStateException {
+        checkOpen();
+        if (!permits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        start(session);
+        return true;
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The session executor is closed.");
+        }
+    }
+
+    private void start(Runnable session) {
+        Thread thread;
+        try {
+            thread = threadFactory.newThread(() -> {
+                try {
+                    session.run();
+                } catch (RuntimeException | Error e) {
+                    failed.incrementAndGet();
+                    throw e;
+                } finally {
+                    completed.incrementAndGet();
+                    permits.release();
+                }
+            });
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            permits.release(); // The thread could not be created, so the session never runs
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every started session has ended
+     * @throws InterruptedException Exception thrown if the thread is interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        permits.acquire(maxSessions);
+        permits.release(maxSessions);
+    }
+
+    /**
+     * Stops accepting sessions and waits for the running ones to end
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                awaitIdle();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package simulation;
+
+import enums.OperationResult;
+import enums.WorkloadOperation;
+
+import java.io.PrintStream;
+
+/**
+ * Measurements of one replay of a workload
+ */
+public class ReplayReport {
+
+    private final static int RESULTS = OperationResult.values().length;
+
+    private final long records; // Number of records replayed
+    private final int accounts; // Number of accounts opened
+    private final long elapsedNanos; // Time of the replay
+    private final long[] results; // Number of operations indexed by operation and result
+    private final long gcCollections; // Garbage collections during the replay
+    private final long gcMillis; // Total duration of the collections
+    private final long gcMaxMillis; // Longest collection
+    private final long allocatedBytes; // Bytes allocated by every thread during the replay
+    private final long heapUsedBytes; // Heap in use after a full collection at the end of the replay
+    private final long offHeapBytes; // Memory held outside the heap by the accounts
+
+    ReplayReport(long records, int accounts, long elapsedNanos, long[] results, long gcCollections, long gcMillis,
+                 long gcMaxMillis, long allocatedBytes, long heapUsedBytes, long offHeapBytes) {
+        this.records = records;
+        this.accounts = accounts;
+        this.elapsedNanos = elapsedNanos;
+        this.results = results;
+        this.gcCollections = gcCollections;
+        this.gcMillis = gcMillis;
+        this.gcMaxMillis = gcMaxMillis;
+        this.allocatedBytes = allocatedBytes;
+        this.heapUsedBytes = heapUsedBytes;
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    /**
+     * Creates the array of counters filled by a replay
+     * @return The counters, indexed by operation ordinal times the number of results plus result ordinal
+     */
+    static long[] newResults() {
+        return new long[WorkloadOperation.values().length * RESULTS];
+    }
+
+    static int slot(WorkloadOperation operation, OperationResult result) {
+        return operation.ordinal() * RESULTS + result.ordinal();
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getGcCollections() {
+        return gcCollections;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public long getGcMaxMillis() {
+        return gcMaxMillis;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * Gets the number of operations of a kind that ended with a result
+     * @param operation The kind of operation
+     * @param result The result
+     * @return The number of operations
+     */
+    public long getCount(WorkloadOperation operation, OperationResult result) {
+        return results[slot(operation, result)];
+    }
+
+    public double getOperationsPerSecond() {
+        return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Gets the allocation rate of the replay
+     * @return The bytes allocated per second
+     */
+    public double getAllocationRate() {
+        return elapsedNanos == 0 ? 0 : allocatedBytes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Prints the report, with one line per operation listing its results
+     * @param out The stream receiving the report
+     */
+    public void print(PrintStream out) {
+        out.printf("Replayed %,d records over %,d accounts in %.3f s: %,.0f ops/s%n",
+                records, accounts, elapsedNanos / 1e9, getOperationsPerSecond());
+        out.printf("GC: %,d collections, %,d ms in total, %,d ms at most%n", gcCollections, gcMillis, gcMaxMillis);
+        out.printf("Allocated %,d bytes: %,.1f MB/s, %.1f bytes per record%n",
+                allocatedBytes, getAllocationRate() / (1 << 20), records == 0 ? 0.0 : (double) allocatedBytes / records);
+        out.printf("Memory: %,.1f MB of heap in use, %,.1f MB off the heap%n", heapUsedBytes / 1048576.0, offHeapBytes / 1048576.0);
+        for (WorkloadOperation operation : WorkloadOperation.values()) {
+            StringBuilder line = new StringBuilder("  ").append(operation);
+            long total = 0;
+            for (OperationResult result : OperationResult.values()) {
+                long count = getCount(operation, result);
+                if (count > 0) {
+                    line.append(' ').append(result).append('=').append(count);
+                    total += count;
+                }
+            }
+            if (total > 0) {
+                out.println(line);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line of the simulation harness. It generates a workload file, then replays it as many
+ * times as requested; the first replays warm the JIT up, so the last ones show the steady state.
+ * <p>
+ * Usage: {@code Simulation generate FILE [accounts] [operations] [seed]} or
+ * {@code Simulation replay FILE [runs] [heap|offheap]}
+ */
+public class Simulation {
+
+    private final static int DEFAULT_ACCOUNTS = 10_000;
+    private final static long DEFAULT_OPERATIONS = 10_000_000;
+    private final static long DEFAULT_SEED = 42;
+    private final static int DEFAULT_RUNS = 5;
+
+    private Simulation() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Simulation generate FILE [accounts] [operations] [seed]");
+            System.err.println("       Simulation replay FILE [runs] [heap|offheap]");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        switch (args[0]) {
+            case "generate" -> {
+                WorkloadGenerator generator = new WorkloadGenerator(args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_SEED);
+                long start = System.nanoTime();
+                long records = generator.generate(file, args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ACCOUNTS,
+                        args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_OPERATIONS);
+                System.out.printf("Wrote %,d records with seed %d to %s (%,d bytes) in %.3f s%n",
+                        records, generator.getSeed(), file, Files.size(file), (System.nanoTime() - start) / 1e9);
+            }
+            case "replay" -> {
+                WorkloadReplayer replayer = new WorkloadReplayer(file);
+                int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+                boolean offHeap = args.length > 3 && args[3].equals("offheap");
+                if (args.length > 3 && !offHeap && !args[3].equals("heap")) {
+                    System.err.println("Unknown storage " + args[3] + ".");
+                    System.exit(2);
+                }
+                System.out.printf("Workload %s: %,d records, seed %d, %s accounts%n", file, replayer.getRecords(), replayer.getSeed(),
+                        offHeap ? "off-heap" : "heap");
+                for (int run = 1; run <= runs; run++) {
+                    System.out.println("Run " + run + ":");
+                    (offHeap ? replayer.replayOffHeap() : replayer.replay()).print(System.out);
+                }
+            }
+            default -> {
+                System.err.println("Unknown command " + args[0] + ".");
+                System.exit(2);
+            }
+        }
+    }
+
+}
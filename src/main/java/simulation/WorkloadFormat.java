@@ -0,0 +1,70 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a workload file. Numbers in records are unsigned LEB128 varints, so most of them take
+ * one to three bytes instead of eight:
+ * <pre>
+ * header   int magic, int version, long seed, long record count, unsigned short rate count,
+ *          then per exchange rate: byte from currency, byte to currency, double rate
+ * records  byte operation, then per operation:
+ *          CREATE_SAVINGS   byte currency, varint balance, varint interest rate in basis points
+ *          CREATE_BUSINESS  byte currency, varint balance
+ *          DEPOSIT          varint account, varint amount
+ *          WITHDRAWAL       varint account, varint amount
+ *          TRANSFER         varint from account, varint to account, varint amount
+ *          INTEREST         nothing
+ * </pre>
+ * Accounts are named by their creation order, starting at 0, so a replay does not depend on the
+ * IDs given to them. Amounts and balances are in minor units of the currency of the account. The
+ * exchange rates are stored with the workload, since the transfer limits of the accounts that do
+ * not hold euros are converted with them.
+ */
+final class WorkloadFormat {
+
+    final static int MAGIC = 0x42574B4C; // "BWKL"
+    final static int VERSION = 1;
+    final static int HEADER_SIZE = 26; // Size of the header without its exchange rates
+    final static int RATE_SIZE = 10; // Size of an exchange rate in the header
+
+    private WorkloadFormat() {
+    }
+
+    /**
+     * Writes an unsigned varint
+     * @param out The stream receiving the bytes
+     * @param value The value, not negative
+     * @throws IOException Exception thrown if the stream cannot be written
+     */
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned varint
+     * @param buffer The buffer holding the bytes
+     * @return The value
+     * @throws BufferUnderflowException Exception thrown if the buffer ends inside the varint
+     * @throws IllegalArgumentException Exception thrown if the varint is longer than a long
+     */
+    static long readVarLong(ByteBuffer buffer) throws BufferUnderflowException, IllegalArgumentException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits.");
+    }
+
+}
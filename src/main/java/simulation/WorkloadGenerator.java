@@ -0,0 +1,195 @@
+package simulation;
+
+import enums.Currency;
+import enums.WorkloadOperation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a reproducible workload: the same seed and sizes always give the same file, byte for
+ * byte. The workload opens an initial population of accounts, then mixes deposits, withdrawals,
+ * transfers and a few new accounts, with an interest run at a fixed interval.
+ * <p>
+ * The traffic is shaped like that of a retail bank: most accounts are savings accounts, activity
+ * is concentrated on a small set of busy accounts, amounts are spread over several orders of
+ * magnitude, and savings transfers stay mostly below their per-transfer limit. Transfers are made
+ * between accounts of the same currency; the file holds fixed exchange rates between the
+ * currencies for the transfer limits, which are set in euros. The draws use
+ * {@link StrictMath}, whose results are the same on every JVM.
+ */
+public class WorkloadGenerator {
+
+    private final static int DEPOSIT_WEIGHT = 30; // Share of the operations, in percent
+    private final static int WITHDRAWAL_WEIGHT = 20;
+    private final static int TRANSFER_WEIGHT = 49;
+    private final static int INTEREST_INTERVAL = 1_000_000; // Operations between two interest runs
+    private final static int BUSINESS_SHARE = 10; // Share of the accounts that are business accounts, in percent
+    private final static double SKEW = 3; // Power applied to pick accounts: the higher, the busier the first accounts
+    private final static Currency[] CURRENCIES = {Currency.EUR, Currency.USD, Currency.GBP}; // Currencies of the accounts
+    private final static int[] CURRENCY_WEIGHTS = {70, 20, 10}; // Share of the accounts in each currency, in percent
+    private final static double[] EURO_RATES = {1, 1.08, 0.85}; // Major units of each currency per euro
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private final long seed;
+    private final SplittableRandom random;
+    private int accountCount; // Number of accounts opened so far
+    private boolean[] business = new boolean[1024]; // Whether each account is a business account
+    private int[][] byCurrency = new int[CURRENCIES.length][1024]; // Accounts of each currency, in creation order
+    private final int[] currencyCounts = new int[CURRENCIES.length]; // Number of accounts of each currency
+    private int[] currencyIndexes = new int[1024]; // Index in CURRENCIES of each account
+
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Writes a workload file. A generator writes a single file, since each file starts from the
+     * seed.
+     * @param file The file to be written, replaced if it exists
+     * @param accounts The number of accounts opened before the other operations
+     * @param operations The number of operations after the initial accounts
+     * @return The number of records written
+     * @throws IOException Exception thrown if the file cannot be written
+     * @throws IllegalArgumentException Exception thrown if a size is negative or there are no accounts
+     * @throws IllegalStateException Exception thrown if the generator was already used
+     */
+    public long generate(Path file, int accounts, long operations) throws IOException, IllegalArgumentException, IllegalStateException {
+        if (accounts <= 0 || operations < 0) {
+            throw new IllegalArgumentException("The workload needs at least one account and no negative operation count.");
+        }
+        if (accountCount > 0) {
+            throw new IllegalStateException("The generator was already used.");
+        }
+        long records = accounts + operations;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+            out.writeInt(WorkloadFormat.MAGIC);
+            out.writeInt(WorkloadFormat.VERSION);
+            out.writeLong(seed);
+            out.writeLong(records);
+            out.writeShort(CURRENCIES.length * (CURRENCIES.length - 1));
+            for (int from = 0; from < CURRENCIES.length; from++) {
+                for (int to = 0; to < CURRENCIES.length; to++) {
+                    if (from != to) {
+                        out.write(CURRENCIES[from].ordinal());
+                        out.write(CURRENCIES[to].ordinal());
+                        out.writeDouble(EURO_RATES[to] / EURO_RATES[from]);
+                    }
+                }
+            }
+            for (int i = 0; i < accounts; i++) {
+                writeCreate(out);
+            }
+            for (long i = 1; i <= operations; i++) {
+                if (i % INTEREST_INTERVAL == 0) {
+                    out.write(WorkloadOperation.INTEREST.ordinal());
+                    continue;
+                }
+                int draw = random.nextInt(100);
+                if (draw < DEPOSIT_WEIGHT) {
+                    writeAmount(out, WorkloadOperation.DEPOSIT, pickAccount(), 1_000, 500_000);
+                } else if (draw < DEPOSIT_WEIGHT + WITHDRAWAL_WEIGHT) {
+                    writeAmount(out, WorkloadOperation.WITHDRAWAL, pickAccount(), 1_000, 200_000);
+                } else if (draw < DEPOSIT_WEIGHT + WITHDRAWAL_WEIGHT + TRANSFER_WEIGHT) {
+                    writeTransfer(out);
+                } else {
+                    writeCreate(out);
+                }
+            }
+        }
+        return records;
+    }
+
+    private void writeCreate(DataOutputStream out) throws IOException {
+        boolean isBusiness = random.nextInt(100) < BUSINESS_SHARE;
+        int currency = pickCurrency();
+        if (isBusiness) {
+            out.write(WorkloadOperation.CREATE_BUSINESS.ordinal());
+            out.write(CURRENCIES[currency].ordinal());
+            WorkloadFormat.writeVarLong(out, logUniform(1_000_000, 100_000_000)); // 10,000.00 to 1,000,000.00
+        } else {
+            out.write(WorkloadOperation.CREATE_SAVINGS.ordinal());
+            out.write(CURRENCIES[currency].ordinal());
+            WorkloadFormat.writeVarLong(out, logUniform(10_000, 2_000_000)); // 100.00 to 20,000.00
+            WorkloadFormat.writeVarLong(out, 50 + 25 * random.nextInt(15)); // 0.50% to 4.00%
+        }
+        addAccount(isBusiness, currency);
+    }
+
+    private void writeTransfer(DataOutputStream out) throws IOException {
+        int from = pickAccount();
+        int currency = currencyIndexes[from];
+        int to = pick(byCurrency[currency], currencyCounts[currency]);
+        if (to == from) {
+            // No other account in the currency, or the busiest one picked twice
+            writeAmount(out, WorkloadOperation.DEPOSIT, from, 1_000, 500_000);
+            return;
+        }
+        out.write(WorkloadOperation.TRANSFER.ordinal());
+        WorkloadFormat.writeVarLong(out, from);
+        WorkloadFormat.writeVarLong(out, to);
+        // Savings transfers go up to 600.00, so a few exceed the default limit of 500.00
+        WorkloadFormat.writeVarLong(out, business[from] ? logUniform(1_000, 5_000_000) : logUniform(100, 60_000));
+    }
+
+    private void writeAmount(DataOutputStream out, WorkloadOperation operation, int account, long min, long max) throws IOException {
+        out.write(operation.ordinal());
+        WorkloadFormat.writeVarLong(out, account);
+        WorkloadFormat.writeVarLong(out, logUniform(min, max));
+    }
+
+    private void addAccount(boolean isBusiness, int currency) {
+        if (accountCount == business.length) {
+            business = Arrays.copyOf(business, accountCount * 2);
+            currencyIndexes = Arrays.copyOf(currencyIndexes, accountCount * 2);
+        }
+        if (currencyCounts[currency] == byCurrency[currency].length) {
+            byCurrency[currency] = Arrays.copyOf(byCurrency[currency], currencyCounts[currency] * 2);
+        }
+        business[accountCount] = isBusiness;
+        currencyIndexes[accountCount] = currency;
+        byCurrency[currency][currencyCounts[currency]++] = accountCount;
+        accountCount++;
+    }
+
+    private int pickCurrency() {
+        int draw = random.nextInt(100);
+        for (int i = 0; i < CURRENCY_WEIGHTS.length - 1; i++) {
+            if (draw < CURRENCY_WEIGHTS[i]) {
+                return i;
+            }
+            draw -= CURRENCY_WEIGHTS[i];
+        }
+        return CURRENCY_WEIGHTS.length - 1;
+    }
+
+    private int pickAccount() {
+        return (int) (accountCount * StrictMath.pow(random.nextDouble(), SKEW));
+    }
+
+    private int pick(int[] accounts, int count) {
+        return accounts[(int) (count * StrictMath.pow(random.nextDouble(), SKEW))];
+    }
+
+    /**
+     * Draws an amount whose logarithm is uniform, so small amounts are as frequent per order of
+     * magnitude as large ones
+     * @param min The smallest amount, positive
+     * @param max The largest amount, exclusive
+     * @return The amount
+     */
+    private long logUniform(long min, long max) {
+        return (long) StrictMath.exp(StrictMath.log(min) + random.nextDouble() * (StrictMath.log(max) - StrictMath.log(min)));
+    }
+
+}
@@ -0,0 +1,298 @@
+package simulation;
+
+import engine.InterestAccrualJob;
+import fx.FxRateTable;
+import enums.AccountType;
+import enums.Currency;
+import enums.OperationResult;
+import enums.WorkloadOperation;
+import interfaces.AccountEventListener;
+import interfaces.BalanceObserver;
+import interfaces.FxRateProvider;
+import interfaces.OperationLog;
+import interfaces.OperationMetrics;
+import metrics.GcPauseMonitor;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import model.TransferLimits;
+import registry.AccountRegistry;
+import storage.OffHeapAccount;
+import storage.OffHeapAccountTable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Replays a workload file against new accounts as fast as a single thread can, and measures the
+ * replay. The file is mapped into memory and decoded in place, so reading it costs no system call
+ * and no allocation.
+ * <p>
+ * The replay measures the model alone: while it runs, the operation log, the event listener, the
+ * metrics and the balance observer are switched off, and the default transfer limits keep only
+ * their per-transfer amount. The rolling hourly, daily and per-minute limits depend on the clock,
+ * so with them the results would change with the speed of the replay; without them, every replay
+ * of a file ends with the same balances. The exchange rates are the ones stored in the file. The
+ * previous settings are all restored once the replay ends.
+ * <p>
+ * The same file can be replayed against heap accounts or against an {@link OffHeapAccountTable},
+ * to compare the heap and garbage collection costs of the two as the number of accounts grows.
+ */
+public class WorkloadReplayer {
+
+    private final Path file;
+    private final MappedByteBuffer buffer; // Whole file, shared by the replays
+    private final long seed; // Seed the file was generated from
+    private final long records; // Number of records in the file
+    private final FxRateTable fxRates; // Exchange rates stored in the file
+    private final int recordsOffset; // Position of the first record
+
+    /**
+     * Maps a workload file and checks its header
+     * @param file The file holding the workload
+     * @throws IOException Exception thrown if the file cannot be read, is not a workload or is larger than 2 GB
+     */
+    public WorkloadReplayer(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Workload file " + file + " is larger than 2 GB.");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < WorkloadFormat.HEADER_SIZE || buffer.getInt(0) != WorkloadFormat.MAGIC) {
+            throw new IOException(file + " is not a workload file.");
+        }
+        if (buffer.getInt(4) != WorkloadFormat.VERSION) {
+            throw new IOException("Unsupported workload version " + buffer.getInt(4) + " in " + file + ".");
+        }
+        this.seed = buffer.getLong(8);
+        this.records = buffer.getLong(16);
+        int rateCount = Short.toUnsignedInt(buffer.getShort(24));
+        this.recordsOffset = WorkloadFormat.HEADER_SIZE + rateCount * WorkloadFormat.RATE_SIZE;
+        if (buffer.limit() < recordsOffset) {
+            throw new IOException("Workload file " + file + " is truncated.");
+        }
+        this.fxRates = new FxRateTable();
+        try {
+            for (int offset = WorkloadFormat.HEADER_SIZE; offset < recordsOffset; offset += WorkloadFormat.RATE_SIZE) {
+                fxRates.setRate(Currency.fromOrdinal(buffer.get(offset)), Currency.fromOrdinal(buffer.get(offset + 1)),
+                        buffer.getDouble(offset + 2));
+            }
+        } catch (NullPointerException | IllegalArgumentException e) {
+            throw new IOException("Invalid exchange rate in workload file " + file + ".", e);
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Replays every record against new accounts. The accounts get the IDs 1, 2, 3... in creation
+     * order, and are discarded once the replay ends.
+     * @return The measurements of the replay
+     * @throws IOException Exception thrown if the file is truncated or holds an unknown record
+     */
+    public ReplayReport replay() throws IOException {
+        return replay(false);
+    }
+
+    /**
+     * Replays every record against a new off-heap account table. The accounts get the IDs 1, 2,
+     * 3... in creation order, and are discarded once the replay ends.
+     * @return The measurements of the replay
+     * @throws IOException Exception thrown if the file is truncated or holds an unknown record
+     */
+    public ReplayReport replayOffHeap() throws IOException {
+        return replay(true);
+    }
+
+    private ReplayReport replay(boolean offHeap) throws IOException {
+        OperationLog log = Account.getOperationLog();
+        AccountEventListener listener = Account.getEventListener();
+        OperationMetrics metrics = Account.getMetrics();
+        BalanceObserver observer = Account.getBalanceObserver();
+        FxRateProvider rates = Account.getFxRateProvider();
+        TransferLimits savingsLimits = SavingsAccount.getDefaultTransferLimits();
+        TransferLimits businessLimits = BusinessAccount.getDefaultTransferLimits();
+        Account.setOperationLog(null);
+        Account.setEventListener(null);
+        Account.setMetrics(null);
+        Account.setBalanceObserver(null);
+        Account.setFxRateProvider(fxRates);
+        SavingsAccount.setDefaultTransferLimits(perTransferOnly(savingsLimits));
+        BusinessAccount.setDefaultTransferLimits(perTransferOnly(businessLimits));
+        try {
+            return offHeap ? runOffHeap() : run();
+        } finally {
+            Account.setOperationLog(log);
+            Account.setEventListener(listener);
+            Account.setMetrics(metrics);
+            Account.setBalanceObserver(observer);
+            Account.setFxRateProvider(rates);
+            SavingsAccount.setDefaultTransferLimits(savingsLimits);
+            BusinessAccount.setDefaultTransferLimits(businessLimits);
+        }
+    }
+
+    private static TransferLimits perTransferOnly(TransferLimits limits) {
+        return limits.hasWindows() ? new TransferLimits(limits.getPerTransfer(), null, null, 0) : limits;
+    }
+
+    private ReplayReport run() throws IOException {
+        ByteBuffer in = buffer.duplicate().position(recordsOffset);
+        AccountRegistry registry = new AccountRegistry();
+        InterestAccrualJob interestJob = new InterestAccrualJob(registry);
+        Account[] accounts = new Account[1024]; // Accounts in creation order
+        int accountCount = 0;
+        long[] results = ReplayReport.newResults();
+
+        GcPauseMonitor gcMonitor = new GcPauseMonitor();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            for (long record = 0; record < records; record++) {
+                WorkloadOperation operation = WorkloadOperation.fromOrdinal(in.get());
+                OperationResult result;
+                switch (operation) {
+                    case CREATE_SAVINGS, CREATE_BUSINESS -> {
+                        Currency currency = Currency.fromOrdinal(in.get());
+                        Money balance = Money.ofMinor(WorkloadFormat.readVarLong(in), currency);
+                        long id = accountCount + 1;
+                        Account account = operation == WorkloadOperation.CREATE_SAVINGS
+                                ? new SavingsAccount(id, "Owner " + id, balance, WorkloadFormat.readVarLong(in) / 10_000.0)
+                                : new BusinessAccount(id, "Owner " + id, balance);
+                        registry.register(account);
+                        if (accountCount == accounts.length) {
+                            accounts = Arrays.copyOf(accounts, accountCount * 2);
+                        }
+                        accounts[accountCount++] = account;
+                        result = OperationResult.COMPLETED;
+                    }
+                    case DEPOSIT -> result = accounts[(int) WorkloadFormat.readVarLong(in)].depositMinorUnits(WorkloadFormat.readVarLong(in));
+                    case WITHDRAWAL -> result = accounts[(int) WorkloadFormat.readVarLong(in)].withdrawMinorUnits(WorkloadFormat.readVarLong(in));
+                    case TRANSFER -> {
+                        Account from = accounts[(int) WorkloadFormat.readVarLong(in)];
+                        Account to = accounts[(int) WorkloadFormat.readVarLong(in)];
+                        result = from.transferMinorUnits(WorkloadFormat.readVarLong(in), to);
+                    }
+                    case INTEREST -> result = interestJob.run().count(OperationResult.BALANCE_OVERFLOW) == 0
+                            ? OperationResult.COMPLETED : OperationResult.BALANCE_OVERFLOW;
+                    default -> throw new IllegalStateException();
+                }
+                results[ReplayReport.slot(operation, result)]++;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Workload file " + file + " is truncated.", e);
+        } catch (NullPointerException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid record in workload file " + file + " at offset " + in.position() + ".", e);
+        } finally {
+            gcMonitor.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long heapUsed = retainedHeapBytes();
+        Reference.reachabilityFence(accounts);
+        Reference.reachabilityFence(registry);
+        return new ReplayReport(records, accountCount, elapsed, results, gcMonitor.getCollections(),
+                gcMonitor.getTotalMillis(), gcMonitor.getMaxMillis(), allocated, heapUsed, 0);
+    }
+
+    private ReplayReport runOffHeap() throws IOException {
+        ByteBuffer in = buffer.duplicate().position(recordsOffset);
+        OffHeapAccountTable table = new OffHeapAccountTable();
+        OffHeapAccount from = table.flyweight();
+        OffHeapAccount to = table.flyweight();
+        long[] results = ReplayReport.newResults();
+
+        GcPauseMonitor gcMonitor = new GcPauseMonitor();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            for (long record = 0; record < records; record++) {
+                WorkloadOperation operation = WorkloadOperation.fromOrdinal(in.get());
+                OperationResult result;
+                switch (operation) {
+                    case CREATE_SAVINGS, CREATE_BUSINESS -> {
+                        Currency currency = Currency.fromOrdinal(in.get());
+                        Money balance = Money.ofMinor(WorkloadFormat.readVarLong(in), currency);
+                        long id = table.size() + 1;
+                        if (operation == WorkloadOperation.CREATE_SAVINGS) {
+                            table.create(AccountType.SAVINGS, id, "Owner " + id, balance, WorkloadFormat.readVarLong(in) / 10_000.0);
+                        } else {
+                            table.create(AccountType.BUSINESS, id, "Owner " + id, balance, 0);
+                        }
+                        result = OperationResult.COMPLETED;
+                    }
+                    case DEPOSIT -> result = from.moveTo((int) WorkloadFormat.readVarLong(in)).depositMinorUnits(WorkloadFormat.readVarLong(in));
+                    case WITHDRAWAL -> result = from.moveTo((int) WorkloadFormat.readVarLong(in)).withdrawMinorUnits(WorkloadFormat.readVarLong(in));
+                    case TRANSFER -> {
+                        from.moveTo((int) WorkloadFormat.readVarLong(in));
+                        to.moveTo((int) WorkloadFormat.readVarLong(in));
+                        result = from.transferMinorUnits(WorkloadFormat.readVarLong(in), to);
+                    }
+                    case INTEREST -> result = table.applyInterest() == 0 ? OperationResult.COMPLETED : OperationResult.BALANCE_OVERFLOW;
+                    default -> throw new IllegalStateException();
+                }
+                results[ReplayReport.slot(operation, result)]++;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Workload file " + file + " is truncated.", e);
+        } catch (NullPointerException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid record in workload file " + file + " at offset " + in.position() + ".", e);
+        } finally {
+            gcMonitor.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long heapUsed = retainedHeapBytes();
+        long offHeapBytes = table.getOffHeapBytes();
+        Reference.reachabilityFence(table);
+        return new ReplayReport(records, table.size(), elapsed, results, gcMonitor.getCollections(),
+                gcMonitor.getTotalMillis(), gcMonitor.getMaxMillis(), allocated, heapUsed, offHeapBytes);
+    }
+
+    /**
+     * Measures the heap still in use after a full collection, while the accounts of the replay are
+     * reachable. Called once the replay has been timed, so the collection is not measured.
+     * @return The bytes of heap in use
+     */
+    private static long retainedHeapBytes() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Sums the bytes allocated by every live thread, which includes the pool threads of the
+     * interest runs
+     * @return The bytes allocated so far, or 0 if the JVM does not measure them
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,202 @@
+package storage;
+
+import enums.AccountType;
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.AccountOperations;
+import model.Account;
+import model.Money;
+
+/**
+ * A flyweight over one record of an {@link OffHeapAccountTable}. It holds no account state of its
+ * own, so a single instance can be moved over any number of records without allocating; it is
+ * not thread-safe, but several flyweights may work on the same table at once.
+ */
+public class OffHeapAccount implements AccountOperations {
+
+    private final OffHeapAccountTable table;
+    private int index = -1; // The index of the current record, or -1 if there is none
+
+    OffHeapAccount(OffHeapAccountTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Moves the flyweight to a record
+     * @param index The index of the record
+     * @return This flyweight
+     * @throws IndexOutOfBoundsException Exception thrown if there is no such record
+     */
+    public OffHeapAccount moveTo(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= table.size()) {
+            throw new IndexOutOfBoundsException("No account record " + index + ".");
+        }
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Moves the flyweight to the record of an account
+     * @param id The ID of the account
+     * @return True if the account exists, otherwise the flyweight is left where it was
+     */
+    public boolean moveToId(long id) {
+        int found = table.indexOf(id);
+        if (found < 0) {
+            return false;
+        }
+        this.index = found;
+        return true;
+    }
+
+    public OffHeapAccountTable getTable() {
+        return table;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return table.getId(index);
+    }
+
+    public AccountType getType() {
+        return table.getType(index);
+    }
+
+    public Currency getCurrency() {
+        return table.getCurrency(index);
+    }
+
+    public String getOwnerName() {
+        return table.getOwnerName(index);
+    }
+
+    public double getInterestRate() {
+        return table.getInterestRate(index);
+    }
+
+    public long getBalanceMinorUnits() {
+        return table.getBalanceMinorUnits(index);
+    }
+
+    public Money getBalance() {
+        return Money.ofMinor(table.getBalanceMinorUnits(index), table.getCurrency(index));
+    }
+
+    /**
+     * Deposits an amount of money into the account
+     * @param amount The amount of money to be deposited into the account
+     */
+    public void deposit(Money amount) {
+        tryDeposit(amount);
+    }
+
+    /**
+     * Withdraws an amount of money from the account
+     * @param amount The amount of money to be withdrawn from the account
+     */
+    public void withdraw(Money amount) {
+        tryWithdraw(amount);
+    }
+
+    /**
+     * Transfers an amount of money to a heap account
+     * @param amount The amount to be transferred
+     * @param account The account to be deposited to
+     */
+    public void transfer(Money amount, Account account) {
+        tryTransfer(amount, account);
+    }
+
+    /**
+     * Deposits an amount of money into the account, returning the result instead of throwing
+     * @param amount The amount of money to be deposited into the account
+     * @return The result of the deposit
+     */
+    public OperationResult tryDeposit(Money amount) {
+        if (amount.getCurrency() != getCurrency()) {
+            Account.getMetrics().record(TransactionType.DEPOSIT, OperationResult.CURRENCY_MISMATCH, 0);
+            return OperationResult.CURRENCY_MISMATCH;
+        }
+        return table.depositMinorUnits(index, amount.getMinorUnits());
+    }
+
+    /**
+     * Withdraws an amount of money from the account, returning the result instead of throwing
+     * @param amount The amount of money to be withdrawn from the account
+     * @return The result of the withdrawal
+     */
+    public OperationResult tryWithdraw(Money amount) {
+        if (amount.getCurrency() != getCurrency()) {
+            Account.getMetrics().record(TransactionType.WITHDRAWAL, OperationResult.CURRENCY_MISMATCH, 0);
+            return OperationResult.CURRENCY_MISMATCH;
+        }
+        return table.withdrawMinorUnits(index, amount.getMinorUnits());
+    }
+
+    /**
+     * Transfers an amount of money to a heap account, returning the result instead of throwing.
+     * The deposit into the heap account is logged but not waited for.
+     * @param amount The amount to be transferred
+     * @param account The account to be deposited to
+     * @return The result of the transfer
+     */
+    public OperationResult tryTransfer(Money amount, Account account) {
+        if (amount.getCurrency() != getCurrency()) {
+            Account.getMetrics().record(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, 0);
+            return OperationResult.CURRENCY_MISMATCH;
+        }
+        return table.transferMinorUnits(index, amount.getMinorUnits(), account);
+    }
+
+    /**
+     * Deposits an amount of minor units without allocating
+     * @param minorUnits The amount in minor units of the account currency
+     * @return The result of the deposit
+     */
+    public OperationResult depositMinorUnits(long minorUnits) {
+        return table.depositMinorUnits(index, minorUnits);
+    }
+
+    /**
+     * Withdraws an amount of minor units without allocating
+     * @param minorUnits The amount in minor units of the account currency
+     * @return The result of the withdrawal
+     */
+    public OperationResult withdrawMinorUnits(long minorUnits) {
+        return table.withdrawMinorUnits(index, minorUnits);
+    }
+
+    /**
+     * Transfers an amount of money to another record of the same table, atomically
+     * @param amount The amount to be transferred
+     * @param account The flyweight positioned on the account to be deposited to
+     * @return The result of the transfer
+     * @throws IllegalArgumentException Exception thrown if the flyweight belongs to another table
+     */
+    public OperationResult tryTransfer(Money amount, OffHeapAccount account) throws IllegalArgumentException {
+        if (amount.getCurrency() != getCurrency()) {
+            Account.getMetrics().record(TransactionType.TRANSFER_OUT, OperationResult.CURRENCY_MISMATCH, 0);
+            return OperationResult.CURRENCY_MISMATCH;
+        }
+        return transferMinorUnits(amount.getMinorUnits(), account);
+    }
+
+    /**
+     * Transfers an amount of minor units to another record of the same table without allocating
+     * @param minorUnits The amount in minor units of the account currency
+     * @param account The flyweight positioned on the account to be deposited to
+     * @return The result of the transfer
+     * @throws IllegalArgumentException Exception thrown if the flyweight belongs to another table
+     */
+    public OperationResult transferMinorUnits(long minorUnits, OffHeapAccount account) throws IllegalArgumentException {
+        if (account.table != table) {
+            throw new IllegalArgumentException("Both accounts must belong to the same table.");
+        }
+        return table.transferMinorUnits(index, minorUnits, account.index);
+    }
+
+}
@@ -0,0 +1,549 @@
+package storage;
+
+import enums.AccountType;
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import interfaces.FxRateProvider;
+import interfaces.OperationLog;
+import interfaces.OperationMetrics;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import model.TransferLimits;
+import util.StripedLocks;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounts stored as fixed-width records in direct buffers, outside the Java heap. The heap only
+ * holds the arrays of buffers and the locks, so its size and the time spent in garbage collection
+ * stay flat however many accounts are stored. Records are addressed by their index, given in
+ * creation order, and an off-heap hash index maps the IDs to it. Record layout (40 bytes, native
+ * byte order):
+ * <pre>
+ *  0 long   account ID
+ *  8 long   balance in minor units
+ * 16 double interest rate (savings accounts)
+ * 24 long   offset of the owner name in the name slabs
+ * 32 int    length of the owner name in UTF-8 bytes
+ * 36 byte   account type ordinal
+ * 37 byte   currency ordinal
+ * </pre>
+ * Balances are guarded by striped locks, like heap accounts. The ID index is read without locks:
+ * it is only written by the creating thread, and lookups see either the index before or after a
+ * resize, complete, like {@link util.LongHashMap}.
+ * <p>
+ * The table applies the per-transfer limits of the account types and records metrics, but it
+ * keeps no transfer history, no rolling limit windows and no log: records are not {@link Account}
+ * objects, so the event listener, the balance observer and recovery do not see them. Rather than
+ * silently skipping them, every change throws an IllegalStateException while an operation log is
+ * set, and every transfer does while the limits of its account type have rolling windows. Direct
+ * buffers are freed when the table becomes unreachable, and count against
+ * {@code -XX:MaxDirectMemorySize}.
+ */
+public class OffHeapAccountTable {
+
+    final static int RECORD_SIZE = 40;
+    private final static int ID = 0; // Offsets of the fields of a record
+    private final static int BALANCE = 8;
+    private final static int RATE = 16;
+    private final static int NAME_OFFSET = 24;
+    private final static int NAME_LENGTH = 32;
+    private final static int TYPE = 36;
+    private final static int CURRENCY = 37;
+
+    private final static int SLAB_SHIFT = 20; // 2^20 records, 40 MB, per slab
+    private final static int SLAB_RECORDS = 1 << SLAB_SHIFT;
+    private final static int SLAB_MASK = SLAB_RECORDS - 1;
+    private final static int NAME_SLAB_SIZE = 1 << 24; // Bytes per owner name slab
+    private final static int MAX_NAME_LENGTH = 4096; // Maximum length of an owner name in UTF-8 bytes
+    private final static int INDEX_SEGMENT_SHIFT = 16; // 2^16 slots, 1 MB, per index segment
+    private final static int INDEX_SEGMENT_SLOTS = 1 << INDEX_SEGMENT_SHIFT;
+    private final static int INDEX_SEGMENT_MASK = INDEX_SEGMENT_SLOTS - 1;
+    private final static int INITIAL_INDEX_SLOTS = 1 << 16;
+    private final static int INDEX_SLOT_SIZE = 16; // Per slot: long ID, long record index plus one (0 marks an empty slot)
+    private final static VarHandle INDEX_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private final static int LOCK_STRIPES = 1024;
+
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES); // Guard the balances, by record index
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0]; // Records, SLAB_RECORDS per slab
+    private volatile ByteBuffer[] nameSlabs = new ByteBuffer[0]; // Owner names in UTF-8
+    private volatile int size; // Number of records, written after the record is complete
+    private long nameEnd; // Offset of the next owner name, guarded by this
+    private volatile Index index = new Index(INITIAL_INDEX_SLOTS); // Record indexes by ID, replaced as a whole when it grows
+    private long indexed; // Number of IDs in the index, guarded by this
+
+    /**
+     * Open addressing table of record indexes by ID, split into direct buffers of
+     * {@value #INDEX_SEGMENT_SLOTS} slots, so it can hold more slots than a single buffer
+     */
+    private static final class Index {
+
+        private final ByteBuffer[] segments;
+        private final long mask; // Number of slots minus one
+
+        private Index(long slots) {
+            this.segments = new ByteBuffer[(int) Math.max(slots >>> INDEX_SEGMENT_SHIFT, 1)];
+            for (int segment = 0; segment < segments.length; segment++) {
+                segments[segment] = ByteBuffer.allocateDirect((int) Math.min(slots, INDEX_SEGMENT_SLOTS) * INDEX_SLOT_SIZE).order(ByteOrder.nativeOrder());
+            }
+            this.mask = slots - 1;
+        }
+
+        private ByteBuffer segment(long slot) {
+            return segments[(int) (slot >>> INDEX_SEGMENT_SHIFT)];
+        }
+
+        private static int offset(long slot) {
+            return (int) (slot & INDEX_SEGMENT_MASK) * INDEX_SLOT_SIZE;
+        }
+
+        private long slotFor(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (h ^ (h >>> 32)) & mask;
+        }
+
+        /**
+         * Gets the record index plus one stored in a slot, with acquire semantics, so its ID is visible
+         * @return The entry, or 0 if the slot is empty
+         */
+        private long entry(long slot) {
+            return (long) INDEX_LONGS.getAcquire(segment(slot), offset(slot) + 8);
+        }
+
+        private long id(long slot) {
+            return segment(slot).getLong(offset(slot));
+        }
+
+        /**
+         * Stores an ID in its first empty slot, releasing its entry after the ID
+         * @return False if the ID is already in the index
+         */
+        private boolean insert(long id, long entry) {
+            long slot = slotFor(id);
+            while (entry(slot) != 0) {
+                if (id(slot) == id) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            ByteBuffer segment = segment(slot);
+            segment.putLong(offset(slot), id);
+            INDEX_LONGS.setRelease(segment, offset(slot) + 8, entry); // Readers that see the entry also see its ID
+            return true;
+        }
+
+    }
+
+    /**
+     * Gets the number of accounts
+     * @return The number of records, whose indexes go from 0 to the size minus one
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the memory held outside the heap
+     * @return The bytes of the record, name and index buffers
+     */
+    public long getOffHeapBytes() {
+        long bytes = (long) slabs.length * SLAB_RECORDS * RECORD_SIZE + (long) nameSlabs.length * NAME_SLAB_SIZE;
+        for (ByteBuffer segment : index.segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates an account
+     * @param type The type of the account
+     * @param id The unique ID of the account
+     * @param ownerName The name of the owner
+     * @param balance The initial balance, whose currency becomes the currency of the account
+     * @param interestRate The interest rate in decimal form, used by savings accounts
+     * @return The index of the record
+     * @throws IllegalArgumentException Exception thrown if the ID exists, the balance is negative or the name is too long
+     * @throws IllegalStateException Exception thrown if an operation log is set, or the table is full
+     */
+    public synchronized int create(AccountType type, long id, String ownerName, Money balance, double interestRate) throws IllegalArgumentException, IllegalStateException {
+        checkUnlogged();
+        byte[] name = ownerName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Owner names are limited to " + MAX_NAME_LENGTH + " bytes.");
+        }
+        if (balance.getMinorUnits() < 0) {
+            throw new IllegalArgumentException("The initial balance cannot be negative.");
+        }
+        int recordIndex = size;
+        if (recordIndex == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The table is full.");
+        }
+        if (indexOf(id) >= 0) {
+            throw new IllegalArgumentException("An account with ID " + id + " already exists.");
+        }
+        long nameOffset = appendName(name);
+        if (recordIndex >>> SLAB_SHIFT == slabs.length) {
+            ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+            grown[slabs.length] = ByteBuffer.allocateDirect(SLAB_RECORDS * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            slabs = grown;
+        }
+        ByteBuffer slab = slabs[recordIndex >>> SLAB_SHIFT];
+        int offset = (recordIndex & SLAB_MASK) * RECORD_SIZE;
+        slab.putLong(offset + ID, id);
+        slab.putLong(offset + BALANCE, balance.getMinorUnits());
+        slab.putDouble(offset + RATE, interestRate);
+        slab.putLong(offset + NAME_OFFSET, nameOffset);
+        slab.putInt(offset + NAME_LENGTH, name.length);
+        slab.put(offset + TYPE, (byte) type.ordinal());
+        slab.put(offset + CURRENCY, (byte) balance.getCurrency().ordinal());
+        size = recordIndex + 1;
+        putIndex(id, recordIndex); // Once the record is complete, so a lookup never finds a missing record
+        return recordIndex;
+    }
+
+    /**
+     * Copies an owner name into the name slabs. A name never spans two slabs.
+     * @return The offset of the name
+     */
+    private long appendName(byte[] name) {
+        int slab = (int) (nameEnd / NAME_SLAB_SIZE);
+        if (nameEnd % NAME_SLAB_SIZE + name.length > NAME_SLAB_SIZE) {
+            slab++;
+            nameEnd = (long) slab * NAME_SLAB_SIZE;
+        }
+        if (slab == nameSlabs.length) {
+            ByteBuffer[] grown = Arrays.copyOf(nameSlabs, nameSlabs.length + 1);
+            grown[nameSlabs.length] = ByteBuffer.allocateDirect(NAME_SLAB_SIZE);
+            nameSlabs = grown;
+        }
+        long offset = nameEnd;
+        nameSlabs[slab].put((int) (offset % NAME_SLAB_SIZE), name);
+        nameEnd += name.length;
+        return offset;
+    }
+
+    /**
+     * Finds the record of an account, without locking
+     * @param id The ID of the account
+     * @return The index of the record, or -1 if there is no such account
+     */
+    public int indexOf(long id) {
+        Index index = this.index;
+        for (long slot = index.slotFor(id); ; slot = (slot + 1) & index.mask) {
+            long entry = index.entry(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (index.id(slot) == id) {
+                return (int) (entry - 1);
+            }
+        }
+    }
+
+    /**
+     * Adds a new ID to the index, doubling it once it is half full. The grown index is filled
+     * before it is published.
+     */
+    private void putIndex(long id, int recordIndex) {
+        Index index = this.index;
+        if (indexed * 2 >= index.mask + 1) {
+            Index grown = new Index((index.mask + 1) * 2);
+            for (long slot = 0; slot <= index.mask; slot++) {
+                long entry = index.entry(slot);
+                if (entry != 0) {
+                    grown.insert(index.id(slot), entry);
+                }
+            }
+            this.index = grown;
+            index = grown;
+        }
+        index.insert(id, recordIndex + 1L);
+        indexed++;
+    }
+
+    /**
+     * Gets the slab holding a record, checking the index first
+     * @throws IndexOutOfBoundsException Exception thrown if there is no such record
+     */
+    private ByteBuffer slab(int recordIndex) throws IndexOutOfBoundsException {
+        if (recordIndex < 0 || recordIndex >= size) {
+            throw new IndexOutOfBoundsException("No account record " + recordIndex + ".");
+        }
+        return slabs[recordIndex >>> SLAB_SHIFT];
+    }
+
+    private static int offset(int recordIndex) {
+        return (recordIndex & SLAB_MASK) * RECORD_SIZE;
+    }
+
+    public long getId(int recordIndex) {
+        return slab(recordIndex).getLong(offset(recordIndex) + ID);
+    }
+
+    public AccountType getType(int recordIndex) {
+        return AccountType.fromOrdinal(slab(recordIndex).get(offset(recordIndex) + TYPE));
+    }
+
+    public Currency getCurrency(int recordIndex) {
+        return Currency.fromOrdinal(slab(recordIndex).get(offset(recordIndex) + CURRENCY));
+    }
+
+    public double getInterestRate(int recordIndex) {
+        return slab(recordIndex).getDouble(offset(recordIndex) + RATE);
+    }
+
+    /**
+     * Decodes the owner name of an account, which allocates a new string
+     * @param recordIndex The index of the record
+     * @return The owner name
+     */
+    public String getOwnerName(int recordIndex) {
+        ByteBuffer slab = slab(recordIndex);
+        long nameOffset = slab.getLong(offset(recordIndex) + NAME_OFFSET);
+        byte[] name = new byte[slab.getInt(offset(recordIndex) + NAME_LENGTH)];
+        nameSlabs[(int) (nameOffset / NAME_SLAB_SIZE)].get((int) (nameOffset % NAME_SLAB_SIZE), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the balance of an account while holding its lock
+     * @param recordIndex The index of the record
+     * @return The balance in minor units of the account currency
+     */
+    public long getBalanceMinorUnits(int recordIndex) {
+        ByteBuffer slab = slab(recordIndex);
+        ReentrantLock lock = locks.lockFor(recordIndex);
+        lock.lock();
+        try {
+            return slab.getLong(offset(recordIndex) + BALANCE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deposits an amount into an account without allocating
+     * @param recordIndex The index of the record
+     * @param minorUnits The amount in minor units of the account currency
+     * @return The result of the deposit
+     * @throws IllegalStateException Exception thrown if an operation log is set
+     */
+    public OperationResult depositMinorUnits(int recordIndex, long minorUnits) throws IllegalStateException {
+        checkUnlogged();
+        OperationMetrics metrics = Account.getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = add(recordIndex, minorUnits, TransactionType.DEPOSIT);
+        metrics.record(TransactionType.DEPOSIT, result, startTime);
+        return result;
+    }
+
+    /**
+     * Withdraws an amount from an account without allocating
+     * @param recordIndex The index of the record
+     * @param minorUnits The amount in minor units of the account currency
+     * @return The result of the withdrawal
+     * @throws IllegalStateException Exception thrown if an operation log is set
+     */
+    public OperationResult withdrawMinorUnits(int recordIndex, long minorUnits) throws IllegalStateException {
+        checkUnlogged();
+        OperationMetrics metrics = Account.getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = add(recordIndex, -minorUnits, TransactionType.WITHDRAWAL);
+        metrics.record(TransactionType.WITHDRAWAL, result, startTime);
+        return result;
+    }
+
+    /**
+     * Adds a positive or negative amount to a balance under the lock of the account
+     */
+    private OperationResult add(int recordIndex, long delta, TransactionType type) {
+        ByteBuffer slab = slab(recordIndex);
+        if (delta == 0 || delta == Long.MIN_VALUE || (delta < 0) != (type == TransactionType.WITHDRAWAL)) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        int offset = offset(recordIndex) + BALANCE;
+        ReentrantLock lock = locks.lockFor(recordIndex);
+        lock.lock();
+        try {
+            long newBalance = slab.getLong(offset) + delta;
+            if (newBalance < 0) {
+                return delta < 0 ? OperationResult.INSUFFICIENT_FUNDS : OperationResult.BALANCE_OVERFLOW;
+            }
+            slab.putLong(offset, newBalance);
+            return OperationResult.COMPLETED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Transfers an amount between two accounts of the table without allocating. Both accounts are
+     * locked in a fixed order, and an amount crossing currencies is converted with the current
+     * exchange rate.
+     * @param fromIndex The index of the record to be debited
+     * @param minorUnits The amount in minor units of the debited account currency
+     * @param toIndex The index of the record to be credited
+     * @return The result of the transfer
+     * @throws IllegalStateException Exception thrown if an operation log is set, or the limits of the debited account type have rolling windows
+     */
+    public OperationResult transferMinorUnits(int fromIndex, long minorUnits, int toIndex) throws IllegalStateException {
+        checkUnlogged();
+        OperationMetrics metrics = Account.getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = transfer(fromIndex, minorUnits, toIndex);
+        metrics.record(TransactionType.TRANSFER_OUT, result, startTime);
+        return result;
+    }
+
+    private OperationResult transfer(int fromIndex, long minorUnits, int toIndex) {
+        ByteBuffer fromSlab = slab(fromIndex);
+        ByteBuffer toSlab = slab(toIndex);
+        int fromOffset = offset(fromIndex);
+        int toOffset = offset(toIndex);
+        Currency fromCurrency = Currency.fromOrdinal(fromSlab.get(fromOffset + CURRENCY));
+        Currency toCurrency = Currency.fromOrdinal(toSlab.get(toOffset + CURRENCY));
+        long convertedUnits = fromCurrency == toCurrency ? minorUnits : Account.getFxRateProvider().convert(minorUnits, fromCurrency, toCurrency);
+        OperationResult allowed = checkTransfer(fromSlab.get(fromOffset + TYPE), fromCurrency, minorUnits, convertedUnits);
+        if (allowed != OperationResult.COMPLETED) {
+            return allowed;
+        }
+        locks.lockBoth(fromIndex, toIndex);
+        try {
+            long debited = fromSlab.getLong(fromOffset + BALANCE) - minorUnits;
+            if (debited < 0) {
+                return OperationResult.INSUFFICIENT_FUNDS;
+            }
+            long credited = (fromIndex == toIndex ? debited : toSlab.getLong(toOffset + BALANCE)) + convertedUnits;
+            if (credited < 0) {
+                return OperationResult.BALANCE_OVERFLOW;
+            }
+            fromSlab.putLong(fromOffset + BALANCE, debited);
+            toSlab.putLong(toOffset + BALANCE, credited);
+            return OperationResult.COMPLETED;
+        } finally {
+            locks.unlockBoth(fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * Transfers an amount from an account of the table to a heap account. The debit and the
+     * deposit take the two locks one after the other, so the money is briefly in neither account;
+     * if the deposit is rejected, the debit is refunded.
+     * @param fromIndex The index of the record to be debited
+     * @param minorUnits The amount in minor units of the debited account currency
+     * @param account The heap account to be credited
+     * @return The result of the transfer
+     * @throws IllegalStateException Exception thrown if an operation log is set, or the limits of the debited account type have rolling windows
+     */
+    public OperationResult transferMinorUnits(int fromIndex, long minorUnits, Account account) throws IllegalStateException {
+        checkUnlogged();
+        OperationMetrics metrics = Account.getMetrics();
+        long startTime = metrics.startTime();
+        OperationResult result = transfer(fromIndex, minorUnits, account);
+        metrics.record(TransactionType.TRANSFER_OUT, result, startTime);
+        return result;
+    }
+
+    private OperationResult transfer(int fromIndex, long minorUnits, Account account) {
+        ByteBuffer fromSlab = slab(fromIndex);
+        int fromOffset = offset(fromIndex);
+        Currency fromCurrency = Currency.fromOrdinal(fromSlab.get(fromOffset + CURRENCY));
+        long convertedUnits = fromCurrency == account.getCurrency() ? minorUnits
+                : Account.getFxRateProvider().convert(minorUnits, fromCurrency, account.getCurrency());
+        OperationResult result = checkTransfer(fromSlab.get(fromOffset + TYPE), fromCurrency, minorUnits, convertedUnits);
+        if (result != OperationResult.COMPLETED) {
+            return result;
+        }
+        result = add(fromIndex, -minorUnits, TransactionType.WITHDRAWAL);
+        if (result != OperationResult.COMPLETED) {
+            return result;
+        }
+        result = account.depositMinorUnits(convertedUnits);
+        if (result != OperationResult.COMPLETED) {
+            add(fromIndex, minorUnits, TransactionType.DEPOSIT);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the amount of a transfer and the per-transfer limit of the type of the debited account
+     * @throws IllegalStateException Exception thrown if the limits of the type have rolling windows
+     */
+    private static OperationResult checkTransfer(byte type, Currency currency, long minorUnits, long convertedUnits) throws IllegalStateException {
+        TransferLimits limits = type == AccountType.SAVINGS.ordinal() ? SavingsAccount.getDefaultTransferLimits() : BusinessAccount.getDefaultTransferLimits();
+        if (limits.hasWindows()) {
+            throw new IllegalStateException("The off-heap table cannot enforce the rolling transfer limits of "
+                    + AccountType.fromOrdinal(type) + " accounts.");
+        }
+        if (minorUnits <= 0 || convertedUnits == 0) {
+            return OperationResult.INVALID_AMOUNT;
+        }
+        long limit = limits.getPerTransfer(currency);
+        if (convertedUnits < 0 || limit < 0) {
+            return OperationResult.RATE_UNAVAILABLE;
+        }
+        return minorUnits > limit ? OperationResult.TRANSFER_LIMIT_EXCEEDED : OperationResult.COMPLETED;
+    }
+
+    /**
+     * Applies interest to every savings account in one sequential pass over the records, with
+     * every account locked. The interest is rounded half up to the nearest minor unit, and
+     * accounts whose balance would overflow are left unchanged.
+     * @return The number of savings accounts left unchanged because their balance would overflow
+     * @throws IllegalStateException Exception thrown if an operation log is set
+     */
+    public int applyInterest() throws IllegalStateException {
+        checkUnlogged();
+        int overflows = 0;
+        locks.lockAll();
+        try {
+            ByteBuffer[] slabs = this.slabs;
+            int size = this.size;
+            for (int recordIndex = 0; recordIndex < size; recordIndex++) {
+                ByteBuffer slab = slabs[recordIndex >>> SLAB_SHIFT];
+                int offset = offset(recordIndex);
+                if (slab.get(offset + TYPE) != AccountType.SAVINGS.ordinal()) {
+                    continue;
+                }
+                long balance = slab.getLong(offset + BALANCE);
+                long newBalance = balance + SavingsAccount.calculateInterest(balance, slab.getDouble(offset + RATE));
+                if (newBalance >= 0) {
+                    slab.putLong(offset + BALANCE, newBalance);
+                } else {
+                    overflows++;
+                }
+            }
+        } finally {
+            locks.unlockAll();
+        }
+        return overflows;
+    }
+
+    /**
+     * Refuses a change that the operation log would not see, so it would be lost on recovery
+     * @throws IllegalStateException Exception thrown if an operation log is set
+     */
+    private static void checkUnlogged() throws IllegalStateException {
+        if (Account.getOperationLog() != OperationLog.NONE) {
+            throw new IllegalStateException("The off-heap table does not log its changes, so it cannot be used while an operation log is set.");
+        }
+    }
+
+    /**
+     * Creates a flyweight that can be moved over the records of this table
+     * @return A flyweight positioned on no record
+     */
+    public OffHeapAccount flyweight() {
+        return new OffHeapAccount(this);
+    }
+
+}
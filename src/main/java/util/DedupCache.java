@@ -0,0 +1,179 @@
+package util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the results of recent requests by their 64-bit ID, so a retried request gets the
+ * result of its first attempt instead of running again. The table never grows: its slots are
+ * split into sets of {@value #WAYS}, and an ID can only live in the set its hash picks. Each set
+ * is guarded by a striped lock, and the IDs and states are kept in two long arrays, so there is
+ * no object per entry and every operation scans a single set.
+ * <p>
+ * An entry is kept for the whole time to live and only its slot is reused once it expires, so a
+ * retry within the time to live is never run twice. A new request whose set is full of live
+ * entries is refused with {@link #BUSY} rather than replacing one of them, and the caller must
+ * reject it for now. A retry of a request whose first attempt is still running waits for its result.
+ */
+public class DedupCache {
+
+    public final static int CLAIMED = -1; // Returned by begin when the caller must run the request
+    public final static int BUSY = -2; // Returned by begin when the request cannot be remembered now, so it must not run
+
+    private final static int WAYS = 8; // Slots per set
+    private final static int LOCK_STRIPES = 256;
+    private final static long EMPTY = 0; // State of an unused slot
+    private final static int PENDING = 0xFF; // Result code of a request that is still running
+    private final static int RESULT_BITS = 8;
+
+    private final long[] ids; // Request ID of each slot
+    private final long[] states; // Per slot: time of the request in milliseconds shifted by RESULT_BITS, then the result code; 0 if unused
+    private final StripedLocks locks;
+    private final int setMask;
+    private final long ttlMillis; // Minimum time an entry is kept
+    private final long originNanos; // Start of the clock of the entries
+    private final LongAdder refusals = new LongAdder(); // Requests refused because their set was full of live entries
+
+    /**
+     * Creates a cache
+     * @param capacity The minimum number of entries, rounded up to a power of two
+     * @param ttlMillis The time an entry is kept, in milliseconds
+     * @throws IllegalArgumentException Exception thrown if the capacity or the time to live is not positive
+     */
+    public DedupCache(int capacity, long ttlMillis) throws IllegalArgumentException {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("The capacity and time to live must be positive.");
+        }
+        int sets = Integer.highestOneBit(Math.max(capacity / WAYS, 2) - 1) << 1;
+        this.ids = new long[sets * WAYS];
+        this.states = new long[sets * WAYS];
+        this.locks = new StripedLocks(Math.min(sets, LOCK_STRIPES));
+        this.setMask = sets - 1;
+        this.ttlMillis = ttlMillis;
+        this.originNanos = System.nanoTime();
+    }
+
+    public int getCapacity() {
+        return ids.length;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Gets the number of requests refused with {@link #BUSY}, which means the cache is too small
+     * for the rate of requests
+     * @return The number of refused requests
+     */
+    public long getRefusals() {
+        return refusals.sum();
+    }
+
+    /**
+     * Looks up a request, claiming it if it is not known. The caller that claims a request must
+     * call {@link #complete} or {@link #abandon} once it ends. If the first attempt of the request
+     * is still running, waits for its result.
+     * @param id The ID of the request
+     * @return {@link #CLAIMED} if the caller must run the request, {@link #BUSY} if it must not run
+     * it because every slot of its set holds a live entry, otherwise the result code of its first attempt
+     */
+    public int begin(long id) {
+        int set = setFor(id);
+        ReentrantLock lock = locks.lockFor(set);
+        int first = set * WAYS;
+        while (true) {
+            long now = now();
+            lock.lock();
+            try {
+                boolean running = false; // Whether the first attempt of the request is still running
+                int free = -1; // An unused or expired slot
+                for (int slot = first; slot < first + WAYS; slot++) {
+                    long state = states[slot];
+                    if (state != EMPTY && ids[slot] == id && !isExpired(state, now)) {
+                        int code = (int) state & PENDING;
+                        if (code != PENDING) {
+                            return code;
+                        }
+                        running = true;
+                        break;
+                    }
+                    if (free < 0 && (state == EMPTY || isExpired(state, now))) {
+                        free = slot;
+                    }
+                }
+                if (!running) {
+                    if (free < 0) {
+                        refusals.increment();
+                        return BUSY;
+                    }
+                    ids[free] = id;
+                    states[free] = now << RESULT_BITS | PENDING;
+                    return CLAIMED;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // The first attempt is running in another thread, which lasts as long as a single operation
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Records the result of a claimed request, which retries get from now on
+     * @param id The ID of the request
+     * @param code The result code, from 0 to 254
+     * @throws IllegalArgumentException Exception thrown if the code is out of range
+     */
+    public void complete(long id, int code) throws IllegalArgumentException {
+        if (code < 0 || code >= PENDING) {
+            throw new IllegalArgumentException("Result codes must be between 0 and " + (PENDING - 1) + ".");
+        }
+        finish(id, code);
+    }
+
+    /**
+     * Forgets a claimed request that failed without a result, so a retry runs it again
+     * @param id The ID of the request
+     */
+    public void abandon(long id) {
+        finish(id, -1);
+    }
+
+    private void finish(long id, int code) {
+        int set = setFor(id);
+        ReentrantLock lock = locks.lockFor(set);
+        int first = set * WAYS;
+        lock.lock();
+        try {
+            for (int slot = first; slot < first + WAYS; slot++) {
+                long state = states[slot];
+                if (ids[slot] == id && ((int) state & PENDING) == PENDING) {
+                    // The time of the request is kept, so the entry expires a time to live after it started
+                    states[slot] = code < 0 ? EMPTY : state & ~(long) PENDING | code;
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int setFor(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & setMask;
+    }
+
+    /**
+     * Gets the time of the entries
+     * @return The milliseconds since the cache was created, plus one so no time is 0
+     */
+    private long now() {
+        return (System.nanoTime() - originNanos) / 1_000_000 + 1;
+    }
+
+    private boolean isExpired(long state, long now) {
+        return ((int) state & PENDING) != PENDING && now - (state >>> RESULT_BITS) >= ttlMillis;
+    }
+
+}
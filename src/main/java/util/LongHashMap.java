@@ -0,0 +1,240 @@
+package util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open-addressing hash map keyed by primitive long values. Keys are stored in a plain
+ * long array, so no Long object is created for each entry.
+ * <p>
+ * Lookups may run concurrently with one thread that only puts entries: a key is written before
+ * its value is released, and a resize fills a new table before publishing it with one volatile
+ * write, so a lookup sees either the old or the new table, complete. Removals, clearing and
+ * concurrent writers still need external locking.
+ * @param <V> The type of the stored values
+ */
+public class LongHashMap<V> {
+
+    private final static int DEFAULT_CAPACITY = 16;
+    private final static float LOAD_FACTOR = 0.5f;
+    private final static VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private volatile Table table; // Keys and values, replaced as a whole when the map grows
+    private int size; // Number of entries in the map
+    private int resizeThreshold; // Size at which the tables are doubled
+
+    /**
+     * Keys and values of the entries, published together
+     */
+    private static final class Table {
+
+        private final long[] keys; // Keys of the entries, only meaningful where the value slot is not null
+        private final Object[] values; // Values of the entries, null marks an empty slot
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+
+    }
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashMap(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.min((long) Math.max(expectedSize, 1) * 2, 1 << 30));
+        this.table = new Table(capacity);
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the value associated with a key
+     * @param key The key to look up
+     * @return The value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table table = this.table;
+        long[] keys = table.keys;
+        Object[] values = table.values;
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object value;
+        while ((value = VALUES.getAcquire(values, index)) != null) {
+            if (keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value
+     * @param key The key
+     * @param value The value, must not be null
+     * @return The previous value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed.");
+        }
+        Table table = this.table;
+        long[] keys = table.keys;
+        Object[] values = table.values;
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object current;
+        while ((current = values[index]) != null) {
+            if (keys[index] == key) {
+                VALUES.setRelease(values, index, value);
+                return (V) current;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        VALUES.setRelease(values, index, value); // Readers that see the value also see its key
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Removes the entry for a key, shifting back the following entries of the probe sequence
+     * so lookups never need tombstones
+     * @param key The key to remove
+     * @return The removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long[] keys = table.keys;
+        Object[] values = table.values;
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object current;
+        while ((current = values[index]) != null) {
+            if (keys[index] == key) {
+                shiftBack(keys, values, index);
+                size--;
+                return (V) current;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Grows the tables so a number of entries fits without further resizing
+     * @param expectedSize The number of entries the map is expected to hold
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.min((long) Math.max(expectedSize, 1) * 2, 1 << 30));
+        while (table.keys.length < capacity) {
+            resize();
+        }
+    }
+
+    /**
+     * Copies the values of the map, in table order
+     * @return A new list with every value
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> copy = new ArrayList<>(size);
+        for (Object value : table.values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes every entry from the map, keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(table.values, null);
+        size = 0;
+    }
+
+    /**
+     * Closes the gap left at a slot by moving back the entries that probed past it
+     * @param gap The slot that has just been emptied
+     */
+    private static void shiftBack(long[] keys, Object[] values, int gap) {
+        int mask = keys.length - 1;
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            Object value = values[index];
+            if (value == null) {
+                break;
+            }
+            int home = hash(keys[index]) & mask;
+            // Move the entry only if its home slot is not between the gap and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                values[gap] = value;
+                gap = index;
+            }
+        }
+        values[gap] = null;
+    }
+
+    /**
+     * Doubles the size of the tables, re-inserting every entry into a new table before
+     * publishing it
+     */
+    private void resize() {
+        Table old = table;
+        int capacity = old.keys.length << 1;
+        int mask = capacity - 1;
+        Table grown = new Table(capacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.values[i] != null) {
+                int index = hash(old.keys[i]) & mask;
+                while (grown.values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                grown.keys[index] = old.keys[i];
+                grown.values[index] = old.values[i];
+            }
+        }
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        table = grown;
+    }
+
+    /**
+     * Spreads the bits of a key so sequential ids do not cluster in the table
+     * @param key The key to hash
+     * @return The mixed hash
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, DEFAULT_CAPACITY) - 1) << 1;
+        return Math.max(size, DEFAULT_CAPACITY);
+    }
+
+}
@@ -0,0 +1,105 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interns strings read as UTF-8 bytes from a buffer. The strings are kept in an open-addressing
+ * table keyed by their bytes, so a repeated string is neither decoded nor allocated again.
+ * The interner is not thread-safe.
+ */
+public class StringInterner {
+
+    private final static int INITIAL_CAPACITY = 1024;
+
+    private int[] hashes; // Hash of the bytes of each slot
+    private byte[][] bytes; // UTF-8 bytes of each slot, null marks an empty slot
+    private String[] strings; // Interned string of each slot
+    private int size; // Number of strings in the table
+
+    public StringInterner() {
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.bytes = new byte[INITIAL_CAPACITY][];
+        this.strings = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets the interned string of a range of UTF-8 bytes
+     * @param buffer The buffer holding the bytes
+     * @param offset The absolute position of the first byte
+     * @param length The number of bytes
+     * @return The interned string
+     */
+    public String intern(ByteBuffer buffer, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        int mask = bytes.length - 1;
+        int index = mix(hash) & mask;
+        byte[] candidate;
+        while ((candidate = bytes[index]) != null) {
+            if (hashes[index] == hash && matches(candidate, buffer, offset, length)) {
+                return strings[index];
+            }
+            index = (index + 1) & mask;
+        }
+        byte[] copy = new byte[length];
+        buffer.get(offset, copy);
+        String string = new String(copy, StandardCharsets.UTF_8);
+        hashes[index] = hash;
+        bytes[index] = copy;
+        strings[index] = string;
+        if (++size > bytes.length >>> 1) {
+            resize();
+        }
+        return string;
+    }
+
+    private static boolean matches(byte[] candidate, ByteBuffer buffer, int offset, int length) {
+        if (candidate.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the size of the local table and re-inserts every string
+     */
+    private void resize() {
+        int[] oldHashes = hashes;
+        byte[][] oldBytes = bytes;
+        String[] oldStrings = strings;
+        int capacity = oldBytes.length << 1;
+        int mask = capacity - 1;
+        hashes = new int[capacity];
+        bytes = new byte[capacity][];
+        strings = new String[capacity];
+        for (int i = 0; i < oldBytes.length; i++) {
+            if (oldBytes[i] != null) {
+                int index = mix(oldHashes[i]) & mask;
+                while (bytes[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                hashes[index] = oldHashes[i];
+                bytes[index] = oldBytes[i];
+                strings[index] = oldStrings[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash so similar strings do not cluster in the table
+     * @param hash The hash to mix
+     * @return The mixed hash
+     */
+    private static int mix(int hash) {
+        return hash * 0x9E3779B9 ^ (hash * 0x9E3779B9 >>> 16);
+    }
+
+}
@@ -0,0 +1,116 @@
+package util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed pool of locks shared by many keys. Each key always maps to the same stripe, so
+ * operations on different keys rarely contend while memory stays bounded.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes The minimum number of stripes, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(stripes, 2) - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the index of the stripe that guards a key
+     * @param key The key
+     * @return The stripe index
+     */
+    public int stripeFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Gets the lock that guards a key
+     * @param key The key
+     * @return The lock of the key's stripe
+     */
+    public ReentrantLock lockFor(long key) {
+        return locks[stripeFor(key)];
+    }
+
+    /**
+     * Locks the stripes of two keys in ascending stripe order, so two threads locking the same
+     * pair in opposite directions can never deadlock. If both keys share a stripe it is locked once.
+     * @param first The first key
+     * @param second The second key
+     */
+    public void lockBoth(long first, long second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        if (a == b) {
+            locks[a].lock();
+        } else {
+            locks[Math.min(a, b)].lock();
+            locks[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Locks a set of stripes in ascending order, which is compatible with {@link #lockBoth(long, long)}
+     * @param stripes The stripe indexes, sorted in ascending order without duplicates
+     * @param count The number of stripes to be locked, from the start of the array
+     */
+    public void lockStripes(int[] stripes, int count) {
+        for (int i = 0; i < count; i++) {
+            locks[stripes[i]].lock();
+        }
+    }
+
+    /**
+     * Releases the stripes acquired by {@link #lockStripes(int[], int)}
+     * @param stripes The stripe indexes that were locked
+     * @param count The number of stripes that were locked
+     */
+    public void unlockStripes(int[] stripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Locks every stripe in ascending order, which is compatible with {@link #lockBoth(long, long)}
+     */
+    public void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases the stripes acquired by {@link #lockAll()}
+     */
+    public void unlockAll() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Releases the stripes acquired by {@link #lockBoth(long, long)}
+     * @param first The first key
+     * @param second The second key
+     */
+    public void unlockBoth(long first, long second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        locks[a].unlock();
+        if (a != b) {
+            locks[b].unlock();
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package engine;
+
+import enums.Currency;
+import enums.OperationResult;
+import model.Account;
+import model.Money;
+import model.SavingsAccount;
+import model.TransferLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import registry.AccountRegistry;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the interest job gives the same balances as applying interest to each account, and
+ * that transfers running during the job neither wait for the whole run nor make it apply interest
+ * computed from an outdated balance.
+ */
+class InterestAccrualJobTest {
+
+    private final static int ACCOUNTS = 20_000;
+    private final static long INITIAL_BALANCE = 1_000_000;
+    private final static int RUNS = 20;
+
+    @AfterEach
+    void resetLimits() {
+        SavingsAccount.setDefaultTransferLimits(null);
+    }
+
+    @Test
+    void jobMatchesApplyingInterestToEachAccount() {
+        AccountRegistry registry = new AccountRegistry();
+        SavingsAccount[] expected = new SavingsAccount[ACCOUNTS];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            long balance = random.nextLong(INITIAL_BALANCE);
+            double rate = random.nextDouble() / 10;
+            registry.register(new SavingsAccount(i + 1, "Owner " + i, Money.ofMinor(balance, Currency.EUR), rate));
+            expected[i] = new SavingsAccount(i + 1, "Owner " + i, Money.ofMinor(balance, Currency.EUR), rate);
+            expected[i].applyInterest();
+        }
+        registry.register(new SavingsAccount(ACCOUNTS + 1, "Full", Money.ofMinor(Long.MAX_VALUE, Currency.EUR), 0.02));
+
+        InterestAudit audit = new InterestAccrualJob(registry).run();
+        assertEquals(ACCOUNTS + 1, audit.size());
+        assertEquals(1, audit.count(OperationResult.BALANCE_OVERFLOW));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(expected[i].getBalanceMinorUnits(), registry.find(i + 1).getBalanceMinorUnits());
+        }
+        assertEquals(Long.MAX_VALUE, registry.find(ACCOUNTS + 1).getBalanceMinorUnits());
+    }
+
+    @Test
+    void transfersDuringTheJobAreNotLostOrChargedInterestTwice() throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new SavingsAccount(i + 1, "Owner " + i, Money.ofMinor(INITIAL_BALANCE, Currency.EUR), 0.001);
+            registry.register(accounts[i]);
+        }
+        SavingsAccount.setDefaultTransferLimits(TransferLimits.NONE);
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] transfers = new long[1]; // Completed transfers, read after the thread ends
+        Thread transferer = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(5);
+            while (running.get()) {
+                Account from = accounts[random.nextInt(ACCOUNTS)];
+                if (from.transferMinorUnits(1 + random.nextInt(100), accounts[random.nextInt(ACCOUNTS)]) == OperationResult.COMPLETED) {
+                    transfers[0]++;
+                }
+            }
+        });
+        transferer.start();
+        InterestAccrualJob job = new InterestAccrualJob(registry);
+        long totalInterest = 0;
+        try {
+            for (int run = 0; run < RUNS; run++) {
+                InterestAudit audit = job.run();
+                for (int i = 0; i < audit.size(); i++) {
+                    assertEquals(OperationResult.COMPLETED, audit.getResult(i));
+                    assertEquals(SavingsAccount.calculateInterest(audit.getBalanceBefore(i), audit.getRate(i)), audit.getInterest(i));
+                    assertEquals(audit.getBalanceBefore(i) + audit.getInterest(i), audit.getBalanceAfter(i));
+                    totalInterest += audit.getInterest(i);
+                }
+            }
+        } finally {
+            running.set(false);
+            transferer.join();
+        }
+
+        // Transfers move money without creating any, so the total grows by the audited interest only
+        long total = 0;
+        for (Account account : accounts) {
+            total += account.getBalanceMinorUnits();
+        }
+        assertEquals(ACCOUNTS * INITIAL_BALANCE + totalInterest, total);
+        assertTrue(transfers[0] > 0, "No transfer completed during the job");
+    }
+
+}
@@ -0,0 +1,180 @@
+package engine;
+
+import enums.Currency;
+import enums.OperationResult;
+import interfaces.AccountEventListener;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.TransferLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import registry.AccountRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that transfers across shards conserve money, that a transfer whose credit fails on
+ * another shard is refunded without leaving a trace in the limit windows or the history of the
+ * source account, and that a failed shard is reported instead of hanging its callers.
+ */
+class ShardedTransferEngineTest {
+
+    private final static long INITIAL_BALANCE = 1_000;
+    private final static long AMOUNT = 100;
+    private final static int ACCOUNTS = 64;
+    private final static int INITIAL_BALANCE_INT = (int) INITIAL_BALANCE;
+    private final static int PRODUCERS = 4;
+    private final static int TRANSFERS_PER_PRODUCER = 100_000;
+
+    @AfterEach
+    void resetListener() {
+        Account.setEventListener(null);
+    }
+
+    @Test
+    void refundedTransferIsNotCountedOrRecorded() {
+        Map<Long, OperationResult> results = new ConcurrentHashMap<>();
+        Map<Long, Long> fromBalances = new ConcurrentHashMap<>();
+        Account.setEventListener(new AccountEventListener() {
+            @Override
+            public void onTransfer(Account from, Account to, long minorUnits, long fromBalanceAfter, long toBalanceAfter) {
+                fromBalances.put(to.getId(), fromBalanceAfter);
+            }
+        });
+
+        AccountRegistry registry = new AccountRegistry();
+        try (ShardedTransferEngine engine = new ShardedTransferEngine(registry, 2, 16,
+                (sequence, fromId, toId, minorUnits, result) -> results.put(toId, result))) {
+            long fromId = 1;
+            long fullId = nextIdOnOtherShard(engine, fromId, fromId + 1);
+            long openId = nextIdOnOtherShard(engine, fromId, fullId + 1);
+            BusinessAccount from = new BusinessAccount(fromId, "Source", Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+            // One transfer a minute, and an hourly total too low for two transfers
+            from.setTransferLimits(new TransferLimits(null, Money.ofMinor(AMOUNT * 3 / 2, Currency.EUR), null, 1));
+            registry.register(from);
+            registry.register(new BusinessAccount(fullId, "Full", Money.ofMinor(Long.MAX_VALUE, Currency.EUR)));
+            registry.register(new BusinessAccount(openId, "Open", Money.ofMinor(0, Currency.EUR)));
+
+            engine.submit(fromId, fullId, AMOUNT);
+            engine.awaitCompleted();
+            assertEquals(OperationResult.BALANCE_OVERFLOW, results.get(fullId));
+            assertEquals(INITIAL_BALANCE, from.getBalanceMinorUnits());
+            assertEquals(0, from.getTransactionHistory().size());
+
+            engine.submit(fromId, openId, AMOUNT);
+            engine.awaitCompleted();
+            assertEquals(OperationResult.COMPLETED, results.get(openId));
+            assertEquals(INITIAL_BALANCE - AMOUNT, from.getBalanceMinorUnits());
+            assertEquals(1, from.getTransactionHistory().size());
+            assertEquals(openId, from.getTransactionHistory().getCounterpartyId(0));
+            assertEquals(INITIAL_BALANCE - AMOUNT, fromBalances.get(openId));
+        }
+    }
+
+    @Test
+    void concurrentTransfersAcrossShardsConserveTheTotalBalance() throws Exception {
+        AccountRegistry registry = new AccountRegistry();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            Account account = new BusinessAccount(i, "Owner " + i, Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+            registry.register(account);
+            accounts.add(account);
+        }
+        LongAdder completed = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        try (ShardedTransferEngine engine = new ShardedTransferEngine(registry, 4, 1024, (sequence, fromId, toId, minorUnits, result) -> {
+            if (result == OperationResult.COMPLETED) {
+                completed.increment();
+            } else if (result == OperationResult.INSUFFICIENT_FUNDS) {
+                rejected.increment();
+            } else {
+                throw new AssertionError("Unexpected result " + result);
+            }
+        })) {
+            ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+            try {
+                List<Future<?>> submissions = new ArrayList<>();
+                for (int producer = 0; producer < PRODUCERS; producer++) {
+                    long seed = producer;
+                    submissions.add(producers.submit(() -> {
+                        SplittableRandom random = new SplittableRandom(seed);
+                        for (int i = 0; i < TRANSFERS_PER_PRODUCER; i++) {
+                            engine.submit(1 + random.nextInt(ACCOUNTS), 1 + random.nextInt(ACCOUNTS), 1 + random.nextInt(INITIAL_BALANCE_INT));
+                        }
+                    }));
+                }
+                for (Future<?> submission : submissions) {
+                    submission.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                producers.shutdownNow();
+            }
+            engine.awaitCompleted();
+        }
+
+        long total = 0;
+        for (Account account : accounts) {
+            assertTrue(account.getBalanceMinorUnits() >= 0, "Negative balance in account " + account.getId());
+            total += account.getBalanceMinorUnits();
+        }
+        assertEquals(ACCOUNTS * INITIAL_BALANCE, total);
+        assertEquals((long) PRODUCERS * TRANSFERS_PER_PRODUCER, completed.sum() + rejected.sum());
+        assertTrue(completed.sum() > 0, "No transfer completed");
+    }
+
+    @Test
+    void failedShardIsReportedToWaitingCallers() {
+        AccountRegistry registry = new AccountRegistry();
+        RuntimeException cause = new RuntimeException("Handler failure");
+        ShardedTransferEngine engine = new ShardedTransferEngine(registry, 2, 2, (sequence, fromId, toId, minorUnits, result) -> {
+            throw cause;
+        });
+        // Both accounts belong to one shard, which fails when it reports the first transfer
+        long toId = 2;
+        while (engine.shardFor(toId) != engine.shardFor(1)) {
+            toId++;
+        }
+        registry.register(new BusinessAccount(1, "Source", Money.ofMinor(INITIAL_BALANCE, Currency.EUR)));
+        registry.register(new BusinessAccount(toId, "Destination", Money.ofMinor(0, Currency.EUR)));
+        long destination = toId;
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            engine.submit(1, destination, AMOUNT);
+            IllegalStateException awaited = assertThrows(IllegalStateException.class, engine::awaitCompleted);
+            assertSame(cause, awaited.getCause());
+            IllegalStateException submitted = assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 4; i++) {
+                    engine.submit(1, destination, AMOUNT);
+                }
+            });
+            assertSame(cause, submitted.getCause());
+            assertThrows(IllegalStateException.class, engine::close);
+        });
+    }
+
+    private static long nextIdOnOtherShard(ShardedTransferEngine engine, long fromId, long id) {
+        while (engine.shardFor(id) == engine.shardFor(fromId)) {
+            id++;
+        }
+        assertNotEquals(engine.shardFor(fromId), engine.shardFor(id));
+        return id;
+    }
+
+}
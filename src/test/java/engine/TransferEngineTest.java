@@ -0,0 +1,51 @@
+package engine;
+
+import enums.Currency;
+import model.BusinessAccount;
+import model.Money;
+import org.junit.jupiter.api.Test;
+import registry.AccountRegistry;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Checks that the callers of an engine whose consumer thread failed get the failure instead of
+ * waiting forever.
+ */
+class TransferEngineTest {
+
+    private final static Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    void failedConsumerIsReportedToWaitingCallers() {
+        AccountRegistry registry = new AccountRegistry();
+        registry.register(new BusinessAccount(1, "Source", Money.ofMinor(1_000, Currency.EUR)));
+        registry.register(new BusinessAccount(2, "Destination", Money.ofMinor(0, Currency.EUR)));
+        RuntimeException cause = new RuntimeException("Handler failure");
+        TransferEngine engine = new TransferEngine(registry, 2, (sequence, fromId, toId, minorUnits, result) -> {
+            throw cause;
+        });
+
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            long sequence = engine.submit(1, 2, 10);
+            IllegalStateException awaited = assertThrows(IllegalStateException.class, () -> engine.awaitProcessed(sequence));
+            assertSame(cause, awaited.getCause());
+            // The ring buffer only has two slots, so without the check these submissions would wait for ever
+            IllegalStateException submitted = assertThrows(IllegalStateException.class, () -> {
+                for (int i = 0; i < 4; i++) {
+                    engine.submit(1, 2, 10);
+                }
+            });
+            assertSame(cause, submitted.getCause());
+            IllegalStateException closed = assertThrows(IllegalStateException.class, engine::close);
+            assertSame(cause, closed.getCause());
+        });
+        assertEquals(990, registry.find(1).getBalanceMinorUnits());
+    }
+
+}
@@ -0,0 +1,106 @@
+package events;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import model.BusinessAccount;
+import model.Money;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Publishes events to the listener and checks that they are printed in order, in fewer writes
+ * than events, that closing prints the events still queued, and that events arriving while the
+ * buffer is full are dropped and counted instead of blocking.
+ */
+class AsyncBatchingEventListenerTest {
+
+    private final static int EVENTS = 10_000;
+
+    @Test
+    void eventsArePrintedInOrderInBatchesAndFlushedOnClose() {
+        CountingStream out = new CountingStream(null);
+        BusinessAccount account = new BusinessAccount(7, "Owner", Money.ofMinor(0, Currency.EUR));
+        String[] expected = new String[EVENTS];
+        try (AsyncBatchingEventListener listener = new AsyncBatchingEventListener(out, EVENTS)) {
+            for (int i = 0; i < EVENTS; i++) {
+                listener.onDeposit(account, i + 1, i);
+                expected[i] = EventFormatter.append(new StringBuilder(), TransactionType.DEPOSIT, OperationResult.COMPLETED,
+                        7, 0, i + 1, i, Currency.EUR).toString();
+            }
+            assertEquals(0, listener.getDroppedCount());
+        }
+        // Closing returns once every queued event is printed
+        assertArrayEquals(expected, out.lines());
+        assertTrue(out.writes < EVENTS, "Every event was written on its own");
+    }
+
+    @Test
+    void eventsAreDroppedWhileTheBufferIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingStream out = new CountingStream(release);
+        BusinessAccount account = new BusinessAccount(7, "Owner", Money.ofMinor(0, Currency.EUR));
+        try (AsyncBatchingEventListener listener = new AsyncBatchingEventListener(out, 2)) {
+            listener.onDeposit(account, 1, 1);
+            // The consumer is now blocked writing the first event, so only two more fit in the buffer
+            assertTrue(out.writing.await(10, TimeUnit.SECONDS));
+            for (int i = 2; i <= 11; i++) {
+                listener.onDeposit(account, i, i);
+            }
+            assertEquals(8, listener.getDroppedCount());
+            release.countDown();
+        }
+        assertEquals(3, out.lines().length);
+    }
+
+    /**
+     * Collects the printed text and counts the writes, optionally blocking them until released
+     */
+    private static final class CountingStream extends PrintStream {
+
+        private final ByteArrayOutputStream bytes;
+        private final CountDownLatch release; // Released to let the writes proceed, or null
+        private final CountDownLatch writing = new CountDownLatch(1); // Released once a write started
+        private volatile int writes;
+
+        private CountingStream(CountDownLatch release) {
+            this(new ByteArrayOutputStream(), release);
+        }
+
+        private CountingStream(ByteArrayOutputStream bytes, CountDownLatch release) {
+            super(bytes, true, StandardCharsets.UTF_8);
+            this.bytes = bytes;
+            this.release = release;
+        }
+
+        @Override
+        public void print(Object batch) {
+            writing.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            writes++;
+            super.print(batch);
+        }
+
+        private String[] lines() {
+            flush();
+            return bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        }
+
+    }
+
+}
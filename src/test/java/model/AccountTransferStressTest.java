@@ -0,0 +1,247 @@
+package model;
+
+import enums.Currency;
+import enums.OperationResult;
+import engine.ShardedTransferEngine;
+import org.junit.jupiter.api.Test;
+import registry.AccountRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs transfers between the same accounts from many threads at once, in both directions, and
+ * checks that no money is created or lost and that the striped locks never deadlock, also when
+ * pairwise transfers, multi-leg transactions, shard threads and whole-bank locks share the
+ * accounts. Each test runs 4 million operations by default; the stress profile raises that with
+ * the bank.stress.operations property.
+ */
+class AccountTransferStressTest {
+
+    private final static int THREADS = 8;
+    private final static long OPERATIONS = Long.getLong("bank.stress.operations", 4_000_000);
+    private final static long OPERATIONS_PER_THREAD = OPERATIONS / THREADS;
+    private final static long INITIAL_BALANCE = 1_000_000;
+    private final static int MAX_AMOUNT = 50_000;
+    private final static int MAX_LEGS = 6;
+    private final static int SHARDS = 4;
+    private final static int LOCK_ALL_INTERVAL = 10_000; // Operations between whole-bank locks of the bulk thread
+    private final static long TIMEOUT_SECONDS = Long.getLong("bank.stress.timeout", 300);
+
+    @Test
+    void concurrentTransfersConserveTheTotalBalance() throws Exception {
+        List<Account> accounts = newAccounts(32);
+        long completed = runThreads((thread, random) -> transfer(accounts, random));
+
+        long total = 0;
+        for (Account account : accounts) {
+            assertTrue(account.getBalanceMinorUnits() >= 0, "Negative balance in account " + account.getId());
+            total += account.getBalanceMinorUnits();
+        }
+        assertEquals(accounts.size() * INITIAL_BALANCE, total);
+        assertTrue(completed > 0, "No transfer completed");
+    }
+
+    @Test
+    void opposingTransfersOnOnePairDoNotDeadlock() throws Exception {
+        List<Account> accounts = List.of(newAccount(1), newAccount(2));
+        assertNotEquals(Account.getLockStripe(1), Account.getLockStripe(2));
+        runThreads((thread, random) -> transfer(accounts, random));
+
+        assertEquals(2 * INITIAL_BALANCE, accounts.get(0).getBalanceMinorUnits() + accounts.get(1).getBalanceMinorUnits());
+    }
+
+    @Test
+    void mixedLockPathsConserveTheTotalBalanceWithoutDeadlock() throws Exception {
+        List<Account> accounts = newAccounts(32);
+        AccountRegistry registry = new AccountRegistry();
+        for (Account account : accounts) {
+            registry.register(account);
+        }
+        LongAdder sharded = new LongAdder();
+        ShardedTransferEngine engine = new ShardedTransferEngine(registry, SHARDS, 1024, (sequence, fromId, toId, minorUnits, result) -> {
+            if (result == OperationResult.COMPLETED) {
+                sharded.increment();
+            } else if (result != OperationResult.INSUFFICIENT_FUNDS) {
+                throw new AssertionError("Unexpected result " + result);
+            }
+        });
+        // The engine is not closed if the threads fail, since a deadlocked shard would never stop
+        long completed = runThreads(new Task() {
+            private final ThreadLocal<MultiLegTransaction> transactions = ThreadLocal.withInitial(() -> new MultiLegTransaction(MAX_LEGS));
+
+            @Override
+            public long run(int thread, SplittableRandom random) {
+                switch (thread % 4) {
+                    case 0:
+                        return transfer(accounts, random);
+                    case 1:
+                        return multiLegTransfer(accounts, random, transactions.get());
+                    case 2:
+                        engine.submit(pick(accounts, random).getId(), pick(accounts, random).getId(), 1 + random.nextInt(MAX_AMOUNT));
+                        return 0;
+                    default:
+                        if (random.nextInt(LOCK_ALL_INTERVAL) == 0) {
+                            Account.lockAll();
+                            Account.unlockAll();
+                        }
+                        return transfer(accounts, random);
+                }
+            }
+        });
+        assertTimeoutPreemptively(Duration.ofSeconds(TIMEOUT_SECONDS), engine::close,
+                () -> "Shard threads did not finish. " + describeDeadlock());
+
+        long total = 0;
+        for (Account account : accounts) {
+            assertTrue(account.getBalanceMinorUnits() >= 0, "Negative balance in account " + account.getId());
+            total += account.getBalanceMinorUnits();
+        }
+        assertEquals(accounts.size() * INITIAL_BALANCE, total);
+        assertTrue(completed > 0, "No direct transfer completed");
+        assertTrue(sharded.sum() > 0, "No sharded transfer completed");
+    }
+
+    /**
+     * Creates accounts without transfer limits. Half of them are given IDs that share a lock
+     * stripe with another account, so the single-stripe path is covered too.
+     */
+    private static List<Account> newAccounts(int count) {
+        List<Account> accounts = new ArrayList<>(count);
+        long id = 1;
+        while (accounts.size() < count) {
+            accounts.add(newAccount(id));
+            if (accounts.size() < count && accounts.size() % 2 == 1) {
+                long sameStripe = id + 1;
+                while (Account.getLockStripe(sameStripe) != Account.getLockStripe(id)) {
+                    sameStripe++;
+                }
+                accounts.add(newAccount(sameStripe));
+                id = sameStripe;
+            }
+            id++;
+        }
+        return accounts;
+    }
+
+    /**
+     * Creates a savings account without transfer limits. Unlike business accounts, savings
+     * accounts keep no transfer history, so the memory used does not grow with the operations.
+     */
+    private static Account newAccount(long id) {
+        Account account = new SavingsAccount(id, "Owner " + id, Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+        account.setTransferLimits(TransferLimits.NONE);
+        return account;
+    }
+
+    /**
+     * Transfers a random amount between a random pair of accounts, which locks both stripes
+     * @return 1 if the transfer completed, otherwise 0
+     */
+    private static long transfer(List<Account> accounts, SplittableRandom random) {
+        OperationResult result = pick(accounts, random).transferMinorUnits(1 + random.nextInt(MAX_AMOUNT), pick(accounts, random));
+        if (result == OperationResult.COMPLETED) {
+            return 1;
+        } else if (result != OperationResult.INSUFFICIENT_FUNDS) {
+            throw new AssertionError("Unexpected result " + result);
+        }
+        return 0;
+    }
+
+    /**
+     * Applies a transaction of random legs, which locks the stripes of every participant at once
+     * @return The number of legs applied
+     */
+    private static long multiLegTransfer(List<Account> accounts, SplittableRandom random, MultiLegTransaction transaction) {
+        transaction.clear();
+        int legs = 2 + random.nextInt(MAX_LEGS - 1);
+        for (int i = 0; i < legs; i++) {
+            transaction.addLeg(pick(accounts, random), pick(accounts, random), 1 + random.nextInt(MAX_AMOUNT));
+        }
+        OperationResult result = transaction.execute();
+        if (result == OperationResult.COMPLETED) {
+            return legs;
+        } else if (result != OperationResult.INSUFFICIENT_FUNDS) {
+            throw new AssertionError("Unexpected result " + result);
+        }
+        return 0;
+    }
+
+    private static Account pick(List<Account> accounts, SplittableRandom random) {
+        return accounts.get(random.nextInt(accounts.size()));
+    }
+
+    /**
+     * Runs an operation repeatedly from several threads, failing with the deadlocked threads if
+     * they do not finish in time
+     * @return The total returned by the operations
+     */
+    private static long runThreads(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int index = thread;
+                results.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(index);
+                    long total = 0;
+                    for (long i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        total += task.run(index, random);
+                    }
+                    return total;
+                }));
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                fail("Operations did not finish in " + TIMEOUT_SECONDS + " s. " + describeDeadlock());
+            }
+            long total = 0;
+            for (Future<Long> result : results) {
+                total += result.get();
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String describeDeadlock() {
+        long[] ids = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        if (ids == null) {
+            return "No deadlock was detected.";
+        }
+        StringBuilder description = new StringBuilder("Deadlocked threads:");
+        for (ThreadInfo info : ManagementFactory.getThreadMXBean().getThreadInfo(ids)) {
+            description.append(' ').append(info.getThreadName()).append(" waiting for ").append(info.getLockName());
+        }
+        return description.toString();
+    }
+
+    private interface Task {
+
+        /**
+         * Runs one operation
+         * @param thread The index of the running thread
+         * @param random The random generator of the running thread
+         * @return The number of completed transfers
+         */
+        long run(int thread, SplittableRandom random);
+
+    }
+
+}
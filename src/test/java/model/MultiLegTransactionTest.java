@@ -0,0 +1,220 @@
+package model;
+
+import enums.Currency;
+import enums.OperationResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import persistence.AccountStore;
+import persistence.WriteAheadLog;
+import registry.AccountRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks that a transaction whose middle leg fails changes nothing and reports that leg, that a
+ * leg can spend money credited by an earlier one, and that recovery applies a logged transaction
+ * all or none.
+ */
+class MultiLegTransactionTest {
+
+    private final static long INITIAL_BALANCE = 1_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void insufficientFundsInTheMiddleLegChangesNothing() {
+        BusinessAccount[] accounts = newAccounts();
+        MultiLegTransaction transaction = new MultiLegTransaction()
+                .addLeg(accounts[0], accounts[1], 100)
+                .addLeg(accounts[2], accounts[1], INITIAL_BALANCE + 1)
+                .addLeg(accounts[1], accounts[3], 100);
+        assertFailsAtMiddleLeg(transaction, OperationResult.INSUFFICIENT_FUNDS, accounts);
+    }
+
+    @Test
+    void limitInTheMiddleLegChangesNothing() {
+        BusinessAccount[] accounts = newAccounts();
+        accounts[2].setTransferLimits(new TransferLimits(Money.ofMinor(50, Currency.EUR), null, null, 0));
+        MultiLegTransaction transaction = new MultiLegTransaction()
+                .addLeg(accounts[0], accounts[1], 100)
+                .addLeg(accounts[2], accounts[1], 100)
+                .addLeg(accounts[1], accounts[3], 100);
+        assertFailsAtMiddleLeg(transaction, OperationResult.TRANSFER_LIMIT_EXCEEDED, accounts);
+    }
+
+    @Test
+    void rollingLimitInTheMiddleLegChangesNothing() {
+        BusinessAccount[] accounts = newAccounts();
+        // Each leg fits the hourly limit, but the two legs debiting the account do not
+        accounts[2].setTransferLimits(new TransferLimits(null, Money.ofMinor(150, Currency.EUR), null, 0));
+        MultiLegTransaction transaction = new MultiLegTransaction()
+                .addLeg(accounts[0], accounts[1], 100)
+                .addLeg(accounts[2], accounts[1], 100)
+                .addLeg(accounts[2], accounts[3], 100);
+        assertFailsAtMiddleLeg(transaction, OperationResult.HOURLY_LIMIT_EXCEEDED, accounts);
+        assertEquals(OperationResult.COMPLETED, accounts[2].transferMinorUnits(150, accounts[1]), "The failed legs must not be counted");
+    }
+
+    @Test
+    void overflowInTheMiddleLegChangesNothing() {
+        BusinessAccount[] accounts = newAccounts();
+        BusinessAccount full = new BusinessAccount(5, "Full", Money.ofMinor(Long.MAX_VALUE - 10, Currency.EUR));
+        MultiLegTransaction transaction = new MultiLegTransaction()
+                .addLeg(accounts[0], accounts[1], 100)
+                .addLeg(accounts[2], full, 100)
+                .addLeg(accounts[1], accounts[3], 100);
+        assertFailsAtMiddleLeg(transaction, OperationResult.BALANCE_OVERFLOW, accounts);
+        assertEquals(Long.MAX_VALUE - 10, full.getBalanceMinorUnits());
+    }
+
+    @Test
+    void legCanSpendMoneyCreditedByAnEarlierLeg() {
+        BusinessAccount[] accounts = newAccounts();
+        BusinessAccount empty = new BusinessAccount(5, "Empty", Money.ofMinor(0, Currency.EUR));
+        MultiLegTransaction transaction = new MultiLegTransaction()
+                .addLeg(accounts[0], empty, 300)
+                .addLeg(empty, accounts[1], 200)
+                .addLeg(empty, accounts[2], 100);
+        assertEquals(OperationResult.COMPLETED, transaction.execute());
+        assertEquals(-1, transaction.getFailedLeg());
+        assertEquals(0, empty.getBalanceMinorUnits());
+        assertEquals(INITIAL_BALANCE - 300, accounts[0].getBalanceMinorUnits());
+        assertEquals(INITIAL_BALANCE + 200, accounts[1].getBalanceMinorUnits());
+        assertEquals(INITIAL_BALANCE + 100, accounts[2].getBalanceMinorUnits());
+        assertEquals(2, empty.getTransactionHistory().size());
+
+        // Reversed, the first leg has nothing to spend yet
+        MultiLegTransaction reversed = new MultiLegTransaction()
+                .addLeg(empty, accounts[1], 200)
+                .addLeg(accounts[0], empty, 300);
+        assertEquals(OperationResult.INSUFFICIENT_FUNDS, reversed.execute());
+        assertEquals(0, reversed.getFailedLeg());
+    }
+
+    @Test
+    void loggedTransactionIsReplayedAsAWhole() throws IOException {
+        long[] expected;
+        try (AccountStore store = AccountStore.open(directory, false, 5, 0)) {
+            BusinessAccount[] accounts = register(store.getRegistry());
+            assertEquals(OperationResult.COMPLETED, newPayroll(accounts).tryExecute());
+            expected = balancesOf(accounts);
+        }
+        try (AccountStore store = AccountStore.open(directory, false, 5, 0)) {
+            AccountRegistry registry = store.getRegistry();
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], registry.find(i + 1).getBalanceMinorUnits());
+            }
+            assertEquals(3, registry.findBusinessAccount(1).getTransactionHistory().size());
+        }
+    }
+
+    @Test
+    void transactionCutByACrashIsDropped() throws IOException {
+        long lastSequence;
+        try (AccountStore store = AccountStore.open(directory, false, 5, 0)) {
+            register(store.getRegistry());
+            assertEquals(OperationResult.COMPLETED, newPayroll(store.getRegistry()).tryExecute());
+            lastSequence = Account.getOperationLog().getLastSequence();
+        }
+        // Erases the last leg, as if the crash happened before it reached the disk
+        eraseRecord(lastSequence);
+
+        try (AccountStore store = AccountStore.open(directory, false, 5, 0)) {
+            AccountRegistry registry = store.getRegistry();
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(INITIAL_BALANCE, registry.find(i).getBalanceMinorUnits(), "Balance of account " + i);
+            }
+            assertEquals(0, registry.findBusinessAccount(1).getTransactionHistory().size());
+        }
+    }
+
+    /**
+     * Runs a transaction expected to fail at its second leg, and checks that no balance or
+     * history changed
+     */
+    private static void assertFailsAtMiddleLeg(MultiLegTransaction transaction, OperationResult expected, BusinessAccount[] accounts) {
+        assertEquals(expected, transaction.execute());
+        assertEquals(1, transaction.getFailedLeg());
+        for (BusinessAccount account : accounts) {
+            assertEquals(INITIAL_BALANCE, account.getBalanceMinorUnits(), "Balance of account " + account.getId());
+            assertEquals(0, account.getTransactionHistory().size(), "History of account " + account.getId());
+        }
+    }
+
+    private static BusinessAccount[] newAccounts() {
+        BusinessAccount[] accounts = new BusinessAccount[4];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new BusinessAccount(i + 1, "Owner " + (i + 1), Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+        }
+        return accounts;
+    }
+
+    private static BusinessAccount[] register(AccountRegistry registry) {
+        BusinessAccount[] accounts = newAccounts();
+        for (BusinessAccount account : accounts) {
+            registry.register(account);
+        }
+        return accounts;
+    }
+
+    private static MultiLegTransaction newPayroll(BusinessAccount[] accounts) {
+        return new MultiLegTransaction()
+                .addLeg(accounts[0], accounts[1], 100)
+                .addLeg(accounts[0], accounts[2], 200)
+                .addLeg(accounts[0], accounts[3], 300);
+    }
+
+    private static MultiLegTransaction newPayroll(AccountRegistry registry) {
+        BusinessAccount[] accounts = new BusinessAccount[4];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = registry.findBusinessAccount(i + 1);
+        }
+        return newPayroll(accounts);
+    }
+
+    private static long[] balancesOf(Account[] accounts) {
+        long[] balances = new long[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            balances[i] = accounts[i].getBalanceMinorUnits();
+        }
+        return balances;
+    }
+
+    /**
+     * Zeroes the record of a sequence number in the log files, walking them slot by slot
+     */
+    private void eraseRecord(long sequence) throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> WriteAheadLog.isLogFile(file.getFileName().toString())).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer slot = ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                for (long position = 0; channel.read(slot.clear(), position) == WriteAheadLog.RECORD_SIZE && slot.getLong(0) != 0; ) {
+                    if (slot.getLong(0) == sequence) {
+                        channel.write(ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE), position);
+                        return;
+                    }
+                    int nameSlots = (slot.getChar(10) + WriteAheadLog.RECORD_SIZE - 1) / WriteAheadLog.RECORD_SIZE;
+                    position += (1L + nameSlots) * WriteAheadLog.RECORD_SIZE;
+                }
+            }
+        }
+        fail("No record " + sequence + " in the log");
+    }
+
+}
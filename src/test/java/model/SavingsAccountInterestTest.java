@@ -0,0 +1,71 @@
+package model;
+
+import engine.ScalarInterestKernel;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the interest computed in integer arithmetic with the exact product of the balance and
+ * the rate, rounded half up with BigDecimal, and checks that the interest kernel matches it.
+ */
+class SavingsAccountInterestTest {
+
+    private final static int SAMPLES = 200_000;
+    private final static BigDecimal MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private final static BigDecimal MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    @Test
+    void interestIsTheExactProductRoundedHalfUp() {
+        long[] balances = {0, 1, 2, 3, 199, 1L << 53, (1L << 53) + 1, Long.MAX_VALUE, Long.MAX_VALUE - 1, -1, -150, Long.MIN_VALUE};
+        double[] rates = {0, -0.0, 0.5, 0.015, 0.02, 0.025, 1e-300, Double.MIN_VALUE, 1, 2, -0.5, 0.1, 0.3, 1e10, Double.MAX_VALUE};
+        for (long balance : balances) {
+            for (double rate : rates) {
+                assertExact(balance, rate);
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < SAMPLES; i++) {
+            long balance = random.nextLong() >> random.nextInt(64);
+            double rate = random.nextDouble() * Math.scalb(1.0, random.nextInt(-40, 4));
+            assertExact(balance, i % 2 == 0 ? rate : -rate);
+        }
+    }
+
+    @Test
+    void productsCloseToHalfAUnitAreRoundedExactly() {
+        // 0.015 is slightly below its decimal value, so 100 * 0.015 is just under 1.5 exactly but 1.5 in double
+        assertEquals(1, SavingsAccount.calculateInterest(100, 0.015));
+        // Above 2^53 the double product loses the last units of the balance
+        assertEquals(92_233_720_368_548_007L, SavingsAccount.calculateInterest((1L << 62) + 12_345, 0.02));
+    }
+
+    @Test
+    void scalarKernelMatchesTheAccount() {
+        SplittableRandom random = new SplittableRandom(11);
+        long[] balances = new long[SAMPLES];
+        double[] rates = new double[SAMPLES];
+        long[] expected = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            balances[i] = random.nextLong(Long.MAX_VALUE) >> random.nextInt(64);
+            rates[i] = random.nextDouble() / 10;
+            expected[i] = SavingsAccount.calculateInterest(balances[i], rates[i]);
+        }
+        long[] interest = new long[SAMPLES];
+        new ScalarInterestKernel().accrue(balances, rates, interest, 0, SAMPLES);
+        assertArrayEquals(expected, interest);
+    }
+
+    private static void assertExact(long balance, double rate) {
+        BigDecimal exact = BigDecimal.valueOf(balance).multiply(new BigDecimal(rate)).setScale(0, RoundingMode.HALF_UP);
+        long expected = exact.max(MIN).min(MAX).longValueExact();
+        assertEquals(expected, SavingsAccount.calculateInterest(balance, rate), "Interest of " + balance + " at " + rate);
+    }
+
+}
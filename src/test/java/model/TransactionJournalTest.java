@@ -0,0 +1,78 @@
+package model;
+
+import enums.TransactionType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Appends entries across the growth of the first chunk and the chunks after it, and checks that a
+ * cursor opened before a growth or a removal keeps returning the entries present when it was opened.
+ */
+class TransactionJournalTest {
+
+    private final static int ENTRIES = 10_000; // Fills the first chunk and two more
+
+    @Test
+    void entriesSurviveTheGrowthOfTheFirstChunk() {
+        TransactionJournal journal = new TransactionJournal();
+        for (int i = 0; i < ENTRIES; i++) {
+            journal.append(i, amountOf(i), i + 1, TransactionType.TRANSFER_OUT);
+        }
+        assertEquals(ENTRIES, journal.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertEquals(i, journal.getTimestamp(i));
+            assertEquals(amountOf(i), journal.getAmount(i));
+            assertEquals(i + 1, journal.getCounterpartyId(i));
+            assertEquals(TransactionType.TRANSFER_OUT, journal.getType(i));
+        }
+        assertEquals(ENTRIES / 2, journal.firstIndexAtOrAfter(ENTRIES / 2));
+    }
+
+    @Test
+    void cursorKeepsItsEntriesWhileTheJournalGrowsAndShrinks() {
+        TransactionJournal journal = new TransactionJournal();
+        for (int i = 0; i < 16; i++) {
+            journal.append(i, amountOf(i), i + 1, TransactionType.DEPOSIT);
+        }
+        // The first chunk is full, so the next append replaces it by a larger copy
+        TransactionJournal.Cursor full = journal.cursor();
+        for (int i = 16; i < 40; i++) {
+            journal.append(i, amountOf(i), i + 1, TransactionType.DEPOSIT);
+        }
+        TransactionJournal.Cursor grown = journal.cursor();
+        assertTrue(journal.remove(3, amountOf(3), 4, TransactionType.DEPOSIT));
+        assertFalse(journal.remove(3, amountOf(3), 4, TransactionType.DEPOSIT));
+        for (int i = 40; i < 100; i++) {
+            journal.append(i, amountOf(i), i + 1, TransactionType.DEPOSIT);
+        }
+
+        assertEntries(full, 16, -1);
+        assertEntries(grown, 40, -1);
+        assertEntries(journal.cursor(), 100, 3);
+    }
+
+    /**
+     * Checks that a cursor returns the entries appended before an index, except a removed one
+     */
+    private static void assertEntries(TransactionJournal.Cursor cursor, int end, int removed) {
+        assertEquals(removed < 0 ? end : end - 1, cursor.remaining());
+        for (int i = 0; i < end; i++) {
+            if (i == removed) {
+                continue;
+            }
+            assertTrue(cursor.next());
+            assertEquals(i, cursor.getTimestamp());
+            assertEquals(amountOf(i), cursor.getAmount());
+            assertEquals(i + 1, cursor.getCounterpartyId());
+        }
+        assertFalse(cursor.next());
+    }
+
+    private static long amountOf(int i) {
+        return 100 + i * 7L;
+    }
+
+}
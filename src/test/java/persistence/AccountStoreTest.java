@@ -0,0 +1,232 @@
+package persistence;
+
+import enums.Currency;
+import enums.OperationResult;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.MultiLegTransaction;
+import model.SavingsAccount;
+import model.TransactionJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import registry.AccountRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Reopens stores after writes, checkpoints and simulated crashes, and checks what recovery
+ * rebuilds from the snapshot and the write-ahead log: every durable change, nothing after a cut or
+ * corrupted record, the transfers left half done and no part of a transaction cut by a crash.
+ */
+class AccountStoreTest {
+
+    private final static long INITIAL_BALANCE = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotAndLaterRecordsAreRecovered() throws IOException {
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            registry.register(new SavingsAccount(1, "Saver", Money.ofMinor(INITIAL_BALANCE, Currency.EUR), 0.03));
+            registry.register(new BusinessAccount(2, "Company", Money.ofMinor(INITIAL_BALANCE, Currency.EUR)));
+            registry.find(1).depositMinorUnits(500);
+            registry.find(2).transferMinorUnits(1_000, registry.find(1));
+            store.checkpoint();
+
+            registry.register(new BusinessAccount(3, "Late", Money.ofMinor(INITIAL_BALANCE, Currency.USD)));
+            registry.find(1).withdrawMinorUnits(200);
+            registry.find(2).transferMinorUnits(300, registry.find(1));
+            registry.find(2).setOwnerName("Renamed");
+            registry.findSavingsAccount(1).setInterestRate(0.05);
+            registry.findSavingsAccount(1).applyInterest();
+        }
+        assertTrue(Files.exists(directory.resolve(SnapshotFile.FILE_NAME)));
+
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            assertEquals(3, registry.size());
+            long saved = INITIAL_BALANCE + 500 + 1_000 - 200 + 300;
+            assertEquals(saved + SavingsAccount.calculateInterest(saved, 0.05), registry.find(1).getBalanceMinorUnits());
+            assertEquals(0.05, registry.findSavingsAccount(1).getInterestRate());
+            BusinessAccount company = registry.findBusinessAccount(2);
+            assertEquals(INITIAL_BALANCE - 1_300, company.getBalanceMinorUnits());
+            assertEquals("Renamed", company.getOwnerName());
+            assertEquals(2, company.getTransactionHistory().size());
+            assertEquals(300, company.getTransactionHistory().getAmount(1));
+            assertEquals(Currency.USD, registry.find(3).getCurrency());
+        }
+    }
+
+    @Test
+    void truncatedLastRecordIsDropped() throws IOException {
+        long lastSequence = writeDeposits();
+        try (FileChannel channel = FileChannel.open(fileHolding(lastSequence), StandardOpenOption.WRITE)) {
+            channel.truncate(offsetOf(lastSequence) + WriteAheadLog.RECORD_SIZE / 2);
+        }
+        assertRecoveredWithoutLastDeposit();
+    }
+
+    @Test
+    void corruptedLastRecordIsDropped() throws IOException {
+        long lastSequence = writeDeposits();
+        try (FileChannel channel = FileChannel.open(fileHolding(lastSequence), StandardOpenOption.WRITE)) {
+            // Changes the amount of the record, which no longer matches its CRC32C
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), offsetOf(lastSequence) + 32);
+        }
+        assertRecoveredWithoutLastDeposit();
+    }
+
+    @Test
+    void pendingTransfersAreCompletedOnReopen() throws IOException {
+        long creditedTime;
+        long refundedTime;
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            for (long id = 1; id <= 3; id++) {
+                registry.register(new BusinessAccount(id, "Owner " + id, Money.ofMinor(INITIAL_BALANCE, Currency.EUR)));
+            }
+            // Debits whose credit was never logged, one saved in the snapshot and one after it
+            creditedTime = TransactionJournal.currentEpochNanos();
+            assertTrue(registry.find(1).debitTransfer(400, 400, registry.find(2), creditedTime) >= 0);
+            store.checkpoint();
+            refundedTime = creditedTime + 1;
+            BusinessAccount missing = new BusinessAccount(9, "Never registered", Money.ofMinor(0, Currency.EUR));
+            assertTrue(registry.find(3).debitTransfer(700, 700, missing, refundedTime) >= 0);
+            assertEquals(INITIAL_BALANCE - 700, registry.find(3).getBalanceMinorUnits());
+        }
+
+        for (int reopen = 0; reopen < 2; reopen++) {
+            try (AccountStore store = open()) {
+                AccountRegistry registry = store.getRegistry();
+                assertEquals(INITIAL_BALANCE - 400, registry.find(1).getBalanceMinorUnits());
+                assertEquals(INITIAL_BALANCE + 400, registry.find(2).getBalanceMinorUnits());
+                assertEquals(1, registry.findBusinessAccount(1).getTransactionHistory().size());
+                // The credit of the second transfer fails, so it is refunded and leaves no history
+                assertEquals(INITIAL_BALANCE, registry.find(3).getBalanceMinorUnits());
+                assertEquals(0, registry.findBusinessAccount(3).getTransactionHistory().size());
+            }
+        }
+    }
+
+    @Test
+    void transactionCutByACrashIsDroppedAndLaterRecordsAreKept() throws IOException {
+        long lastSequence;
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            for (long id = 1; id <= 3; id++) {
+                registry.register(new BusinessAccount(id, "Owner " + id, Money.ofMinor(INITIAL_BALANCE, Currency.EUR)));
+            }
+            MultiLegTransaction transaction = new MultiLegTransaction()
+                    .addLeg(registry.find(1), registry.find(2), 100)
+                    .addLeg(registry.find(1), registry.find(3), 200);
+            assertEquals(OperationResult.COMPLETED, transaction.tryExecute());
+            lastSequence = Account.getOperationLog().getLastSequence();
+        }
+        try (FileChannel channel = FileChannel.open(fileHolding(lastSequence), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE), offsetOf(lastSequence));
+        }
+
+        // The next log file starts at the sequence number of the dropped transaction
+        try (AccountStore store = open()) {
+            assertEquals(INITIAL_BALANCE, store.getRegistry().find(1).getBalanceMinorUnits());
+            store.getRegistry().find(2).depositMinorUnits(50);
+        }
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            assertEquals(INITIAL_BALANCE, registry.find(1).getBalanceMinorUnits());
+            assertEquals(INITIAL_BALANCE + 50, registry.find(2).getBalanceMinorUnits());
+            assertEquals(INITIAL_BALANCE, registry.find(3).getBalanceMinorUnits());
+            assertEquals(0, registry.findBusinessAccount(1).getTransactionHistory().size());
+        }
+    }
+
+    private AccountStore open() throws IOException {
+        return AccountStore.open(directory, true, 5, 0);
+    }
+
+    /**
+     * Creates an account and deposits 100, then 200 into it
+     * @return The sequence number of the last deposit
+     */
+    private long writeDeposits() throws IOException {
+        try (AccountStore store = open()) {
+            AccountRegistry registry = store.getRegistry();
+            registry.register(new BusinessAccount(1, "Owner", Money.ofMinor(INITIAL_BALANCE, Currency.EUR)));
+            registry.find(1).depositMinorUnits(100);
+            registry.find(1).depositMinorUnits(200);
+            return Account.getOperationLog().getLastSequence();
+        }
+    }
+
+    /**
+     * Reopens the store written by {@link #writeDeposits()}, whose last deposit was cut, and
+     * checks that the next changes are logged after the first deposit
+     */
+    private void assertRecoveredWithoutLastDeposit() throws IOException {
+        try (AccountStore store = open()) {
+            Account account = store.getRegistry().find(1);
+            assertNotNull(account);
+            assertEquals(INITIAL_BALANCE + 100, account.getBalanceMinorUnits());
+            account.depositMinorUnits(1_000);
+        }
+        try (AccountStore store = open()) {
+            assertEquals(INITIAL_BALANCE + 1_100, store.getRegistry().find(1).getBalanceMinorUnits());
+        }
+    }
+
+    private Path fileHolding(long sequence) throws IOException {
+        for (Path file : logFiles()) {
+            if (findOffset(file, sequence) >= 0) {
+                return file;
+            }
+        }
+        return fail("No record " + sequence + " in the log");
+    }
+
+    private long offsetOf(long sequence) throws IOException {
+        return findOffset(fileHolding(sequence), sequence);
+    }
+
+    private List<Path> logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> WriteAheadLog.isLogFile(file.getFileName().toString())).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Walks the records of a log file slot by slot, skipping the owner names
+     * @return The position of the record, or -1 if the file does not hold it
+     */
+    private static long findOffset(Path file, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer slot = ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+            while (channel.read(slot.clear(), position) == WriteAheadLog.RECORD_SIZE && slot.getLong(0) != 0) {
+                if (slot.getLong(0) == sequence) {
+                    return position;
+                }
+                int nameSlots = (slot.getChar(10) + WriteAheadLog.RECORD_SIZE - 1) / WriteAheadLog.RECORD_SIZE;
+                position += (1L + nameSlots) * WriteAheadLog.RECORD_SIZE;
+            }
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package persistence;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.TransactionType;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import model.TransactionJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import registry.AccountRegistry;
+import util.LongHashMap;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes a chunked snapshot of many accounts, loads it back serially and in parallel, and
+ * compares every account and pending transfer with the originals.
+ */
+class SnapshotFileTest {
+
+    private final static int ACCOUNTS = 140_000; // Enough for three chunks of 65,536 accounts
+    private final static long LAST_SEQUENCE = 123_456;
+    private final static Currency[] CURRENCIES = {Currency.EUR, Currency.USD, Currency.GBP};
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void chunkedSnapshotRoundTrips(boolean parallel) throws IOException {
+        AccountRegistry registry = newRegistry();
+        List<PendingTransfer> pendingTransfers = List.of(new PendingTransfer(1, 2, 500, 550, 1_000L),
+                new PendingTransfer(3, 4, Long.MAX_VALUE, 1, 2_000L));
+        SnapshotFile.capture(registry, LAST_SEQUENCE, pendingTransfers).writeTo(directory);
+
+        try (DataInputStream header = new DataInputStream(Files.newInputStream(directory.resolve(SnapshotFile.FILE_NAME)))) {
+            header.skipBytes(4);
+            assertEquals(4, header.readInt(), "Snapshot version");
+            header.skipBytes(12);
+            assertTrue(header.readInt() >= 3, "The snapshot should be written in several chunks");
+        }
+
+        AccountRegistry loaded = new AccountRegistry();
+        LongHashMap<PendingTransfer> loadedTransfers = new LongHashMap<>();
+        assertEquals(LAST_SEQUENCE, SnapshotFile.load(directory, loaded, loadedTransfers, parallel));
+
+        assertEquals(registry.size(), loaded.size());
+        assertEquals(registry.getSavingsAccounts().size(), loaded.getSavingsAccounts().size());
+        assertEquals(registry.getBusinessAccounts().size(), loaded.getBusinessAccounts().size());
+        for (SavingsAccount expected : registry.getSavingsAccounts()) {
+            SavingsAccount actual = loaded.findSavingsAccount(expected.getId());
+            assertNotNull(actual, "Missing savings account " + expected.getId());
+            assertSameAccount(expected, actual);
+            assertEquals(Double.doubleToRawLongBits(expected.getInterestRate()), Double.doubleToRawLongBits(actual.getInterestRate()));
+        }
+        for (BusinessAccount expected : registry.getBusinessAccounts()) {
+            BusinessAccount actual = loaded.findBusinessAccount(expected.getId());
+            assertNotNull(actual, "Missing business account " + expected.getId());
+            assertSameAccount(expected, actual);
+            assertSameHistory(expected.getTransactionHistory(), actual.getTransactionHistory(), expected.getId());
+        }
+
+        assertEquals(pendingTransfers.size(), loadedTransfers.size());
+        for (PendingTransfer expected : pendingTransfers) {
+            PendingTransfer actual = loadedTransfers.get(expected.epochNanos);
+            assertNotNull(actual, "Missing pending transfer " + expected.epochNanos);
+            assertEquals(expected.fromId, actual.fromId);
+            assertEquals(expected.toId, actual.toId);
+            assertEquals(expected.minorUnits, actual.minorUnits);
+            assertEquals(expected.convertedUnits, actual.convertedUnits);
+        }
+    }
+
+    @Test
+    void refundDuringCheckpointDoesNotChangeTheCapturedHistory() throws IOException {
+        AccountRegistry registry = new AccountRegistry();
+        BusinessAccount from = new BusinessAccount(1, "Source", Money.ofMinor(10_000, Currency.EUR));
+        BusinessAccount to = new BusinessAccount(2, "Destination", Money.ofMinor(0, Currency.EUR));
+        registry.registerAll(List.of(from, to));
+        long epochNanos = TransactionJournal.currentEpochNanos();
+        assertTrue(from.debitTransfer(500, 500, to, epochNanos) >= 0);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(OperationResult.COMPLETED, from.transferMinorUnits(i, to));
+        }
+        TransactionJournal history = from.getTransactionHistory();
+        List<TransactionJournal.Entry> captured = history.stream(Long.MIN_VALUE, Long.MAX_VALUE).collect(Collectors.toList());
+
+        // The checkpoint captures under the locks, then a refund removes the debit before the file is written
+        SnapshotFile snapshot = SnapshotFile.capture(registry, LAST_SEQUENCE, List.of());
+        from.refundTransfer(500, to.getId(), OperationResult.BALANCE_OVERFLOW, epochNanos);
+        assertEquals(captured.size() - 1, history.size());
+        snapshot.writeTo(directory);
+
+        AccountRegistry loaded = new AccountRegistry();
+        SnapshotFile.load(directory, loaded, new LongHashMap<>());
+        TransactionJournal loadedHistory = loaded.findBusinessAccount(from.getId()).getTransactionHistory();
+        assertEquals(captured.size(), loadedHistory.size());
+        for (int i = 0; i < captured.size(); i++) {
+            assertEquals(captured.get(i).getEpochNanos(), loadedHistory.getTimestamp(i));
+            assertEquals(captured.get(i).getMinorUnits(), loadedHistory.getAmount(i));
+            assertEquals(captured.get(i).getCounterpartyId(), loadedHistory.getCounterpartyId(i));
+        }
+    }
+
+    /**
+     * Creates savings and business accounts in several currencies, with owner names outside of
+     * ASCII, extreme balances and business histories, one of them longer than a journal chunk
+     */
+    private static AccountRegistry newRegistry() {
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            Currency currency = CURRENCIES[i % CURRENCIES.length];
+            long balance = i % 1_000 == 0 ? Long.MAX_VALUE - i : i * 37L;
+            String ownerName = i % 7 == 0 ? "Jürgen Ñúñez " + (i / 10) : "Owner " + (i / 10);
+            if (i % 20 == 0) {
+                BusinessAccount account = new BusinessAccount(i, ownerName, Money.ofMinor(balance, currency));
+                int entries = i == 20 ? 5_000 : i % 2_000 == 0 ? 3 : 0;
+                for (int j = 0; j < entries; j++) {
+                    account.getTransactionHistory().append(1_000_000L * j + i, j - 1_500L, j % 3 == 0 ? 0 : j, TransactionType.fromOrdinal(j % TransactionType.values().length));
+                }
+                accounts.add(account);
+            } else {
+                accounts.add(new SavingsAccount(i, ownerName, Money.ofMinor(balance, currency), i * 1e-6));
+            }
+        }
+        AccountRegistry registry = new AccountRegistry();
+        registry.registerAll(accounts);
+        return registry;
+    }
+
+    private static void assertSameAccount(Account expected, Account actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getCurrency(), actual.getCurrency(), "Currency of account " + expected.getId());
+        assertEquals(expected.getOwnerName(), actual.getOwnerName(), "Owner of account " + expected.getId());
+        assertEquals(expected.getBalanceMinorUnits(), actual.getBalanceMinorUnits(), "Balance of account " + expected.getId());
+    }
+
+    private static void assertSameHistory(TransactionJournal expected, TransactionJournal actual, long id) {
+        assertEquals(expected.size(), actual.size(), "History size of account " + id);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTimestamp(i), actual.getTimestamp(i), "History time of account " + id);
+            assertEquals(expected.getAmount(i), actual.getAmount(i), "History amount of account " + id);
+            assertEquals(expected.getCounterpartyId(i), actual.getCounterpartyId(i), "History counterparty of account " + id);
+            assertEquals(expected.getType(i), actual.getType(i), "History type of account " + id);
+        }
+    }
+
+}
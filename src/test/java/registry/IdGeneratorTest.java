@@ -0,0 +1,57 @@
+package registry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocates IDs from many threads at once, far more than fit in one millisecond, and checks that
+ * they never repeat, increase within each thread and stay above the high-water mark.
+ */
+class IdGeneratorTest {
+
+    private final static int NODE_ID = 7;
+    private final static int THREADS = 32; // More threads than stripes, so some threads share one
+    private final static int IDS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasePerThread() throws Exception {
+        long highWaterMark = new IdGenerator(0, 0).nextId() + (1L << 40);
+        IdGenerator generator = new IdGenerator(NODE_ID, highWaterMark);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<long[]>> results = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                results.add(executor.submit(() -> {
+                    long[] ids = new long[IDS_PER_THREAD];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> seen = new HashSet<>(THREADS * IDS_PER_THREAD * 2);
+            for (Future<long[]> result : results) {
+                long previous = highWaterMark;
+                for (long id : result.get()) {
+                    assertTrue(id > previous, "ID " + id + " is not above " + previous);
+                    assertEquals(NODE_ID, IdGenerator.getNodeId(id));
+                    assertTrue(seen.add(id), "ID " + id + " was allocated twice");
+                    previous = id;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package registry;
+
+import enums.Currency;
+import enums.OperationResult;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that savings accounts only have a per-transfer limit by default, and that the limits file
+ * adds the rolling limits to an account type or to a single account.
+ */
+class TransferLimitsFileTest {
+
+    private final static long BALANCE = 1_000_000; // 10,000.00EUR
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void resetLimits() {
+        SavingsAccount.setDefaultTransferLimits(null);
+        BusinessAccount.setDefaultTransferLimits(null);
+    }
+
+    @Test
+    void savingsAccountsOnlyLimitEachTransferByDefault() {
+        assertFalse(SavingsAccount.getDefaultTransferLimits().hasWindows());
+        SavingsAccount from = new SavingsAccount(1, "Saver", Money.ofMinor(BALANCE, Currency.EUR));
+        BusinessAccount to = new BusinessAccount(2, "Company", Money.ofMinor(0, Currency.EUR));
+        assertEquals(OperationResult.TRANSFER_LIMIT_EXCEEDED, from.transferMinorUnits(50_001, to));
+        // Twenty transfers of 500 EUR in a row go over any hourly, daily or per-minute limit
+        for (int i = 0; i < 20; i++) {
+            assertEquals(OperationResult.COMPLETED, from.transferMinorUnits(50_000, to), "Transfer " + i);
+        }
+        assertEquals(0, from.getBalanceMinorUnits());
+    }
+
+    @Test
+    void limitsFileAddsRollingLimits() throws IOException {
+        AccountRegistry registry = new AccountRegistry();
+        SavingsAccount saver = new SavingsAccount(1, "Saver", Money.ofMinor(BALANCE, Currency.EUR));
+        BusinessAccount company = new BusinessAccount(2, "Company", Money.ofMinor(BALANCE, Currency.EUR));
+        registry.register(saver);
+        registry.register(company);
+        Path file = directory.resolve("transfer-limits.csv");
+        Files.writeString(file, "# Opt-in rolling limits\nSAVINGS,EUR,500,2000,5000,10\n2,EUR,,,,3\n");
+        assertEquals(2, TransferLimitsFile.load(file, registry));
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(OperationResult.COMPLETED, saver.transferMinorUnits(50_000, company), "Transfer " + i);
+        }
+        assertEquals(OperationResult.HOURLY_LIMIT_EXCEEDED, saver.transferMinorUnits(50_000, company));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(OperationResult.COMPLETED, company.transferMinorUnits(100, saver), "Transfer " + i);
+        }
+        assertEquals(OperationResult.VELOCITY_LIMIT_EXCEEDED, company.transferMinorUnits(100, saver));
+    }
+
+}
@@ -0,0 +1,98 @@
+package server;
+
+import enums.Currency;
+import enums.OperationResult;
+import enums.RequestType;
+import model.BusinessAccount;
+import model.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import registry.AccountRegistry;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Sends request frames to a running server and checks that a frame whose length does not match
+ * its request is rejected before it changes anything.
+ */
+class AccountServerTest {
+
+    private final static long ACCOUNT_ID = 1;
+    private final static long INITIAL_BALANCE = 10_000;
+
+    private AccountRegistry registry;
+    private BusinessAccount account;
+    private AccountServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        registry = new AccountRegistry();
+        account = new BusinessAccount(ACCOUNT_ID, "Owner", Money.ofMinor(INITIAL_BALANCE, Currency.EUR));
+        registry.register(account);
+        server = new AccountServer(registry, () -> 2, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        serverThread = new Thread(server, "account-server");
+        serverThread.start();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        server.close();
+        serverThread.join();
+    }
+
+    @Test
+    void depositIsAppliedAndAnswered() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(depositFrame(500, 0));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int length = in.readInt();
+            assertEquals(Protocol.RESPONSE_HEADER_SIZE, length);
+            assertEquals(RequestType.DEPOSIT.ordinal(), in.readByte());
+            assertEquals(7, in.readInt());
+            assertEquals(OperationResult.COMPLETED.ordinal(), in.readByte());
+        }
+        assertEquals(INITIAL_BALANCE + 500, account.getBalanceMinorUnits());
+    }
+
+    @Test
+    void frameWithTrailingBytesIsRejectedWithoutBeingApplied() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(depositFrame(500, 1));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertThrows(EOFException.class, in::readInt, "The server should close the connection without answering");
+        }
+        assertEquals(INITIAL_BALANCE, account.getBalanceMinorUnits());
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    /**
+     * Encodes a deposit request, followed by extra bytes counted in the frame length
+     */
+    private static byte[] depositFrame(long minorUnits, int extraBytes) {
+        ByteBuffer out = ByteBuffer.allocate(64);
+        int start = Protocol.beginRequest(out, RequestType.DEPOSIT, 7);
+        out.putLong(ACCOUNT_ID).putLong(minorUnits);
+        out.position(out.position() + extraBytes);
+        Protocol.endFrame(out, start);
+        byte[] frame = new byte[out.position()];
+        out.flip().get(frame);
+        return frame;
+    }
+
+}
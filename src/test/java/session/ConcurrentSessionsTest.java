@@ -0,0 +1,105 @@
+package session;
+
+import enums.Currency;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.SavingsAccount;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import registry.AccountRegistry;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs 100,000 scripted sessions against shared accounts, each test on the heap set for it in the
+ * surefire configuration. Each session opens an account, works on it, sleeps as a thinking user
+ * would and pays into one shared account, so the sessions overlap and contend for the registry
+ * and locks. With a limit of 1024 sessions at once, the others wait for them and the test fits
+ * in 96 MB. On virtual threads, from Java 21, all 100,000 sessions are kept running until the
+ * last one has started, which needs about 3 KB of heap per waiting session, so that test gets
+ * 512 MB.
+ */
+class ConcurrentSessionsTest {
+
+    private final static int SESSIONS = 100_000;
+    private final static int PLATFORM_THREAD_SESSIONS = 1024; // Limit before Java 21, when sessions run on platform threads
+    private final static long SHARED_ID = 1;
+    private final static List<String> SCRIPT = List.of(
+            "# Opens an account, deposits, thinks, pays the shared account and tries to overdraw",
+            "OPEN SAVINGS Owner 100.00 EUR",
+            "DEPOSIT SELF 50.00",
+            "SLEEP 20",
+            "TRANSFER SELF " + SHARED_ID + " 10.00",
+            "WITHDRAW SELF 1000.00",
+            "BALANCE SELF");
+
+    private final AccountRegistry registry = new AccountRegistry();
+    private final BusinessAccount shared = new BusinessAccount(SHARED_ID, "Shared", Money.ofMinor(0, Currency.EUR));
+    private final AtomicLong ids = new AtomicLong(SHARED_ID);
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Test
+    void sessionsBeyondTheLimitWaitAndAllCompleteOnASmallHeap() throws InterruptedException {
+        registry.register(shared);
+        int maxActive = 0;
+        try (SessionExecutor executor = new SessionExecutor(PLATFORM_THREAD_SESSIONS)) {
+            for (int i = 0; i < SESSIONS; i++) {
+                executor.submit(new Session(i, SCRIPT, registry, ids::incrementAndGet, out));
+                maxActive = Math.max(maxActive, executor.getActiveSessions());
+            }
+            executor.awaitIdle();
+            assertEquals(SESSIONS, executor.getCompletedSessions());
+            assertEquals(0, executor.getFailedSessions());
+            assertTrue(maxActive <= executor.getMaxSessions(), "More sessions ran at once than the limit");
+        }
+        assertSessionsApplied();
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void allSessionsRunAtOnceOnVirtualThreads() throws InterruptedException {
+        registry.register(shared);
+        CountDownLatch lastStarted = new CountDownLatch(1);
+        try (SessionExecutor executor = new SessionExecutor(SESSIONS)) {
+            assertTrue(executor.isVirtual(), "Sessions do not run on virtual threads");
+            for (int i = 0; i < SESSIONS; i++) {
+                Session session = new Session(i, SCRIPT, registry, ids::incrementAndGet, out);
+                // Each session stays open after its script until every session has started
+                executor.submit(() -> {
+                    session.run();
+                    try {
+                        lastStarted.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            assertEquals(SESSIONS, executor.getActiveSessions());
+            lastStarted.countDown();
+            executor.awaitIdle();
+            assertEquals(SESSIONS, executor.getCompletedSessions());
+            assertEquals(0, executor.getFailedSessions());
+        }
+        assertSessionsApplied();
+    }
+
+    private void assertSessionsApplied() {
+        assertEquals(SESSIONS + 1, registry.size());
+        assertEquals(SESSIONS * 1_000L, shared.getBalanceMinorUnits());
+        for (SavingsAccount account : registry.getSavingsAccounts()) {
+            assertEquals(14_000, account.getBalanceMinorUnits(), "Balance of account " + account.getId());
+        }
+        Account last = registry.find(SHARED_ID + SESSIONS);
+        assertTrue(last instanceof SavingsAccount, "The last session did not open its account");
+    }
+
+}
@@ -0,0 +1,105 @@
+package storage;
+
+import enums.AccountType;
+import enums.Currency;
+import enums.OperationResult;
+import interfaces.OperationLog;
+import model.Account;
+import model.BusinessAccount;
+import model.Money;
+import model.TransferLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the ID index finds every account while it grows over several segments, including
+ * from a thread reading it during the creations, and that the table refuses the changes that the
+ * operation log or the rolling transfer limits would miss.
+ */
+class OffHeapAccountTableTest {
+
+    private final static int ACCOUNTS = 70_000; // Grows the index to 2^18 slots, over several segments
+    private final static long ID_STRIDE = 0x9E3779B1L; // Spreads the IDs over the whole long range
+
+    @AfterEach
+    void resetSettings() {
+        Account.setOperationLog(null);
+        BusinessAccount.setDefaultTransferLimits(null);
+    }
+
+    @Test
+    void indexFindsEveryAccountWhileItGrows() throws InterruptedException {
+        OffHeapAccountTable table = new OffHeapAccountTable();
+        AtomicInteger created = new AtomicInteger();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            for (int checked = 0; checked < ACCOUNTS && failure.get() == null; ) {
+                int count = created.get();
+                for (int i = checked; i < count; i++) {
+                    int found = table.indexOf(idOf(i));
+                    if (found != i) {
+                        failure.set("Account " + idOf(i) + " found at " + found + " instead of " + i);
+                    }
+                }
+                checked = count;
+            }
+        });
+        reader.start();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            table.create(AccountType.BUSINESS, idOf(i), "Owner " + i, Money.ofMinor(i, Currency.EUR), 0);
+            created.set(i + 1);
+        }
+        reader.join();
+        assertNull(failure.get());
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(i, table.indexOf(idOf(i)));
+            assertEquals(idOf(i), table.getId(i));
+        }
+        assertEquals(-1, table.indexOf(idOf(ACCOUNTS)));
+        assertThrows(IllegalArgumentException.class, () -> table.create(AccountType.BUSINESS, idOf(1), "Twin", Money.ofMinor(0, Currency.EUR), 0));
+        assertEquals(ACCOUNTS, table.size());
+    }
+
+    @Test
+    void changesAreRefusedWhileAnOperationLogIsSet() {
+        OffHeapAccountTable table = new OffHeapAccountTable();
+        int from = table.create(AccountType.BUSINESS, 1, "Source", Money.ofMinor(1_000, Currency.EUR), 0);
+        int to = table.create(AccountType.BUSINESS, 2, "Destination", Money.ofMinor(0, Currency.EUR), 0);
+        Account.setOperationLog(new OperationLog() {});
+        assertThrows(IllegalStateException.class, () -> table.depositMinorUnits(from, 100));
+        assertThrows(IllegalStateException.class, () -> table.withdrawMinorUnits(from, 100));
+        assertThrows(IllegalStateException.class, () -> table.transferMinorUnits(from, 100, to));
+        assertThrows(IllegalStateException.class, table::applyInterest);
+        assertThrows(IllegalStateException.class, () -> table.create(AccountType.BUSINESS, 3, "Other", Money.ofMinor(0, Currency.EUR), 0));
+        assertEquals(1_000, table.getBalanceMinorUnits(from));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void transfersAreRefusedWithRollingLimits() {
+        OffHeapAccountTable table = new OffHeapAccountTable();
+        int from = table.create(AccountType.BUSINESS, 1, "Source", Money.ofMinor(1_000, Currency.EUR), 0);
+        int to = table.create(AccountType.BUSINESS, 2, "Destination", Money.ofMinor(0, Currency.EUR), 0);
+        BusinessAccount.setDefaultTransferLimits(new TransferLimits(Money.ofMinor(500, Currency.EUR), null, null, 10));
+        assertThrows(IllegalStateException.class, () -> table.transferMinorUnits(from, 100, to));
+        assertEquals(1_000, table.getBalanceMinorUnits(from));
+
+        BusinessAccount.setDefaultTransferLimits(new TransferLimits(Money.ofMinor(500, Currency.EUR), null, null, 0));
+        assertEquals(OperationResult.TRANSFER_LIMIT_EXCEEDED, table.transferMinorUnits(from, 600, to));
+        assertEquals(OperationResult.COMPLETED, table.transferMinorUnits(from, 100, to));
+        assertEquals(100, table.getBalanceMinorUnits(to));
+    }
+
+    private static long idOf(int i) {
+        return (i + 1) * ID_STRIDE;
+    }
+
+}
@@ -0,0 +1,82 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Fills a small cache with more requests than it has slots and checks that a retry within the time
+ * to live always gets the result of its first attempt, while the requests that do not fit are
+ * refused until a slot expires.
+ */
+class DedupCacheTest {
+
+    private final static int CAPACITY = 16;
+    private final static int REQUESTS = 4 * CAPACITY;
+    private final static long LONG_TTL_MILLIS = 3_600_000;
+    private final static long SHORT_TTL_MILLIS = 200;
+
+    @Test
+    void retryUnderSetPressureGetsItsFirstResult() {
+        DedupCache cache = new DedupCache(CAPACITY, LONG_TTL_MILLIS);
+        List<Long> claimed = new ArrayList<>();
+        List<Long> refused = new ArrayList<>();
+        for (long id = 1; id <= REQUESTS; id++) {
+            int previous = cache.begin(id);
+            if (previous == DedupCache.BUSY) {
+                refused.add(id);
+            } else {
+                assertEquals(DedupCache.CLAIMED, previous);
+                cache.complete(id, codeOf(id));
+                claimed.add(id);
+            }
+        }
+        assertEquals(cache.getCapacity(), claimed.size());
+        assertEquals(refused.size(), cache.getRefusals());
+
+        // Every remembered request is still answered with its result, although newer requests came
+        for (long id : claimed) {
+            assertEquals(codeOf(id), cache.begin(id), "Retry of request " + id);
+        }
+        for (long id : refused) {
+            assertEquals(DedupCache.BUSY, cache.begin(id), "Retry of refused request " + id);
+        }
+    }
+
+    @Test
+    void refusedRequestIsClaimedOnceASlotExpires() throws InterruptedException {
+        DedupCache cache = new DedupCache(CAPACITY, SHORT_TTL_MILLIS);
+        long refused = -1;
+        for (long id = 1; refused < 0; id++) {
+            int previous = cache.begin(id);
+            if (previous == DedupCache.BUSY) {
+                refused = id;
+            } else {
+                cache.complete(id, codeOf(id));
+            }
+        }
+        Thread.sleep(2 * SHORT_TTL_MILLIS);
+        assertEquals(DedupCache.CLAIMED, cache.begin(refused));
+        cache.complete(refused, codeOf(refused));
+        assertEquals(codeOf(refused), cache.begin(refused));
+    }
+
+    @Test
+    void abandonedRequestRunsAgain() {
+        DedupCache cache = new DedupCache(CAPACITY, LONG_TTL_MILLIS);
+        assertEquals(DedupCache.CLAIMED, cache.begin(7));
+        cache.abandon(7);
+        assertEquals(DedupCache.CLAIMED, cache.begin(7));
+        cache.complete(7, 3);
+        assertEquals(3, cache.begin(7));
+        assertEquals(0, cache.getRefusals());
+    }
+
+    private static int codeOf(long id) {
+        return (int) (id % 200);
+    }
+
+}